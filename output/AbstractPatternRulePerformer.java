@@ -19,12 +19,14 @@
  */
 package org.languagetool.rules.patterns;
 
+import org.jetbrains.annotations.Nullable;
 import org.languagetool.AnalyzedToken;
 import org.languagetool.AnalyzedTokenReadings;
 import org.languagetool.chunking.ChunkTag;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Objects;
 
@@ -53,11 +55,21 @@ public abstract class AbstractPatternRulePerformer {
   }
 
   protected void doMatch(List<PatternTokenMatcher> patternTokenMatchers, AnalyzedTokenReadings[] tokens, MatchConsumer consumer) throws IOException {
+    doMatch(patternTokenMatchers, tokens, null, consumer);
+  }
+
+  /**
+   * @param startPositions if not {@code null}, only try matches that start at these token positions,
+   *                       e.g. the positions found by a {@link LeadingTokenTrie}
+   * @since 5.3
+   */
+  protected void doMatch(List<PatternTokenMatcher> patternTokenMatchers, AnalyzedTokenReadings[] tokens,
+                         @Nullable BitSet startPositions, MatchConsumer consumer) throws IOException {
     int[] tokenPositions = new int[patternTokenMatchers.size()];
     int patternSize = patternTokenMatchers.size();
     int limit = Math.max(0, tokens.length - patternSize + 1);
     PatternTokenMatcher pTokenMatcher = null;
-    int i = 0;
+    int i = startPositions == null ? 0 : nextStartPosition(startPositions, 0);
     int minOccurCorrection = getMinOccurrenceCorrection();
     while (i < limit + minOccurCorrection && !(rule.isSentStart() && i > 0)) {
       int skipShiftTotal = 0;
@@ -135,10 +147,15 @@ public abstract class AbstractPatternRulePerformer {
       if (allElementsMatch && matchingTokens == patternSize) {
         consumer.consume(tokenPositions, firstMatchToken, lastMatchToken, firstMarkerMatchToken, lastMarkerMatchToken);
       }
-      i++;
+      i = startPositions == null ? i + 1 : nextStartPosition(startPositions, i + 1);
     }
   }
 
+  private static int nextStartPosition(BitSet startPositions, int fromIndex) {
+    int next = startPositions.nextSetBit(fromIndex);
+    return next == -1 ? Integer.MAX_VALUE : next;
+  }
+
   protected boolean testAllReadings(AnalyzedTokenReadings[] tokens,
       PatternTokenMatcher matcher, PatternTokenMatcher prevElement,
       int tokenNo, int firstMatchToken, int prevSkipNext)
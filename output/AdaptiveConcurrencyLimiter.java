@@ -0,0 +1,242 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.server;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the number of checks that run or wait at the same time. Instead of a fixed limit, the limit
+ * follows the latency of the checks: it grows while latency stays close to the long-term average and
+ * shrinks when latency goes up (the "gradient" approach), so requests that would only wait in the queue
+ * are rejected early. Latency is measured per 1,000 characters of text, so that a few long texts
+ * don't look like an overloaded server. The limit also shrinks while the system load per CPU core, as read from
+ * {@code /proc/loadavg}, is above a maximum.
+ * @since 5.3
+ */
+class AdaptiveConcurrencyLimiter {
+
+  private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+  private static final Path LOAD_AVG_FILE = Paths.get("/proc/loadavg");
+  private static final long LOAD_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+  // latency may go up by this factor before the limit is reduced:
+  private static final double TOLERANCE = 1.5;
+  // how fast the limit follows its target:
+  private static final double SMOOTHING = 0.2;
+  // number of samples the long-term latency is averaged over:
+  private static final int LONG_WINDOW = 500;
+  private static final int SHORT_WINDOW = 10;
+  // latency is normalized to texts of this length, shorter texts count as this long as their latency is mostly overhead:
+  private static final int SAMPLE_CHARACTERS = 1000;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double maxLoadPerCore;
+  private final DoubleSupplier loadPerCore;
+  private final LongSupplier nanoTime;
+
+  private double limit;
+  private int inFlight;
+  // normalized to SAMPLE_CHARACTERS:
+  private double longLatencyNanos;
+  private double shortLatencyNanos;
+  private double shortRttNanos;
+  private int samples;
+  private double loadFactor = 1.0;
+  private long lastLoadCheck;
+
+  /**
+   * @param maxLoadPerCore the load per core above which the limit shrinks, or {@code 0} to ignore the system load
+   */
+  AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double maxLoadPerCore) {
+    this(initialLimit, minLimit, maxLimit, maxLoadPerCore, AdaptiveConcurrencyLimiter::readLoadPerCore, System::nanoTime);
+  }
+
+  AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double maxLoadPerCore, DoubleSupplier loadPerCore, LongSupplier nanoTime) {
+    if (minLimit < 1 || maxLimit < minLimit) {
+      throw new IllegalArgumentException("Invalid limits, must be 1 <= minLimit <= maxLimit: " + minLimit + ", " + maxLimit);
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.maxLoadPerCore = maxLoadPerCore;
+    this.loadPerCore = loadPerCore;
+    this.nanoTime = nanoTime;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    this.lastLoadCheck = nanoTime.getAsLong() - LOAD_CHECK_INTERVAL_NANOS;
+    ServerMetricsCollector.getInstance().logConcurrencyLimit(getLimit(), 0);
+  }
+
+  /**
+   * Returns a permit that must be released when the request has been handled, or {@code null} if
+   * there are already as many requests in flight as the current limit allows.
+   */
+  @Nullable
+  Permit tryAcquire() {
+    synchronized (this) {
+      updateLoadFactor();
+      if (inFlight >= getLimit()) {
+        ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.CONCURRENCY_LIMIT);
+        return null;
+      }
+      inFlight++;
+    }
+    return new Permit(nanoTime.getAsLong());
+  }
+
+  /**
+   * The current limit of requests in flight.
+   */
+  synchronized int getLimit() {
+    return Math.max(minLimit, (int) (limit * loadFactor));
+  }
+
+  synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * How long a rejected client should wait before retrying, i.e. about the time it takes for a request
+   * in flight to finish.
+   */
+  synchronized int getRetryAfterSeconds() {
+    long seconds = (long) Math.ceil(shortRttNanos / 1_000_000_000.0);
+    return (int) Math.max(1, Math.min(60, seconds));
+  }
+
+  private synchronized int extend(int extra) {
+    int granted = Math.max(0, Math.min(extra, getLimit() - inFlight));
+    inFlight += granted;
+    return granted;
+  }
+
+  private synchronized void release(long rttNanos, int characters, int weight, boolean sample) {
+    int currentInFlight = inFlight;
+    inFlight -= weight;
+    if (sample) {
+      // the request's work was split over 'weight' threads, each worked on its share of the text:
+      update(rttNanos, characters / weight, currentInFlight);
+    }
+    ServerMetricsCollector.getInstance().logConcurrencyLimit(getLimit(), inFlight);
+  }
+
+  private void update(long rttNanos, int characters, int currentInFlight) {
+    double latencyNanos = rttNanos * (double) SAMPLE_CHARACTERS / Math.max(SAMPLE_CHARACTERS, characters);
+    samples++;
+    if (samples == 1) {
+      longLatencyNanos = latencyNanos;
+      shortLatencyNanos = latencyNanos;
+      shortRttNanos = rttNanos;
+      return;
+    }
+    longLatencyNanos += (latencyNanos - longLatencyNanos) / Math.min(samples, LONG_WINDOW);
+    shortLatencyNanos += (latencyNanos - shortLatencyNanos) / Math.min(samples, SHORT_WINDOW);
+    shortRttNanos += (rttNanos - shortRttNanos) / Math.min(samples, SHORT_WINDOW);
+    if (longLatencyNanos > 2 * shortLatencyNanos) {
+      // latency has dropped a lot (e.g. after a phase of overload), don't wait for the average to catch up
+      longLatencyNanos = 0.95 * longLatencyNanos + 0.05 * shortLatencyNanos;
+    }
+    double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatencyNanos / shortLatencyNanos));
+    // only grow if the limit was actually used, otherwise it might grow without bounds while there's no load:
+    double headroom = currentInFlight >= limit / 2 ? Math.sqrt(limit) : 0;
+    double target = limit * gradient + headroom;
+    limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + target * SMOOTHING));
+  }
+
+  private void updateLoadFactor() {
+    if (maxLoadPerCore <= 0) {
+      return;
+    }
+    long now = nanoTime.getAsLong();
+    if (now - lastLoadCheck < LOAD_CHECK_INTERVAL_NANOS) {
+      return;
+    }
+    lastLoadCheck = now;
+    double load = loadPerCore.getAsDouble();
+    loadFactor = load > maxLoadPerCore ? Math.max(0.1, maxLoadPerCore / load) : 1.0;
+  }
+
+  /**
+   * The 1-minute load average divided by the number of cores, or {@code 0} if not available.
+   */
+  static double readLoadPerCore() {
+    int cores = Runtime.getRuntime().availableProcessors();
+    try {
+      if (Files.isReadable(LOAD_AVG_FILE)) {
+        String content = new String(Files.readAllBytes(LOAD_AVG_FILE), StandardCharsets.US_ASCII);
+        return Double.parseDouble(content.split(" ")[0]) / cores;
+      }
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Could not read " + LOAD_AVG_FILE, e);
+    }
+    double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+    return load < 0 ? 0 : load / cores;
+  }
+
+  /**
+   * A request in flight.
+   */
+  class Permit {
+    private final long startNanos;
+    private int weight = 1;
+    private boolean released;
+
+    private Permit(long startNanos) {
+      this.startNanos = startNanos;
+    }
+
+    /**
+     * Count the request as up to {@code extra} more requests in flight, for a request that uses several
+     * threads, e.g. a batch check. Other requests are only rejected because of the extra ones, not this one.
+     * @return how many of the extra requests fit into the current limit
+     */
+    int tryExtend(int extra) {
+      if (released) {
+        return 0;
+      }
+      int granted = extend(extra);
+      weight += granted;
+      return granted;
+    }
+
+    /**
+     * @param sample whether the request's latency says something about the server's load, e.g.
+     *               {@code false} for requests rejected because of invalid parameters
+     * @param characters the size of the request's text
+     */
+    void release(boolean sample, int characters) {
+      if (!released) {
+        released = true;
+        AdaptiveConcurrencyLimiter.this.release(nanoTime.getAsLong() - startNanos, characters, weight, sample);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,126 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private double load = 0;
+
+  @Test
+  public void testRejectsAboveLimit() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0, () -> load, now::get);
+    AdaptiveConcurrencyLimiter.Permit permit1 = limiter.tryAcquire();
+    assertNotNull(permit1);
+    assertNotNull(limiter.tryAcquire());
+    assertNull(limiter.tryAcquire());
+    permit1.release(false, 100);
+    permit1.release(false, 100);  // no effect
+    assertEquals(1, limiter.getInFlight());
+    assertNotNull(limiter.tryAcquire());
+  }
+
+  @Test
+  public void testExtendedPermitCountsAsSeveralRequests() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10, 0, () -> load, now::get);
+    AdaptiveConcurrencyLimiter.Permit permit1 = limiter.tryAcquire();
+    assertNotNull(permit1);
+    assertNotNull(limiter.tryAcquire());
+    assertEquals(2, permit1.tryExtend(5));  // only 2 fit into the limit
+    assertEquals(4, limiter.getInFlight());
+    assertNull(limiter.tryAcquire());
+    permit1.release(false, 100);
+    assertEquals(1, limiter.getInFlight());
+    assertEquals(0, permit1.tryExtend(1));  // released already
+    assertEquals(1, limiter.getInFlight());
+  }
+
+  @Test
+  public void testLimitFollowsLatency() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(5, 1, 50, 0, () -> load, now::get);
+    runBatches(limiter, 30, 100);
+    int grownLimit = limiter.getLimit();
+    assertTrue("limit should grow with stable latency: " + grownLimit, grownLimit > 20);
+    runBatches(limiter, 30, 1000);
+    int shrunkLimit = limiter.getLimit();
+    assertTrue("limit should shrink with growing latency: " + shrunkLimit, shrunkLimit < grownLimit / 2);
+    assertTrue(limiter.getRetryAfterSeconds() >= 5);
+  }
+
+  @Test
+  public void testLimitShrinksWithHighLoad() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 1, 50, 2.0, () -> load, now::get);
+    assertNotNull(limiter.tryAcquire());
+    assertEquals(20, limiter.getLimit());
+    load = 8.0;
+    now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    assertNotNull(limiter.tryAcquire());
+    assertEquals(5, limiter.getLimit());
+    load = 1.0;
+    now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    assertNotNull(limiter.tryAcquire());
+    assertEquals(20, limiter.getLimit());
+  }
+
+  @Test
+  public void testLimitDoesNotShrinkWithMixedTextSizes() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(5, 1, 50, 0, () -> load, now::get);
+    runBatches(limiter, 10, 100, 1000);
+    for (int i = 0; i < 10; i++) {
+      // the same latency per character:
+      runBatches(limiter, 2, 2000, 20_000);
+      runBatches(limiter, 2, 100, 500);
+    }
+    int limit = limiter.getLimit();
+    assertTrue("limit should grow with stable latency per character: " + limit, limit > 20);
+  }
+
+  private void runBatches(AdaptiveConcurrencyLimiter limiter, int batches, long millis) {
+    runBatches(limiter, batches, millis, 1000);
+  }
+
+  // acquires as many permits as allowed and releases them after the given time:
+  private void runBatches(AdaptiveConcurrencyLimiter limiter, int batches, long millis, int characters) {
+    for (int i = 0; i < batches; i++) {
+      List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+      AdaptiveConcurrencyLimiter.Permit permit;
+      while ((permit = limiter.tryAcquire()) != null) {
+        permits.add(permit);
+      }
+      now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+      for (AdaptiveConcurrencyLimiter.Permit p : permits) {
+        p.release(true, characters);
+      }
+      // later batches take longer if latency grows with load:
+      if (millis > 100) {
+        millis += 200;
+      }
+    }
+  }
+
+}
@@ -27,6 +27,7 @@ import org.jetbrains.annotations.NotNull;
 import org.languagetool.JLanguageTool;
 import org.languagetool.Language;
 import org.languagetool.Languages;
+import org.languagetool.RuleTimingCollector;
 import org.languagetool.markup.AnnotatedText;
 import org.languagetool.markup.AnnotatedTextBuilder;
 import org.languagetool.rules.CorrectExample;
@@ -71,6 +72,8 @@ class ApiV2 {
       handleSoftwareInfoRequest(httpExchange, parameters, config);
     } else if (path.equals("check")) {
       handleCheckRequest(httpExchange, parameters, errorRequestLimiter, remoteAddress);
+    } else if (path.equals("check/batch")) {
+      handleBatchCheckRequest(httpExchange, parameters, remoteAddress);
     } else if (path.equals("words")) {
       handleWordsRequest(httpExchange, parameters, config);
     } else if (path.equals("words/add")) {
@@ -83,6 +86,9 @@ class ApiV2 {
     } else if (path.equals("log")) {
       // private (i.e. undocumented) API for our own use only
       handleLogRequest(httpExchange, parameters);
+    } else if (path.equals("admin/rules/top")) {
+      // private (i.e. undocumented) API for our own use only
+      handleTopRulesRequest(httpExchange, parameters);
     } else {
       throw new PathNotFoundException("Unsupported action: '" + path + "'. Please see " + API_DOC_URL);
     }
@@ -148,6 +154,36 @@ class ApiV2 {
     textChecker.checkText(aText, httpExchange, parameters, errorRequestLimiter, remoteAddress);
   }
 
+  /**
+   * Expects a 'texts' parameter with a JSON array. Its elements are either strings or objects
+   * like the 'data' parameter of a check request.
+   */
+  private void handleBatchCheckRequest(HttpExchange httpExchange, Map<String, String> parameters, String remoteAddress) throws Exception {
+    if (parameters.containsKey("text") || parameters.containsKey("data")) {
+      throw new IllegalArgumentException("Use the 'texts' parameter for batch checks, not 'text' or 'data'");
+    }
+    if (!parameters.containsKey("texts")) {
+      throw new IllegalArgumentException("Missing 'texts' parameter");
+    }
+    JsonNode texts = new ObjectMapper().readTree(parameters.get("texts"));
+    if (texts == null || !texts.isArray()) {
+      throw new IllegalArgumentException("'texts' must be a JSON array");
+    }
+    List<AnnotatedText> aTexts = new ArrayList<>();
+    for (JsonNode text : texts) {
+      if (text.isTextual()) {
+        aTexts.add(new AnnotatedTextBuilder().addText(text.asText()).build());
+      } else if (text.isObject() && text.get("text") != null && text.get("annotation") == null) {
+        aTexts.add(getAnnotatedTextFromString(text, text.get("text").asText()));
+      } else if (text.isObject() && text.get("annotation") != null && text.get("text") == null) {
+        aTexts.add(getAnnotatedTextFromJson(text));
+      } else {
+        throw new IllegalArgumentException("Elements of 'texts' must be strings or objects with either a 'text' or an 'annotation' key");
+      }
+    }
+    textChecker.checkTextBatch(aTexts, httpExchange, parameters, remoteAddress);
+  }
+
   private void handleWordsRequest(HttpExchange httpExchange, Map<String, String> params, HTTPServerConfig config) throws Exception {
     ensureGetMethod(httpExchange, "/words");
     UserLimits limits = getUserLimits(params, config);
@@ -230,6 +266,37 @@ class ApiV2 {
     sendJson(httpExchange, sw);
   }
 
+  private void handleTopRulesRequest(HttpExchange httpExchange, Map<String, String> params) throws IOException {
+    ensureGetMethod(httpExchange, "/admin/rules/top");
+    if (textChecker.ruleTimingCollector == null) {
+      throw new PathNotFoundException("Rule timing is not enabled on this server, see 'ruleTimingSampleRate'");
+    }
+    int limit = params.get("limit") != null ? Integer.parseInt(params.get("limit")) : 20;
+    if (limit < 1 || limit > 1000) {
+      throw new IllegalArgumentException("'limit' must be between 1 and 1000: " + limit);
+    }
+    StringWriter sw = new StringWriter();
+    try (JsonGenerator g = factory.createGenerator(sw)) {
+      g.writeStartObject();
+      g.writeStringField("warning", "*** This is not a public API - it may change anytime ***");
+      g.writeNumberField("windowSeconds", textChecker.config.getRuleTimingWindowSeconds());
+      g.writeArrayFieldStart("rules");
+      for (RuleTimingCollector.RuleTiming timing : textChecker.ruleTimingCollector.getTopRules(limit)) {
+        g.writeStartObject();
+        g.writeStringField("language", timing.getLanguage());
+        g.writeStringField("ruleId", timing.getRuleId());
+        g.writeNumberField("totalMillis", timing.getTotalNanos() / 1_000_000);
+        g.writeNumberField("invocations", timing.getInvocations());
+        g.writeNumberField("matches", timing.getMatches());
+        g.writeNumberField("avgMicros", timing.getInvocations() > 0 ? timing.getTotalNanos() / 1000 / timing.getInvocations() : 0);
+        g.writeEndObject();
+      }
+      g.writeEndArray();
+      g.writeEndObject();
+    }
+    sendJson(httpExchange, sw);
+  }
+
   private void ensureGetMethod(HttpExchange httpExchange, String url) {
     if (!httpExchange.getRequestMethod().equalsIgnoreCase("get")) {
       throw new IllegalArgumentException(url + " needs to be called with GET");
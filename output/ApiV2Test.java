@@ -62,4 +62,30 @@ public class ApiV2Test {
     assertTrue(httpExchange.getOutput().contains("The train arrived <marker>a hour</marker> ago."));
   }
   
+  @Test
+  public void testBatchCheck() throws Exception {
+    HTTPServerConfig config = new HTTPServerConfig();
+    ApiV2 apiV2 = new ApiV2(new V2TextChecker(config, false, new LinkedBlockingQueue<>(), new RequestCounter()), null);
+    FakeHttpExchange httpExchange = new FakeHttpExchange();
+    Map<String, String> params = new HashMap<>();
+    params.put("language", "en-US");
+    params.put("texts", "[\"This is a test.\", {\"text\": \"This is an test.\"}, \"This is a example.\"]");
+    apiV2.handleRequest("check/batch", httpExchange, params, null, null, config);
+    String output = httpExchange.getOutput();
+    assertTrue(output.startsWith("{\"results\":["));
+    assertEquals(3, StringUtils.countMatches(output, "\"matches\":"));
+    assertEquals(2, StringUtils.countMatches(output, "\"EN_A_VS_AN\""));
+    assertTrue(output.indexOf("an test") < output.indexOf("a example"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBatchCheckWithoutLanguage() throws Exception {
+    HTTPServerConfig config = new HTTPServerConfig();
+    ApiV2 apiV2 = new ApiV2(new V2TextChecker(config, false, new LinkedBlockingQueue<>(), new RequestCounter()), null);
+    Map<String, String> params = new HashMap<>();
+    params.put("language", "auto");
+    params.put("texts", "[\"This is a test.\"]");
+    apiV2.handleRequest("check/batch", new FakeHttpExchange(), params, null, null, config);
+  }
+
 }
@@ -0,0 +1,236 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A minimal encoder for CBOR (RFC 8949), covering what {@link RuleMatchesAsCborSerializer} needs:
+ * maps, arrays, text strings, integers, doubles, booleans and null. Strings are encoded
+ * as UTF-8 straight into a buffer that gets flushed to the underlying stream, so no
+ * intermediate {@code String} or {@code byte[]} is created per value.
+ * @since 5.3
+ */
+final class CborWriter {
+
+  private static final int MAJOR_UNSIGNED = 0;
+  private static final int MAJOR_NEGATIVE = 1 << 5;
+  private static final int MAJOR_TEXT = 3 << 5;
+  private static final int MAJOR_ARRAY = 4 << 5;
+  private static final int MAJOR_MAP = 5 << 5;
+  private static final int INDEFINITE_MAP = MAJOR_MAP | 31;
+  private static final int BREAK = 0xff;
+  private static final int FALSE = 0xf4;
+  private static final int TRUE = 0xf5;
+  private static final int NULL = 0xf6;
+  private static final int DOUBLE = 0xfb;
+
+  private final OutputStream out;
+  private final byte[] buffer;
+  private int pos;
+
+  CborWriter(OutputStream out) {
+    this(out, 8192);
+  }
+
+  CborWriter(OutputStream out, int bufferSize) {
+    this.out = out;
+    this.buffer = new byte[Math.max(bufferSize, 16)];
+  }
+
+  /**
+   * Start a map of unknown size, to be closed with {@link #endMap()}.
+   */
+  CborWriter startMap() throws IOException {
+    writeByte(INDEFINITE_MAP);
+    return this;
+  }
+
+  CborWriter endMap() throws IOException {
+    writeByte(BREAK);
+    return this;
+  }
+
+  /**
+   * Start an array with {@code size} elements, which need no end marker.
+   */
+  CborWriter startArray(int size) throws IOException {
+    writeHead(MAJOR_ARRAY, size);
+    return this;
+  }
+
+  CborWriter writeString(String s) throws IOException {
+    if (s == null) {
+      return writeNull();
+    }
+    writeHead(MAJOR_TEXT, utf8Length(s));
+    int len = s.length();
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (pos + 4 > buffer.length) {
+        flushBuffer();
+      }
+      if (c < 0x80) {
+        buffer[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[pos++] = (byte) (0xc0 | (c >> 6));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, s.charAt(++i));
+        buffer[pos++] = (byte) (0xf0 | (cp >> 18));
+        buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | (cp & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        buffer[pos++] = '?';  // unpaired surrogate, same as String.getBytes(UTF_8)
+      } else {
+        buffer[pos++] = (byte) (0xe0 | (c >> 12));
+        buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buffer[pos++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    return this;
+  }
+
+  CborWriter writeNumber(long value) throws IOException {
+    if (value >= 0) {
+      writeHead(MAJOR_UNSIGNED, value);
+    } else {
+      writeHead(MAJOR_NEGATIVE, -1 - value);
+    }
+    return this;
+  }
+
+  CborWriter writeNumber(double value) throws IOException {
+    ensureCapacity(9);
+    buffer[pos++] = (byte) DOUBLE;
+    writeLongBytes(Double.doubleToLongBits(value));
+    return this;
+  }
+
+  CborWriter writeBoolean(boolean value) throws IOException {
+    writeByte(value ? TRUE : FALSE);
+    return this;
+  }
+
+  CborWriter writeNull() throws IOException {
+    writeByte(NULL);
+    return this;
+  }
+
+  CborWriter writeStringField(String key, String value) throws IOException {
+    return writeString(key).writeString(value);
+  }
+
+  CborWriter writeNumberField(String key, long value) throws IOException {
+    return writeString(key).writeNumber(value);
+  }
+
+  CborWriter writeNumberField(String key, double value) throws IOException {
+    return writeString(key).writeNumber(value);
+  }
+
+  CborWriter writeBooleanField(String key, boolean value) throws IOException {
+    return writeString(key).writeBoolean(value);
+  }
+
+  CborWriter writeMapFieldStart(String key) throws IOException {
+    return writeString(key).startMap();
+  }
+
+  CborWriter writeArrayFieldStart(String key, int size) throws IOException {
+    return writeString(key).startArray(size);
+  }
+
+  /**
+   * Write the buffered bytes to the underlying stream and flush it.
+   */
+  void flush() throws IOException {
+    flushBuffer();
+    out.flush();
+  }
+
+  private void writeHead(int majorType, long value) throws IOException {
+    ensureCapacity(9);
+    if (value < 24) {
+      buffer[pos++] = (byte) (majorType | value);
+    } else if (value <= 0xff) {
+      buffer[pos++] = (byte) (majorType | 24);
+      buffer[pos++] = (byte) value;
+    } else if (value <= 0xffff) {
+      buffer[pos++] = (byte) (majorType | 25);
+      buffer[pos++] = (byte) (value >> 8);
+      buffer[pos++] = (byte) value;
+    } else if (value <= 0xffffffffL) {
+      buffer[pos++] = (byte) (majorType | 26);
+      buffer[pos++] = (byte) (value >> 24);
+      buffer[pos++] = (byte) (value >> 16);
+      buffer[pos++] = (byte) (value >> 8);
+      buffer[pos++] = (byte) value;
+    } else {
+      buffer[pos++] = (byte) (majorType | 27);
+      writeLongBytes(value);
+    }
+  }
+
+  private void writeLongBytes(long value) {
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      buffer[pos++] = (byte) (value >> shift);
+    }
+  }
+
+  private void writeByte(int b) throws IOException {
+    ensureCapacity(1);
+    buffer[pos++] = (byte) b;
+  }
+
+  private void ensureCapacity(int bytes) throws IOException {
+    if (pos + bytes > buffer.length) {
+      flushBuffer();
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    if (pos > 0) {
+      out.write(buffer, 0, pos);
+      pos = 0;
+    }
+  }
+
+  private static int utf8Length(String s) {
+    int len = s.length();
+    int bytes = len;
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x80) {
+        if (c < 0x800) {
+          bytes += 1;
+        } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+          bytes += 2;  // 4 bytes for 2 chars
+          i++;
+        } else if (!Character.isSurrogate(c)) {
+          bytes += 2;
+        }
+      }
+    }
+    return bytes;
+  }
+
+}
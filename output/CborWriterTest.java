@@ -0,0 +1,105 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.tools;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class CborWriterTest {
+
+  // expected values are from the examples in appendix A of RFC 8949
+
+  @Test
+  public void testNumbers() throws IOException {
+    assertEquals("00", encode(w -> w.writeNumber(0)));
+    assertEquals("17", encode(w -> w.writeNumber(23)));
+    assertEquals("1818", encode(w -> w.writeNumber(24)));
+    assertEquals("1903e8", encode(w -> w.writeNumber(1000)));
+    assertEquals("1a000f4240", encode(w -> w.writeNumber(1000000)));
+    assertEquals("1b000000e8d4a51000", encode(w -> w.writeNumber(1000000000000L)));
+    assertEquals("20", encode(w -> w.writeNumber(-1)));
+    assertEquals("3903e7", encode(w -> w.writeNumber(-1000)));
+    assertEquals("fb3ff199999999999a", encode(w -> w.writeNumber(1.1)));
+  }
+
+  @Test
+  public void testSimpleValues() throws IOException {
+    assertEquals("f4", encode(w -> w.writeBoolean(false)));
+    assertEquals("f5", encode(w -> w.writeBoolean(true)));
+    assertEquals("f6", encode(CborWriter::writeNull));
+    assertEquals("f6", encode(w -> w.writeString(null)));
+  }
+
+  @Test
+  public void testStrings() throws IOException {
+    assertEquals("60", encode(w -> w.writeString("")));
+    assertEquals("6449455446", encode(w -> w.writeString("IETF")));
+    assertEquals("62c3bc", encode(w -> w.writeString("ü")));
+    assertEquals("63e6b0b4", encode(w -> w.writeString("水")));
+    assertEquals("64f0908591", encode(w -> w.writeString("𐅑")));
+    assertEquals("613f", encode(w -> w.writeString("\ud800")));  // unpaired surrogate
+  }
+
+  @Test
+  public void testLongStringAcrossBufferBoundary() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      sb.append("ü水a");
+    }
+    String s = sb.toString();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CborWriter writer = new CborWriter(out, 16);
+    writer.writeString(s);
+    writer.flush();
+    byte[] bytes = out.toByteArray();
+    assertEquals(0x79, bytes[0] & 0xff);  // text string with 2 byte length
+    int length = ((bytes[1] & 0xff) << 8) | (bytes[2] & 0xff);
+    assertEquals(600, length);
+    assertEquals(s, new String(bytes, 3, length, "UTF-8"));
+  }
+
+  @Test
+  public void testContainers() throws IOException {
+    assertEquals("80", encode(w -> w.startArray(0)));
+    assertEquals("83010203", encode(w -> w.startArray(3).writeNumber(1).writeNumber(2).writeNumber(3)));
+    assertEquals("bf6346756ef563416d7421ff", encode(w -> w.startMap().writeBooleanField("Fun", true).writeNumberField("Amt", -2).endMap()));
+    assertEquals("bf6161bf6162f6ffff", encode(w -> w.startMap().writeMapFieldStart("a").writeString("b").writeNull().endMap().endMap()));
+  }
+
+  private static String encode(Writes writes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    CborWriter writer = new CborWriter(out);
+    writes.apply(writer);
+    writer.flush();
+    StringBuilder sb = new StringBuilder();
+    for (byte b : out.toByteArray()) {
+      sb.append(String.format("%02x", b & 0xff));
+    }
+    return sb.toString();
+  }
+
+  interface Writes {
+    void apply(CborWriter writer) throws IOException;
+  }
+
+}
@@ -0,0 +1,113 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.dev;
+
+import org.languagetool.CheckDeadline;
+import org.languagetool.JLanguageTool;
+import org.languagetool.Language;
+import org.languagetool.Languages;
+import org.languagetool.markup.AnnotatedTextBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shows how much CPU time a {@link CheckDeadline} saves: checks a text, gives up waiting for it
+ * after the given time like the server does on a timeout, and measures how much CPU time the check
+ * takes in total - once with only interrupting the check's thread and once with also cancelling its deadline.
+ * @since 5.3
+ */
+final class CheckCancellationBenchmark {
+
+  private static final int WARMUP_RUNS = 2;
+
+  private CheckCancellationBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3 || args.length > 4) {
+      System.out.println("Usage: " + CheckCancellationBenchmark.class.getSimpleName() + " <langCode> <textFile> <cancelAfterMillis> [runs]");
+      System.exit(1);
+    }
+    Language lang = Languages.getLanguageForShortCode(args[0]);
+    String text = new String(Files.readAllBytes(Paths.get(args[1])), StandardCharsets.UTF_8);
+    long cancelAfterMillis = Long.parseLong(args[2]);
+    int runs = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    if (!threadBean.isCurrentThreadCpuTimeSupported()) {
+      System.out.println("Thread CPU time is not supported by this JVM");
+      System.exit(1);
+    }
+    JLanguageTool lt = new JLanguageTool(lang);
+    System.out.println("Language: " + lang + ", " + text.length() + " characters, cancel after " + cancelAfterMillis + "ms, runs: " + runs);
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      run(lt, text, 0, false);
+    }
+    long uncancelledNanos = 0;
+    long interruptedNanos = 0;
+    long deadlineNanos = 0;
+    for (int i = 0; i < runs; i++) {
+      uncancelledNanos += run(lt, text, 0, false);
+      interruptedNanos += run(lt, text, cancelAfterMillis, false);
+      deadlineNanos += run(lt, text, cancelAfterMillis, true);
+    }
+    System.out.printf("not cancelled:              %6dms CPU per check%n", uncancelledNanos / runs / 1_000_000);
+    System.out.printf("interrupted:                %6dms CPU per check%n", interruptedNanos / runs / 1_000_000);
+    System.out.printf("interrupted, deadline:      %6dms CPU per check%n", deadlineNanos / runs / 1_000_000);
+    System.out.printf("CPU time reclaimed by the deadline: %dms per timed-out check (%.1f%%)%n",
+      (interruptedNanos - deadlineNanos) / runs / 1_000_000,
+      interruptedNanos > 0 ? 100.0 * (interruptedNanos - deadlineNanos) / interruptedNanos : 0.0);
+  }
+
+  /**
+   * @return the CPU time used by the check's thread
+   */
+  private static long run(JLanguageTool lt, String text, long cancelAfterMillis, boolean cancelDeadline) throws InterruptedException {
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    CheckDeadline deadline = CheckDeadline.untilCancelled();
+    AtomicLong cpuNanos = new AtomicLong();
+    Thread check = new Thread(() -> {
+      long startCpu = threadBean.getCurrentThreadCpuTime();
+      try {
+        lt.check(new AnnotatedTextBuilder().addText(text).build(), true, JLanguageTool.ParagraphHandling.NORMAL, null,
+          JLanguageTool.Mode.ALL, JLanguageTool.Level.DEFAULT, null, null, deadline);
+      } catch (Exception ignored) {
+        // an interrupt might make the check fail, we're only interested in the time it took
+      } finally {
+        cpuNanos.set(threadBean.getCurrentThreadCpuTime() - startCpu);
+      }
+    });
+    check.start();
+    check.join(cancelAfterMillis);
+    if (check.isAlive()) {
+      // what the server does when a check takes too long:
+      if (cancelDeadline) {
+        deadline.cancel();
+      }
+      check.interrupt();
+      check.join();
+    }
+    return cpuNanos.get();
+  }
+
+}
@@ -0,0 +1,225 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.server;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Futures;
+import org.languagetool.CheckDeadline;
+import org.languagetool.markup.AnnotatedText;
+import org.languagetool.rules.RuleMatch;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Runs identical checks only once: a check that arrives while the same check (same text and same
+ * {@link PipelinePool.PipelineSettings}, i.e. language, rule configuration, mode, level and user
+ * dictionary) is running waits for that check's result instead of starting its own. Results are
+ * also kept for a short time, for repeats that arrive just after the first check has finished.
+ * Each request still creates its own response from the shared matches.
+ * @since 5.3
+ */
+class CheckCoalescer {
+
+  static final String JOINED = "joined";
+  static final String CACHED = "cached";
+  static final String STARTED = "started";
+
+  private final Map<Key, Entry> inFlight = new HashMap<>();
+  private final Cache<Key, List<RuleMatch>> recentResults;
+
+  CheckCoalescer(int cacheMillis, int cacheSize) {
+    if (cacheMillis > 0 && cacheSize > 0) {
+      recentResults = CacheBuilder.newBuilder()
+        .maximumSize(cacheSize)
+        .expireAfterWrite(cacheMillis, TimeUnit.MILLISECONDS)
+        .recordStats()
+        .build();
+      ServerMetricsCollector.getInstance().monitorCache("languagetool_coalesced_results_cache", recentResults);
+    } else {
+      recentResults = null;
+    }
+  }
+
+  /**
+   * Get the result of an identical check that's running or has just finished, or start the check.
+   * @param checkFactory creates the check, which should add matches to the given list as soon as they are found
+   *   and stop when the given deadline is cancelled, i.e. when no request waits for its result anymore
+   * @param submitter runs the check
+   */
+  Flight join(Key key, BiFunction<List<RuleMatch>, CheckDeadline, Callable<List<RuleMatch>>> checkFactory,
+              Function<Callable<List<RuleMatch>>, Future<List<RuleMatch>>> submitter) {
+    List<RuleMatch> recent = recentResults != null ? recentResults.getIfPresent(key) : null;
+    if (recent != null) {
+      ServerMetricsCollector.getInstance().logCoalescedCheck(CACHED);
+      return new Flight(null, Futures.immediateFuture(recent), recent);
+    }
+    synchronized (this) {
+      Entry entry = inFlight.get(key);
+      if (entry != null) {
+        entry.waiters++;
+        ServerMetricsCollector.getInstance().logCoalescedCheck(JOINED);
+        return new Flight(entry, entry.future, entry.matchesSoFar);
+      }
+      Entry newEntry = new Entry(key);
+      Callable<List<RuleMatch>> check = checkFactory.apply(newEntry.matchesSoFar, newEntry.deadline);
+      newEntry.future = submitter.apply(() -> {
+        try {
+          List<RuleMatch> matches = check.call();
+          // a cancelled check may return only the matches found so far:
+          if (recentResults != null && !newEntry.deadline.isExpired()) {
+            recentResults.put(key, matches);
+          }
+          return matches;
+        } finally {
+          remove(newEntry);
+        }
+      });
+      newEntry.waiters = 1;
+      inFlight.put(key, newEntry);
+      ServerMetricsCollector.getInstance().logCoalescedCheck(STARTED);
+      return new Flight(newEntry, newEntry.future, newEntry.matchesSoFar);
+    }
+  }
+
+  synchronized int getInFlight() {
+    return inFlight.size();
+  }
+
+  private synchronized void remove(Entry entry) {
+    inFlight.remove(entry.key, entry);
+  }
+
+  private synchronized boolean leave(Entry entry, boolean cancel) {
+    entry.waiters--;
+    if (cancel && entry.waiters == 0) {
+      inFlight.remove(entry.key, entry);
+      entry.deadline.cancel();
+      return entry.future.cancel(true);
+    }
+    return false;
+  }
+
+  /**
+   * Identifies a check by a hash of its text and its pipeline settings.
+   */
+  static class Key {
+
+    private final HashCode textHash;
+    private final Object settings;
+
+    Key(HashCode textHash, Object settings) {
+      this.textHash = Objects.requireNonNull(textHash);
+      this.settings = Objects.requireNonNull(settings);
+    }
+
+    static Key of(AnnotatedText text, PipelinePool.PipelineSettings settings) {
+      // a cryptographic hash, as a collision would give one user the matches for another user's text:
+      HashCode hash = Hashing.sha256().newHasher()
+        .putString(text.getPlainText(), StandardCharsets.UTF_8)
+        .putChar('\u0000')
+        .putString(text.getTextWithMarkup(), StandardCharsets.UTF_8)
+        .hash();
+      return new Key(hash, settings);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Key other = (Key) o;
+      return textHash.equals(other.textHash) && settings.equals(other.settings);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(textHash, settings);
+    }
+  }
+
+  /**
+   * A request's view of a (possibly shared) check. Call {@link #leave()} when the result is not
+   * needed anymore, or {@link #cancel()} to give up on it.
+   */
+  class Flight {
+
+    private final Entry entry;
+    private final Future<List<RuleMatch>> future;
+    private final List<RuleMatch> matchesSoFar;
+    private boolean left;
+
+    private Flight(Entry entry, Future<List<RuleMatch>> future, List<RuleMatch> matchesSoFar) {
+      this.entry = entry;
+      this.future = future;
+      this.matchesSoFar = matchesSoFar;
+    }
+
+    Future<List<RuleMatch>> getFuture() {
+      return future;
+    }
+
+    /**
+     * The matches found so far, shared with the other requests waiting for the same check.
+     */
+    List<RuleMatch> getMatchesSoFar() {
+      return matchesSoFar;
+    }
+
+    /**
+     * Stop waiting for the check and cancel it, unless other requests still wait for it.
+     * @return whether the check was cancelled
+     */
+    boolean cancel() {
+      return leave(true);
+    }
+
+    void leave() {
+      leave(false);
+    }
+
+    private boolean leave(boolean cancel) {
+      if (left || entry == null) {
+        return false;
+      }
+      left = true;
+      return CheckCoalescer.this.leave(entry, cancel);
+    }
+  }
+
+  private static class Entry {
+    private final Key key;
+    private final List<RuleMatch> matchesSoFar = Collections.synchronizedList(new ArrayList<>());
+    private final CheckDeadline deadline = CheckDeadline.untilCancelled();
+    private Future<List<RuleMatch>> future;
+    private int waiters;
+
+    private Entry(Key key) {
+      this.key = key;
+    }
+  }
+
+}
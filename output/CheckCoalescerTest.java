@@ -0,0 +1,154 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.server;
+
+import com.google.common.hash.HashCode;
+import org.junit.After;
+import org.junit.Test;
+import org.languagetool.CheckDeadline;
+import org.languagetool.rules.RuleMatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CheckCoalescerTest {
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final AtomicInteger checks = new AtomicInteger();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final List<CheckDeadline> deadlines = new CopyOnWriteArrayList<>();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testConcurrentChecksAreCoalesced() throws Exception {
+    CheckCoalescer coalescer = new CheckCoalescer(0, 0);
+    CheckCoalescer.Flight flight1 = coalescer.join(key("text", "en"), this::blockingCheck, executor::submit);
+    CheckCoalescer.Flight flight2 = coalescer.join(key("text", "en"), this::blockingCheck, executor::submit);
+    CheckCoalescer.Flight other = coalescer.join(key("text", "de"), this::blockingCheck, executor::submit);
+    assertSame(flight1.getFuture(), flight2.getFuture());
+    assertSame(flight1.getMatchesSoFar(), flight2.getMatchesSoFar());
+    assertNotSame(flight1.getFuture(), other.getFuture());
+    release.countDown();
+    assertSame(flight1.getFuture().get(), flight2.getFuture().get());
+    assertEquals(2, checks.get());
+    flight1.leave();
+    flight2.leave();
+    other.leave();
+    assertEquals(0, coalescer.getInFlight());
+    // no result cache:
+    coalescer.join(key("text", "en"), this::blockingCheck, executor::submit).getFuture().get();
+    assertEquals(3, checks.get());
+  }
+
+  @Test
+  public void testRecentResultsAreReused() throws Exception {
+    CheckCoalescer coalescer = new CheckCoalescer(60_000, 10);
+    release.countDown();
+    List<RuleMatch> result = coalescer.join(key("text", "en"), this::blockingCheck, executor::submit).getFuture().get();
+    assertSame(result, coalescer.join(key("text", "en"), this::blockingCheck, executor::submit).getFuture().get());
+    assertEquals(1, checks.get());
+    assertNotSame(result, coalescer.join(key("other text", "en"), this::blockingCheck, executor::submit).getFuture().get());
+    assertEquals(2, checks.get());
+  }
+
+  @Test
+  public void testFailedChecksAreNotReused() throws Exception {
+    CheckCoalescer coalescer = new CheckCoalescer(60_000, 10);
+    CheckCoalescer.Flight flight = coalescer.join(key("text", "en"), (soFar, deadline) -> () -> {
+      throw new IllegalStateException("test");
+    }, executor::submit);
+    try {
+      flight.getFuture().get();
+      fail();
+    } catch (ExecutionException expected) {
+      flight.cancel();
+    }
+    release.countDown();
+    assertNotNull(coalescer.join(key("text", "en"), this::blockingCheck, executor::submit).getFuture().get());
+    assertEquals(1, checks.get());
+  }
+
+  @Test
+  public void testOnlyLastWaiterCancels() throws Exception {
+    CheckCoalescer coalescer = new CheckCoalescer(0, 0);
+    CheckCoalescer.Flight flight1 = coalescer.join(key("text", "en"), this::blockingCheck, executor::submit);
+    CheckCoalescer.Flight flight2 = coalescer.join(key("text", "en"), this::blockingCheck, executor::submit);
+    assertFalse(flight1.cancel());
+    assertFalse(flight1.cancel());  // no effect when called again
+    assertFalse(flight2.getFuture().isCancelled());
+    assertFalse(deadlines.get(0).isCancelled());
+    assertTrue(flight2.cancel());
+    assertTrue(flight2.getFuture().isCancelled());
+    assertTrue(deadlines.get(0).isCancelled());
+    assertEquals(0, coalescer.getInFlight());
+    // a new check is started:
+    CheckCoalescer.Flight flight3 = coalescer.join(key("text", "en"), this::blockingCheck, executor::submit);
+    assertNotSame(flight2.getFuture(), flight3.getFuture());
+    release.countDown();
+    assertNotNull(flight3.getFuture().get());
+  }
+
+  @Test
+  public void testCancelledChecksAreNotReused() throws Exception {
+    CheckCoalescer coalescer = new CheckCoalescer(60_000, 10);
+    CountDownLatch started = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<>();
+    CheckCoalescer.Flight flight = coalescer.join(key("text", "en"), (soFar, deadline) -> () -> {
+      started.countDown();
+      while (!deadline.isCancelled()) {
+        Thread.yield();
+      }
+      return new ArrayList<>(soFar);  // the partial result of a cancelled check
+    }, task -> {
+      FutureTask<List<RuleMatch>> future = new FutureTask<>(task);
+      Thread worker = new Thread(future);
+      workers.add(worker);
+      worker.start();
+      return future;
+    });
+    started.await();
+    assertTrue(flight.cancel());
+    workers.get(0).join();
+    release.countDown();
+    assertNotNull(coalescer.join(key("text", "en"), this::blockingCheck, executor::submit).getFuture().get());
+    assertEquals(1, checks.get());
+  }
+
+  private Callable<List<RuleMatch>> blockingCheck(List<RuleMatch> matchesSoFar, CheckDeadline deadline) {
+    deadlines.add(deadline);
+    return () -> {
+      checks.incrementAndGet();
+      release.await();
+      return new ArrayList<>();
+    };
+  }
+
+  private static CheckCoalescer.Key key(String text, String settings) {
+    return new CheckCoalescer.Key(HashCode.fromInt(text.hashCode()), settings);
+  }
+
+}
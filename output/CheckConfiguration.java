@@ -0,0 +1,172 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.jetbrains.annotations.Nullable;
+import org.languagetool.rules.CategoryId;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Everything besides the text itself that the result of checking a sentence depends on:
+ * language, enabled and disabled rules and categories, user configuration, mode, and level.
+ * Instances are immutable and interned, so all {@link JLanguageTool} objects with the same
+ * configuration share one instance. The 64-bit {@link #getFingerprint() fingerprint} is computed
+ * once and lets {@link ResultCache} keys skip comparing the complete configuration in most cases.
+ * @since 5.3
+ */
+@Experimental
+public final class CheckConfiguration {
+
+  private static final Interner<CheckConfiguration> interner = Interners.newWeakInterner();
+
+  private final Language language;
+  private final Language motherTongue;
+  private final Set<String> disabledRules;
+  private final Set<String> disabledRuleCategories;
+  private final Set<String> enabledRules;
+  private final Set<String> enabledRuleCategories;
+  private final UserConfig userConfig;
+  private final List<Language> altLanguages;
+  private final JLanguageTool.Mode mode;
+  private final JLanguageTool.Level level;
+  private final long fingerprint;
+
+  private CheckConfiguration(Language language, @Nullable Language motherTongue, Set<String> disabledRules,
+                             Set<CategoryId> disabledRuleCategories, Set<String> enabledRules,
+                             Set<CategoryId> enabledRuleCategories, @Nullable UserConfig userConfig,
+                             List<Language> altLanguages, JLanguageTool.Mode mode, JLanguageTool.Level level) {
+    this.language = Objects.requireNonNull(language);
+    this.motherTongue = motherTongue;
+    this.disabledRules = ImmutableSortedSet.copyOf(disabledRules);
+    this.disabledRuleCategories = toSortedIds(disabledRuleCategories);
+    this.enabledRules = ImmutableSortedSet.copyOf(enabledRules);
+    this.enabledRuleCategories = toSortedIds(enabledRuleCategories);
+    this.userConfig = userConfig;
+    this.altLanguages = ImmutableList.copyOf(altLanguages);
+    this.mode = Objects.requireNonNull(mode);
+    this.level = Objects.requireNonNull(level);
+    this.fingerprint = computeFingerprint();
+  }
+
+  /**
+   * @return the shared instance for the given configuration
+   */
+  public static CheckConfiguration of(Language language, @Nullable Language motherTongue, Set<String> disabledRules,
+                                      Set<CategoryId> disabledRuleCategories, Set<String> enabledRules,
+                                      Set<CategoryId> enabledRuleCategories, @Nullable UserConfig userConfig,
+                                      List<Language> altLanguages, JLanguageTool.Mode mode, JLanguageTool.Level level) {
+    return interner.intern(new CheckConfiguration(language, motherTongue, disabledRules, disabledRuleCategories,
+      enabledRules, enabledRuleCategories, userConfig, altLanguages, mode, level));
+  }
+
+  private static Set<String> toSortedIds(Set<CategoryId> categoryIds) {
+    return ImmutableSortedSet.copyOf(categoryIds.stream().map(CategoryId::toString).collect(Collectors.toList()));
+  }
+
+  private long computeFingerprint() {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    putString(hasher, language.getShortCodeWithCountryAndVariant());
+    putString(hasher, motherTongue != null ? motherTongue.getShortCodeWithCountryAndVariant() : "");
+    putStrings(hasher, disabledRules);
+    putStrings(hasher, disabledRuleCategories);
+    putStrings(hasher, enabledRules);
+    putStrings(hasher, enabledRuleCategories);
+    // the user's dictionary is hashed completely, as keys restored from a ResultCacheSnapshot are only compared by fingerprint:
+    hasher.putInt(userConfig != null ? userConfig.hashCode() : 0);
+    putStrings(hasher, userConfig != null ? userConfig.getAcceptedWords() : Collections.emptyList());
+    hasher.putInt(userConfig != null ? userConfig.getMaxSpellingSuggestions() : 0);
+    putStrings(hasher, altLanguages.stream().map(Language::getShortCodeWithCountryAndVariant).collect(Collectors.toList()));
+    putString(hasher, mode.name());
+    putString(hasher, level.name());
+    return hasher.hash().asLong();
+  }
+
+  private static void putStrings(Hasher hasher, Collection<String> strings) {
+    hasher.putInt(strings.size());
+    for (String s : strings) {
+      putString(hasher, s);
+    }
+  }
+
+  private static void putString(Hasher hasher, String s) {
+    hasher.putInt(s.length());
+    hasher.putString(s, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A hash of the complete configuration. Two different configurations have the same
+   * fingerprint only with a negligible probability (about 2<sup>-64</sup>).
+   */
+  public long getFingerprint() {
+    return fingerprint;
+  }
+
+  public Language getLanguage() {
+    return language;
+  }
+
+  public JLanguageTool.Mode getMode() {
+    return mode;
+  }
+
+  public JLanguageTool.Level getLevel() {
+    return level;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    CheckConfiguration other = (CheckConfiguration) o;
+    return fingerprint == other.fingerprint &&
+      language.equals(other.language) &&
+      Objects.equals(motherTongue, other.motherTongue) &&
+      disabledRules.equals(other.disabledRules) &&
+      disabledRuleCategories.equals(other.disabledRuleCategories) &&
+      enabledRules.equals(other.enabledRules) &&
+      enabledRuleCategories.equals(other.enabledRuleCategories) &&
+      Objects.equals(userConfig, other.userConfig) &&
+      altLanguages.equals(other.altLanguages) &&
+      mode == other.mode &&
+      level == other.level;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(fingerprint);
+  }
+
+  @Override
+  public String toString() {
+    return language.getShortCodeWithCountryAndVariant() + "/" + mode + "/" + level + "/" + Long.toHexString(fingerprint);
+  }
+}
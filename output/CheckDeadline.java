@@ -0,0 +1,178 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The point in time after which the result of a check isn't needed anymore, or an explicit
+ * cancellation. Pass it to {@link JLanguageTool#check(org.languagetool.markup.AnnotatedText, boolean,
+ * JLanguageTool.ParagraphHandling, RuleMatchListener, JLanguageTool.Mode, JLanguageTool.Level,
+ * java.util.concurrent.ExecutorService, Long, CheckDeadline)} to make the check stop early: the rule loops
+ * stop between rules and sentences, remote rules don't wait longer than the deadline, and spell checkers
+ * only compute the cheap suggestions. The matches found until then are returned.
+ * <p>
+ * While a check runs, its deadline is available to the threads working on it via {@link #current()},
+ * for code that doesn't get it passed explicitly, like rules.
+ * @since 5.3
+ */
+@Experimental
+public final class CheckDeadline implements JLanguageTool.CheckCancelledCallback {
+
+  private static final ThreadLocal<CheckDeadline> current = new ThreadLocal<>();
+  // how often a cancellation is noticed while waiting for a future:
+  private static final long POLL_MILLIS = 50;
+
+  private final long deadlineNanos;
+  private final boolean timed;
+  private volatile boolean cancelled;
+  private volatile long cancelledNanos;
+
+  private CheckDeadline(long deadlineNanos, boolean timed) {
+    this.deadlineNanos = deadlineNanos;
+    this.timed = timed;
+  }
+
+  /**
+   * A deadline that expires after the given time, or when it's cancelled.
+   */
+  public static CheckDeadline after(long timeout, TimeUnit unit) {
+    return new CheckDeadline(System.nanoTime() + unit.toNanos(timeout), true);
+  }
+
+  /**
+   * A deadline that only expires when it's cancelled.
+   */
+  public static CheckDeadline untilCancelled() {
+    return new CheckDeadline(0, false);
+  }
+
+  /**
+   * Make the deadline expire now.
+   */
+  public void cancel() {
+    if (!cancelled) {
+      cancelledNanos = System.nanoTime();
+      cancelled = true;
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  public boolean isExpired() {
+    return cancelled || timed && System.nanoTime() - deadlineNanos >= 0;
+  }
+
+  /**
+   * @return the milliseconds since {@link #cancel()} was first called, or {@code -1} if it hasn't been called
+   */
+  public long getMillisSinceCancelled() {
+    return cancelled ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cancelledNanos) : -1;
+  }
+
+  /**
+   * @return the milliseconds until the deadline expires, {@code 0} if it has expired, or
+   *   {@link Long#MAX_VALUE} if it only expires when cancelled
+   */
+  public long getRemainingMillis() {
+    if (cancelled) {
+      return 0;
+    }
+    if (!timed) {
+      return Long.MAX_VALUE;
+    }
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+  }
+
+  /**
+   * Wait for {@code future} like {@link Future#get(long, TimeUnit)}, but stop waiting
+   * with a {@link TimeoutException} as soon as this deadline expires.
+   * @param timeoutMillis the maximum time to wait, {@code <= 0} to wait until the deadline expires
+   */
+  public <T> T await(Future<T> future, long timeoutMillis) throws InterruptedException, ExecutionException, TimeoutException {
+    long endNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    while (true) {
+      if (isExpired()) {
+        throw new TimeoutException("Check deadline has expired");
+      }
+      long wait = Math.min(POLL_MILLIS, getRemainingMillis());
+      if (timeoutMillis > 0) {
+        long remainingTimeout = TimeUnit.NANOSECONDS.toMillis(endNanos - System.nanoTime());
+        if (remainingTimeout <= 0) {
+          throw new TimeoutException("Timeout of " + timeoutMillis + "ms has expired");
+        }
+        wait = Math.min(wait, remainingTimeout);
+      }
+      try {
+        return future.get(Math.max(1, wait), TimeUnit.MILLISECONDS);
+      } catch (TimeoutException ignored) {
+        // check again
+      }
+    }
+  }
+
+  @Override
+  public boolean checkCancelled() {
+    return isExpired();
+  }
+
+  /**
+   * @return the deadline of the check the current thread works on, if any
+   */
+  @Nullable
+  public static CheckDeadline current() {
+    return current.get();
+  }
+
+  /**
+   * Whether the check the current thread works on has a deadline that has expired.
+   */
+  public static boolean isCurrentExpired() {
+    CheckDeadline deadline = current.get();
+    return deadline != null && deadline.isExpired();
+  }
+
+  /**
+   * Make {@code deadline} the {@link #current()} deadline of this thread until the returned scope is closed.
+   */
+  static Scope enter(@Nullable CheckDeadline deadline) {
+    CheckDeadline previous = current.get();
+    current.set(deadline);
+    return () -> {
+      if (previous != null) {
+        current.set(previous);
+      } else {
+        current.remove();
+      }
+    };
+  }
+
+  interface Scope extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+}
@@ -0,0 +1,98 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class CheckDeadlineTest {
+
+  @Test
+  public void testExpiry() throws InterruptedException {
+    CheckDeadline deadline = CheckDeadline.after(20, TimeUnit.MILLISECONDS);
+    assertFalse(deadline.isExpired());
+    assertTrue(deadline.getRemainingMillis() <= 20);
+    Thread.sleep(30);
+    assertTrue(deadline.isExpired());
+    assertTrue(deadline.checkCancelled());
+    assertFalse(deadline.isCancelled());
+    assertEquals(0, deadline.getRemainingMillis());
+  }
+
+  @Test
+  public void testCancel() {
+    CheckDeadline deadline = CheckDeadline.untilCancelled();
+    assertFalse(deadline.isExpired());
+    assertEquals(Long.MAX_VALUE, deadline.getRemainingMillis());
+    assertEquals(-1, deadline.getMillisSinceCancelled());
+    deadline.cancel();
+    assertTrue(deadline.isExpired());
+    assertTrue(deadline.isCancelled());
+    assertEquals(0, deadline.getRemainingMillis());
+    assertTrue(deadline.getMillisSinceCancelled() >= 0);
+  }
+
+  @Test
+  public void testAwait() throws Exception {
+    CheckDeadline deadline = CheckDeadline.untilCancelled();
+    assertEquals("result", deadline.await(CompletableFuture.completedFuture("result"), 0));
+    try {
+      deadline.await(new CompletableFuture<>(), 20);
+      fail();
+    } catch (TimeoutException expected) {
+    }
+    CompletableFuture<String> neverDone = new CompletableFuture<>();
+    new Thread(() -> {
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException ignored) {
+      }
+      deadline.cancel();
+    }).start();
+    try {
+      deadline.await(neverDone, 0);
+      fail();
+    } catch (TimeoutException expected) {
+    }
+  }
+
+  @Test
+  public void testCurrent() {
+    assertNull(CheckDeadline.current());
+    CheckDeadline outer = CheckDeadline.untilCancelled();
+    CheckDeadline inner = CheckDeadline.untilCancelled();
+    try (CheckDeadline.Scope ignored = CheckDeadline.enter(outer)) {
+      assertSame(outer, CheckDeadline.current());
+      try (CheckDeadline.Scope ignored2 = CheckDeadline.enter(inner)) {
+        assertSame(inner, CheckDeadline.current());
+        assertFalse(CheckDeadline.isCurrentExpired());
+        inner.cancel();
+        assertTrue(CheckDeadline.isCurrentExpired());
+      }
+      assertSame(outer, CheckDeadline.current());
+    }
+    assertNull(CheckDeadline.current());
+  }
+
+}
@@ -0,0 +1,408 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import org.languagetool.chunking.ChunkTag;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An {@link AnalyzedSentence} encoded as a byte array, as stored in the sentence cache of
+ * {@link ResultCache}. Token texts are stored as offsets into the sentence, POS tags, lemmas,
+ * and chunk tags as ids of a {@link Dictionary} shared by all sentences of a cache. This needs
+ * only a fraction of the memory of the object graph and keeps the garbage collector from
+ * having to trace millions of small objects. The sentence is decoded when it's taken from the cache.
+ * Sentences that can't be restored exactly from the encoding (e.g. because of soft hyphens)
+ * are kept as objects. As encoding verifies this by decoding the sentence again, {@link ResultCache}
+ * first stores the objects and encodes them in the background.
+ * @since 5.3
+ */
+@Experimental
+public final class CompactAnalyzedSentence {
+
+  // flags of AnalyzedTokenReadings:
+  private static final int TOKEN_INLINE = 1;
+  private static final int CLEAN_TOKEN = 1 << 1;
+  private static final int IMMUNIZED = 1 << 2;
+  private static final int IGNORED_BY_SPELLER = 1 << 3;
+  private static final int CHUNK_TAGS = 1 << 4;
+  private static final int HISTORICAL_ANNOTATIONS = 1 << 5;
+  private static final int POS_FIX = 1 << 6;
+
+  // flags of AnalyzedToken:
+  private static final int READING_TOKEN_INLINE = 1;
+  private static final int POS_TAG = 1 << 1;
+  private static final int LEMMA_SAME_AS_TOKEN = 1 << 2;
+  private static final int LEMMA = 1 << 3;
+
+  // rough size of the object graph per token, for sentences that couldn't be encoded:
+  private static final int OBJECT_BYTES_PER_TOKEN = 400;
+  private static final int NO_ID = -1;
+
+  private final byte[] data;
+  private final AnalyzedSentence sentence;
+
+  private CompactAnalyzedSentence(byte[] data) {
+    this.data = data;
+    this.sentence = null;
+  }
+
+  private CompactAnalyzedSentence(AnalyzedSentence sentence) {
+    this.data = null;
+    this.sentence = sentence;
+  }
+
+  /**
+   * The sentence kept as objects, to be encoded later.
+   */
+  static CompactAnalyzedSentence unencoded(AnalyzedSentence sentence) {
+    return new CompactAnalyzedSentence(sentence);
+  }
+
+  /**
+   * @param text the text of the sentence, token positions are stored relative to it
+   */
+  static CompactAnalyzedSentence encode(String text, AnalyzedSentence sentence, Dictionary dictionary) {
+    AnalyzedTokenReadings[] tokens = sentence.getTokens();
+    AnalyzedTokenReadings[] preDisambigTokens = sentence.getPreDisambigTokens();
+    Output out = new Output(tokens.length * 12 + 8);
+    out.writeVarInt(tokens.length);
+    for (AnalyzedTokenReadings token : tokens) {
+      writeReadings(out, text, token, dictionary);
+    }
+    out.writeVarInt(preDisambigTokens.length);
+    for (int i = 0; i < preDisambigTokens.length; i++) {
+      // the tokens are often unchanged by the disambiguator, store only a reference then:
+      if (i < tokens.length && preDisambigTokens[i].equals(tokens[i])) {
+        out.writeVarInt(0);
+      } else {
+        out.writeVarInt(1);
+        writeReadings(out, text, preDisambigTokens[i], dictionary);
+      }
+    }
+    CompactAnalyzedSentence compact = new CompactAnalyzedSentence(out.toByteArray());
+    // not all properties of the tokens are stored, so make sure they get restored correctly:
+    AnalyzedSentence decoded = compact.decode(text, dictionary);
+    if (decoded.equals(sentence) && Arrays.equals(decoded.getPreDisambigTokens(), preDisambigTokens)) {
+      return compact;
+    }
+    return new CompactAnalyzedSentence(sentence);
+  }
+
+  private static void writeReadings(Output out, String text, AnalyzedTokenReadings token, Dictionary dictionary) {
+    String tokenText = token.getToken();
+    int startPos = token.getStartPos();
+    boolean inline = startPos < 0 || !text.startsWith(tokenText, startPos);
+    List<ChunkTag> chunkTags = token.getChunkTags();
+    String historicalAnnotations = token.getHistoricalAnnotations();
+    int flags = (inline ? TOKEN_INLINE : 0) |
+      (!token.getCleanToken().equals(tokenText) ? CLEAN_TOKEN : 0) |
+      (token.isImmunized() ? IMMUNIZED : 0) |
+      (token.isIgnoredBySpeller() ? IGNORED_BY_SPELLER : 0) |
+      (!chunkTags.isEmpty() ? CHUNK_TAGS : 0) |
+      (historicalAnnotations != null && !historicalAnnotations.isEmpty() ? HISTORICAL_ANNOTATIONS : 0) |
+      (token.getPosFix() != 0 ? POS_FIX : 0);
+    out.writeVarInt(flags);
+    out.writeVarInt(startPos + 1);
+    if (inline) {
+      out.writeString(tokenText);
+    } else {
+      out.writeVarInt(tokenText.length());
+    }
+    if ((flags & CLEAN_TOKEN) != 0) {
+      out.writeString(token.getCleanToken());
+    }
+    if ((flags & CHUNK_TAGS) != 0) {
+      out.writeVarInt(chunkTags.size());
+      for (ChunkTag chunkTag : chunkTags) {
+        writeDictionaryString(out, chunkTag.getChunkTag(), dictionary);
+      }
+    }
+    if ((flags & HISTORICAL_ANNOTATIONS) != 0) {
+      out.writeString(historicalAnnotations);
+    }
+    if ((flags & POS_FIX) != 0) {
+      out.writeSignedVarInt(token.getPosFix());
+    }
+    List<AnalyzedToken> readings = token.getReadings();
+    out.writeVarInt(readings.size());
+    for (AnalyzedToken reading : readings) {
+      String readingToken = reading.getToken();
+      String posTag = reading.getPOSTag();
+      String lemma = reading.getLemma();
+      boolean readingInline = !readingToken.equals(tokenText);
+      boolean lemmaSameAsToken = lemma != null && lemma.equals(readingToken);
+      out.writeVarInt((readingInline ? READING_TOKEN_INLINE : 0) |
+        (posTag != null ? POS_TAG : 0) |
+        (lemmaSameAsToken ? LEMMA_SAME_AS_TOKEN : 0) |
+        (lemma != null && !lemmaSameAsToken ? LEMMA : 0));
+      if (readingInline) {
+        out.writeString(readingToken);
+      }
+      if (posTag != null) {
+        writeDictionaryString(out, posTag, dictionary);
+      }
+      if (lemma != null && !lemmaSameAsToken) {
+        writeDictionaryString(out, lemma, dictionary);
+      }
+    }
+  }
+
+  private static void writeDictionaryString(Output out, String s, Dictionary dictionary) {
+    int id = dictionary.getId(s);
+    // id 0 means the string follows inline:
+    out.writeVarInt(id + 1);
+    if (id == NO_ID) {
+      out.writeString(s);
+    }
+  }
+
+  /**
+   * @param text the text of the sentence given to {@link #encode(String, AnalyzedSentence, Dictionary)}
+   */
+  AnalyzedSentence decode(String text, Dictionary dictionary) {
+    if (sentence != null) {
+      return sentence;
+    }
+    Input in = new Input(data);
+    AnalyzedTokenReadings[] tokens = new AnalyzedTokenReadings[in.readVarInt()];
+    for (int i = 0; i < tokens.length; i++) {
+      tokens[i] = readReadings(in, text, dictionary, tokens, i);
+    }
+    AnalyzedTokenReadings[] preDisambigTokens = new AnalyzedTokenReadings[in.readVarInt()];
+    for (int i = 0; i < preDisambigTokens.length; i++) {
+      preDisambigTokens[i] = in.readVarInt() == 0 ? tokens[i] : readReadings(in, text, dictionary, preDisambigTokens, i);
+    }
+    return new AnalyzedSentence(tokens, preDisambigTokens);
+  }
+
+  private static AnalyzedTokenReadings readReadings(Input in, String text, Dictionary dictionary,
+                                                    AnalyzedTokenReadings[] previousTokens, int index) {
+    int flags = in.readVarInt();
+    int startPos = in.readVarInt() - 1;
+    String tokenText = (flags & TOKEN_INLINE) != 0 ? in.readString() : text.substring(startPos, startPos + in.readVarInt());
+    String cleanToken = (flags & CLEAN_TOKEN) != 0 ? in.readString() : null;
+    List<ChunkTag> chunkTags = null;
+    if ((flags & CHUNK_TAGS) != 0) {
+      int count = in.readVarInt();
+      chunkTags = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        chunkTags.add(new ChunkTag(readDictionaryString(in, dictionary)));
+      }
+    }
+    String historicalAnnotations = (flags & HISTORICAL_ANNOTATIONS) != 0 ? in.readString() : null;
+    int posFix = (flags & POS_FIX) != 0 ? in.readSignedVarInt() : 0;
+    int readingCount = in.readVarInt();
+    List<AnalyzedToken> readings = new ArrayList<>(readingCount);
+    for (int i = 0; i < readingCount; i++) {
+      int readingFlags = in.readVarInt();
+      String readingToken = (readingFlags & READING_TOKEN_INLINE) != 0 ? in.readString() : tokenText;
+      String posTag = (readingFlags & POS_TAG) != 0 ? readDictionaryString(in, dictionary) : null;
+      String lemma = null;
+      if ((readingFlags & LEMMA_SAME_AS_TOKEN) != 0) {
+        lemma = readingToken;
+      } else if ((readingFlags & LEMMA) != 0) {
+        lemma = readDictionaryString(in, dictionary);
+      }
+      readings.add(new AnalyzedToken(readingToken, posTag, lemma));
+    }
+    AnalyzedTokenReadings token = new AnalyzedTokenReadings(readings, startPos);
+    // same as JLanguageTool.getRawAnalyzedSentence(), which doesn't set this for the first token after SENT_START:
+    if (index > 1) {
+      token.setWhitespaceBefore(previousTokens[index - 1].getToken());
+    }
+    if (cleanToken != null) {
+      token.setCleanToken(cleanToken);
+    }
+    if (chunkTags != null) {
+      token.setChunkTags(chunkTags);
+    }
+    if (historicalAnnotations != null) {
+      token.setHistoricalAnnotations(historicalAnnotations);
+    }
+    if (posFix != 0) {
+      token.setPosFix(posFix);
+    }
+    if ((flags & IMMUNIZED) != 0) {
+      token.immunize();
+    }
+    if ((flags & IGNORED_BY_SPELLER) != 0) {
+      token.ignoreSpelling();
+    }
+    return token;
+  }
+
+  private static String readDictionaryString(Input in, Dictionary dictionary) {
+    int id = in.readVarInt() - 1;
+    return id == NO_ID ? in.readString() : dictionary.getString(id);
+  }
+
+  /**
+   * The approximate number of bytes this sentence takes in memory.
+   */
+  int getByteSize() {
+    return data != null ? data.length : sentence.getTokens().length * OBJECT_BYTES_PER_TOKEN;
+  }
+
+  /**
+   * Whether the sentence is stored as a byte array, as opposed to the original objects.
+   */
+  boolean isEncoded() {
+    return data != null;
+  }
+
+  /**
+   * Maps strings that occur in many sentences, like POS tags and lemmas, to ids.
+   * Strings are never removed, so the memory they take is limited.
+   */
+  static class Dictionary {
+
+    private static final int CHUNK_SIZE = 4096;
+    // estimated memory of a string in the dictionary, without its characters (string object, array header, map entry):
+    private static final int STRING_OVERHEAD_BYTES = 100;
+
+    private final long maxBytes;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<String[]> chunks;
+    private int size;
+    private long byteSize;
+
+    /**
+     * @param maxBytes the approximate maximum memory the strings of the dictionary take
+     */
+    Dictionary(long maxBytes) {
+      this.maxBytes = maxBytes;
+      long maxSize = Math.min(Integer.MAX_VALUE - CHUNK_SIZE, maxBytes / STRING_OVERHEAD_BYTES);
+      this.chunks = new AtomicReferenceArray<>((int) ((maxSize + CHUNK_SIZE - 1) / CHUNK_SIZE));
+    }
+
+    /**
+     * @return the id of the string, or {@code -1} if the dictionary is full
+     */
+    int getId(String s) {
+      Integer id = ids.get(s);
+      if (id != null) {
+        return id;
+      }
+      synchronized (this) {
+        id = ids.get(s);
+        if (id != null) {
+          return id;
+        }
+        long stringBytes = STRING_OVERHEAD_BYTES + 2L * s.length();
+        if (byteSize + stringBytes > maxBytes) {
+          return NO_ID;
+        }
+        byteSize += stringBytes;
+        String[] chunk = chunks.get(size / CHUNK_SIZE);
+        if (chunk == null) {
+          chunk = new String[CHUNK_SIZE];
+          chunks.set(size / CHUNK_SIZE, chunk);
+        }
+        chunk[size % CHUNK_SIZE] = s;
+        // publish the id only after the string has been stored:
+        ids.put(s, size);
+        return size++;
+      }
+    }
+
+    String getString(int id) {
+      return chunks.get(id / CHUNK_SIZE)[id % CHUNK_SIZE];
+    }
+
+    int size() {
+      return ids.size();
+    }
+
+    synchronized long getByteSize() {
+      return byteSize;
+    }
+  }
+
+  private static class Output extends ByteArrayOutputStream {
+
+    Output(int size) {
+      super(size);
+    }
+
+    void writeVarInt(int value) {
+      while ((value & ~0x7F) != 0) {
+        write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      write(value);
+    }
+
+    void writeSignedVarInt(int value) {
+      writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    void writeString(String s) {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      writeVarInt(bytes.length);
+      write(bytes, 0, bytes.length);
+    }
+  }
+
+  private static class Input {
+
+    private final byte[] data;
+    private int pos;
+
+    Input(byte[] data) {
+      this.data = data;
+    }
+
+    int readVarInt() {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = data[pos++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    int readSignedVarInt() {
+      int value = readVarInt();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    String readString() {
+      int length = readVarInt();
+      String s = new String(data, pos, length, StandardCharsets.UTF_8);
+      pos += length;
+      return s;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return data != null ? data.length + " bytes" : String.valueOf(sentence);
+  }
+}
@@ -0,0 +1,107 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import org.junit.Test;
+import org.languagetool.chunking.ChunkTag;
+import org.languagetool.language.Demo;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.*;
+
+public class CompactAnalyzedSentenceTest {
+
+  @Test
+  public void testEncodeAndDecode() throws IOException {
+    JLanguageTool lt = new JLanguageTool(new Demo());
+    CompactAnalyzedSentence.Dictionary dictionary = new CompactAnalyzedSentence.Dictionary(100_000);
+    for (String text : Arrays.asList("", "This is a test.", "Two  spaces,\tand a\nline break. ", "Ünïcödé — “quotes” 😀.")) {
+      AnalyzedSentence sentence = lt.getAnalyzedSentence(text);
+      CompactAnalyzedSentence compact = CompactAnalyzedSentence.encode(text, sentence, dictionary);
+      assertTrue(compact.isEncoded());
+      AnalyzedSentence decoded = compact.decode(text, dictionary);
+      assertThat(decoded, is(sentence));
+      assertThat(decoded.getText(), is(text));
+      assertThat(Arrays.asList(decoded.getPreDisambigTokens()), is(Arrays.asList(sentence.getPreDisambigTokens())));
+    }
+  }
+
+  @Test
+  public void testTokenProperties() throws IOException {
+    JLanguageTool lt = new JLanguageTool(new Demo());
+    CompactAnalyzedSentence.Dictionary dictionary = new CompactAnalyzedSentence.Dictionary(100_000);
+    String text = "A chunked sentence.";
+    AnalyzedSentence sentence = lt.getAnalyzedSentence(text);
+    AnalyzedTokenReadings token = sentence.getTokens()[1];
+    token.setChunkTags(Collections.singletonList(new ChunkTag("B-NP")));
+    token.immunize();
+    token.ignoreSpelling();
+    AnalyzedSentence decoded = CompactAnalyzedSentence.encode(text, sentence, dictionary).decode(text, dictionary);
+    AnalyzedTokenReadings decodedToken = decoded.getTokens()[1];
+    assertThat(decodedToken.getChunkTags(), is(Collections.singletonList(new ChunkTag("B-NP"))));
+    assertTrue(decodedToken.isImmunized());
+    assertTrue(decodedToken.isIgnoredBySpeller());
+    assertThat(decoded, is(sentence));
+  }
+
+  @Test
+  public void testFullDictionary() throws IOException {
+    JLanguageTool lt = new JLanguageTool(new Demo());
+    CompactAnalyzedSentence.Dictionary dictionary = new CompactAnalyzedSentence.Dictionary(0);
+    String text = "This is a test.";
+    AnalyzedSentence sentence = lt.getAnalyzedSentence(text);
+    CompactAnalyzedSentence compact = CompactAnalyzedSentence.encode(text, sentence, dictionary);
+    assertThat(dictionary.size(), is(0));
+    assertThat(compact.decode(text, dictionary), is(sentence));
+  }
+
+  @Test
+  public void testDictionaryIsLimitedByMemory() {
+    CompactAnalyzedSentence.Dictionary dictionary = new CompactAnalyzedSentence.Dictionary(1000);
+    int count = 0;
+    while (dictionary.getId("string" + count) != -1) {
+      count++;
+    }
+    assertTrue(count > 0);
+    assertThat(dictionary.size(), is(count));
+    assertTrue(dictionary.getByteSize() <= 1000);
+    assertThat(dictionary.getId("string0"), is(0));  // known strings are still found
+  }
+
+  @Test
+  public void testResultCache() throws Exception {
+    ResultCache cache = new ResultCache(100);
+    JLanguageTool lt = new JLanguageTool(new Demo(), null, cache);
+    AnalyzedSentence sentence = lt.getAnalyzedSentence("This is a test.");
+    assertThat(cache.getSentenceCache().size(), is(1L));
+    // the sentence is encoded in the background:
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!cache.getSentenceCache().asMap().values().iterator().next().isEncoded()) {
+      assertTrue(System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+    AnalyzedSentence cached = lt.getAnalyzedSentence("This is a test.");
+    assertNotSame(sentence, cached);
+    assertThat(cached, is(sentence));
+  }
+}
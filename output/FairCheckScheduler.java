@@ -0,0 +1,263 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.server;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Schedules checks by request class, so that short checks of premium users don't wait behind
+ * long texts of anonymous users. Each {@link RequestClass} has a weight and a maximum number of
+ * checks running at the same time. Checks waiting for a free slot are run in the order of their
+ * virtual finish time (weighted fair queueing): a check's cost is its text length divided by its
+ * class's weight, so a class with twice the weight gets about twice the share of check capacity.
+ * @since 5.3
+ */
+class FairCheckScheduler {
+
+  // shorter texts count as this long, so that many tiny checks aren't treated as almost free:
+  private static final int MIN_COST = 100;
+
+  enum RequestClass {
+    PREMIUM_SHORT, PREMIUM_LONG, FREE_SHORT, FREE_LONG;
+
+    /**
+     * Premium users, users with an API key, and internal requests that skip limits count as premium.
+     */
+    static RequestClass of(UserLimits limits, Map<String, String> parameters, int textLength, int shortTextLength) {
+      boolean premium = limits.getSkipLimits() || limits.getPremiumUid() != null || parameters.get("apiKey") != null;
+      boolean isShort = textLength <= shortTextLength;
+      if (premium) {
+        return isShort ? PREMIUM_SHORT : PREMIUM_LONG;
+      } else {
+        return isShort ? FREE_SHORT : FREE_LONG;
+      }
+    }
+
+    String getName() {
+      return name().toLowerCase();
+    }
+
+    static RequestClass byName(String name) {
+      for (RequestClass requestClass : values()) {
+        if (requestClass.getName().equals(name)) {
+          return requestClass;
+        }
+      }
+      throw new IllegalArgumentException("Unknown request class '" + name + "', use one of " + Arrays.toString(values()).toLowerCase());
+    }
+  }
+
+  private final ExecutorService executorService;
+  private final int maxRunning;
+  private final int shortTextLength;
+  private final double[] weights = new double[RequestClass.values().length];
+  private final int[] maxRunningPerClass = new int[RequestClass.values().length];
+  private final Deque<Task<?>>[] queues;
+  private final int[] running = new int[RequestClass.values().length];
+  private final double[] lastFinishTags = new double[RequestClass.values().length];
+  private double virtualTime;
+  private int totalRunning;
+  private long sequence;
+
+  /**
+   * @param maxRunning maximum number of checks running at the same time, over all classes
+   * @param weights weight per class, classes not in the map have weight 1
+   * @param maxRunningPerClass maximum number of checks of a class running at the same time, classes not in the map are only limited by {@code maxRunning}
+   * @param shortTextLength texts up to this length count as short
+   */
+  @SuppressWarnings("unchecked")
+  FairCheckScheduler(ExecutorService executorService, int maxRunning, Map<RequestClass, Double> weights,
+                     Map<RequestClass, Integer> maxRunningPerClass, int shortTextLength) {
+    if (maxRunning < 1) {
+      throw new IllegalArgumentException("maxRunning must be >= 1: " + maxRunning);
+    }
+    this.executorService = Objects.requireNonNull(executorService);
+    this.maxRunning = maxRunning;
+    this.shortTextLength = shortTextLength;
+    this.queues = new Deque[RequestClass.values().length];
+    for (RequestClass requestClass : RequestClass.values()) {
+      int i = requestClass.ordinal();
+      this.weights[i] = weights.getOrDefault(requestClass, 1.0);
+      if (this.weights[i] <= 0) {
+        throw new IllegalArgumentException("Weight of " + requestClass.getName() + " must be > 0: " + this.weights[i]);
+      }
+      this.maxRunningPerClass[i] = Math.min(maxRunning, maxRunningPerClass.getOrDefault(requestClass, maxRunning));
+      this.queues[i] = new ArrayDeque<>();
+      ServerMetricsCollector.getInstance().logSchedulerQueue(requestClass.getName(), 0, 0);
+    }
+  }
+
+  RequestClass classify(UserLimits limits, Map<String, String> parameters, int textLength) {
+    return RequestClass.of(limits, parameters, textLength, shortTextLength);
+  }
+
+  /**
+   * Run the check as soon as its class has its turn. Cancelling the returned future removes
+   * a check that's still waiting from the queue.
+   */
+  <T> Future<T> submit(RequestClass requestClass, int textLength, Callable<T> callable) {
+    Task<T> task = new Task<>(requestClass, callable);
+    synchronized (this) {
+      int i = requestClass.ordinal();
+      task.startTag = Math.max(virtualTime, lastFinishTags[i]);
+      task.finishTag = task.startTag + Math.max(MIN_COST, textLength) / weights[i];
+      task.sequence = sequence++;
+      lastFinishTags[i] = task.finishTag;
+      queues[i].add(task);
+      logQueue(requestClass);
+    }
+    dispatch();
+    return task;
+  }
+
+  /**
+   * Wait for the result like {@link Future#get(long, TimeUnit)}, but for checks of this scheduler,
+   * the timeout starts when the check starts running: the time it waited for its turn doesn't count,
+   * so that checks of classes with a low weight don't time out before they ran. Waiting for the turn
+   * is limited by the timeout, too.
+   */
+  static <T> T get(Future<T> future, long timeoutMillis) throws InterruptedException, ExecutionException, TimeoutException {
+    try {
+      return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      if (!(future instanceof Task) || !((Task<?>) future).started) {
+        throw e;
+      }
+      long remaining = ((Task<?>) future).startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) - System.nanoTime();
+      if (remaining <= 0) {
+        throw e;
+      }
+      return future.get(remaining, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  synchronized int getQueued(RequestClass requestClass) {
+    return queues[requestClass.ordinal()].size();
+  }
+
+  synchronized int getRunning(RequestClass requestClass) {
+    return running[requestClass.ordinal()];
+  }
+
+  private void dispatch() {
+    List<Task<?>> toRun = new ArrayList<>();
+    synchronized (this) {
+      Task<?> next;
+      while (totalRunning < maxRunning && (next = pollNext()) != null) {
+        int i = next.requestClass.ordinal();
+        running[i]++;
+        totalRunning++;
+        virtualTime = Math.max(virtualTime, next.startTag);
+        logQueue(next.requestClass);
+        toRun.add(next);
+      }
+    }
+    for (Task<?> task : toRun) {
+      try {
+        executorService.execute(task);
+      } catch (RejectedExecutionException e) {
+        task.setException(e);
+        finished(task);
+      }
+    }
+  }
+
+  // the waiting task with the lowest finish tag of all classes that may run another task:
+  private Task<?> pollNext() {
+    Deque<Task<?>> best = null;
+    for (int i = 0; i < queues.length; i++) {
+      Deque<Task<?>> queue = queues[i];
+      while (!queue.isEmpty() && queue.peek().isCancelled()) {
+        queue.poll();
+      }
+      if (queue.isEmpty() || running[i] >= maxRunningPerClass[i]) {
+        continue;
+      }
+      if (best == null || compare(queue.peek(), best.peek()) < 0) {
+        best = queue;
+      }
+    }
+    return best != null ? best.poll() : null;
+  }
+
+  private static int compare(Task<?> task1, Task<?> task2) {
+    int result = Double.compare(task1.finishTag, task2.finishTag);
+    return result != 0 ? result : Long.compare(task1.sequence, task2.sequence);
+  }
+
+  private void finished(Task<?> task) {
+    synchronized (this) {
+      running[task.requestClass.ordinal()]--;
+      totalRunning--;
+      logQueue(task.requestClass);
+    }
+    dispatch();
+  }
+
+  private void logQueue(RequestClass requestClass) {
+    int i = requestClass.ordinal();
+    ServerMetricsCollector.getInstance().logSchedulerQueue(requestClass.getName(), queues[i].size(), running[i]);
+  }
+
+  private class Task<T> extends FutureTask<T> {
+    private final RequestClass requestClass;
+    private double startTag;
+    private double finishTag;
+    private long sequence;
+    private volatile long startNanos;
+    private volatile boolean started;
+
+    Task(RequestClass requestClass, Callable<T> callable) {
+      super(callable);
+      this.requestClass = requestClass;
+    }
+
+    @Override
+    public void run() {
+      startNanos = System.nanoTime();
+      started = true;
+      try {
+        super.run();
+      } finally {
+        finished(this);
+      }
+    }
+
+    // make it accessible to FairCheckScheduler:
+    @Override
+    protected void setException(Throwable t) {
+      super.setException(t);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      if (cancelled) {
+        synchronized (FairCheckScheduler.this) {
+          if (queues[requestClass.ordinal()].remove(this)) {
+            logQueue(requestClass);
+          }
+        }
+      }
+      return cancelled;
+    }
+  }
+
+}
@@ -0,0 +1,167 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.server;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+import static org.languagetool.server.FairCheckScheduler.RequestClass.*;
+
+public class FairCheckSchedulerTest {
+
+  @Test
+  public void testClassify() {
+    assertEquals(PREMIUM_SHORT, FairCheckScheduler.RequestClass.of(new UserLimits(true), Collections.emptyMap(), 100, 1000));
+    assertEquals(PREMIUM_LONG, FairCheckScheduler.RequestClass.of(new UserLimits(true), Collections.emptyMap(), 5000, 1000));
+    assertEquals(FREE_SHORT, FairCheckScheduler.RequestClass.of(new UserLimits(false), Collections.emptyMap(), 1000, 1000));
+    assertEquals(FREE_LONG, FairCheckScheduler.RequestClass.of(new UserLimits(false), Collections.emptyMap(), 1001, 1000));
+    assertEquals(FREE_LONG, FairCheckScheduler.RequestClass.byName("free_long"));
+  }
+
+  @Test
+  public void testShortChecksOvertakeLongOnes() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      FairCheckScheduler scheduler = new FairCheckScheduler(executor, 1, Collections.emptyMap(), Collections.emptyMap(), 1000);
+      CountDownLatch blocker = new CountDownLatch(1);
+      List<String> order = Collections.synchronizedList(new ArrayList<>());
+      Future<?> first = scheduler.submit(FREE_LONG, 50_000, () -> { blocker.await(); return null; });
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        String name = "long" + i;
+        futures.add(scheduler.submit(FREE_LONG, 50_000, () -> order.add(name)));
+      }
+      futures.add(scheduler.submit(FREE_SHORT, 200, () -> order.add("short")));
+      assertEquals(4, scheduler.getQueued(FREE_LONG) + scheduler.getQueued(FREE_SHORT));
+      blocker.countDown();
+      first.get();
+      for (Future<?> future : futures) {
+        future.get(5, TimeUnit.SECONDS);
+      }
+      assertEquals(Arrays.asList("short", "long0", "long1", "long2"), order);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testWeights() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Map<FairCheckScheduler.RequestClass, Double> weights = new EnumMap<>(FairCheckScheduler.RequestClass.class);
+      weights.put(PREMIUM_LONG, 3.0);
+      FairCheckScheduler scheduler = new FairCheckScheduler(executor, 1, weights, Collections.emptyMap(), 1000);
+      CountDownLatch blocker = new CountDownLatch(1);
+      List<String> order = Collections.synchronizedList(new ArrayList<>());
+      List<Future<?>> futures = new ArrayList<>();
+      futures.add(scheduler.submit(FREE_SHORT, 10, () -> { blocker.await(); return null; }));
+      for (int i = 0; i < 4; i++) {
+        String premium = "p" + i;
+        String free = "f" + i;
+        futures.add(scheduler.submit(PREMIUM_LONG, 5000, () -> order.add(premium)));
+        futures.add(scheduler.submit(FREE_LONG, 5000, () -> order.add(free)));
+      }
+      blocker.countDown();
+      for (Future<?> future : futures) {
+        future.get(5, TimeUnit.SECONDS);
+      }
+      // premium checks have three times the weight:
+      assertEquals(Arrays.asList("p0", "p1", "f0", "p2", "p3", "f1", "f2", "f3"), order);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testMaxRunningPerClass() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Map<FairCheckScheduler.RequestClass, Integer> caps = new EnumMap<>(FairCheckScheduler.RequestClass.class);
+      caps.put(FREE_LONG, 1);
+      FairCheckScheduler scheduler = new FairCheckScheduler(executor, 2, Collections.emptyMap(), caps, 1000);
+      CountDownLatch blocker = new CountDownLatch(1);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        futures.add(scheduler.submit(FREE_LONG, 5000, () -> { blocker.await(); return null; }));
+      }
+      assertEquals(1, scheduler.getRunning(FREE_LONG));
+      assertEquals(1, scheduler.getQueued(FREE_LONG));
+      // the second slot is still available for other classes:
+      assertEquals("short", scheduler.submit(FREE_SHORT, 100, () -> "short").get(5, TimeUnit.SECONDS));
+      blocker.countDown();
+      for (Future<?> future : futures) {
+        future.get(5, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCancelWaitingCheck() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      FairCheckScheduler scheduler = new FairCheckScheduler(executor, 1, Collections.emptyMap(), Collections.emptyMap(), 1000);
+      CountDownLatch blocker = new CountDownLatch(1);
+      Future<?> running = scheduler.submit(FREE_SHORT, 10, () -> { blocker.await(); return null; });
+      Future<?> waiting = scheduler.submit(FREE_SHORT, 10, () -> "never");
+      assertTrue(waiting.cancel(true));
+      assertEquals(0, scheduler.getQueued(FREE_SHORT));
+      blocker.countDown();
+      running.get();
+      assertEquals("next", scheduler.submit(FREE_SHORT, 10, () -> "next").get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testTimeoutStartsWhenCheckRuns() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      FairCheckScheduler scheduler = new FairCheckScheduler(executor, 1, Collections.emptyMap(), Collections.emptyMap(), 1000);
+      CountDownLatch blocker = new CountDownLatch(1);
+      Future<?> running = scheduler.submit(FREE_SHORT, 10, () -> { blocker.await(); return null; });
+      Future<String> waiting = scheduler.submit(FREE_SHORT, 10, () -> { Thread.sleep(300); return "done"; });
+      try {
+        FairCheckScheduler.get(waiting, 200);
+        fail();
+      } catch (TimeoutException expected) {
+        // waiting for the turn is limited, too
+      }
+      waiting.cancel(true);
+      Future<String> next = scheduler.submit(FREE_SHORT, 10, () -> { Thread.sleep(300); return "done"; });
+      executor.execute(() -> {
+        try {
+          Thread.sleep(500);
+        } catch (InterruptedException ignored) {}
+        blocker.countDown();
+      });
+      // waits 500ms for its turn and runs for 300ms, but the timeout counts from the start only:
+      assertEquals("done", FairCheckScheduler.get(next, 600));
+      running.get();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+}
@@ -44,6 +44,9 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -169,7 +172,15 @@ public abstract class GRPCRule extends RemoteRule {
     shutdownRoutines.add(() -> servers.asMap().values().forEach(Connection::shutdown));
   }
 
+  // shared by all rule instances for the same service, to combine the requests of concurrent checks:
+  private static final ConcurrentMap<RemoteRuleConfig, RemoteRequestBatcher<MLServerProto.MatchRequest, MLServerProto.MatchResponse>> batchers =
+    new ConcurrentHashMap<>();
+
   private final Connection conn;
+  @Nullable
+  private final Connection hedgeConn;
+  @Nullable
+  private final RemoteRequestBatcher<MLServerProto.MatchRequest, MLServerProto.MatchResponse> batcher;
 
   public GRPCRule(ResourceBundle messages, RemoteRuleConfig config, boolean inputLogging) {
     super(messages, config, inputLogging);
@@ -183,6 +194,76 @@ public abstract class GRPCRule extends RemoteRule {
         }
       this.conn = conn;
     }
+    // options: hedgeUrl, hedgePort - another endpoint of the service for hedged requests (see RemoteRule option hedging)
+    String hedgeUrl = serviceConfiguration.getOptions().get("hedgeUrl");
+    if (hedgeUrl != null) {
+      int hedgePort = Integer.parseInt(serviceConfiguration.getOptions().getOrDefault("hedgePort",
+        String.valueOf(serviceConfiguration.getPort())));
+      RemoteRuleConfig hedgeConfig = new RemoteRuleConfig(serviceConfiguration.getRuleId(), hedgeUrl, hedgePort,
+        serviceConfiguration.getMaxRetries(), serviceConfiguration.getBaseTimeoutMilliseconds(),
+        serviceConfiguration.getTimeoutPerCharacterMilliseconds(), serviceConfiguration.getFall(),
+        serviceConfiguration.getDownMilliseconds(), serviceConfiguration.getOptions());
+      Connection hedgeConn = null;
+      synchronized (servers) {
+        try {
+          hedgeConn = servers.get(hedgeConfig);
+        } catch (Exception e) {
+          logger.error("Could not connect to remote service at " + hedgeConfig, e);
+        }
+      }
+      this.hedgeConn = hedgeConn;
+    } else {
+      this.hedgeConn = null;
+    }
+    // options: batchWaitMillis - how long requests wait to be combined with other requests, 0 to disable batching;
+    // batchMaxSentences - the number of sentences at which a batch is sent without waiting longer
+    long batchWaitMillis = Long.parseLong(serviceConfiguration.getOptions().getOrDefault("batchWaitMillis", "0"));
+    if (batchWaitMillis > 0 && conn != null) {
+      int batchMaxSentences = Integer.parseInt(serviceConfiguration.getOptions().getOrDefault("batchMaxSentences", "64"));
+      MLServerGrpc.MLServerBlockingStub stub = conn.stub;
+      batcher = batchers.computeIfAbsent(serviceConfiguration, cfg -> new RemoteRequestBatcher<>(cfg.getRuleId(),
+        batchMaxSentences, batchWaitMillis, MLServerProto.MatchRequest::getSentencesCount, requests -> matchBatch(stub, cfg, requests)));
+    } else {
+      batcher = null;
+    }
+  }
+
+  /**
+   * Send the sentences of several requests in one request and split up the response. Requests that
+   * differ in whether input may be logged or whether they have text session IDs are sent separately.
+   * Each request gets a gRPC deadline computed from the timeout settings of {@code config} and its text length,
+   * as the callers of the batch can't cancel it by themselves.
+   */
+  static List<MLServerProto.MatchResponse> matchBatch(MLServerGrpc.MLServerBlockingStub stub, RemoteRuleConfig config,
+                                                      List<MLServerProto.MatchRequest> requests) {
+    MLServerProto.MatchResponse[] responses = new MLServerProto.MatchResponse[requests.size()];
+    Map<List<Boolean>, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < requests.size(); i++) {
+      MLServerProto.MatchRequest request = requests.get(i);
+      groups.computeIfAbsent(Arrays.asList(request.getInputLogging(), request.getTextSessionIDCount() > 0), k -> new ArrayList<>()).add(i);
+    }
+    for (Map.Entry<List<Boolean>, List<Integer>> group : groups.entrySet()) {
+      MLServerProto.MatchRequest.Builder combined = MLServerProto.MatchRequest.newBuilder().setInputLogging(group.getKey().get(0));
+      for (int i : group.getValue()) {
+        combined.addAllSentences(requests.get(i).getSentencesList()).addAllTextSessionID(requests.get(i).getTextSessionIDList());
+      }
+      long characters = combined.getSentencesList().stream().mapToLong(String::length).sum();
+      long timeout = config.getBaseTimeoutMilliseconds() + Math.round(characters * config.getTimeoutPerCharacterMilliseconds());
+      MLServerGrpc.MLServerBlockingStub deadlineStub = timeout > 0 ? stub.withDeadlineAfter(timeout, TimeUnit.MILLISECONDS) : stub;
+      MLServerProto.MatchResponse response = deadlineStub.match(combined.build());
+      if (response.getSentenceMatchesCount() != combined.getSentencesCount()) {
+        throw new IllegalStateException("Got matches for " + response.getSentenceMatchesCount() + " sentences, expected " + combined.getSentencesCount());
+      }
+      int offset = 0;
+      for (int i : group.getValue()) {
+        int sentences = requests.get(i).getSentencesCount();
+        responses[i] = MLServerProto.MatchResponse.newBuilder()
+          .addAllSentenceMatches(response.getSentenceMatchesList().subList(offset, offset + sentences))
+          .build();
+        offset += sentences;
+      }
+    }
+    return Arrays.asList(responses);
   }
 
   protected class MLRuleRequest extends RemoteRule.RemoteRequest {
@@ -216,33 +297,50 @@ public abstract class GRPCRule extends RemoteRule {
     return () -> {
       MLRuleRequest req = (MLRuleRequest) request;
 
-      MLServerProto.MatchResponse response = conn.stub.match(req.request);
-      List<RuleMatch> matches = Streams.zip(response.getSentenceMatchesList().stream(), req.sentences.stream(), (matchList, sentence) ->
-        matchList.getMatchesList().stream().map(match -> {
-            GRPCSubRule subRule = new GRPCSubRule(match.getSubId(), match.getRuleDescription());
-            String message = match.getMatchDescription();
-            String shortMessage = match.getMatchShortDescription();
-            if (message == null || message.isEmpty()) {
-              message = getMessage(match, sentence);
-            }
-            if (message == null || message.isEmpty()) {
-              throw new RuntimeException("Missing message for match with ID " + subRule.getId());
-            }
-            int start = match.getOffset();
-            int end = start + match.getLength();
-            RuleMatch m = new RuleMatch(subRule, sentence,
-                                        start, end,
-                                        message, shortMessage);
-            m.setSuggestedReplacements(match.getSuggestionsList());
-            return m;
-          }
-        )
-      ).flatMap(Function.identity()).collect(Collectors.toList());
-      RemoteRuleResult result = new RemoteRuleResult(true, true, matches);
-      return result;
+      MLServerProto.MatchResponse response = batcher != null ? batcher.call(req.request) : conn.stub.match(req.request);
+      return toResult(req, response);
     };
   }
 
+  /**
+   * Hedged requests go to the endpoint given by the hedgeUrl option, or else to the same endpoint,
+   * but without waiting to be batched.
+   */
+  @Override
+  protected Callable<RemoteRuleResult> executeHedgedRequest(RemoteRule.RemoteRequest request) {
+    Connection target = hedgeConn != null ? hedgeConn : conn;
+    return () -> {
+      MLRuleRequest req = (MLRuleRequest) request;
+      return toResult(req, target.stub.match(req.request));
+    };
+  }
+
+  private RemoteRuleResult toResult(MLRuleRequest req, MLServerProto.MatchResponse response) {
+    List<RuleMatch> matches = Streams.zip(response.getSentenceMatchesList().stream(), req.sentences.stream(), (matchList, sentence) ->
+      matchList.getMatchesList().stream().map(match -> {
+          GRPCSubRule subRule = new GRPCSubRule(match.getSubId(), match.getRuleDescription());
+          String message = match.getMatchDescription();
+          String shortMessage = match.getMatchShortDescription();
+          if (message == null || message.isEmpty()) {
+            message = getMessage(match, sentence);
+          }
+          if (message == null || message.isEmpty()) {
+            throw new RuntimeException("Missing message for match with ID " + subRule.getId());
+          }
+          int start = match.getOffset();
+          int end = start + match.getLength();
+          RuleMatch m = new RuleMatch(subRule, sentence,
+                                      start, end,
+                                      message, shortMessage);
+          m.setSuggestedReplacements(match.getSuggestionsList());
+          return m;
+        }
+      )
+    ).flatMap(Function.identity()).collect(Collectors.toList());
+    RemoteRuleResult result = new RemoteRuleResult(true, true, matches);
+    return result;
+  }
+
   /**
    * messages can be provided by the ML server or the Java client
    * fill them in here or leave this empty if the server takes care of it
@@ -21,14 +21,16 @@ package org.languagetool.server;
 import com.sun.net.httpserver.HttpServer;
 import org.languagetool.JLanguageTool;
 import org.languagetool.tools.Tools;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.management.ObjectName;
 import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.util.ResourceBundle;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.*;
 
 import static org.languagetool.server.HTTPServerConfig.DEFAULT_HOST;
 
@@ -42,6 +44,8 @@ import static org.languagetool.server.HTTPServerConfig.DEFAULT_HOST;
  */
 public class HTTPServer extends Server {
 
+  private static final Logger logger = LoggerFactory.getLogger(HTTPServer.class);
+
   private final ExecutorService executorService;
 
   /**
@@ -105,9 +109,21 @@ public class HTTPServer extends Server {
       httpHandler = new LanguageToolHttpHandler(config, allowedIps, runInternally, limiter, errorLimiter, workQueue, this);
 
       InetSocketAddress address = host != null ? new InetSocketAddress(host, port) : new InetSocketAddress(port);
-      server = HttpServer.create(address, 0);
+      if (config.isNioServer()) {
+        server = NioHttpServer.create(address, config.getNioMaxRequestBytes(), config.getNioIdleTimeoutSeconds() * 1000L);
+      } else {
+        server = HttpServer.create(address, 0);
+      }
       server.createContext("/", httpHandler);
-      executorService = getExecutorService(workQueue, config);
+      // the JDK's HttpServer keeps its classic executor:
+      ThreadFactory virtualThreadFactory = config.isNioServer() && config.isVirtualThreads() ? getVirtualThreadFactoryOrNull() : null;
+      if (virtualThreadFactory != null) {
+        // virtual threads are cheap, but the number of concurrent checks is still limited, as they need CPU and memory:
+        executorService = new ThreadPoolExecutor(config.getMaxCheckThreads(), config.getMaxCheckThreads(),
+          0L, TimeUnit.MILLISECONDS, workQueue, virtualThreadFactory);
+      } else {
+        executorService = getExecutorService(workQueue, config);
+      }
       server.setExecutor(executorService);
 
       if (config.isPrometheusMonitoring()) {
@@ -120,6 +136,22 @@ public class HTTPServer extends Server {
     }
   }
 
+  /**
+   * Returns a factory for virtual threads (Java 21+) or {@code null} if the JVM doesn't support them.
+   */
+  private static ThreadFactory getVirtualThreadFactoryOrNull() {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Method name = builderClass.getMethod("name", String.class, long.class);
+      builder = name.invoke(builder, "lt-server-vthread-", 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException e) {
+      logger.info("Virtual threads not available, using platform threads to handle requests");
+      return null;
+    }
+  }
+
   @Override
   public void stop() {
     super.stop();
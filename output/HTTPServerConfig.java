@@ -30,6 +30,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 
 /**
@@ -83,6 +84,7 @@ public class HTTPServerConfig {
   protected File remoteRulesConfigFile = null;
   protected int cacheSize = 0;
   protected long cacheTTLSeconds = 300;
+  protected int incrementalCheckSessions = 0;
   protected float maxErrorsPerWordRate = 0;
   protected int maxSpellingSuggestions = 0;
   protected List<String> blockedReferrers = new ArrayList<>();
@@ -106,6 +108,33 @@ public class HTTPServerConfig {
   protected boolean skipLoggingChecks = false;
 
   protected int slowRuleLoggingThreshold = -1; // threshold in milliseconds, used by SlowRuleLogger; < 0 - disabled
+  protected float ruleTimingSampleRate = 0.01f; // fraction of sentences for which rule times are measured; 0 - disabled
+  protected int ruleTimingWindowSeconds = 300;
+  protected File cacheSnapshotFile = null; // null - result cache isn't saved
+  protected int cacheSnapshotIntervalSeconds = 600;
+  protected int cacheSnapshotMaxEntries = 100_000;
+  protected boolean nioServer = false; // true - use NioHttpServer instead of the JDK's HttpServer
+  protected int nioIdleTimeoutSeconds = 60;
+  protected int nioMaxRequestBytes = 1_000_000;
+  protected boolean virtualThreads = true; // only used with nioServer and if the JVM supports them
+  protected boolean adaptiveConcurrencyLimit = false;
+  protected int adaptiveConcurrencyMinLimit = 1;
+  protected int adaptiveConcurrencyMaxLimit = 200;
+  protected double adaptiveConcurrencyMaxLoadPerCore = 2.0; // 0 - system load is ignored
+  protected int maxBatchSize = 1000; // maximum number of texts per /v2/check/batch request
+  protected boolean fairScheduling = false;
+  protected int fairSchedulingMaxChecks = 0; // 0 - use maxCheckThreads
+  protected int fairSchedulingShortTextLength = 1000;
+  protected Map<FairCheckScheduler.RequestClass, Double> fairSchedulingWeights = parseRequestClassValues(
+    "premium_short=8,premium_long=4,free_short=2,free_long=1", "fairSchedulingWeights", Double::parseDouble);
+  protected Map<FairCheckScheduler.RequestClass, Integer> fairSchedulingMaxChecksPerClass = new EnumMap<>(FairCheckScheduler.RequestClass.class);
+  protected boolean checkCoalescing = false;
+  protected int checkCoalescingCacheMillis = 2000; // 0 - only coalesce concurrent checks, don't cache results
+  protected int checkCoalescingCacheSize = 1000;
+  protected boolean pipelineTemplates = false;
+  protected int pipelineTemplateCacheSize = 20;
+  protected File pipelineProfileFile = null; // null - pipeline usage isn't saved
+  protected int pipelineProfileMaxSettings = 100;
 
   protected String abTest = null;
   protected Pattern abTestClients = null;
@@ -124,7 +153,13 @@ public class HTTPServerConfig {
     "skipLoggingChecks", "skipLoggingRuleMatches", "timeoutRequestLimit", "trustXForwardForHeader", "warmUp", "word2vecModel",
     "keystore", "password", "maxTextLengthPremium", "maxTextLengthAnonymous", "maxTextLengthLoggedIn", "gracefulDatabaseFailure",
     "ngramLangIdentData",
-    "redisPassword", "redisHost", "dbLogging", "premiumOnly");
+    "redisPassword", "redisHost", "dbLogging", "premiumOnly", "incrementalCheckSessions",
+    "ruleTimingSampleRate", "ruleTimingWindowSeconds", "cacheSnapshotFile", "cacheSnapshotIntervalSeconds",
+    "cacheSnapshotMaxEntries", "nioServer", "nioIdleTimeoutSeconds", "nioMaxRequestBytes", "virtualThreads",
+    "adaptiveConcurrencyLimit", "adaptiveConcurrencyMinLimit", "adaptiveConcurrencyMaxLimit", "adaptiveConcurrencyMaxLoadPerCore",
+    "maxBatchSize", "fairScheduling", "fairSchedulingMaxChecks", "fairSchedulingShortTextLength", "fairSchedulingWeights", "fairSchedulingMaxChecksPerClass",
+    "checkCoalescing", "checkCoalescingCacheMillis", "checkCoalescingCacheSize", "pipelineTemplates", "pipelineTemplateCacheSize",
+    "pipelineProfileFile", "pipelineProfileMaxSettings");
 
   /**
    * Create a server configuration for the default port ({@link #DEFAULT_PORT}).
@@ -281,6 +316,10 @@ public class HTTPServerConfig {
           throw new IllegalArgumentException("Use of cacheTTLSeconds without also setting cacheSize has no effect.");
         }
         cacheTTLSeconds = Integer.parseInt(getOptionalProperty(props, "cacheTTLSeconds", "300"));
+        incrementalCheckSessions = Integer.parseInt(getOptionalProperty(props, "incrementalCheckSessions", "0"));
+        if (incrementalCheckSessions < 0) {
+          throw new IllegalArgumentException("Invalid value for incrementalCheckSessions: " + incrementalCheckSessions + ", use 0 to deactivate incremental checks");
+        }
         if (props.containsKey("warmUp")) {
           System.err.println("Setting ignored: 'warmUp'. Look into using pipelineCaching and pipelinePrewarming instead.");
         }
@@ -310,6 +349,55 @@ public class HTTPServerConfig {
           throw new IllegalArgumentException("dbLogging can only be true if dbDriver, dbUrl, dbUsername, and dbPassword are all set");
         }
         slowRuleLoggingThreshold = Integer.valueOf(getOptionalProperty(props, "slowRuleLoggingThreshold", "-1"));
+        ruleTimingSampleRate = Float.parseFloat(getOptionalProperty(props, "ruleTimingSampleRate", "0.01"));
+        if (ruleTimingSampleRate < 0 || ruleTimingSampleRate > 1) {
+          throw new IllegalArgumentException("Invalid value for ruleTimingSampleRate: " + ruleTimingSampleRate + ", use a value between 0 (disabled) and 1");
+        }
+        ruleTimingWindowSeconds = Integer.parseInt(getOptionalProperty(props, "ruleTimingWindowSeconds", "300"));
+        String cacheSnapshotFilePath = getOptionalProperty(props, "cacheSnapshotFile", null);
+        if (cacheSnapshotFilePath != null) {
+          cacheSnapshotFile = new File(cacheSnapshotFilePath);
+          if (cacheSnapshotFile.isDirectory()) {
+            throw new IllegalArgumentException("cacheSnapshotFile must be a file, not a directory: " + cacheSnapshotFilePath);
+          }
+        }
+        cacheSnapshotIntervalSeconds = Integer.parseInt(getOptionalProperty(props, "cacheSnapshotIntervalSeconds", "600"));
+        cacheSnapshotMaxEntries = Integer.parseInt(getOptionalProperty(props, "cacheSnapshotMaxEntries", "100000"));
+        nioServer = Boolean.parseBoolean(getOptionalProperty(props, "nioServer", "false").trim());
+        nioIdleTimeoutSeconds = Integer.parseInt(getOptionalProperty(props, "nioIdleTimeoutSeconds", "60"));
+        nioMaxRequestBytes = Integer.parseInt(getOptionalProperty(props, "nioMaxRequestBytes", "1000000"));
+        virtualThreads = Boolean.parseBoolean(getOptionalProperty(props, "virtualThreads", "true").trim());
+        adaptiveConcurrencyLimit = Boolean.parseBoolean(getOptionalProperty(props, "adaptiveConcurrencyLimit", "false").trim());
+        adaptiveConcurrencyMinLimit = Integer.parseInt(getOptionalProperty(props, "adaptiveConcurrencyMinLimit", "1"));
+        adaptiveConcurrencyMaxLimit = Integer.parseInt(getOptionalProperty(props, "adaptiveConcurrencyMaxLimit", "200"));
+        if (adaptiveConcurrencyMinLimit < 1 || adaptiveConcurrencyMaxLimit < adaptiveConcurrencyMinLimit) {
+          throw new IllegalArgumentException("Invalid value for adaptiveConcurrencyMinLimit/adaptiveConcurrencyMaxLimit, must be 1 <= min <= max: " +
+            adaptiveConcurrencyMinLimit + ", " + adaptiveConcurrencyMaxLimit);
+        }
+        adaptiveConcurrencyMaxLoadPerCore = Double.parseDouble(getOptionalProperty(props, "adaptiveConcurrencyMaxLoadPerCore", "2.0"));
+        maxBatchSize = Integer.parseInt(getOptionalProperty(props, "maxBatchSize", "1000"));
+        fairScheduling = Boolean.parseBoolean(getOptionalProperty(props, "fairScheduling", "false").trim());
+        fairSchedulingMaxChecks = Integer.parseInt(getOptionalProperty(props, "fairSchedulingMaxChecks", "0"));
+        fairSchedulingShortTextLength = Integer.parseInt(getOptionalProperty(props, "fairSchedulingShortTextLength", "1000"));
+        String weights = getOptionalProperty(props, "fairSchedulingWeights", null);
+        if (weights != null) {
+          fairSchedulingWeights = parseRequestClassValues(weights, "fairSchedulingWeights", Double::parseDouble);
+        }
+        fairSchedulingMaxChecksPerClass = parseRequestClassValues(getOptionalProperty(props, "fairSchedulingMaxChecksPerClass", ""),
+          "fairSchedulingMaxChecksPerClass", Integer::parseInt);
+        checkCoalescing = Boolean.parseBoolean(getOptionalProperty(props, "checkCoalescing", "false").trim());
+        checkCoalescingCacheMillis = Integer.parseInt(getOptionalProperty(props, "checkCoalescingCacheMillis", "2000"));
+        checkCoalescingCacheSize = Integer.parseInt(getOptionalProperty(props, "checkCoalescingCacheSize", "1000"));
+        pipelineTemplates = Boolean.parseBoolean(getOptionalProperty(props, "pipelineTemplates", "false").trim());
+        pipelineTemplateCacheSize = Integer.parseInt(getOptionalProperty(props, "pipelineTemplateCacheSize", "20"));
+        String pipelineProfileFilePath = getOptionalProperty(props, "pipelineProfileFile", null);
+        if (pipelineProfileFilePath != null) {
+          pipelineProfileFile = new File(pipelineProfileFilePath);
+          if (pipelineProfileFile.isDirectory()) {
+            throw new IllegalArgumentException("pipelineProfileFile must be a file, not a directory: " + pipelineProfileFilePath);
+          }
+        }
+        pipelineProfileMaxSettings = Integer.parseInt(getOptionalProperty(props, "pipelineProfileMaxSettings", "100"));
         disabledRuleIds = Arrays.asList(getOptionalProperty(props, "disabledRuleIds", "").split(",\\s*"));
         globalConfig.setGrammalecteServer(getOptionalProperty(props, "grammalecteServer", null));
         globalConfig.setGrammalecteUser(getOptionalProperty(props, "grammalecteUser", null));
@@ -349,6 +437,24 @@ public class HTTPServerConfig {
     }
   }
 
+  /**
+   * Parses values like {@code premium_short=8,free_long=1}.
+   */
+  private static <T> Map<FairCheckScheduler.RequestClass, T> parseRequestClassValues(String s, String option, Function<String, T> parser) {
+    Map<FairCheckScheduler.RequestClass, T> result = new EnumMap<>(FairCheckScheduler.RequestClass.class);
+    for (String entry : s.split(",")) {
+      if (entry.trim().isEmpty()) {
+        continue;
+      }
+      String[] parts = entry.split("=");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid value for " + option + ", expected 'class=value': " + entry);
+      }
+      result.put(FairCheckScheduler.RequestClass.byName(parts[0].trim()), parser.apply(parts[1].trim()));
+    }
+    return result;
+  }
+
   private void addDynamicLanguages(Properties props) throws IOException {
     for (Object keyObj : props.keySet()) {
       String key = (String)keyObj;
@@ -757,6 +863,22 @@ public class HTTPServerConfig {
     this.cacheTTLSeconds = cacheTTLSeconds;
   }
 
+  /**
+   * Number of text sessions whose latest check is remembered so that re-checks of the
+   * session only need to check the changed sentences; 0 means incremental checks are disabled.
+   * @since 5.3
+   */
+  int getIncrementalCheckSessions() {
+    return incrementalCheckSessions;
+  }
+
+  /**
+   * @since 5.3
+   */
+  void setIncrementalCheckSessions(int incrementalCheckSessions) {
+    this.incrementalCheckSessions = incrementalCheckSessions;
+  }
+
   /**
    * Maximum errors per word rate, checking will stop if the rate is higher.
    * For example, with a rate of 0.33, the checking would stop if the user's
@@ -955,6 +1077,289 @@ public class HTTPServerConfig {
     return slowRuleLoggingThreshold;
   }
 
+  /**
+   * Fraction of sentences (and texts, for text-level rules) for which the time taken by
+   * each rule is measured; 0 means rule timing is disabled.
+   * @since 5.3
+   */
+  float getRuleTimingSampleRate() {
+    return ruleTimingSampleRate;
+  }
+
+  /**
+   * @since 5.3
+   */
+  void setRuleTimingSampleRate(float ruleTimingSampleRate) {
+    this.ruleTimingSampleRate = ruleTimingSampleRate;
+  }
+
+  /**
+   * Time window for the list of the most expensive rules in the admin API.
+   * @since 5.3
+   */
+  int getRuleTimingWindowSeconds() {
+    return ruleTimingWindowSeconds;
+  }
+
+  /**
+   * File that the most used result cache entries are saved to periodically and on shutdown,
+   * and loaded from on startup, or {@code null}.
+   * @since 5.3
+   */
+  @Nullable
+  File getCacheSnapshotFile() {
+    return cacheSnapshotFile;
+  }
+
+  /**
+   * @since 5.3
+   */
+  void setCacheSnapshotFile(File cacheSnapshotFile) {
+    this.cacheSnapshotFile = cacheSnapshotFile;
+  }
+
+  /**
+   * Seconds between two saves of the result cache; 0 means it's only saved on shutdown.
+   * @since 5.3
+   */
+  int getCacheSnapshotIntervalSeconds() {
+    return cacheSnapshotIntervalSeconds;
+  }
+
+  /**
+   * Maximum number of entries saved per result cache.
+   * @since 5.3
+   */
+  int getCacheSnapshotMaxEntries() {
+    return cacheSnapshotMaxEntries;
+  }
+
+  /**
+   * Whether connections are handled by a non-blocking event loop ({@link NioHttpServer}), so that
+   * idle keep-alive connections and slow clients don't need a thread each.
+   * @since 5.3
+   */
+  boolean isNioServer() {
+    return nioServer;
+  }
+
+  /**
+   * @since 5.3
+   */
+  public void setNioServer(boolean nioServer) {
+    this.nioServer = nioServer;
+  }
+
+  /**
+   * Seconds after which a connection without a request in progress is closed, only used with {@link #isNioServer()}.
+   * @since 5.3
+   */
+  int getNioIdleTimeoutSeconds() {
+    return nioIdleTimeoutSeconds;
+  }
+
+  /**
+   * Requests with a larger body are rejected with status 413, only used with {@link #isNioServer()}.
+   * @since 5.3
+   */
+  int getNioMaxRequestBytes() {
+    return nioMaxRequestBytes;
+  }
+
+  /**
+   * Whether requests are handled by virtual threads if the JVM supports them, only used with {@link #isNioServer()}.
+   * The number of concurrently handled requests is still limited by {@link #getMaxCheckThreads()}.
+   * @since 5.3
+   */
+  boolean isVirtualThreads() {
+    return virtualThreads;
+  }
+
+  /**
+   * @since 5.3
+   */
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+
+  /**
+   * Whether the number of checks in flight is limited by an {@link AdaptiveConcurrencyLimiter}
+   * that follows check latency and system load, in addition to {@link #getMaxWorkQueueSize()}.
+   * @since 5.3
+   */
+  boolean isAdaptiveConcurrencyLimit() {
+    return adaptiveConcurrencyLimit;
+  }
+
+  /**
+   * @since 5.3
+   */
+  public void setAdaptiveConcurrencyLimit(boolean adaptiveConcurrencyLimit) {
+    this.adaptiveConcurrencyLimit = adaptiveConcurrencyLimit;
+  }
+
+  /**
+   * @since 5.3
+   */
+  int getAdaptiveConcurrencyMinLimit() {
+    return adaptiveConcurrencyMinLimit;
+  }
+
+  /**
+   * @since 5.3
+   */
+  int getAdaptiveConcurrencyMaxLimit() {
+    return adaptiveConcurrencyMaxLimit;
+  }
+
+  /**
+   * The 1-minute load average per CPU core above which the adaptive concurrency limit is reduced; 0 means the load is ignored.
+   * @since 5.3
+   */
+  double getAdaptiveConcurrencyMaxLoadPerCore() {
+    return adaptiveConcurrencyMaxLoadPerCore;
+  }
+
+  /**
+   * Maximum number of texts in a {@code /v2/check/batch} request.
+   * @since 5.3
+   */
+  int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * @since 5.3
+   */
+  public void setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Whether checks are run by a {@link FairCheckScheduler} that prefers short texts and premium users.
+   * @since 5.3
+   */
+  boolean isFairScheduling() {
+    return fairScheduling;
+  }
+
+  /**
+   * @since 5.3
+   */
+  public void setFairScheduling(boolean fairScheduling) {
+    this.fairScheduling = fairScheduling;
+  }
+
+  /**
+   * Maximum number of checks run by the {@link FairCheckScheduler} at the same time. As the request threads
+   * just wait for their check, {@link #getMaxCheckThreads()} should be larger than this, otherwise
+   * requests queue up before they reach the scheduler.
+   * @since 5.3
+   */
+  int getFairSchedulingMaxChecks() {
+    return fairSchedulingMaxChecks > 0 ? fairSchedulingMaxChecks : maxCheckThreads;
+  }
+
+  /**
+   * @since 5.3
+   */
+  int getFairSchedulingShortTextLength() {
+    return fairSchedulingShortTextLength;
+  }
+
+  /**
+   * @since 5.3
+   */
+  Map<FairCheckScheduler.RequestClass, Double> getFairSchedulingWeights() {
+    return fairSchedulingWeights;
+  }
+
+  /**
+   * @since 5.3
+   */
+  Map<FairCheckScheduler.RequestClass, Integer> getFairSchedulingMaxChecksPerClass() {
+    return fairSchedulingMaxChecksPerClass;
+  }
+
+  /**
+   * Whether identical checks running at the same time are done only once, see {@link CheckCoalescer}.
+   * @since 5.3
+   */
+  boolean isCheckCoalescing() {
+    return checkCoalescing;
+  }
+
+  /**
+   * @since 5.3
+   */
+  public void setCheckCoalescing(boolean checkCoalescing) {
+    this.checkCoalescing = checkCoalescing;
+  }
+
+  /**
+   * How long the result of a coalesced check is re-used for identical checks that arrive after it has finished.
+   * @since 5.3
+   */
+  int getCheckCoalescingCacheMillis() {
+    return checkCoalescingCacheMillis;
+  }
+
+  /**
+   * @since 5.3
+   */
+  int getCheckCoalescingCacheSize() {
+    return checkCoalescingCacheSize;
+  }
+
+  /**
+   * Whether new pipelines are derived from a template with the same language and user configuration,
+   * instead of loading all rules again, see {@link PipelinePool}.
+   * @since 5.3
+   */
+  boolean isPipelineTemplates() {
+    return pipelineTemplates;
+  }
+
+  /**
+   * @since 5.3
+   */
+  public void setPipelineTemplates(boolean pipelineTemplates) {
+    this.pipelineTemplates = pipelineTemplates;
+  }
+
+  /**
+   * The maximum number of pipeline templates kept, each one uses about as much memory as a pipeline.
+   * @since 5.3
+   */
+  int getPipelineTemplateCacheSize() {
+    return pipelineTemplateCacheSize;
+  }
+
+  /**
+   * File that the usage of the pipeline pool is saved to periodically and on shutdown, and loaded
+   * from on startup to prewarm the pool with the pipelines that were used most, or {@code null}.
+   * @since 5.3
+   */
+  @Nullable
+  File getPipelineProfileFile() {
+    return pipelineProfileFile;
+  }
+
+  /**
+   * @since 5.3
+   */
+  void setPipelineProfileFile(File pipelineProfileFile) {
+    this.pipelineProfileFile = pipelineProfileFile;
+  }
+
+  /**
+   * Maximum number of pipeline settings saved to the {@link #getPipelineProfileFile() profile}.
+   * @since 5.3
+   */
+  int getPipelineProfileMaxSettings() {
+    return pipelineProfileMaxSettings;
+  }
+
   /**
    * @since 4.5
    */
@@ -34,6 +34,7 @@ import java.io.InputStream;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 
@@ -123,6 +124,12 @@ public class HTTPServerTest {
     assertTrue("Expected special chars, got: '" + result + "'",
             result.contains("\u00f6\u00e4\u00fc\u00df"));   // special chars are intact
     assertTrue(checkV2(german, "bla <script>").contains("<script>"));  // no escaping of '<' and '>' needed, unlike in XML
+    // streaming, one line per match plus a summary line:
+    String[] streamed = checkV2(german, "ein kleiner test. Und wieder Erwarten noch was.", "&stream=true").split("\n");
+    assertTrue("Got " + Arrays.toString(streamed), streamed.length >= 3);
+    assertTrue(streamed[0].startsWith("{\"match\":"));
+    assertTrue(streamed[streamed.length - 1].startsWith("{\"summary\":"));
+    assertTrue(Arrays.toString(streamed).contains("UPPERCASE_SENTENCE_START"));
 
     // other tests for special characters
     String germanSpecialChars = checkV2(german, "ein kleiner test. Und wieder Erwarten noch was: öäüß+ öäüß.");
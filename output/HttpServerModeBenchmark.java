@@ -0,0 +1,141 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.dev;
+
+import org.languagetool.server.HTTPServer;
+import org.languagetool.server.HTTPServerConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Compares the check latency of the HTTP server with the JDK's thread-per-connection server and with
+ * the non-blocking NIO server, while many other connections are idle or send their request slowly.
+ * @since 5.3
+ */
+final class HttpServerModeBenchmark {
+
+  private static final String TEXT = "This is a example sentence with a error in it. And here is another sentence.";
+  private static final int WARMUP_REQUESTS = 20;
+
+  private HttpServerModeBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length > 4) {
+      System.out.println("Usage: " + HttpServerModeBenchmark.class.getSimpleName() + " [idleConnections] [slowConnections] [requests] [clientThreads]");
+      System.exit(1);
+    }
+    int idleConnections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int slowConnections = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    int requests = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+    int clientThreads = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+    System.out.println("Idle connections: " + idleConnections + ", slow connections: " + slowConnections +
+      ", requests: " + requests + ", client threads: " + clientThreads);
+    int port = 8091;
+    for (boolean nio : new boolean[]{false, true}) {
+      HTTPServerConfig config = new HTTPServerConfig(port);
+      config.setNioServer(nio);
+      HTTPServer server = new HTTPServer(config, false, "localhost", null);
+      List<Socket> sockets = new ArrayList<>();
+      ExecutorService clients = Executors.newFixedThreadPool(clientThreads);
+      try {
+        server.run();
+        for (int i = 0; i < WARMUP_REQUESTS; i++) {
+          check(port);
+        }
+        for (int i = 0; i < idleConnections; i++) {
+          sockets.add(new Socket("localhost", port));
+        }
+        for (int i = 0; i < slowConnections; i++) {
+          // a request whose body never arrives completely:
+          Socket socket = new Socket("localhost", port);
+          OutputStream out = socket.getOutputStream();
+          out.write(("POST /v2/check HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1000\r\n\r\nlanguage=en").getBytes(StandardCharsets.US_ASCII));
+          out.flush();
+          sockets.add(socket);
+        }
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+          futures.add(clients.submit(() -> {
+            long startTime = System.nanoTime();
+            check(port);
+            return (System.nanoTime() - startTime) / 1_000_000;
+          }));
+        }
+        List<Long> times = new ArrayList<>();
+        int errors = 0;
+        for (Future<Long> future : futures) {
+          try {
+            times.add(future.get(60, TimeUnit.SECONDS));
+          } catch (ExecutionException | TimeoutException e) {
+            errors++;
+          }
+        }
+        Collections.sort(times);
+        if (times.isEmpty()) {
+          System.out.printf("%-6s all %d requests failed%n", nio ? "nio:" : "jdk:", errors);
+        } else {
+          System.out.printf("%-6s p50: %5dms, p90: %5dms, p99: %5dms, max: %5dms, errors: %d%n", nio ? "nio:" : "jdk:",
+            percentile(times, 50), percentile(times, 90), percentile(times, 99), times.get(times.size() - 1), errors);
+        }
+      } finally {
+        clients.shutdownNow();
+        for (Socket socket : sockets) {
+          socket.close();
+        }
+        server.stop();
+      }
+    }
+  }
+
+  private static void check(int port) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/v2/check").openConnection();
+    conn.setDoOutput(true);
+    conn.setConnectTimeout(10_000);
+    conn.setReadTimeout(60_000);
+    try (OutputStream out = conn.getOutputStream()) {
+      out.write(("language=en-US&text=" + URLEncoder.encode(TEXT, "UTF-8")).getBytes(StandardCharsets.UTF_8));
+    }
+    if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+      throw new IOException("Got status " + conn.getResponseCode());
+    }
+    try (InputStream in = conn.getInputStream()) {
+      while (in.read() != -1) {
+        // read the complete response so the connection can be reused
+      }
+    }
+  }
+
+  private static long percentile(List<Long> sortedTimes, int percentile) {
+    int index = (int) Math.ceil(percentile / 100.0 * sortedTimes.size()) - 1;
+    return sortedTimes.get(Math.max(index, 0));
+  }
+
+}
@@ -0,0 +1,187 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.jetbrains.annotations.Nullable;
+import org.languagetool.rules.RuleMatch;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the sentences and the sentence-level rule matches of the latest check of a
+ * text session (see {@link UserConfig#getTextSessionId()}). When the same text is checked again
+ * after a small edit, only the sentences that were changed need to be analyzed and checked again.
+ * Matches of unchanged sentences are re-used, their positions get adjusted to the new text.
+ * Text-level rules are run again on the complete text if any sentence has changed, even
+ * if the change is outside the paragraphs a rule considers (see {@link org.languagetool.rules.TextLevelRule#minToCheckParagraph()}):
+ * their matches are only re-used if the text is unchanged.
+ * Like {@link ResultCache}, one instance can be shared by {@link JLanguageTool} objects
+ * of different configurations, as the configuration is part of each entry.
+ * @since 5.3
+ */
+@Experimental
+public class IncrementalCheckCache {
+
+  private final Cache<Long, Snapshot> sessions;
+
+  /**
+   * Create a cache that forgets sessions 5 minutes after their latest check.
+   * @param maxSessions maximum number of text sessions to remember
+   */
+  public IncrementalCheckCache(long maxSessions) {
+    this(maxSessions, 5, TimeUnit.MINUTES);
+  }
+
+  /**
+   * @param maxSessions maximum number of text sessions to remember
+   * @param expireAfter time to forget a session after its latest check
+   */
+  public IncrementalCheckCache(long maxSessions, long expireAfter, TimeUnit timeUnit) {
+    if (maxSessions < 0) {
+      throw new IllegalArgumentException("Incremental check cache size must be >= 0: " + maxSessions);
+    }
+    sessions = CacheBuilder.newBuilder()
+      .maximumSize(maxSessions)
+      .recordStats()
+      .expireAfterAccess(expireAfter, timeUnit)
+      .build();
+  }
+
+  public Cache<Long, Snapshot> getSessionCache() {
+    return sessions;
+  }
+
+  /**
+   * @return the result of the latest check of the session, or {@code null} if the session is unknown
+   * or its latest check used a different configuration
+   */
+  @Nullable
+  Snapshot get(long textSessionId, Object configKey) {
+    Snapshot snapshot = sessions.getIfPresent(textSessionId);
+    if (snapshot != null && snapshot.configKey.equals(configKey)) {
+      return snapshot;
+    }
+    return null;
+  }
+
+  void put(long textSessionId, Snapshot snapshot) {
+    sessions.put(textSessionId, snapshot);
+  }
+
+  /**
+   * The result of the latest check of a text session.
+   */
+  static class Snapshot {
+    private final Object configKey;
+    private final List<String> sentences;
+    private final List<AnalyzedSentence> analyzedSentences;
+    // matches relative to the start of their sentence, null for sentences that have not been checked:
+    private final List<List<RuleMatch>> sentenceMatches;
+    // matches of the text-level rules with positions in the plain text, null if not run:
+    private final List<RuleMatch> textLevelMatches;
+
+    Snapshot(Object configKey, List<String> sentences, List<AnalyzedSentence> analyzedSentences,
+             List<List<RuleMatch>> sentenceMatches, @Nullable List<RuleMatch> textLevelMatches) {
+      this.configKey = Objects.requireNonNull(configKey);
+      this.sentences = Collections.unmodifiableList(sentences);
+      this.analyzedSentences = Collections.unmodifiableList(analyzedSentences);
+      this.sentenceMatches = Collections.unmodifiableList(sentenceMatches);
+      this.textLevelMatches = textLevelMatches;
+    }
+
+    /**
+     * Compare the sentences of this snapshot to the sentences of the new text.
+     */
+    Diff diff(List<String> newSentences) {
+      int oldSize = sentences.size();
+      int newSize = newSentences.size();
+      int minSize = Math.min(oldSize, newSize);
+      // the last sentence of a text is marked as paragraph end, so its analysis can
+      // only be re-used if it's also the last sentence in the new text:
+      int prefix = 0;
+      while (prefix < minSize && sentences.get(prefix).equals(newSentences.get(prefix)) &&
+             (prefix == oldSize - 1) == (prefix == newSize - 1)) {
+        prefix++;
+      }
+      int suffix = 0;
+      while (suffix < minSize - prefix &&
+             sentences.get(oldSize - 1 - suffix).equals(newSentences.get(newSize - 1 - suffix))) {
+        suffix++;
+      }
+      return new Diff(oldSize, newSize, prefix, suffix);
+    }
+
+    AnalyzedSentence getAnalyzedSentence(int oldIndex) {
+      return analyzedSentences.get(oldIndex);
+    }
+
+    @Nullable
+    List<RuleMatch> getSentenceMatches(int oldIndex) {
+      return sentenceMatches.get(oldIndex);
+    }
+
+    @Nullable
+    List<RuleMatch> getTextLevelMatches() {
+      return textLevelMatches;
+    }
+  }
+
+  /**
+   * Unchanged sentences at the start and end of a text, compared to the previous version of the text.
+   */
+  static class Diff {
+    private final int oldSize;
+    private final int newSize;
+    private final int prefix;
+    private final int suffix;
+
+    Diff(int oldSize, int newSize, int prefix, int suffix) {
+      this.oldSize = oldSize;
+      this.newSize = newSize;
+      this.prefix = prefix;
+      this.suffix = suffix;
+    }
+
+    /**
+     * @return the index of the unchanged sentence in the previous text, or {@code -1} if the sentence is new or changed
+     */
+    int oldIndexOf(int newIndex) {
+      if (newIndex < prefix) {
+        return newIndex;
+      }
+      if (newIndex >= newSize - suffix) {
+        return oldSize - (newSize - newIndex);
+      }
+      return -1;
+    }
+
+    boolean isUnchanged() {
+      return oldSize == newSize && prefix + suffix == newSize;
+    }
+
+    int changedSentenceCount() {
+      return newSize - prefix - suffix;
+    }
+  }
+}
@@ -0,0 +1,363 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules.patterns;
+
+import org.jetbrains.annotations.Nullable;
+import org.languagetool.AnalyzedSentence;
+import org.languagetool.AnalyzedToken;
+import org.languagetool.AnalyzedTokenReadings;
+import org.languagetool.Experimental;
+import org.languagetool.rules.Rule;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link RuleSet} with an inverted index over what the pattern tokens of {@link AbstractPatternRule}s
+ * (including {@link org.languagetool.tagging.disambiguation.rules.DisambiguationPatternRule}s) require:
+ * token forms, lemmas, and POS tag prefixes. For each rule, up to {@link #MAX_CONDITIONS} of the most
+ * selective requirements are indexed, and {@link #rulesForSentence(AnalyzedSentence)} returns only the rules
+ * whose indexed requirements are all met by at least one token of the sentence. Other rules are always returned.
+ * @since 5.3
+ */
+@Experimental
+public class IndexedRuleSet extends RuleSet {
+
+  static final int MAX_CONDITIONS = 2;
+
+  // a condition that (almost) every sentence meets isn't worth indexing:
+  private static final double MAX_INDEXED_PROBABILITY = 0.5;
+
+  private static final Statistics globalStatistics = new Statistics();
+
+  // read once, not for every sentence:
+  private static final LeadingTokenTrie.Mode leadingTokenTrieMode = LeadingTokenTrie.Mode.fromSystemProperty();
+
+  private final List<Rule> rules;
+  private final Condition[] conditions = new Condition[MAX_CONDITIONS];
+  private final int[] posTagPrefixLengths;
+  private final Statistics statistics = new Statistics();
+  private volatile LeadingTokenTrie leadingTokenTrie;
+
+  /**
+   * @param rules the rules, {@link #rulesForSentence(AnalyzedSentence)} keeps their order
+   */
+  public IndexedRuleSet(List<? extends Rule> rules) {
+    this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+    for (int i = 0; i < MAX_CONDITIONS; i++) {
+      conditions[i] = new Condition();
+    }
+    SortedSet<Integer> prefixLengths = new TreeSet<>();
+    for (int ruleIndex = 0; ruleIndex < this.rules.size(); ruleIndex++) {
+      List<Requirement> requirements = getRequirements(this.rules.get(ruleIndex));
+      requirements.sort(Comparator.comparingDouble(r -> r.probability));
+      for (int i = 0; i < MAX_CONDITIONS; i++) {
+        if (i < requirements.size() && requirements.get(i).probability <= MAX_INDEXED_PROBABILITY) {
+          conditions[i].add(ruleIndex, requirements.get(i));
+          for (String prefix : requirements.get(i).posTagPrefixes) {
+            prefixLengths.add(prefix.length());
+          }
+        } else {
+          conditions[i].always.set(ruleIndex);
+        }
+      }
+    }
+    posTagPrefixLengths = prefixLengths.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  @Override
+  public List<Rule> allRules() {
+    return rules;
+  }
+
+  @Override
+  public List<Rule> rulesForSentence(AnalyzedSentence sentence) {
+    BitSet candidates = getCandidates(new SentenceKeys(sentence));
+    recordLookup(candidates);
+    List<Rule> result = new ArrayList<>(candidates.cardinality());
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      result.add(rules.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Like {@link #rulesForSentence(AnalyzedSentence)}, but for rules that modify the sentence, like
+   * disambiguation rules: when a rule changes the sentence, call {@link Candidates#update(AnalyzedSentence)},
+   * so that rules that require e.g. a POS tag added by the change aren't skipped.
+   */
+  public Candidates candidatesFor(AnalyzedSentence sentence) {
+    return new Candidates(sentence);
+  }
+
+  /**
+   * @return a trie over the leading tokens of the pattern rules of this rule set,
+   * or {@code null} if it's disabled, see {@link LeadingTokenTrie.Mode#fromSystemProperty()}
+   */
+  @Nullable
+  public LeadingTokenTrie getLeadingTokenTrie() {
+    LeadingTokenTrie.Mode mode = leadingTokenTrieMode;
+    if (mode == LeadingTokenTrie.Mode.OFF) {
+      return null;
+    }
+    LeadingTokenTrie trie = leadingTokenTrie;
+    if (trie == null) {
+      synchronized (this) {
+        trie = leadingTokenTrie;
+        if (trie == null) {
+          trie = new LeadingTokenTrie(rules, mode);
+          leadingTokenTrie = trie;
+        }
+      }
+    }
+    return trie;
+  }
+
+  private BitSet getCandidates(SentenceKeys keys) {
+    BitSet result = null;
+    for (Condition condition : conditions) {
+      BitSet bits = condition.evaluate(keys, posTagPrefixLengths);
+      if (result == null) {
+        result = bits;
+      } else {
+        result.and(bits);
+      }
+    }
+    return result;
+  }
+
+  private void recordLookup(BitSet candidates) {
+    statistics.add(rules.size(), candidates.cardinality());
+    globalStatistics.add(rules.size(), candidates.cardinality());
+  }
+
+  /**
+   * Statistics about the rules skipped by this rule set.
+   */
+  public Statistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * Statistics about the rules skipped by all instances of this class.
+   */
+  public static Statistics getGlobalStatistics() {
+    return globalStatistics;
+  }
+
+  private static List<Requirement> getRequirements(Rule rule) {
+    List<Requirement> requirements = new ArrayList<>();
+    if (!(rule instanceof AbstractPatternRule)) {
+      return requirements;
+    }
+    for (PatternToken patternToken : ((AbstractPatternRule) rule).getPatternTokens()) {
+      Set<String> forms = patternToken.calcFormHints();
+      if (forms != null && !forms.isEmpty()) {
+        requirements.add(new Requirement(lowercase(forms), Collections.emptySet(), Collections.emptySet()));
+      }
+      Set<String> lemmas = patternToken.calcLemmaHints();
+      if (lemmas != null && !lemmas.isEmpty()) {
+        requirements.add(new Requirement(Collections.emptySet(), lowercase(lemmas), Collections.emptySet()));
+      }
+      Set<String> posTagPrefixes = patternToken.calcPosTagPrefixHints();
+      if (posTagPrefixes != null && !posTagPrefixes.isEmpty()) {
+        requirements.add(new Requirement(Collections.emptySet(), Collections.emptySet(), posTagPrefixes));
+      }
+    }
+    return requirements;
+  }
+
+  private static Set<String> lowercase(Set<String> strings) {
+    Set<String> result = new HashSet<>();
+    for (String s : strings) {
+      result.add(s.toLowerCase());
+    }
+    return result;
+  }
+
+  /**
+   * Something a rule needs at least one token of the sentence to have: one of the forms,
+   * one of the lemmas, or a POS tag starting with one of the prefixes.
+   */
+  private static class Requirement {
+    private final Set<String> forms;
+    private final Set<String> lemmas;
+    private final Set<String> posTagPrefixes;
+    // rough guess of the probability that a sentence meets the requirement:
+    private final double probability;
+
+    Requirement(Set<String> forms, Set<String> lemmas, Set<String> posTagPrefixes) {
+      this.forms = forms;
+      this.lemmas = lemmas;
+      this.posTagPrefixes = posTagPrefixes;
+      double probability = (forms.size() + lemmas.size()) * 0.02;
+      for (String prefix : posTagPrefixes) {
+        // short prefixes like "N" or "V" occur in most sentences:
+        probability += prefix.length() <= 1 ? 0.9 : prefix.length() == 2 ? 0.4 : 0.15;
+      }
+      this.probability = Math.min(probability, 1);
+    }
+  }
+
+  /**
+   * One slot of indexed requirements, each rule has at most one requirement per slot.
+   */
+  private static class Condition {
+    private final BitSet always = new BitSet();
+    private final Map<String, BitSet> forms = new HashMap<>();
+    private final Map<String, BitSet> lemmas = new HashMap<>();
+    private final Map<String, BitSet> posTagPrefixes = new HashMap<>();
+
+    void add(int ruleIndex, Requirement requirement) {
+      requirement.forms.forEach(form -> forms.computeIfAbsent(form, k -> new BitSet()).set(ruleIndex));
+      requirement.lemmas.forEach(lemma -> lemmas.computeIfAbsent(lemma, k -> new BitSet()).set(ruleIndex));
+      requirement.posTagPrefixes.forEach(prefix -> posTagPrefixes.computeIfAbsent(prefix, k -> new BitSet()).set(ruleIndex));
+    }
+
+    BitSet evaluate(SentenceKeys keys, int[] posTagPrefixLengths) {
+      BitSet result = (BitSet) always.clone();
+      or(result, forms, keys.forms);
+      or(result, lemmas, keys.lemmas);
+      if (!posTagPrefixes.isEmpty()) {
+        for (String posTag : keys.posTags) {
+          for (int length : posTagPrefixLengths) {
+            if (length > posTag.length()) {
+              break;
+            }
+            BitSet bits = posTagPrefixes.get(posTag.substring(0, length));
+            if (bits != null) {
+              result.or(bits);
+            }
+          }
+        }
+      }
+      return result;
+    }
+
+    private static void or(BitSet result, Map<String, BitSet> index, Set<String> keys) {
+      if (index.isEmpty()) {
+        return;
+      }
+      for (String key : keys) {
+        BitSet bits = index.get(key);
+        if (bits != null) {
+          result.or(bits);
+        }
+      }
+    }
+  }
+
+  /**
+   * The forms, lemmas and POS tags of a sentence, in the way the pattern tokens can match them.
+   */
+  private static class SentenceKeys {
+    private final Set<String> forms = new HashSet<>();
+    private final Set<String> lemmas = new HashSet<>();
+    private final Set<String> posTags = new HashSet<>();
+
+    SentenceKeys(AnalyzedSentence sentence) {
+      add(sentence);
+    }
+
+    void add(AnalyzedSentence sentence) {
+      for (AnalyzedTokenReadings token : sentence.getTokens()) {
+        forms.add(token.getToken().toLowerCase());
+        for (AnalyzedToken reading : token.getReadings()) {
+          String form = reading.getToken().toLowerCase();
+          forms.add(form);
+          lemmas.add(reading.getLemma() != null ? reading.getLemma().toLowerCase() : form);
+          if (reading.getPOSTag() != null) {
+            posTags.add(reading.getPOSTag());
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The candidate rules for a sentence that may be modified by the rules.
+   */
+  public class Candidates {
+    private final SentenceKeys keys;
+    private BitSet bits;
+
+    private Candidates(AnalyzedSentence sentence) {
+      keys = new SentenceKeys(sentence);
+      bits = getCandidates(keys);
+      recordLookup(bits);
+    }
+
+    /**
+     * @return the index of the next candidate rule in {@link #allRules()} at or after {@code fromIndex}, or {@code -1}
+     */
+    public int nextIndex(int fromIndex) {
+      return bits.nextSetBit(fromIndex);
+    }
+
+    /**
+     * Consider the forms, lemmas and POS tags of the modified sentence, too.
+     */
+    public void update(AnalyzedSentence modifiedSentence) {
+      keys.add(modifiedSentence);
+      bits = getCandidates(keys);
+    }
+  }
+
+  /**
+   * Counts the rules that could be skipped because a sentence doesn't meet their requirements.
+   */
+  public static class Statistics {
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder rules = new LongAdder();
+    private final LongAdder candidates = new LongAdder();
+
+    void add(int ruleCount, int candidateCount) {
+      lookups.increment();
+      rules.add(ruleCount);
+      candidates.add(candidateCount);
+    }
+
+    /** The number of sentences rules were selected for. */
+    public long getLookups() {
+      return lookups.sum();
+    }
+
+    /** The number of rules returned for all sentences. */
+    public long getCandidateRules() {
+      return candidates.sum();
+    }
+
+    /** The number of rules skipped for all sentences. */
+    public long getSkippedRules() {
+      return rules.sum() - candidates.sum();
+    }
+
+    @Override
+    public String toString() {
+      long total = rules.sum();
+      return getLookups() + " lookups, " + getCandidateRules() + " candidate rules, " + getSkippedRules() + " skipped rules" +
+        (total > 0 ? String.format(" (%.1f%%)", getSkippedRules() * 100.0 / total) : "");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "IndexedRuleSet{" + rules.size() + " rules, " + statistics + "}";
+  }
+}
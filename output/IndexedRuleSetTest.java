@@ -0,0 +1,122 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules.patterns;
+
+import org.junit.Test;
+import org.languagetool.AnalyzedSentence;
+import org.languagetool.AnalyzedToken;
+import org.languagetool.AnalyzedTokenReadings;
+import org.languagetool.FakeLanguage;
+import org.languagetool.rules.Rule;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.languagetool.rules.patterns.PatternRuleBuilderHelper.*;
+
+public class IndexedRuleSetTest {
+  private static final AnalyzedSentence sampleSentence = sentence(new AnalyzedToken("token", "pos:sing", "lemma"));
+
+  @Test
+  public void testTextHints() {
+    PatternRule suitable1 = ruleOf(csToken("token"));
+    PatternRule suitable2 = ruleOf(token("Token"));
+    PatternRule suitable3 = ruleOf(tokenRegex("token|another"));
+    PatternRule unsuitable = ruleOf(csToken("unsuitable"));
+    assertRulesForSentence(Arrays.asList(suitable1, unsuitable, suitable2, suitable3), suitable1, suitable2, suitable3);
+  }
+
+  @Test
+  public void testLemmaHints() {
+    PatternRule suitable1 = ruleOf(new PatternTokenBuilder().token("Lemma").matchInflectedForms().build());
+    PatternRule suitable2 = ruleOf(new PatternTokenBuilder().csTokenRegex("lemm[ab]").matchInflectedForms().build());
+    PatternRule unsuitable = ruleOf(new PatternTokenBuilder().csToken("unsuitable").matchInflectedForms().build());
+    assertRulesForSentence(Arrays.asList(suitable1, suitable2, unsuitable), suitable1, suitable2);
+  }
+
+  @Test
+  public void testLemmaHintsOfAndGroupWithDifferentReadings() {
+    // the intersection of the lemmas would only be "lemma3":
+    PatternToken token = new PatternTokenBuilder().csTokenRegex("lemma1|lemma3").matchInflectedForms().build();
+    token.setAndGroupElement(new PatternTokenBuilder().csTokenRegex("lemma2|lemma3").matchInflectedForms().build());
+    PatternRule suitable = ruleOf(token);
+    AnalyzedSentence sentence = new AnalyzedSentence(new AnalyzedTokenReadings[]{new AnalyzedTokenReadings(Arrays.asList(
+      new AnalyzedToken("token", "pos1", "lemma1"),
+      new AnalyzedToken("token", "pos2", "lemma2")), 0)});
+    assertEquals(Collections.singletonList(suitable), new IndexedRuleSet(Collections.singletonList(suitable)).rulesForSentence(sentence));
+  }
+
+  @Test
+  public void testPosTagHints() {
+    PatternRule suitable1 = ruleOf(pos("pos:sing"));
+    PatternRule suitable2 = ruleOf(posRegex("pos:.*"));
+    PatternRule suitable3 = ruleOf(posRegex("other|pos:sing"));
+    PatternRule unrelated1 = ruleOf(posRegex(".*:sing"));
+    PatternRule unrelated2 = ruleOf(posRegex("(pos|other):sing"));
+    PatternRule unsuitable1 = ruleOf(pos("pos:plur"));
+    PatternRule unsuitable2 = ruleOf(posRegex("other:.*"));
+    assertRulesForSentence(Arrays.asList(suitable1, suitable2, suitable3, unrelated1, unrelated2, unsuitable1, unsuitable2),
+      suitable1, suitable2, suitable3, unrelated1, unrelated2);
+  }
+
+  @Test
+  public void testAllIndexedRequirementsMustBeMet() {
+    PatternRule suitable = ruleOf(csToken("token"), posRegex("pos.*"));
+    PatternRule unsuitable = ruleOf(csToken("token"), csToken("missing"));
+    PatternRule optionalToken = ruleOf(csToken("token"), new PatternTokenBuilder().csToken("missing").min(0).build());
+    assertRulesForSentence(Arrays.asList(suitable, unsuitable, optionalToken), suitable, optionalToken);
+  }
+
+  @Test
+  public void testCandidatesUpdate() {
+    PatternRule rule1 = ruleOf(pos("new"));
+    PatternRule rule2 = ruleOf(csToken("token"));
+    IndexedRuleSet ruleSet = new IndexedRuleSet(Arrays.asList(rule1, rule2));
+    IndexedRuleSet.Candidates candidates = ruleSet.candidatesFor(sampleSentence);
+    assertEquals(1, candidates.nextIndex(0));
+    candidates.update(sentence(new AnalyzedToken("token", "new", "lemma")));
+    assertEquals(0, candidates.nextIndex(0));
+    assertEquals(1, candidates.nextIndex(1));
+    assertEquals(-1, candidates.nextIndex(2));
+  }
+
+  @Test
+  public void testStatistics() {
+    IndexedRuleSet ruleSet = new IndexedRuleSet(Arrays.asList(ruleOf(csToken("token")), ruleOf(csToken("unsuitable"))));
+    ruleSet.rulesForSentence(sampleSentence);
+    ruleSet.rulesForSentence(sampleSentence);
+    assertEquals(2, ruleSet.getStatistics().getLookups());
+    assertEquals(2, ruleSet.getStatistics().getCandidateRules());
+    assertEquals(2, ruleSet.getStatistics().getSkippedRules());
+  }
+
+  private static void assertRulesForSentence(List<? extends Rule> rules, PatternRule... expected) {
+    assertEquals(Arrays.asList(expected), new IndexedRuleSet(rules).rulesForSentence(sampleSentence));
+  }
+
+  private static AnalyzedSentence sentence(AnalyzedToken token) {
+    return new AnalyzedSentence(new AnalyzedTokenReadings[]{new AnalyzedTokenReadings(token)});
+  }
+
+  private static PatternRule ruleOf(PatternToken... tokens) {
+    return new PatternRule("", new FakeLanguage(), Arrays.asList(tokens), "", "", "");
+  }
+}
@@ -0,0 +1,101 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/**
+ * Key for the {@link ResultCache}: a sentence and the {@link CheckConfiguration} it was checked with.
+ * Replaces {@link InputSentence} keys, which had to hash and compare all rule sets for every sentence
+ * lookup: the configuration's fingerprint is compared first, the configuration itself (usually the
+ * same interned instance) only if the fingerprints are equal.
+ * @since 5.3
+ */
+@Experimental
+public final class InputSentenceKey {
+
+  private final String text;
+  private final long configFingerprint;
+  @Nullable
+  private final CheckConfiguration config;
+  private final Long textSessionId;
+
+  public InputSentenceKey(String text, CheckConfiguration config) {
+    this(text, config, null);
+  }
+
+  /**
+   * @param textSessionId only used for remote rules, whose results may depend on the text session
+   */
+  public InputSentenceKey(String text, CheckConfiguration config, @Nullable Long textSessionId) {
+    this(text, config.getFingerprint(), config, textSessionId);
+  }
+
+  /**
+   * For keys restored from a {@link ResultCacheSnapshot}, which only contains the fingerprint of the configuration:
+   * they equal any key with the same text and fingerprint.
+   */
+  InputSentenceKey(String text, long configFingerprint, @Nullable Long textSessionId) {
+    this(text, configFingerprint, null, textSessionId);
+  }
+
+  InputSentenceKey(String text, long configFingerprint, @Nullable CheckConfiguration config, @Nullable Long textSessionId) {
+    this.text = Objects.requireNonNull(text);
+    this.configFingerprint = configFingerprint;
+    this.config = config;
+    this.textSessionId = textSessionId;
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  public long getConfigFingerprint() {
+    return configFingerprint;
+  }
+
+  @Nullable
+  public Long getTextSessionId() {
+    return textSessionId;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    InputSentenceKey other = (InputSentenceKey) o;
+    return configFingerprint == other.configFingerprint &&
+      text.equals(other.text) &&
+      Objects.equals(textSessionId, other.textSessionId) &&
+      // configurations with colliding fingerprints must not share results:
+      (config == null || other.config == null || config.equals(other.config));
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * text.hashCode() + Long.hashCode(configFingerprint);
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+}
@@ -38,6 +38,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.util.*;
@@ -109,6 +110,8 @@ public class JLanguageTool {
   public static final String DICTIONARY_FILENAME_EXTENSION = ".dict";
 
   private final ResultCache cache;
+  private IncrementalCheckCache incrementalCheckCache;
+  private RuleTimingCollector ruleTimingCollector;
   private final UserConfig userConfig;
   private final GlobalConfig globalConfig;
   private final ShortDescriptionProvider descProvider;
@@ -184,6 +187,7 @@ public class JLanguageTool {
   private final List<RuleMatchFilter> matchFilters = new LinkedList<>();
 
   private CheckCancelledCallback checkCancelledCallback;
+  private volatile CheckDeadline checkDeadline;  // of the running check, if any
 
   private PrintStream printStream;
   private boolean listUnknownWords;
@@ -332,6 +336,45 @@ public class JLanguageTool {
     this.inputLogging = inputLogging;
   }
 
+  /**
+   * Create a JLanguageTool with the same configuration as {@code template}, without loading the pattern
+   * and false friend rules again: these are immutable once loaded and are shared (like the pattern rules
+   * from {@link Language#getPatternRules()} are shared by all instances for a language). All other rules
+   * may keep state while matching, so the built-in rules are created again, and rules activated later
+   * (language model, remote rules etc.) need to be activated again for the new instance.
+   * The sets of enabled and disabled rules and categories, the match filters etc. are copied.
+   * @since 5.3
+   */
+  protected JLanguageTool(JLanguageTool template) {
+    language = template.language;
+    altLanguages = template.altLanguages;
+    motherTongue = template.motherTongue;
+    userConfig = template.userConfig;
+    globalConfig = template.globalConfig;
+    cache = template.cache;
+    inputLogging = template.inputLogging;
+    descProvider = new ShortDescriptionProvider();
+    builtinRules = getAllBuiltinRules(language, ResourceBundleTools.getMessageBundle(language), userConfig, globalConfig);
+    for (Rule rule : template.userRules) {
+      if (rule instanceof AbstractPatternRule) {
+        userRules.add(rule);
+      }
+    }
+    updateOptionalLanguageModelRules(null);
+    disabledRules.addAll(template.disabledRules);
+    disabledRuleCategories.addAll(template.disabledRuleCategories);
+    enabledRules.addAll(template.enabledRules);
+    enabledRuleCategories.addAll(template.enabledRuleCategories);
+    matchFilters.addAll(template.matchFilters);
+    incrementalCheckCache = template.incrementalCheckCache;
+    ruleTimingCollector = template.ruleTimingCollector;
+    maxErrorsPerWordRate = template.maxErrorsPerWordRate;
+    checkCancelledCallback = template.checkCancelledCallback;
+    printStream = template.printStream;
+    listUnknownWords = template.listUnknownWords;
+    cleanOverlappingMatches = template.cleanOverlappingMatches;
+  }
+
   /**
    * Create a JLanguageTool and setup the built-in rules for the
    * given language and false friend rules for the text language / mother tongue pair.
@@ -443,6 +486,37 @@ public class JLanguageTool {
     this.checkCancelledCallback = callback;
   }
 
+  /**
+   * Whether the running check should stop, because of the {@link CheckCancelledCallback} or
+   * because its {@link CheckDeadline} has expired.
+   * @since 5.3
+   */
+  protected boolean isCheckCancelled() {
+    CheckDeadline deadline = checkDeadline;
+    return deadline != null && deadline.isExpired() || checkCancelledCallback != null && checkCancelledCallback.checkCancelled();
+  }
+
+  /**
+   * Remember the result of each check that has a text session id, so that the next check of the same
+   * session only needs to analyze and check the sentences that have been changed in the meantime.
+   * Use {@code null} (the default) to check all sentences every time.
+   * @since 5.3
+   */
+  @Experimental
+  public void setIncrementalCheckCache(@Nullable IncrementalCheckCache incrementalCheckCache) {
+    this.incrementalCheckCache = incrementalCheckCache;
+  }
+
+  /**
+   * Measure the time taken by the rules for a sample of the checked sentences.
+   * Use {@code null} (the default) to not measure anything.
+   * @since 5.3
+   */
+  @Experimental
+  public void setRuleTimingCollector(@Nullable RuleTimingCollector ruleTimingCollector) {
+    this.ruleTimingCollector = ruleTimingCollector;
+  }
+
   /**
    * Gets the ResourceBundle (i18n strings) for the default language of the user's system.
    */
@@ -687,6 +761,7 @@ public class JLanguageTool {
     disabledRules.add(ruleId);
     enabledRules.remove(ruleId);
     ruleSetCache.clear();
+    checkConfigurations.clear();
   }
 
   /**
@@ -699,6 +774,7 @@ public class JLanguageTool {
     disabledRules.addAll(ruleIds);
     enabledRules.removeAll(ruleIds);
     ruleSetCache.clear();
+    checkConfigurations.clear();
   }
 
   /**
@@ -712,6 +788,7 @@ public class JLanguageTool {
     disabledRuleCategories.add(id);
     enabledRuleCategories.remove(id);
     ruleSetCache.clear();
+    checkConfigurations.clear();
   }
 
   /**
@@ -751,6 +828,7 @@ public class JLanguageTool {
     disabledRules.remove(ruleId);
     enabledRules.add(ruleId);
     ruleSetCache.clear();
+    checkConfigurations.clear();
   }
 
   /**
@@ -764,6 +842,7 @@ public class JLanguageTool {
     disabledRuleCategories.remove(id);
     enabledRuleCategories.add(id);
     ruleSetCache.clear();
+    checkConfigurations.clear();
   }
 
   /**
@@ -825,6 +904,27 @@ public class JLanguageTool {
     return check(text, true, ParagraphHandling.NORMAL, listener);
   }
 
+  /**
+   * Check a text of any size paragraph by paragraph, without keeping the complete text in memory.
+   * Matches are only reported to the listener. See {@link StreamingChecker} for details
+   * and more options.
+   * @since 5.3
+   */
+  @Experimental
+  public void checkStream(Reader reader, RuleMatchListener listener) throws IOException {
+    new StreamingChecker(this).check(reader, listener);
+  }
+
+  /**
+   * Like {@link #checkStream(Reader, RuleMatchListener)}, but for a text that is provided in
+   * consecutive parts, e.g. its paragraphs.
+   * @since 5.3
+   */
+  @Experimental
+  public void checkStream(Iterator<AnnotatedText> textParts, RuleMatchListener listener) throws IOException {
+    new StreamingChecker(this).check(textParts, listener);
+  }
+
   /**
    * The main check method. Tokenizes the text into sentences and matches these
    * sentences against all currently active rules.
@@ -896,7 +996,31 @@ public class JLanguageTool {
    */
   public List<RuleMatch> check(AnnotatedText annotatedText, boolean tokenizeText, ParagraphHandling paraMode, RuleMatchListener listener,
       Mode mode, Level level, @Nullable ExecutorService remoteRulesThreadPool, @Nullable Long textSessionID) throws IOException {
-      List<String> sentences;
+    return check(annotatedText, tokenizeText, paraMode, listener, mode, level, remoteRulesThreadPool, textSessionID, null);
+  }
+
+  /**
+   * The main check method. Tokenizes the text into sentences and matches these
+   * sentences against all currently active rules depending on {@code mode}.
+   *
+   * @param deadline when given, the check stops early when the deadline has expired and returns the matches found so far
+   * @since 5.3
+   */
+  public List<RuleMatch> check(AnnotatedText annotatedText, boolean tokenizeText, ParagraphHandling paraMode, RuleMatchListener listener,
+      Mode mode, Level level, @Nullable ExecutorService remoteRulesThreadPool, @Nullable Long textSessionID,
+      @Nullable CheckDeadline deadline) throws IOException {
+    CheckDeadline previousDeadline = checkDeadline;
+    checkDeadline = deadline;
+    try (CheckDeadline.Scope ignored = CheckDeadline.enter(deadline)) {
+      return checkUntilDeadline(annotatedText, tokenizeText, paraMode, listener, mode, level, remoteRulesThreadPool, textSessionID);
+    } finally {
+      checkDeadline = previousDeadline;
+    }
+  }
+
+  private List<RuleMatch> checkUntilDeadline(AnnotatedText annotatedText, boolean tokenizeText, ParagraphHandling paraMode, RuleMatchListener listener,
+      Mode mode, Level level, @Nullable ExecutorService remoteRulesThreadPool, @Nullable Long textSessionID) throws IOException {
+    List<String> sentences;
     if (tokenizeText) {
       sentences = sentenceTokenize(annotatedText.getPlainText());
     } else {
@@ -909,7 +1033,18 @@ public class JLanguageTool {
     }
 
     unknownWords = new HashSet<>();
-    List<AnalyzedSentence> analyzedSentences = analyzeSentences(sentences);
+    Object incrementalConfigKey = null;
+    IncrementalCheckCache.Snapshot previousCheck = null;
+    IncrementalCheckCache.Diff sentenceDiff = null;
+    if (incrementalCheckCache != null && textSessionID != null && tokenizeText) {
+      incrementalConfigKey = getIncrementalConfigKey(paraMode, mode, level);
+      previousCheck = incrementalCheckCache.get(textSessionID, incrementalConfigKey);
+      if (previousCheck != null) {
+        sentenceDiff = previousCheck.diff(sentences);
+      }
+    }
+    List<AnalyzedSentence> analyzedSentences = sentenceDiff != null ?
+      analyzeSentences(sentences, previousCheck, sentenceDiff) : analyzeSentences(sentences);
 
     List<RuleMatch> remoteMatches = new LinkedList<>();
     List<FutureTask<RemoteRuleResult>> remoteRuleTasks = null;
@@ -927,8 +1062,14 @@ public class JLanguageTool {
     }
 
     long textCheckStart = System.currentTimeMillis();
-    List<RuleMatch> ruleMatches = performCheck(analyzedSentences, sentences, rules,
-      paraMode, annotatedText, listener, mode, level, remoteRulesThreadPool == null);
+    List<RuleMatch> ruleMatches;
+    if (incrementalConfigKey != null) {
+      ruleMatches = performIncrementalCheck(analyzedSentences, sentences, rules, paraMode, annotatedText, listener,
+        mode, level, remoteRulesThreadPool == null, textSessionID, incrementalConfigKey, previousCheck, sentenceDiff);
+    } else {
+      ruleMatches = performCheck(analyzedSentences, sentences, rules,
+        paraMode, annotatedText, listener, mode, level, remoteRulesThreadPool == null);
+    }
     long textCheckEnd = System.currentTimeMillis();
 
     fetchRemoteRuleResults(mode, level, analyzedSentences, remoteMatches, remoteRuleTasks, remoteRules,
@@ -959,11 +1100,23 @@ public class JLanguageTool {
   }
 
   private final Map<Level, RuleSet> ruleSetCache = new ConcurrentHashMap<>();
+  private final Map<Mode, Map<Level, CheckConfiguration>> checkConfigurations = new ConcurrentHashMap<>();
+
+  /**
+   * @return the current configuration of this object for the given mode and level, to be used in cache keys
+   * @since 5.3
+   */
+  @Experimental
+  public CheckConfiguration getCheckConfiguration(Mode mode, Level level) {
+    return checkConfigurations.computeIfAbsent(mode, m -> new ConcurrentHashMap<>()).computeIfAbsent(level,
+      l -> CheckConfiguration.of(language, motherTongue, disabledRules, disabledRuleCategories,
+        enabledRules, enabledRuleCategories, userConfig, altLanguages, mode, level));
+  }
 
   private RuleSet getActiveRulesForLevel(Level level) {
     return ruleSetCache.computeIfAbsent(level, l -> {
       List<Rule> allRules = getAllActiveRules();
-      return RuleSet.textLemmaHinted(l == Level.DEFAULT ? allRules.stream().filter(rule -> !rule.hasTag(Tag.picky)).collect(Collectors.toList()) : allRules);
+      return new IndexedRuleSet(l == Level.DEFAULT ? allRules.stream().filter(rule -> !rule.hasTag(Tag.picky)).collect(Collectors.toList()) : allRules);
     });
   }
 
@@ -973,13 +1126,16 @@ public class JLanguageTool {
                                         Map<Integer, Integer> matchOffset,
                                         AnnotatedText annotatedText, Long textSessionID) {
     if (remoteRuleTasks != null) {
+      CheckConfiguration checkConfiguration = getCheckConfiguration(mode, level);
       // fetch results from remote rules
       for (int taskIndex = 0; taskIndex < remoteRuleTasks.size(); taskIndex++) {
         FutureTask<RemoteRuleResult> task = remoteRuleTasks.get(taskIndex);
         RemoteRule rule = remoteRules.get(taskIndex);
         String ruleKey = rule.getId();
         try {
-          RemoteRuleResult result = task.get(); // can wait without timeout here, implemented in RemoteRule and TextChecker
+          CheckDeadline deadline = checkDeadline;
+          // can wait without timeout here, implemented in RemoteRule and TextChecker:
+          RemoteRuleResult result = deadline != null ? deadline.await(task, 0) : task.get();
           for (int sentenceIndex = 0; sentenceIndex < analyzedSentences.size(); sentenceIndex++) {
             AnalyzedSentence sentence = analyzedSentences.get(sentenceIndex);
             List<RuleMatch> matches = result.matchesForSentence(sentence);
@@ -988,10 +1144,8 @@ public class JLanguageTool {
             }
             if (cache != null && result.isSuccess()) {
               // store in cache
-              InputSentence cacheKey = new InputSentence(
-                sentence.getText(), language, motherTongue, disabledRules, disabledRuleCategories,
-                enabledRules, enabledRuleCategories, userConfig, altLanguages, mode, level, textSessionID);
-              Map<String, List<RuleMatch>> cacheEntry = cache.getRemoteMatchesCache().get(cacheKey, HashMap::new);
+              InputSentenceKey cacheKey = new InputSentenceKey(sentence.getText(), checkConfiguration, textSessionID);
+              Map<String, List<RuleMatch>> cacheEntry = cache.getRemoteMatchesCache().get(cacheKey, ConcurrentHashMap::new);
               // TODO check if result is from fallback, don't cache?
               //logger.info("Caching: Remote rule '{}'", ruleKey);
               cacheEntry.put(ruleKey, matches);
@@ -1019,6 +1173,9 @@ public class JLanguageTool {
           }
         } catch (InterruptedException | ExecutionException e) {
           logger.warn("Failed to fetch result from remote rule.", e);
+        } catch (TimeoutException e) {
+          task.cancel(true);
+          logger.info("Skipped result of remote rule {}: {}", ruleKey, e.getMessage());
         }
       }
 
@@ -1051,17 +1208,15 @@ public class JLanguageTool {
                                   List<Rule> allRules, List<AnalyzedSentence> analyzedSentences, Mode mode, Level level,
                                   List<FutureTask<RemoteRuleResult>> remoteRuleTasks, List<RemoteRule> remoteRules,
                                   Map<Integer, List<RuleMatch>> cachedResults, Map<Integer, Integer> matchOffset, Long textSessionID) {
-    List<InputSentence> cacheKeys = new LinkedList<>();
+    List<InputSentenceKey> cacheKeys = new ArrayList<>(analyzedSentences.size());
+    CheckConfiguration checkConfiguration = getCheckConfiguration(mode, level);
     int offset = 0;
     // prepare keys for caching, offsets for adjusting match positions
     for (int i = 0; i < analyzedSentences.size(); i++) {
       AnalyzedSentence s = analyzedSentences.get(i);
       matchOffset.put(i, offset);
       offset += s.getText().length();
-      InputSentence cacheKey = new InputSentence(s.getText(), language, motherTongue,
-        disabledRules, disabledRuleCategories, enabledRules, enabledRuleCategories,
-        userConfig, altLanguages, mode, level, textSessionID);
-      cacheKeys.add(cacheKey);
+      cacheKeys.add(new InputSentenceKey(s.getText(), checkConfiguration, textSessionID));
     }
     for (Rule r : allRules) {
       if (r instanceof RemoteRule) {
@@ -1072,12 +1227,12 @@ public class JLanguageTool {
           List<AnalyzedSentence> nonCachedSentences = new ArrayList<>();
           for (int sentenceIndex = 0; sentenceIndex < analyzedSentences.size(); sentenceIndex++) {
             // filter out sentences with cached results
-            InputSentence cacheKey = cacheKeys.get(sentenceIndex);
+            InputSentenceKey cacheKey = cacheKeys.get(sentenceIndex);
             String ruleKey = rule.getId();
             AnalyzedSentence sentence = analyzedSentences.get(sentenceIndex);
             Map<String, List<RuleMatch>> cacheEntry;
             try {
-              cacheEntry = cache.getRemoteMatchesCache().get(cacheKey, HashMap::new);
+              cacheEntry = cache.getRemoteMatchesCache().get(cacheKey, ConcurrentHashMap::new);
             } catch (ExecutionException e) {
               throw new RuntimeException(e);
             }
@@ -1085,6 +1240,12 @@ public class JLanguageTool {
               throw new RuntimeException("Couldn't access remote matches cache.");
             }
             List<RuleMatch> cachedMatches = cacheEntry.get(ruleKey);
+            if (cachedMatches == null) {
+              // matches of a restored cache entry can only refer to the remote rule itself:
+              cachedMatches = cache.getRestoredRemote(cacheKey, ruleKey, sentence, id -> id.equals(rule.getFullId()) ? rule : null);
+            } else {
+              cache.recordHit(cacheKey);
+            }
             // mark for check or retrieve from cache
             if (cachedMatches == null) {
               //logger.info("Checking: Remote rule '{}'", ruleKey);
@@ -1122,7 +1283,7 @@ public class JLanguageTool {
     List<AnalyzedSentence> analyzedSentences = new ArrayList<>();
     int j = 0;
     for (String sentence : sentences) {
-      if (checkCancelledCallback != null && checkCancelledCallback.checkCancelled()) {
+      if (isCheckCancelled()) {
         break;
       }
       AnalyzedSentence analyzedSentence = getAnalyzedSentence(sentence);
@@ -1136,6 +1297,34 @@ public class JLanguageTool {
     return analyzedSentences;
   }
 
+  /**
+   * Like {@link #analyzeSentences(List)}, but re-uses the analysis of sentences that are unchanged
+   * compared to the previous check of the same text session.
+   */
+  private List<AnalyzedSentence> analyzeSentences(List<String> sentences, IncrementalCheckCache.Snapshot previousCheck,
+                                                  IncrementalCheckCache.Diff diff) throws IOException {
+    List<AnalyzedSentence> analyzedSentences = new ArrayList<>(sentences.size());
+    for (int i = 0; i < sentences.size(); i++) {
+      if (isCheckCancelled()) {
+        break;
+      }
+      AnalyzedSentence analyzedSentence;
+      int oldIndex = diff.oldIndexOf(i);
+      if (oldIndex != -1) {
+        analyzedSentence = previousCheck.getAnalyzedSentence(oldIndex);
+      } else {
+        analyzedSentence = getAnalyzedSentence(sentences.get(i));
+        if (i == sentences.size() - 1) {
+          analyzedSentence = markAsParagraphEnd(analyzedSentence);
+        }
+      }
+      rememberUnknownWords(analyzedSentence);
+      analyzedSentences.add(analyzedSentence);
+      printSentenceInfo(analyzedSentence);
+    }
+    return analyzedSentences;
+  }
+
   @NotNull
   static AnalyzedSentence markAsParagraphEnd(AnalyzedSentence analyzedSentence) {
     AnalyzedTokenReadings[] anTokens = analyzedSentence.getTokens();
@@ -1187,6 +1376,56 @@ public class JLanguageTool {
     }
   }
 
+  /**
+   * Check the sentences like {@link #performCheck(List, List, RuleSet, ParagraphHandling, AnnotatedText, RuleMatchListener, Mode, Level, boolean)},
+   * but re-use the matches of sentences that are unchanged compared to the previous check of the
+   * text session, then remember the result for the next check of the session.
+   */
+  private List<RuleMatch> performIncrementalCheck(List<AnalyzedSentence> analyzedSentences, List<String> sentenceTexts,
+                                                  RuleSet ruleSet, ParagraphHandling paraMode, AnnotatedText annotatedText,
+                                                  RuleMatchListener listener, Mode mode, Level level, boolean checkRemoteRules,
+                                                  long textSessionID, Object configKey,
+                                                  @Nullable IncrementalCheckCache.Snapshot previousCheck,
+                                                  @Nullable IncrementalCheckCache.Diff diff) throws IOException {
+    int sentenceCount = analyzedSentences.size();
+    List<List<RuleMatch>> reusedSentenceMatches = new ArrayList<>(Collections.nCopies(sentenceCount, null));
+    List<RuleMatch> reusedTextLevelMatches = null;
+    if (previousCheck != null && diff != null) {
+      for (int i = 0; i < sentenceCount; i++) {
+        int oldIndex = diff.oldIndexOf(i);
+        if (oldIndex != -1) {
+          reusedSentenceMatches.set(i, previousCheck.getSentenceMatches(oldIndex));
+        }
+      }
+      // text-level rules get all sentences and report positions relative to them, so their matches can't be
+      // re-used per paragraph, even if a rule only looks at the paragraphs near a match:
+      if (diff.isUnchanged()) {
+        reusedTextLevelMatches = previousCheck.getTextLevelMatches();
+      }
+      printIfVerbose("Incremental check: " + diff.changedSentenceCount() + " of " + sentenceCount + " sentences changed");
+    }
+    List<SentenceData> sentences = computeSentenceData(analyzedSentences, sentenceTexts);
+    TextCheckCallable matcher = new TextCheckCallable(ruleSet, sentences, paraMode, annotatedText, listener, mode, level, checkRemoteRules);
+    matcher.reuseMatches(reusedSentenceMatches, reusedTextLevelMatches);
+    List<RuleMatch> ruleMatches;
+    try {
+      ruleMatches = matcher.call();
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    if (!isCheckCancelled()) {
+      incrementalCheckCache.put(textSessionID, new IncrementalCheckCache.Snapshot(configKey, sentenceTexts,
+        analyzedSentences, matcher.sentenceMatches, matcher.textLevelMatches));
+    }
+    return ruleMatches;
+  }
+
+  private Object getIncrementalConfigKey(ParagraphHandling paraMode, Mode mode, Level level) {
+    return Arrays.asList(getCheckConfiguration(mode, level), paraMode);
+  }
+
   protected final List<SentenceData> computeSentenceData(List<AnalyzedSentence> analyzedSentences, List<String> texts) {
     int charCount = 0;
     int lineCount = 0;
@@ -1237,9 +1476,21 @@ public class JLanguageTool {
    */
   public List<RuleMatch> checkAnalyzedSentence(ParagraphHandling paraMode,
                                                List<Rule> rules, AnalyzedSentence analyzedSentence, boolean checkRemoteRules) throws IOException {
+    return checkAnalyzedSentence(paraMode, rules, analyzedSentence, checkRemoteRules, null);
+  }
+
+  @Nullable
+  private static LeadingTokenTrie.Starts findRuleStarts(RuleSet rules, AnalyzedSentence sentence) {
+    LeadingTokenTrie trie = rules instanceof IndexedRuleSet ? ((IndexedRuleSet) rules).getLeadingTokenTrie() : null;
+    return trie != null ? trie.find(sentence) : null;
+  }
+
+  private List<RuleMatch> checkAnalyzedSentence(ParagraphHandling paraMode, List<Rule> rules, AnalyzedSentence analyzedSentence,
+                                                boolean checkRemoteRules, @Nullable LeadingTokenTrie.Starts ruleStarts) throws IOException {
     List<RuleMatch> sentenceMatches = new ArrayList<>();
+    RuleTimingCollector timingCollector = ruleTimingCollector != null && ruleTimingCollector.sample() ? ruleTimingCollector : null;
     for (Rule rule : rules) {
-      if (checkCancelledCallback != null && checkCancelledCallback.checkCancelled()) {
+      if (isCheckCancelled()) {
         break;
       }
 
@@ -1252,7 +1503,11 @@ public class JLanguageTool {
       if (paraMode == ParagraphHandling.ONLYPARA) {
         continue;
       }
-      RuleMatch[] thisMatches = rule.match(analyzedSentence);
+      long startTime = timingCollector != null ? System.nanoTime() : 0;
+      RuleMatch[] thisMatches = ruleStarts != null ? ruleStarts.match(rule, analyzedSentence) : rule.match(analyzedSentence);
+      if (timingCollector != null) {
+        timingCollector.record(language, rule, System.nanoTime() - startTime, thisMatches.length);
+      }
       Collections.addAll(sentenceMatches, thisMatches);
     }
     if (sentenceMatches.isEmpty()) {
@@ -1702,6 +1957,12 @@ public class JLanguageTool {
     private final RuleMatchListener listener;
     private final Mode mode;
     private final Level level;
+    // set for incremental checks only:
+    private List<List<RuleMatch>> reusedSentenceMatches;
+    private List<RuleMatch> reusedTextLevelMatches;
+    private List<List<RuleMatch>> sentenceMatches;
+    private List<RuleMatch> textLevelMatches;
+    private Map<String, Rule> rulesByFullId;
 
     TextCheckCallable(RuleSet rules, List<SentenceData> sentences,
                       ParagraphHandling paraMode, AnnotatedText annotatedText,
@@ -1716,8 +1977,27 @@ public class JLanguageTool {
       this.level = Objects.requireNonNull(level);
     }
 
+    /**
+     * Use the given matches instead of running the rules again and keep the matches of this check
+     * in {@link #sentenceMatches} and {@link #textLevelMatches}.
+     * @param reusedSentenceMatches matches per sentence, relative to the sentence start, {@code null} for sentences to be checked
+     * @param reusedTextLevelMatches matches of all text-level rules, or {@code null} to run the text-level rules
+     */
+    void reuseMatches(List<List<RuleMatch>> reusedSentenceMatches, @Nullable List<RuleMatch> reusedTextLevelMatches) {
+      this.reusedSentenceMatches = Objects.requireNonNull(reusedSentenceMatches);
+      this.reusedTextLevelMatches = reusedTextLevelMatches;
+      this.sentenceMatches = new ArrayList<>(Collections.nCopies(sentences.size(), null));
+    }
+
     @Override
     public List<RuleMatch> call() throws Exception {
+      // make the deadline available to rules also when running in a worker thread:
+      try (CheckDeadline.Scope ignored = CheckDeadline.enter(checkDeadline)) {
+        return callUntilDeadline();
+      }
+    }
+
+    private List<RuleMatch> callUntilDeadline() throws IOException {
       List<RuleMatch> ruleMatches = new ArrayList<>();
       if (mode == Mode.ALL) {
         ruleMatches.addAll(getTextLevelRuleMatches());
@@ -1735,54 +2015,87 @@ public class JLanguageTool {
     }
 
     private List<RuleMatch> getTextLevelRuleMatches() throws IOException {
+      if (reusedTextLevelMatches != null) {
+        textLevelMatches = reusedTextLevelMatches;
+        return adaptTextLevelMatches(reusedTextLevelMatches);
+      }
       List<RuleMatch> ruleMatches = new ArrayList<>();
+      List<RuleMatch> unadaptedMatches = new ArrayList<>();
       List<AnalyzedSentence> analyzedSentences = null;
+      boolean cancelled = false;
+      RuleTimingCollector timingCollector = ruleTimingCollector != null && ruleTimingCollector.sample() ? ruleTimingCollector : null;
       for (Rule rule : rules.allRules()) {
-        if (checkCancelledCallback != null && checkCancelledCallback.checkCancelled()) {
+        if (isCheckCancelled()) {
+          cancelled = true;
           break;
         }
         if (rule instanceof TextLevelRule && paraMode != ParagraphHandling.ONLYNONPARA) {
           if (analyzedSentences == null) {
             analyzedSentences = sentences.stream().map(s -> s.analyzed).collect(Collectors.toList());
           }
+          long startTime = timingCollector != null ? System.nanoTime() : 0;
           RuleMatch[] matches = ((TextLevelRule) rule).match(analyzedSentences, annotatedText);
-          List<RuleMatch> adaptedMatches = new ArrayList<>();
-          for (RuleMatch match : matches) {
-            LineColumnPosition from = findLineColumn(match.getFromPos());
-            LineColumnPosition to = findLineColumn(match.getToPos());
-            int newFromPos;
-            int newToPos;
-            try {
-              newFromPos = annotatedText.getOriginalTextPositionFor(match.getFromPos(), false);
-              newToPos = annotatedText.getOriginalTextPositionFor(match.getToPos() - 1, true) + 1;
-            } catch (RuntimeException e) {
-              throw new RuntimeException("Getting positions failed for match " + match, e);
-            }
-            RuleMatch newMatch = new RuleMatch(match);
-            newMatch.setOffsetPosition(newFromPos, newToPos);
-            newMatch.setLine(from.line);
-            newMatch.setEndLine(to.line);
-            newMatch.setColumn(from.column - (from.line == 0 ? 1 : 0));
-            newMatch.setEndColumn(to.column - (to.line == 0 ? 1 : 0));
-            newMatch.setSuggestedReplacementObjects(extendSuggestions(match.getSuggestedReplacementObjects()));
-            adaptedMatches.add(newMatch);
-          }
-          ruleMatches.addAll(adaptedMatches);
-          if (listener != null) {
-            for (RuleMatch adaptedMatch : adaptedMatches) {
-              listener.matchFound(adaptedMatch);
-            }
+          if (timingCollector != null) {
+            timingCollector.record(language, rule, System.nanoTime() - startTime, matches.length);
           }
+          Collections.addAll(unadaptedMatches, matches);
+          ruleMatches.addAll(adaptTextLevelMatches(Arrays.asList(matches)));
         }
       }
+      if (sentenceMatches != null && !cancelled) {
+        textLevelMatches = unadaptedMatches;
+      }
       return ruleMatches;
     }
 
+    private List<RuleMatch> adaptTextLevelMatches(List<RuleMatch> matches) {
+      List<RuleMatch> adaptedMatches = new ArrayList<>();
+      for (RuleMatch match : matches) {
+        LineColumnPosition from = findLineColumn(match.getFromPos());
+        LineColumnPosition to = findLineColumn(match.getToPos());
+        int newFromPos;
+        int newToPos;
+        try {
+          newFromPos = annotatedText.getOriginalTextPositionFor(match.getFromPos(), false);
+          newToPos = annotatedText.getOriginalTextPositionFor(match.getToPos() - 1, true) + 1;
+        } catch (RuntimeException e) {
+          throw new RuntimeException("Getting positions failed for match " + match, e);
+        }
+        RuleMatch newMatch = new RuleMatch(match);
+        newMatch.setOffsetPosition(newFromPos, newToPos);
+        newMatch.setLine(from.line);
+        newMatch.setEndLine(to.line);
+        newMatch.setColumn(from.column - (from.line == 0 ? 1 : 0));
+        newMatch.setEndColumn(to.column - (to.line == 0 ? 1 : 0));
+        newMatch.setSuggestedReplacementObjects(extendSuggestions(match.getSuggestedReplacementObjects()));
+        adaptedMatches.add(newMatch);
+      }
+      if (listener != null) {
+        for (RuleMatch adaptedMatch : adaptedMatches) {
+          listener.matchFound(adaptedMatch);
+        }
+      }
+      return adaptedMatches;
+    }
+
+    @Nullable
+    private Rule getRule(String fullId) {
+      if (rulesByFullId == null) {
+        rulesByFullId = new HashMap<>();
+        for (Rule rule : rules.allRules()) {
+          rulesByFullId.put(rule.getFullId(), rule);
+        }
+      }
+      return rulesByFullId.get(fullId);
+    }
+
     private List<RuleMatch> getOtherRuleMatches() {
       List<RuleMatch> ruleMatches = new ArrayList<>();
+      CheckConfiguration checkConfiguration = null;
       int wordCounter = 0;
-      for (SentenceData sentence : sentences) {
-        if (checkCancelledCallback != null && checkCancelledCallback.checkCancelled()) {
+      for (int sentenceIndex = 0; sentenceIndex < sentences.size(); sentenceIndex++) {
+        SentenceData sentence = sentences.get(sentenceIndex);
+        if (isCheckCancelled()) {
           break;
         }
         wordCounter += sentence.wordCount;
@@ -1791,20 +2104,28 @@ public class JLanguageTool {
           //if (analyzedSentence.getText().contains("fakecrash")) {
           //  throw new RuntimeException("fake crash");
           //}
-          List<RuleMatch> sentenceMatches = null;
-          InputSentence cacheKey = null;
-          if (cache != null) {
-            cacheKey = new InputSentence(sentence.text, language, motherTongue,
-                    disabledRules, disabledRuleCategories,
-                    enabledRules, enabledRuleCategories, userConfig, altLanguages, mode, level);
+          List<RuleMatch> sentenceMatches = reusedSentenceMatches != null ? reusedSentenceMatches.get(sentenceIndex) : null;
+          InputSentenceKey cacheKey = null;
+          if (sentenceMatches == null && cache != null) {
+            if (checkConfiguration == null) {
+              checkConfiguration = getCheckConfiguration(mode, level);
+            }
+            cacheKey = new InputSentenceKey(sentence.text, checkConfiguration);
             sentenceMatches = cache.getIfPresent(cacheKey);
+            if (sentenceMatches == null) {
+              sentenceMatches = cache.getRestored(cacheKey, sentence.analyzed, this::getRule);
+            }
           }
           if (sentenceMatches == null) {
-            sentenceMatches = checkAnalyzedSentence(paraMode, rules.rulesForSentence(sentence.analyzed), sentence.analyzed, checkRemoteRules);
+            sentenceMatches = checkAnalyzedSentence(paraMode, rules.rulesForSentence(sentence.analyzed), sentence.analyzed, checkRemoteRules,
+              findRuleStarts(rules, sentence.analyzed));
           }
-          if (cache != null) {
+          if (cacheKey != null && !isCheckCancelled()) {  // when cancelled, not all rules might have been run
             cache.put(cacheKey, sentenceMatches);
           }
+          if (this.sentenceMatches != null) {
+            this.sentenceMatches.set(sentenceIndex, sentenceMatches);
+          }
           if (!sentenceMatches.isEmpty()) {
             for (RuleMatch elem : sentenceMatches) {
               RuleMatch thisMatch = adjustRuleMatchPos(elem, sentence.startOffset, sentence.startColumn, sentence.startLine, sentence.text, annotatedText);
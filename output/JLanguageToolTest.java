@@ -265,6 +265,38 @@ public class JLanguageToolTest {
     assertThat(cache.hitCount(), is(12L));
   }
 
+  @Test
+  public void testIncrementalCheck() throws IOException {
+    IncrementalCheckCache incrementalCache = new IncrementalCheckCache(10);
+    JLanguageTool lt = new JLanguageTool(new GermanyGerman(), null);
+    lt.setIncrementalCheckCache(incrementalCache);
+    assertThat(checkSession(lt, "Ein Delfin. Noch ein Delfin. Ein Test.", 1L).size(), is(0));
+    assertThat(checkSession(lt, "Ein Delfin. Noch ein Delphin. Ein Test.", 1L).size(), is(1));  // text-level rule runs again
+    List<RuleMatch> matches = checkSession(lt, "Hier ist ein Delfin. Noch ein Delphin. Ein Test.", 1L);
+    List<RuleMatch> expected = new JLanguageTool(new GermanyGerman(), null).check("Hier ist ein Delfin. Noch ein Delphin. Ein Test.");
+    assertThat(matches.size(), is(1));
+    assertThat(matches.get(0).getFromPos(), is(expected.get(0).getFromPos()));  // position up-to-date despite re-used analysis
+    assertThat(checkSession(lt, "Ein Delfin. Noch ein Delphin. Ein Test.", 2L).size(), is(1));  // other session
+    assertThat(incrementalCache.getSessionCache().size(), is(2L));
+
+    JLanguageTool englishLt = new JLanguageTool(english, null);
+    englishLt.setIncrementalCheckCache(incrementalCache);
+    List<RuleMatch> matches1 = checkSession(englishLt, "A test. This is an test. And more.", 3L);
+    assertThat(matches1.size(), is(1));
+    assertThat(matches1.get(0).getFromPos(), is(16));
+    List<RuleMatch> matches2 = checkSession(englishLt, "Another test. This is an test. And more.", 3L);
+    assertThat(matches2.size(), is(1));
+    assertThat(matches2.get(0).getFromPos(), is(16+6));
+    assertThat(matches2.get(0).getToPos(), is(18+6));
+    englishLt.disableRule("EN_A_VS_AN");
+    assertThat(checkSession(englishLt, "Another test. This is an test. And more.", 3L).size(), is(0));
+  }
+
+  private List<RuleMatch> checkSession(JLanguageTool lt, String text, long textSessionId) throws IOException {
+    return lt.check(new AnnotatedTextBuilder().addText(text).build(), true, JLanguageTool.ParagraphHandling.NORMAL,
+      null, JLanguageTool.Mode.ALL, JLanguageTool.Level.DEFAULT, null, textSessionId);
+  }
+
   class InternalRule extends Rule{
     @Override
     public String getId() {
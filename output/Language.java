@@ -755,6 +755,19 @@ public abstract class Language {
     return false;
   }
 
+  /**
+   * The engine that the pattern rules and disambiguation rules of this language use to match
+   * regular expressions. Can be set with the system property {@code languagetool.regexEngine.<code>},
+   * e.g. {@code languagetool.regexEngine.de=automaton}, or {@code languagetool.regexEngine}
+   * for all languages.
+   * @since 5.3
+   */
+  @Experimental
+  public RegexEngine getRegexEngine() {
+    String engine = System.getProperty("languagetool.regexEngine." + getShortCode(), System.getProperty("languagetool.regexEngine"));
+    return engine != null ? RegexEngine.valueOf(engine.toUpperCase(Locale.ENGLISH)) : RegexEngine.JAVA;
+  }
+
   /** @since 5.1 */
   public String getOpeningDoubleQuote() {
     return "\"";
@@ -63,6 +63,9 @@ class LanguageToolHttpHandler implements HttpHandler {
   private final TextChecker textCheckerV2;
   private final HTTPServerConfig config;
   private final RequestCounter reqCounter = new RequestCounter();
+  private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+  // the exchange attribute with the AdaptiveConcurrencyLimiter.Permit of a check, if any:
+  static final String PERMIT_ATTRIBUTE = AdaptiveConcurrencyLimiter.Permit.class.getName();
   
   LanguageToolHttpHandler(HTTPServerConfig config, Set<String> allowedIps, boolean internal, RequestLimiter requestLimiter, ErrorRequestLimiter errorLimiter, LinkedBlockingQueue<Runnable> workQueue, Server httpServer) {
     this.config = config;
@@ -72,6 +75,9 @@ class LanguageToolHttpHandler implements HttpHandler {
     this.workQueue = workQueue;
     this.httpServer = httpServer;
     this.textCheckerV2 = new V2TextChecker(config, internal, workQueue, reqCounter);
+    this.concurrencyLimiter = config.isAdaptiveConcurrencyLimit() ?
+      new AdaptiveConcurrencyLimiter(config.getMaxCheckThreads(), config.getAdaptiveConcurrencyMinLimit(),
+        config.getAdaptiveConcurrencyMaxLimit(), config.getAdaptiveConcurrencyMaxLoadPerCore()) : null;
   }
 
   /** @since 2.6 */
@@ -87,6 +93,8 @@ class LanguageToolHttpHandler implements HttpHandler {
     int reqId = reqCounter.incrementRequestCount();
     ServerMetricsCollector.getInstance().logRequest();
     boolean incrementHandleCount = false;
+    AdaptiveConcurrencyLimiter.Permit permit = null;
+    boolean latencySample = true;
     try {
       URI requestedUri = httpExchange.getRequestURI();
       String path = requestedUri.getRawPath();
@@ -173,6 +181,17 @@ class LanguageToolHttpHandler implements HttpHandler {
         ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.QUEUE_FULL);
         return;
       }
+      if (concurrencyLimiter != null && (path.equals("/v2/check") || path.equals("/v2/check/batch"))) {
+        permit = concurrencyLimiter.tryAcquire();
+        if (permit == null) {
+          String message = "Error: There are currently too many parallel requests. Please try again later.";
+          logError(message + " concurrency limit: " + concurrencyLimiter.getLimit(), HTTP_UNAVAILABLE, parameters, httpExchange);
+          httpExchange.getResponseHeaders().set("Retry-After", String.valueOf(concurrencyLimiter.getRetryAfterSeconds()));
+          sendError(httpExchange, HTTP_UNAVAILABLE, message);
+          return;
+        }
+        httpExchange.setAttribute(PERMIT_ATTRIBUTE, permit);
+      }
       if (allowedIps == null || allowedIps.contains(origAddress)) {
         if (path.startsWith("/v2/")) {
           ApiV2 apiV2 = new ApiV2(textCheckerV2, config.getAllowOriginUrl());
@@ -200,6 +219,8 @@ class LanguageToolHttpHandler implements HttpHandler {
       boolean textLoggingAllowed = false;
       boolean logStacktrace = true;
       Throwable rootCause = ExceptionUtils.getRootCause(e);
+      // only timeouts say something about the server's load, other errors are usually fast:
+      latencySample = e instanceof TimeoutException || rootCause instanceof TimeoutException;
       if (e instanceof TextTooLongException || rootCause instanceof TextTooLongException) {
         errorCode = HttpURLConnection.HTTP_ENTITY_TOO_LARGE;
         response = e.getMessage();
@@ -233,6 +254,9 @@ class LanguageToolHttpHandler implements HttpHandler {
 
     } finally {
       httpExchange.close();
+      if (permit != null) {
+        permit.release(latencySample, getTextOrDataSize(parameters));
+      }
       if (incrementHandleCount) {
         reqCounter.decrementHandleCount(reqId);
       }
@@ -264,6 +288,19 @@ class LanguageToolHttpHandler implements HttpHandler {
     return false;
   }
 
+  private int getTextOrDataSize(Map<String, String> parameters) {
+    String text = parameters.get("text");
+    if (text != null) {
+      return text.length();
+    }
+    String data = parameters.get("data");
+    if (data != null) {
+      return data.length();
+    }
+    String texts = parameters.get("texts");  // batch check
+    return texts != null ? texts.length() : 0;
+  }
+
   @NotNull
   private String getTextOrDataSizeMessage(Map<String, String> parameters) {
     String text = parameters.get("text");
@@ -377,6 +414,12 @@ class LanguageToolHttpHandler implements HttpHandler {
   }
 
   private void sendError(HttpExchange httpExchange, int httpReturnCode, String response) throws IOException {
+    NdjsonCheckStreamer streamer = NdjsonCheckStreamer.getStartedOrNull(httpExchange);
+    if (streamer != null) {
+      // the response headers have already been sent, the error can only be reported as part of the stream:
+      streamer.fail(response);
+      return;
+    }
     ServerTools.setAllowOrigin(httpExchange, config.getAllowOriginUrl());
     httpExchange.sendResponseHeaders(httpReturnCode, response.getBytes(ENCODING).length);
     httpExchange.getResponseBody().write(response.getBytes(ENCODING));
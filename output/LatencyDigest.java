@@ -0,0 +1,129 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules;
+
+import java.util.Arrays;
+
+/**
+ * The latencies of the most recent requests to a remote service, with the number of characters sent,
+ * to derive timeouts and hedging delays from the latencies that are actually observed. The values of
+ * the window are also kept sorted, so quantiles can be looked up without sorting.
+ * @since 5.3
+ */
+class LatencyDigest {
+
+  // in the order of the requests, to know which values leave the window:
+  private final long[] millis;
+  private final long[] characters;
+  private final boolean[] hedged;
+  // the values of the window in ascending order:
+  private final long[] sortedMillis;
+  private final long[] sortedCharacters;
+  private int next;
+  private int size;
+  private int hedgedCount;
+
+  /**
+   * @param capacity the number of most recent requests that are kept
+   */
+  LatencyDigest(int capacity) {
+    millis = new long[capacity];
+    characters = new long[capacity];
+    hedged = new boolean[capacity];
+    sortedMillis = new long[capacity];
+    sortedCharacters = new long[capacity];
+  }
+
+  void add(long latencyMillis, long requestCharacters) {
+    add(latencyMillis, requestCharacters, false);
+  }
+
+  /**
+   * @param wasHedged whether a hedged request has been sent for the request
+   */
+  synchronized void add(long latencyMillis, long requestCharacters, boolean wasHedged) {
+    boolean full = size == millis.length;
+    replace(sortedMillis, full, millis[next], latencyMillis);
+    replace(sortedCharacters, full, characters[next], requestCharacters);
+    if (full && hedged[next]) {
+      hedgedCount--;
+    }
+    if (wasHedged) {
+      hedgedCount++;
+    }
+    millis[next] = latencyMillis;
+    characters[next] = requestCharacters;
+    hedged[next] = wasHedged;
+    next = (next + 1) % millis.length;
+    if (!full) {
+      size++;
+    }
+  }
+
+  // remove the value that leaves the window (if the window is full) and insert the new one at its position:
+  private void replace(long[] sorted, boolean full, long removed, long added) {
+    int count = size;
+    if (full) {
+      int i = Arrays.binarySearch(sorted, 0, count, removed);
+      System.arraycopy(sorted, i + 1, sorted, i, count - i - 1);
+      count--;
+    }
+    int pos = Arrays.binarySearch(sorted, 0, count, added);
+    if (pos < 0) {
+      pos = -pos - 1;
+    }
+    System.arraycopy(sorted, pos, sorted, pos + 1, count - pos);
+    sorted[pos] = added;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  /**
+   * @return the share of the recent requests for which a hedged request has been sent, {@code 0} if there are none
+   */
+  synchronized double getHedgedRate() {
+    return size == 0 ? 0 : hedgedCount / (double) size;
+  }
+
+  /**
+   * @param q the quantile, between 0 and 1
+   * @return the latency that {@code q} of the recent requests didn't exceed, or {@code -1} if there are none
+   */
+  synchronized long getLatencyQuantile(double q) {
+    return quantile(sortedMillis, q);
+  }
+
+  /**
+   * @return the number of characters that {@code q} of the recent requests didn't exceed, or {@code -1} if there are none
+   */
+  synchronized long getCharactersQuantile(double q) {
+    return quantile(sortedCharacters, q);
+  }
+
+  private long quantile(long[] sorted, double q) {
+    if (size == 0) {
+      return -1;
+    }
+    int index = (int) Math.ceil(q * size) - 1;
+    return sorted[Math.max(0, Math.min(size - 1, index))];
+  }
+
+}
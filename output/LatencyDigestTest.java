@@ -0,0 +1,101 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyDigestTest {
+
+  @Test
+  public void testEmpty() {
+    LatencyDigest digest = new LatencyDigest(10);
+    assertEquals(0, digest.size());
+    assertEquals(-1, digest.getLatencyQuantile(0.5));
+    assertEquals(-1, digest.getCharactersQuantile(0.5));
+  }
+
+  @Test
+  public void testQuantiles() {
+    LatencyDigest digest = new LatencyDigest(100);
+    for (int i = 1; i <= 100; i++) {
+      digest.add(i, 1000 - i);
+    }
+    assertEquals(100, digest.size());
+    assertEquals(50, digest.getLatencyQuantile(0.5));
+    assertEquals(95, digest.getLatencyQuantile(0.95));
+    assertEquals(99, digest.getLatencyQuantile(0.99));
+    assertEquals(100, digest.getLatencyQuantile(1));
+    assertEquals(1, digest.getLatencyQuantile(0));
+    assertEquals(949, digest.getCharactersQuantile(0.5));
+  }
+
+  @Test
+  public void testOnlyRecentRequestsAreKept() {
+    LatencyDigest digest = new LatencyDigest(10);
+    for (int i = 0; i < 10; i++) {
+      digest.add(1000, 10);
+    }
+    for (int i = 0; i < 10; i++) {
+      digest.add(10, 10);
+    }
+    assertEquals(10, digest.size());
+    assertEquals(10, digest.getLatencyQuantile(1));
+  }
+
+  @Test
+  public void testQuantilesOfSlidingWindow() {
+    LatencyDigest digest = new LatencyDigest(50);
+    Random random = new Random(42);
+    List<Long> window = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      long value = random.nextInt(100);
+      digest.add(value, value * 10);
+      window.add(value);
+      if (window.size() > 50) {
+        window.remove(0);
+      }
+      List<Long> sorted = new ArrayList<>(window);
+      Collections.sort(sorted);
+      assertEquals((long) sorted.get(sorted.size() / 2 - 1 + sorted.size() % 2), digest.getLatencyQuantile(0.5));
+      assertEquals((long) sorted.get(sorted.size() - 1), digest.getLatencyQuantile(1));
+      assertEquals((long) sorted.get(0) * 10, digest.getCharactersQuantile(0));
+    }
+  }
+
+  @Test
+  public void testHedgedRate() {
+    LatencyDigest digest = new LatencyDigest(10);
+    assertEquals(0, digest.getHedgedRate(), 0);
+    for (int i = 0; i < 10; i++) {
+      digest.add(10, 10, i < 2);
+    }
+    assertEquals(0.2, digest.getHedgedRate(), 0.0001);
+    digest.add(10, 10);
+    digest.add(10, 10);
+    assertEquals(0, digest.getHedgedRate(), 0);  // hedged requests have left the window
+  }
+
+}
@@ -0,0 +1,330 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules.patterns;
+
+import org.jetbrains.annotations.Nullable;
+import org.languagetool.AnalyzedSentence;
+import org.languagetool.AnalyzedToken;
+import org.languagetool.AnalyzedTokenReadings;
+import org.languagetool.Experimental;
+import org.languagetool.rules.Rule;
+import org.languagetool.rules.RuleMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A trie over the leading {@link PatternToken}s of the {@link PatternRule}s of a language. Instead of letting
+ * each rule's {@link PatternRuleMatcher} try to match at every token, {@link #find(AnalyzedSentence)} walks the
+ * tokens of a sentence once and collects the positions at which the leading tokens of each rule match their
+ * forms, lemmas, or POS tag prefixes. The rules are then only matched at these positions. Rules whose first
+ * token can't be indexed (e.g. because it's optional, negated, or an unrestricted regular expression) are
+ * matched at all positions.
+ * <p>With {@link Mode#VERIFY}, every rule is also matched at all positions, and differences are logged.
+ * @since 5.3
+ */
+@Experimental
+public class LeadingTokenTrie {
+
+  private static final Logger logger = LoggerFactory.getLogger(LeadingTokenTrie.class);
+
+  static final int MAX_DEPTH = 3;
+  // limits the paths a rule with many alternative forms per token adds to the trie:
+  private static final int MAX_PATHS_PER_RULE = 64;
+
+  private static final String FORM = "f:";
+  private static final String LEMMA = "l:";
+  private static final String POS_TAG_PREFIX = "p:";
+
+  private final Mode mode;
+  private final Map<Rule, Integer> ruleIndexes = new IdentityHashMap<>();
+  private final Node root = new Node();
+  private final int[] posTagPrefixLengths;
+  private final LongAdder positions = new LongAdder();
+  private final LongAdder candidatePositions = new LongAdder();
+  private final LongAdder mismatches = new LongAdder();
+
+  public enum Mode {
+    /** Don't use the trie. */
+    OFF,
+    /** Match the indexed rules only at the positions found by the trie. */
+    ON,
+    /** Match the indexed rules at all positions, and log if that finds matches the trie would have skipped. */
+    VERIFY;
+
+    /**
+     * The mode set with the system property {@code languagetool.leadingTokenTrie}, {@link #OFF} by default
+     * or if the value is invalid.
+     */
+    public static Mode fromSystemProperty() {
+      String mode = System.getProperty("languagetool.leadingTokenTrie");
+      if (mode == null) {
+        return OFF;
+      }
+      try {
+        return valueOf(mode.trim().toUpperCase(Locale.ENGLISH));
+      } catch (IllegalArgumentException e) {
+        logger.warn("Invalid value for languagetool.leadingTokenTrie: '" + mode + "', expected one of " +
+          Arrays.toString(values()) + " - leading token trie is disabled");
+        return OFF;
+      }
+    }
+  }
+
+  public LeadingTokenTrie(List<? extends Rule> rules, Mode mode) {
+    this.mode = Objects.requireNonNull(mode);
+    SortedSet<Integer> prefixLengths = new TreeSet<>();
+    for (Rule rule : rules) {
+      if (!(rule instanceof PatternRule) || ((PatternRule) rule).isInterpretPosTagsPreDisambiguation()) {
+        continue;
+      }
+      List<Set<String>> path = getPath(((PatternRule) rule).getPatternTokens());
+      if (path.isEmpty()) {
+        continue;
+      }
+      int ruleIndex = ruleIndexes.size();
+      ruleIndexes.put(rule, ruleIndex);
+      add(root, path, 0, ruleIndex);
+      for (Set<String> keys : path) {
+        for (String key : keys) {
+          if (key.startsWith(POS_TAG_PREFIX)) {
+            prefixLengths.add(key.length() - POS_TAG_PREFIX.length());
+          }
+        }
+      }
+    }
+    posTagPrefixLengths = prefixLengths.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * The keys that the tokens at the start of a match must have, one set per token. Only leading tokens that
+   * must match exactly once and directly follow each other are considered, as only for those the position
+   * of the token relative to the start of the match is known.
+   */
+  private static List<Set<String>> getPath(List<PatternToken> patternTokens) {
+    List<Set<String>> path = new ArrayList<>();
+    int paths = 1;
+    for (PatternToken patternToken : patternTokens) {
+      Set<String> keys = getKeys(patternToken);
+      if (keys == null || path.size() == MAX_DEPTH || !path.isEmpty() && paths * keys.size() > MAX_PATHS_PER_RULE) {
+        break;
+      }
+      path.add(keys);
+      paths *= keys.size();
+      if (patternToken.getMaxOccurrence() != 1 || patternToken.getSkipNext() != 0) {
+        break;
+      }
+    }
+    return path;
+  }
+
+  @Nullable
+  private static Set<String> getKeys(PatternToken patternToken) {
+    if (patternToken.getMinOccurrence() != 1) {
+      return null;
+    }
+    Set<String> forms = patternToken.calcFormHints();
+    if (forms != null && !forms.isEmpty()) {
+      return keys(FORM, forms, true);
+    }
+    Set<String> lemmas = patternToken.calcLemmaHints();
+    if (lemmas != null && !lemmas.isEmpty()) {
+      return keys(LEMMA, lemmas, true);
+    }
+    Set<String> posTagPrefixes = patternToken.calcPosTagPrefixHints();
+    if (posTagPrefixes != null && !posTagPrefixes.isEmpty()) {
+      return keys(POS_TAG_PREFIX, posTagPrefixes, false);
+    }
+    return null;
+  }
+
+  private static Set<String> keys(String type, Set<String> values, boolean lowercase) {
+    Set<String> result = new HashSet<>();
+    for (String value : values) {
+      result.add(type + (lowercase ? value.toLowerCase() : value));
+    }
+    return result;
+  }
+
+  private static void add(Node node, List<Set<String>> path, int depth, int ruleIndex) {
+    if (depth == path.size()) {
+      node.ruleIndexes.add(ruleIndex);
+      return;
+    }
+    for (String key : path.get(depth)) {
+      add(node.children.computeIfAbsent(key, k -> new Node()), path, depth + 1, ruleIndex);
+    }
+  }
+
+  /**
+   * Walk the tokens of the sentence and collect the positions at which the rules can match.
+   */
+  public Starts find(AnalyzedSentence sentence) {
+    AnalyzedTokenReadings[] tokens = sentence.getTokensWithoutWhitespace();
+    List<Set<String>> tokenKeys = new ArrayList<>(tokens.length);
+    for (AnalyzedTokenReadings token : tokens) {
+      tokenKeys.add(getKeys(token));
+    }
+    BitSet[] starts = new BitSet[ruleIndexes.size()];
+    for (int i = 0; i < tokens.length; i++) {
+      walk(root, tokenKeys, i, i, starts);
+    }
+    int candidates = 0;
+    for (BitSet ruleStarts : starts) {
+      if (ruleStarts != null) {
+        candidates += ruleStarts.cardinality();
+      }
+    }
+    positions.add((long) starts.length * tokens.length);
+    candidatePositions.add(candidates);
+    return new Starts(starts);
+  }
+
+  private static void walk(Node node, List<Set<String>> tokenKeys, int start, int position, BitSet[] starts) {
+    if (position >= tokenKeys.size()) {
+      return;
+    }
+    for (String key : tokenKeys.get(position)) {
+      Node child = node.children.get(key);
+      if (child != null) {
+        for (int ruleIndex : child.ruleIndexes) {
+          if (starts[ruleIndex] == null) {
+            starts[ruleIndex] = new BitSet();
+          }
+          starts[ruleIndex].set(start);
+        }
+        if (!child.children.isEmpty()) {
+          walk(child, tokenKeys, start, position + 1, starts);
+        }
+      }
+    }
+  }
+
+  // the keys of a token in the way PatternToken matches them, see PatternToken.isMatched():
+  private Set<String> getKeys(AnalyzedTokenReadings token) {
+    Set<String> keys = new HashSet<>();
+    keys.add(FORM + token.getToken().toLowerCase());
+    for (AnalyzedToken reading : token.getReadings()) {
+      String form = reading.getToken().toLowerCase();
+      keys.add(FORM + form);
+      keys.add(LEMMA + (reading.getLemma() != null ? reading.getLemma().toLowerCase() : form));
+      String posTag = reading.getPOSTag();
+      if (posTag != null) {
+        for (int length : posTagPrefixLengths) {
+          if (length > posTag.length()) {
+            break;
+          }
+          keys.add(POS_TAG_PREFIX + posTag.substring(0, length));
+        }
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * @return whether the rule's match positions are restricted by this trie
+   */
+  public boolean isIndexed(Rule rule) {
+    return ruleIndexes.containsKey(rule);
+  }
+
+  /**
+   * @return the share of (indexed rule, token position) pairs that {@link #find(AnalyzedSentence)} could skip
+   */
+  public double getSkippedRatio() {
+    long total = positions.sum();
+    return total == 0 ? 0 : 1 - (double) candidatePositions.sum() / total;
+  }
+
+  /**
+   * @return how often {@link Mode#VERIFY} found different matches
+   */
+  public long getMismatches() {
+    return mismatches.sum();
+  }
+
+  private static boolean sameMatches(RuleMatch[] expected, RuleMatch[] actual) {
+    if (!Arrays.equals(expected, actual)) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if (!expected[i].getSuggestedReplacements().equals(actual[i].getSuggestedReplacements())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "LeadingTokenTrie{" + ruleIndexes.size() + " indexed rules, mode " + mode + "}";
+  }
+
+  private static class Node {
+    private final Map<String, Node> children = new HashMap<>();
+    private final List<Integer> ruleIndexes = new ArrayList<>(0);
+  }
+
+  /**
+   * The positions at which the indexed rules can match in a sentence.
+   */
+  public class Starts {
+    private final BitSet[] starts;
+
+    private Starts(BitSet[] starts) {
+      this.starts = starts;
+    }
+
+    /**
+     * @return the positions at which the rule can match, {@code null} if the rule isn't indexed
+     */
+    @Nullable
+    public BitSet get(Rule rule) {
+      Integer ruleIndex = ruleIndexes.get(rule);
+      if (ruleIndex == null) {
+        return null;
+      }
+      return starts[ruleIndex] != null ? starts[ruleIndex] : new BitSet(0);
+    }
+
+    /**
+     * Match the rule, only at the positions found by the trie if the rule is indexed.
+     */
+    public RuleMatch[] match(Rule rule, AnalyzedSentence sentence) throws IOException {
+      BitSet ruleStarts = mode == Mode.OFF ? null : get(rule);
+      if (ruleStarts == null) {
+        return rule.match(sentence);
+      }
+      RuleMatch[] matches = ((PatternRule) rule).match(sentence, ruleStarts);
+      if (mode == Mode.VERIFY) {
+        RuleMatch[] expected = rule.match(sentence);
+        if (!sameMatches(expected, matches)) {
+          mismatches.increment();
+          logger.warn("Leading token trie changes the matches of " + rule.getFullId() + " for '" + sentence.getText() +
+            "': expected " + Arrays.toString(expected) + ", got " + Arrays.toString(matches) + " (start positions " + ruleStarts + ")");
+          return expected;
+        }
+      }
+      return matches;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules.patterns;
+
+import org.junit.Test;
+import org.languagetool.AnalyzedSentence;
+import org.languagetool.JLanguageTool;
+import org.languagetool.language.Demo;
+import org.languagetool.rules.RuleMatch;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.languagetool.rules.patterns.PatternRuleBuilderHelper.*;
+
+public class LeadingTokenTrieTest {
+
+  private final JLanguageTool lt = new JLanguageTool(new Demo());
+
+  @Test
+  public void testStartPositions() throws IOException {
+    // tokens: SENT_START, This, is, a, test, and, this, is, a, text, .
+    AnalyzedSentence sentence = lt.getAnalyzedSentence("This is a test and this is a text.");
+    PatternRule single = ruleOf(token("is"));
+    PatternRule sequence = ruleOf(token("a"), token("test"));
+    PatternRule alternatives = ruleOf(tokenRegex("this|that"), token("is"));
+    PatternRule optional = ruleOf(new PatternTokenBuilder().token("is").min(0).build(), token("a"));
+    PatternRule missing = ruleOf(token("foo"), token("is"));
+    LeadingTokenTrie trie = new LeadingTokenTrie(Arrays.asList(single, sequence, alternatives, optional, missing), LeadingTokenTrie.Mode.ON);
+    LeadingTokenTrie.Starts starts = trie.find(sentence);
+    assertEquals(bits(2, 7), starts.get(single));
+    assertEquals(bits(3), starts.get(sequence));
+    assertEquals(bits(1, 6), starts.get(alternatives));
+    assertNull(starts.get(optional));
+    assertFalse(trie.isIndexed(optional));
+    assertEquals(bits(), starts.get(missing));
+  }
+
+  @Test
+  public void testSameMatchesAsFullScan() throws IOException {
+    List<PatternRule> rules = Arrays.asList(
+      ruleOf(token("is"), token("a")),
+      ruleOf(tokenRegex("this|that"), new PatternTokenBuilder().tokenRegex(".*").setSkip(-1).build(), token("text")),
+      ruleOf(token("a"), new PatternTokenBuilder().token("test").min(0).build()),
+      ruleOf(new PatternTokenBuilder().token("is").min(0).build(), token("a")),
+      ruleOf(new PatternTokenBuilder().csToken("This").mark(0).build(), token("is"))
+    );
+    LeadingTokenTrie trie = new LeadingTokenTrie(rules, LeadingTokenTrie.Mode.VERIFY);
+    for (String text : Arrays.asList("This is a test and this is a text.", "Is a test.", "A", "That text is a test")) {
+      AnalyzedSentence sentence = lt.getAnalyzedSentence(text);
+      LeadingTokenTrie.Starts starts = trie.find(sentence);
+      for (PatternRule rule : rules) {
+        RuleMatch[] expected = rule.match(sentence);
+        assertArrayEquals(text, expected, rule.match(sentence, starts.get(rule)));
+        assertArrayEquals(text, expected, starts.match(rule, sentence));
+      }
+    }
+    assertEquals(0, trie.getMismatches());
+    assertTrue(trie.getSkippedRatio() > 0);
+  }
+
+  private static BitSet bits(int... positions) {
+    BitSet bits = new BitSet();
+    for (int position : positions) {
+      bits.set(position);
+    }
+    return bits;
+  }
+
+  private static PatternRule ruleOf(PatternToken... tokens) {
+    return new PatternRule("ID", new Demo(), Arrays.asList(tokens), "description", "message", "short message");
+  }
+}
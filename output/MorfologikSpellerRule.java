@@ -448,10 +448,13 @@ public abstract class MorfologikSpellerRule extends SpellingCheckRule {
   }
 
   private Supplier<List<SuggestedReplacement>> appendLazySuggestions(String word, String beforeSuggestionStr, String afterSuggestionStr, boolean fullResults, List<SuggestedReplacement> prev) {
+    // suggestions are calculated lazily, possibly after the check and for a cached match, so decide now whether
+    // to reduce them: if the check's deadline has already expired, the sentence's matches don't get cached
+    boolean expired = CheckDeadline.isCurrentExpired();
     return () -> {
       List<SuggestedReplacement> joined;
       try {
-        List<SuggestedReplacement> fromSpeller = calcSpellerSuggestions(word, fullResults);
+        List<SuggestedReplacement> fromSpeller = calcSpellerSuggestions(word, fullResults, expired);
         joined = joinBeforeAfterSuggestions(fromSpeller, beforeSuggestionStr, afterSuggestionStr);
       } catch (IOException e) {
         throw new RuntimeException(e);
@@ -460,7 +463,7 @@ public abstract class MorfologikSpellerRule extends SpellingCheckRule {
     };
   }
 
-  private List<SuggestedReplacement> calcSpellerSuggestions(String word, boolean fullResults) throws IOException {
+  private List<SuggestedReplacement> calcSpellerSuggestions(String word, boolean fullResults, boolean expired) throws IOException {
     List<SuggestedReplacement> defaultSuggestions = SuggestedReplacement.convert(speller1.getSuggestionsFromDefaultDicts(word));
     List<SuggestedReplacement> userSuggestions = SuggestedReplacement.convert(speller1.getSuggestionsFromUserDicts(word));
     //System.out.println("speller1: " + suggestions);
@@ -470,7 +473,8 @@ public abstract class MorfologikSpellerRule extends SpellingCheckRule {
       // use a hack to fix e.g. "muslims" not suggesting "Muslims" (https://github.com/languagetool-org/languagetool/issues/3333)
       onlyCaseDiffers = true;
     }
-    if (word.length() >= 3 && (onlyCaseDiffers || fullResults || defaultSuggestions.isEmpty())) {
+    // the spellers with larger edit distances are expensive, skip them when nobody waits for the result anymore:
+    if (word.length() >= 3 && !expired && (onlyCaseDiffers || fullResults || defaultSuggestions.isEmpty())) {
       // speller1 uses a maximum edit distance of 1, it won't find suggestion for "garentee", "greatful" etc.
       //System.out.println("speller2: " + speller2.getSuggestions(word));
       defaultSuggestions.addAll(SuggestedReplacement.convert(speller2.getSuggestionsFromDefaultDicts(word)));
@@ -0,0 +1,89 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.dev;
+
+import org.languagetool.Language;
+import org.languagetool.Languages;
+import org.languagetool.MultiThreadedJLanguageTool;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares the check latency of {@link MultiThreadedJLanguageTool} with the default
+ * per-rule scheduling and with hybrid rule/sentence scheduling. Texts shorter than
+ * 10 KB are repeated to get at least that size.
+ * @since 5.3
+ */
+final class MultiThreadedCheckBenchmark {
+
+  private static final int MIN_TEXT_LENGTH = 10_000;
+  private static final int WARMUP_RUNS = 5;
+
+  private MultiThreadedCheckBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 4) {
+      System.out.println("Usage: " + MultiThreadedCheckBenchmark.class.getSimpleName() + " <langCode> <textFile> [runs] [threads]");
+      System.exit(1);
+    }
+    Language lang = Languages.getLanguageForShortCode(args[0]);
+    String text = new String(Files.readAllBytes(Paths.get(args[1])), StandardCharsets.UTF_8);
+    int runs = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+    int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+    StringBuilder sb = new StringBuilder(text);
+    while (sb.length() < MIN_TEXT_LENGTH) {
+      sb.append("\n\n").append(text);
+    }
+    String input = sb.toString();
+    System.out.println("Language: " + lang + ", text length: " + input.length() + ", runs: " + runs + ", threads: " + threads);
+    for (boolean hybrid : new boolean[]{false, true}) {
+      MultiThreadedJLanguageTool lt = new MultiThreadedJLanguageTool(lang, null, threads, null);
+      lt.setHybridScheduling(hybrid);
+      try {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+          lt.check(input);
+        }
+        List<Long> times = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+          long startTime = System.nanoTime();
+          lt.check(input);
+          times.add((System.nanoTime() - startTime) / 1_000_000);
+        }
+        Collections.sort(times);
+        System.out.printf("%-16s p50: %5dms, p90: %5dms, p99: %5dms, max: %5dms%n", hybrid ? "hybrid:" : "per rule:",
+          percentile(times, 50), percentile(times, 90), percentile(times, 99), times.get(times.size() - 1));
+      } finally {
+        lt.shutdown();
+      }
+    }
+  }
+
+  private static long percentile(List<Long> sortedTimes, int percentile) {
+    int index = (int) Math.ceil(percentile / 100.0 * sortedTimes.size()) - 1;
+    return sortedTimes.get(Math.max(index, 0));
+  }
+
+}
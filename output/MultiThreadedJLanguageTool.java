@@ -23,6 +23,7 @@ import com.google.common.collect.Lists;
 import org.languagetool.markup.AnnotatedText;
 import org.languagetool.rules.Rule;
 import org.languagetool.rules.RuleMatch;
+import org.languagetool.rules.TextLevelRule;
 import org.languagetool.rules.patterns.RuleSet;
 
 import java.io.IOException;
@@ -43,9 +44,17 @@ import java.util.stream.IntStream;
  * <p><b>Thread-safety:</b> this class is <b>not</b> thread-safe, see the remarks at {@link JLanguageTool}.
  */
 public class MultiThreadedJLanguageTool extends JLanguageTool {
-  
+
+  // used by hybrid scheduling only:
+  private static final double DEFAULT_RULE_COST_NANOS = 50_000;  // per sentence, for rules not measured yet
+  private static final double MIN_TASK_COST_NANOS = 1_000_000;
+  private static final int TASKS_PER_THREAD = 4;
+  private static final double COST_SMOOTHING = 0.2;
+
   private final int threadPoolSize;
   private final ExecutorService threadPool;
+  private final Map<Rule, Double> ruleCostNanos = new ConcurrentHashMap<>();  // moving average of time per sentence
+  private volatile boolean hybridScheduling;
 
   public MultiThreadedJLanguageTool(Language language) {
     this(language, null);
@@ -105,6 +114,18 @@ public class MultiThreadedJLanguageTool extends JLanguageTool {
     threadPool.shutdown();
   }
 
+  /**
+   * By default, work is distributed to the threads by rule, so one slow rule on a long text
+   * determines the time needed for the whole check. With hybrid scheduling, the measured
+   * time per sentence of each rule is used to split expensive rules into several tasks
+   * that work on different sentences, while cheap rules are still run together in one task.
+   * @since 5.3
+   */
+  @Experimental
+  public void setHybridScheduling(boolean hybridScheduling) {
+    this.hybridScheduling = hybridScheduling;
+  }
+
   private static int getDefaultThreadCount() {
     return Runtime.getRuntime().availableProcessors();
   }
@@ -175,12 +196,16 @@ public class MultiThreadedJLanguageTool extends JLanguageTool {
       }
     }
 
+    if (hybridScheduling) {
+      return applyCustomFilters(performHybridCheck(allRules, map, sentences, paraMode, annotatedText, listener, mode, level), annotatedText);
+    }
+
     AtomicInteger ruleIndex = new AtomicInteger();
     Map<Integer, List<RuleMatch>> ruleMatches = new TreeMap<>();
     List<Future<?>> futures = IntStream.range(0, getThreadPoolSize()).mapToObj(__ -> getExecutorService().submit(() -> {
       while (true) {
         int index = ruleIndex.getAndIncrement();
-        if (index >= allRules.size()) return null;
+        if (index >= allRules.size() || isCheckCancelled()) return null;
 
         Rule rule = allRules.get(index);
         BitSet applicable = map.get(rule);
@@ -209,6 +234,118 @@ public class MultiThreadedJLanguageTool extends JLanguageTool {
     return applyCustomFilters(Lists.newArrayList(Iterables.concat(ruleMatches.values())), annotatedText);
   }
 
+  private List<RuleMatch> performHybridCheck(List<Rule> allRules, Map<Rule, BitSet> applicableSentences, List<SentenceData> sentences,
+                                             ParagraphHandling paraMode, AnnotatedText annotatedText, RuleMatchListener listener,
+                                             Mode mode, Level level) {
+    List<RuleTask> ruleTasks = new ArrayList<>();
+    double totalCost = 0;
+    for (Rule rule : allRules) {
+      BitSet applicable = applicableSentences.get(rule);
+      if (applicable != null) {
+        RuleTask ruleTask = new RuleTask(rule, applicable, ruleCostNanos.getOrDefault(rule, DEFAULT_RULE_COST_NANOS) * applicable.cardinality());
+        ruleTasks.add(ruleTask);
+        totalCost += ruleTask.cost;
+      }
+    }
+    double taskCost = Math.max(totalCost / (getThreadPoolSize() * TASKS_PER_THREAD), MIN_TASK_COST_NANOS);
+
+    // tasks are created in rule order, so concatenating their results keeps the order of the matches:
+    List<Callable<List<RuleMatch>>> tasks = new ArrayList<>();
+    List<RuleTask> batch = new ArrayList<>();
+    double batchCost = 0;
+    for (RuleTask ruleTask : ruleTasks) {
+      if (ruleTask.cost > taskCost && !(ruleTask.rule instanceof TextLevelRule)) {
+        if (!batch.isEmpty()) {
+          tasks.add(batchCallable(batch, sentences, paraMode, annotatedText, listener, mode, level));
+          batch = new ArrayList<>();
+          batchCost = 0;
+        }
+        int parts = (int) Math.min(Math.ceil(ruleTask.cost / taskCost), ruleTask.sentences.cardinality());
+        for (BitSet part : split(ruleTask.sentences, parts)) {
+          RuleTask partTask = new RuleTask(ruleTask.rule, part, ruleTask.cost / parts);
+          tasks.add(() -> partTask.call(sentences, paraMode, annotatedText, listener, mode, level));
+        }
+      } else {
+        batch.add(ruleTask);
+        batchCost += ruleTask.cost;
+        if (batchCost >= taskCost) {
+          tasks.add(batchCallable(batch, sentences, paraMode, annotatedText, listener, mode, level));
+          batch = new ArrayList<>();
+          batchCost = 0;
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      tasks.add(batchCallable(batch, sentences, paraMode, annotatedText, listener, mode, level));
+    }
+
+    List<Future<List<RuleMatch>>> futures = tasks.stream().map(task -> getExecutorService().submit(task)).collect(Collectors.toList());
+    List<RuleMatch> ruleMatches = new ArrayList<>();
+    try {
+      for (Future<List<RuleMatch>> future : futures) {
+        ruleMatches.addAll(future.get());
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw new RuntimeException(e);
+    }
+    return ruleMatches;
+  }
+
+  private Callable<List<RuleMatch>> batchCallable(List<RuleTask> batch, List<SentenceData> sentences, ParagraphHandling paraMode,
+                                                  AnnotatedText annotatedText, RuleMatchListener listener, Mode mode, Level level) {
+    return () -> {
+      List<RuleMatch> matches = new ArrayList<>();
+      for (RuleTask ruleTask : batch) {
+        matches.addAll(ruleTask.call(sentences, paraMode, annotatedText, listener, mode, level));
+      }
+      return matches;
+    };
+  }
+
+  /**
+   * Split the set bits into {@code parts} sets of consecutive bits of about the same size.
+   */
+  private static List<BitSet> split(BitSet bits, int parts) {
+    int cardinality = bits.cardinality();
+    List<BitSet> result = new ArrayList<>(parts);
+    int bitIndex = bits.nextSetBit(0);
+    for (int i = 0; i < parts; i++) {
+      BitSet part = new BitSet();
+      int partSize = cardinality / parts + (i < cardinality % parts ? 1 : 0);
+      for (int j = 0; j < partSize; j++) {
+        part.set(bitIndex);
+        bitIndex = bits.nextSetBit(bitIndex + 1);
+      }
+      result.add(part);
+    }
+    return result;
+  }
+
+  private class RuleTask {
+    private final Rule rule;
+    private final BitSet sentences;
+    private final double cost;
+
+    RuleTask(Rule rule, BitSet sentences, double cost) {
+      this.rule = rule;
+      this.sentences = sentences;
+      this.cost = cost;
+    }
+
+    List<RuleMatch> call(List<SentenceData> allSentences, ParagraphHandling paraMode, AnnotatedText annotatedText,
+                         RuleMatchListener listener, Mode mode, Level level) throws Exception {
+      long startTime = System.nanoTime();
+      List<RuleMatch> matches = new TextCheckCallable(RuleSet.plain(Collections.singletonList(rule)),
+        RuleSet.filterList(sentences, allSentences),
+        paraMode, annotatedText, listener, mode, level, true).call();
+      if (!isCheckCancelled()) {  // a cancelled rule might not have checked all sentences
+        double nanosPerSentence = (double) (System.nanoTime() - startTime) / sentences.cardinality();
+        ruleCostNanos.merge(rule, nanosPerSentence, (old, latest) -> old + COST_SMOOTHING * (latest - old));
+      }
+      return matches;
+    }
+  }
+
   private class AnalyzeSentenceCallable implements Callable<AnalyzedSentence> {
     private final String sentence;
 
@@ -52,6 +52,26 @@ public class MultiThreadedJLanguageToolTest {
     assertEquals(ruleMatchIds1, ruleMatchIds2);
   }
   
+  @Test
+  public void testHybridScheduling() throws IOException {
+    String input = String.join(" ", Collections.nCopies(50, "A small toast. No error here. Foo go bar. First goes last there, please!"));
+    JLanguageTool lt1 = new JLanguageTool(new Demo());
+    lt1.setCleanOverlappingMatches(false);
+    List<RuleMatch> expected = lt1.check(input);
+    MultiThreadedJLanguageTool lt2 = new MultiThreadedJLanguageTool(new Demo(), 4);
+    lt2.setCleanOverlappingMatches(false);
+    lt2.setHybridScheduling(true);
+    for (int i = 0; i < 3; i++) {  // the first run uses default costs, later runs measured costs
+      List<RuleMatch> matches = lt2.check(input);
+      assertThat(matches.size(), is(expected.size()));
+      for (int j = 0; j < matches.size(); j++) {
+        assertThat(matches.get(j).getRule().getId(), is(expected.get(j).getRule().getId()));
+        assertThat(matches.get(j).getFromPos(), is(expected.get(j).getFromPos()));
+      }
+    }
+    lt2.shutdown();
+  }
+
   @Test
   public void testShutdownException() throws IOException {
     MultiThreadedJLanguageTool tool = new MultiThreadedJLanguageTool(new Demo());
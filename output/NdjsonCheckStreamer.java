@@ -0,0 +1,156 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.server;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.sun.net.httpserver.HttpExchange;
+import org.jetbrains.annotations.Nullable;
+import org.languagetool.DetectedLanguage;
+import org.languagetool.Language;
+import org.languagetool.RuleMatchListener;
+import org.languagetool.markup.AnnotatedText;
+import org.languagetool.rules.RuleMatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Writes the matches of a check as newline-delimited JSON (one {@code {"match":{...}}} object per line)
+ * while the check is running, followed by a {@code {"summary":{...}}} line. The response headers
+ * are sent with the first line, so errors before that can still be sent as a normal error response.
+ * Matches that only the final result contains (e.g. from the cache) are written before the summary,
+ * streamed matches missing from the final result are listed as {@code retractedMatches} in the summary.
+ * @since 5.3
+ */
+class NdjsonCheckStreamer implements RuleMatchListener {
+
+  static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+  private static final String ATTRIBUTE = NdjsonCheckStreamer.class.getName();
+
+  private static final Logger logger = LoggerFactory.getLogger(NdjsonCheckStreamer.class);
+
+  private final HttpExchange httpExchange;
+  private final AnnotatedText text;
+  private final RuleMatchesAsJsonSerializer serializer;
+  private final int contextSize;
+  private final String allowOriginUrl;
+  private final Map<String, RuleMatch> streamed = new LinkedHashMap<>();
+  private OutputStream out;
+  private boolean disconnected;
+  private boolean done;  // matches found after this (e.g. by a cancelled check) are ignored
+
+  NdjsonCheckStreamer(HttpExchange httpExchange, AnnotatedText text, Language lang, int compactMode, int contextSize, String allowOriginUrl) {
+    this.httpExchange = httpExchange;
+    this.text = text;
+    this.serializer = new RuleMatchesAsJsonSerializer(compactMode, lang);
+    this.contextSize = contextSize;
+    this.allowOriginUrl = allowOriginUrl;
+    httpExchange.setAttribute(ATTRIBUTE, this);
+  }
+
+  /**
+   * The streamer of the exchange if it has already sent the response headers, so that errors need to be
+   * reported with {@link #fail(String)}, or {@code null}.
+   */
+  @Nullable
+  static NdjsonCheckStreamer getStartedOrNull(HttpExchange httpExchange) {
+    Object streamer = httpExchange.getAttribute(ATTRIBUTE);
+    return streamer instanceof NdjsonCheckStreamer && ((NdjsonCheckStreamer) streamer).isStarted() ? (NdjsonCheckStreamer) streamer : null;
+  }
+
+  /**
+   * Whether a streaming response has been requested with {@code stream=true} or an {@code Accept: application/x-ndjson} header.
+   */
+  static boolean isRequested(HttpExchange httpExchange, Map<String, String> parameters) {
+    if ("true".equals(parameters.get("stream"))) {
+      return true;
+    }
+    String accept = httpExchange.getRequestHeaders() != null ? httpExchange.getRequestHeaders().getFirst("Accept") : null;
+    return accept != null && accept.contains(NDJSON_CONTENT_TYPE);
+  }
+
+  /**
+   * Called by the checking threads.
+   */
+  @Override
+  public synchronized void matchFound(RuleMatch match) {
+    String key = getKey(match);
+    if (!streamed.containsKey(key)) {
+      streamed.put(key, match);
+      write(serializer.ruleMatchToNdjson(match, text, contextSize));
+    }
+  }
+
+  /**
+   * Whether the response headers have been sent, i.e. errors can't be sent as an error response anymore.
+   */
+  synchronized boolean isStarted() {
+    return out != null;
+  }
+
+  synchronized void finish(List<RuleMatch> matches, DetectedLanguage detectedLang, String incompleteResultsReason, boolean showPremiumHint) {
+    Map<String, RuleMatch> retracted = new LinkedHashMap<>(streamed);
+    for (RuleMatch match : matches) {
+      String key = getKey(match);
+      if (retracted.remove(key) == null && !streamed.containsKey(key)) {
+        streamed.put(key, match);
+        write(serializer.ruleMatchToNdjson(match, text, contextSize));
+      }
+    }
+    write(serializer.summaryToNdjson(detectedLang, incompleteResultsReason, showPremiumHint, matches.size(), new ArrayList<>(retracted.values())));
+    done = true;
+  }
+
+  /**
+   * Ends a started response with an {@code {"error":{...}}} line.
+   */
+  synchronized void fail(String message) {
+    write("{\"error\":{\"message\":\"" + new String(JsonStringEncoder.getInstance().quoteAsString(message)) + "\"}}\n");
+    done = true;
+  }
+
+  private void write(String line) {
+    if (disconnected || done) {
+      return;
+    }
+    try {
+      if (out == null) {
+        ServerTools.setCommonHeaders(httpExchange, NDJSON_CONTENT_TYPE, allowOriginUrl);
+        httpExchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+        ServerMetricsCollector.getInstance().logResponse(HttpURLConnection.HTTP_OK);
+        out = httpExchange.getResponseBody();
+      }
+      out.write(line.getBytes(StandardCharsets.UTF_8));
+      out.flush();
+    } catch (IOException e) {
+      logger.info("Client disconnected while streaming matches: " + e.getMessage());
+      disconnected = true;
+    }
+  }
+
+  private static String getKey(RuleMatch match) {
+    return match.getFromPos() + ":" + match.getToPos() + ":" + match.getRule().getFullId();
+  }
+
+}
@@ -0,0 +1,1014 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.server;
+
+import com.sun.net.httpserver.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.BindException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link HttpServer} with a single event loop thread that accepts connections, reads requests, and writes
+ * responses without blocking. Only complete requests (headers and body) are passed to the handlers, which run
+ * on the {@link #setExecutor(Executor) executor}, so slow clients and idle keep-alive connections don't
+ * occupy a thread. Supports HTTP/1.0 and 1.1 with keep-alive, {@code Expect: 100-continue}, and chunked
+ * request and response bodies; pipelined requests are handled one after the other.
+ * @since 5.3
+ */
+class NioHttpServer extends HttpServer {
+
+  private static final Logger logger = LoggerFactory.getLogger(NioHttpServer.class);
+
+  private static final int MAX_HEADER_BYTES = 64 * 1024;
+  private static final int HEADER_TOO_LARGE = 431;
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+  // a handler writing a large response to a slow client waits when this many bytes haven't been sent yet:
+  private static final int MAX_PENDING_RESPONSE_BYTES = 1024 * 1024;
+  // marks the end of a response in a connection's output queue:
+  private static final ByteBuffer END_OF_RESPONSE = ByteBuffer.allocate(0);
+  private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+  private final long maxRequestBytes;
+  private final long idleTimeoutMillis;
+  private final Map<String, NioHttpContext> contexts = new ConcurrentHashMap<>();
+  private final Queue<Runnable> eventLoopTasks = new ConcurrentLinkedQueue<>();
+  private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger activeExchanges = new AtomicInteger();
+
+  private ServerSocketChannel serverChannel;
+  private Selector selector;
+  private Thread eventLoop;
+  private volatile Executor executor;
+  private volatile boolean running;
+
+  /**
+   * @param maxRequestBytes requests with a larger body are rejected with status 413
+   * @param idleTimeoutMillis connections without a request in progress are closed after this time
+   */
+  NioHttpServer(long maxRequestBytes, long idleTimeoutMillis) {
+    this.maxRequestBytes = maxRequestBytes;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+  }
+
+  static NioHttpServer create(InetSocketAddress address, long maxRequestBytes, long idleTimeoutMillis) throws IOException {
+    NioHttpServer server = new NioHttpServer(maxRequestBytes, idleTimeoutMillis);
+    server.bind(address, 0);
+    return server;
+  }
+
+  @Override
+  public void bind(InetSocketAddress address, int backlog) throws IOException {
+    if (serverChannel != null) {
+      throw new BindException("Server already bound");
+    }
+    selector = Selector.open();
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(address, backlog);
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+  }
+
+  @Override
+  public void start() {
+    if (serverChannel == null || eventLoop != null) {
+      throw new IllegalStateException("Server not bound or already started");
+    }
+    running = true;
+    eventLoop = new Thread(this::runEventLoop, "lt-nio-http-" + getAddress().getPort());
+    eventLoop.start();
+  }
+
+  @Override
+  public void setExecutor(Executor executor) {
+    this.executor = executor;
+  }
+
+  @Override
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Stop accepting connections, wait up to {@code delay} seconds for the running exchanges, then close all connections.
+   */
+  @Override
+  public void stop(int delay) {
+    if (!running) {
+      return;
+    }
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+      logger.warn("Could not close server socket", e);
+    }
+    long deadline = System.currentTimeMillis() + delay * 1000L;
+    while (activeExchanges.get() > 0 && System.currentTimeMillis() < deadline) {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    running = false;
+    selector.wakeup();
+    try {
+      eventLoop.join(5000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public HttpContext createContext(String path, HttpHandler handler) {
+    NioHttpContext context = new NioHttpContext(path, handler);
+    if (contexts.putIfAbsent(path, context) != null) {
+      throw new IllegalArgumentException("Context already exists: " + path);
+    }
+    return context;
+  }
+
+  @Override
+  public HttpContext createContext(String path) {
+    return createContext(path, null);
+  }
+
+  @Override
+  public void removeContext(String path) {
+    if (contexts.remove(path) == null) {
+      throw new IllegalArgumentException("No such context: " + path);
+    }
+  }
+
+  @Override
+  public void removeContext(HttpContext context) {
+    removeContext(context.getPath());
+  }
+
+  @Override
+  public InetSocketAddress getAddress() {
+    try {
+      return (InetSocketAddress) serverChannel.getLocalAddress();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @return the number of open client connections
+   */
+  int getConnectionCount() {
+    return connections.size();
+  }
+
+  private void runEventLoop() {
+    ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    long lastIdleCheck = System.currentTimeMillis();
+    while (running) {
+      try {
+        selector.select(1000);
+        Runnable task;
+        while ((task = eventLoopTasks.poll()) != null) {
+          task.run();
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+            continue;
+          }
+          Connection connection = (Connection) key.attachment();
+          try {
+            if (key.isReadable()) {
+              connection.read(readBuffer);
+            }
+            if (key.isValid() && key.isWritable()) {
+              connection.write();
+            }
+          } catch (IOException e) {
+            connection.close();
+          }
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheck > 1000) {
+          lastIdleCheck = now;
+          for (Connection connection : connections) {
+            if (connection.exchange == null && now - connection.lastActivity > idleTimeoutMillis) {
+              connection.close();
+            }
+          }
+        }
+      } catch (ClosedSelectorException e) {
+        break;
+      } catch (Exception e) {
+        logger.error("Error in HTTP event loop", e);
+      }
+    }
+    for (Connection connection : connections) {
+      connection.close();
+    }
+    try {
+      selector.close();
+    } catch (IOException e) {
+      logger.warn("Could not close selector", e);
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = serverChannel.accept()) != null) {
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+      Connection connection = new Connection(channel);
+      connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+      connections.add(connection);
+    }
+  }
+
+  // called by handler threads:
+  private void runOnEventLoop(Runnable task) {
+    eventLoopTasks.add(task);
+    selector.wakeup();
+  }
+
+  private void dispatch(NioHttpExchange exchange) {
+    activeExchanges.incrementAndGet();
+    Runnable handling = () -> {
+      try {
+        HttpHandler handler = exchange.context.getHandler();
+        if (handler == null) {
+          exchange.sendError(HttpURLConnection.HTTP_NOT_FOUND);
+        } else {
+          handler.handle(exchange);
+        }
+      } catch (Throwable t) {
+        logger.error("Uncaught exception in HTTP handler", t);
+      } finally {
+        exchange.close();
+        activeExchanges.decrementAndGet();
+      }
+    };
+    Executor executor = this.executor;
+    try {
+      if (executor != null) {
+        executor.execute(handling);
+      } else {
+        new Thread(handling).start();
+      }
+    } catch (RejectedExecutionException e) {
+      activeExchanges.decrementAndGet();
+      exchange.sendError(HttpURLConnection.HTTP_UNAVAILABLE);
+      exchange.close();
+    }
+  }
+
+  private NioHttpContext findContext(String path) {
+    NioHttpContext result = null;
+    for (NioHttpContext context : contexts.values()) {
+      if (path.startsWith(context.path) && (result == null || context.path.length() > result.path.length())) {
+        result = context;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * A client connection, reading and writing happens only on the event loop thread.
+   */
+  private class Connection {
+    private final SocketChannel channel;
+    private final InetSocketAddress remoteAddress;
+    private final InetSocketAddress localAddress;
+    // bytes of the next request(s):
+    private byte[] input = new byte[1024];
+    private int inputLength;
+    // the request whose body is being read:
+    private RequestHead head;
+    private boolean continueSent;
+    // the request being handled or whose response is being written:
+    private volatile NioHttpExchange exchange;
+    private final Deque<ByteBuffer> output = new ArrayDeque<>();
+    private long pendingOutputBytes;
+    private boolean closeAfterOutput;
+    private boolean closed;
+    private SelectionKey key;
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    Connection(SocketChannel channel) throws IOException {
+      this.channel = channel;
+      this.remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+      this.localAddress = (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    void read(ByteBuffer buffer) throws IOException {
+      buffer.clear();
+      int count = channel.read(buffer);
+      if (count == -1) {
+        if (exchange == null) {
+          close();
+        } else {
+          // the client has half-closed the connection, we can still send the response
+          key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+        return;
+      }
+      lastActivity = System.currentTimeMillis();
+      buffer.flip();
+      ensureInputCapacity(inputLength + count);
+      buffer.get(input, inputLength, count);
+      inputLength += count;
+      if (exchange == null) {
+        processInput();
+      }
+    }
+
+    private void ensureInputCapacity(int capacity) {
+      if (capacity > input.length) {
+        input = Arrays.copyOf(input, Math.max(capacity, input.length * 2));
+      }
+    }
+
+    // parses as much of the input as possible, dispatches the request once it's complete:
+    private void processInput() throws IOException {
+      if (head == null) {
+        int headerEnd = indexOf(input, inputLength, 0);
+        if (headerEnd == -1) {
+          if (inputLength > MAX_HEADER_BYTES) {
+            sendErrorAndClose(HEADER_TOO_LARGE);
+          }
+          return;
+        }
+        try {
+          head = RequestHead.parse(new String(input, 0, headerEnd, StandardCharsets.ISO_8859_1));
+        } catch (IllegalArgumentException | URISyntaxException e) {
+          sendErrorAndClose(HttpURLConnection.HTTP_BAD_REQUEST);
+          return;
+        }
+        head.bodyStart = headerEnd + 4;
+        if (head.chunked == null && head.contentLength > maxRequestBytes) {
+          sendErrorAndClose(HttpURLConnection.HTTP_ENTITY_TOO_LARGE);
+          return;
+        }
+        if (head.chunked == null && head.contentLength < 0) {
+          sendErrorAndClose(HttpURLConnection.HTTP_NOT_IMPLEMENTED);
+          return;
+        }
+      }
+      byte[] body;
+      int requestEnd;
+      if (head.chunked != null) {
+        ChunkedBody.Result result = head.chunked.decode(input, head.bodyStart, inputLength, maxRequestBytes);
+        if (result == ChunkedBody.Result.TOO_LARGE) {
+          sendErrorAndClose(HttpURLConnection.HTTP_ENTITY_TOO_LARGE);
+          return;
+        } else if (result == ChunkedBody.Result.INVALID) {
+          sendErrorAndClose(HttpURLConnection.HTTP_BAD_REQUEST);
+          return;
+        } else if (result == ChunkedBody.Result.INCOMPLETE) {
+          sendContinueIfExpected();
+          return;
+        }
+        body = head.chunked.getBody();
+        requestEnd = head.chunked.getEnd();
+      } else {
+        requestEnd = (int) (head.bodyStart + head.contentLength);
+        if (inputLength < requestEnd) {
+          // the buffer grows as the body arrives, so clients can't make us allocate memory by just announcing a large body:
+          sendContinueIfExpected();
+          return;
+        }
+        body = Arrays.copyOfRange(input, head.bodyStart, requestEnd);
+      }
+      RequestHead requestHead = head;
+      head = null;
+      continueSent = false;
+      // keep the bytes of a pipelined request for later:
+      System.arraycopy(input, requestEnd, input, 0, inputLength - requestEnd);
+      inputLength -= requestEnd;
+      NioHttpContext context = findContext(requestHead.uri.getPath() != null ? requestHead.uri.getPath() : "/");
+      if (context == null) {
+        sendErrorAndClose(HttpURLConnection.HTTP_NOT_FOUND);
+        return;
+      }
+      exchange = new NioHttpExchange(this, context, requestHead, body);
+      key.interestOps(0);
+      dispatch(exchange);
+    }
+
+    private void sendContinueIfExpected() {
+      if (head.expectContinue && !continueSent) {
+        continueSent = true;
+        enqueue(ByteBuffer.wrap(CONTINUE));
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+      }
+    }
+
+    private void sendErrorAndClose(int code) {
+      byte[] response = ("HTTP/1.1 " + code + " Error\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+      head = null;
+      inputLength = 0;
+      exchange = null;
+      closeAfterOutput = true;
+      enqueue(ByteBuffer.wrap(response));
+      key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private void enqueue(ByteBuffer buffer) {
+      synchronized (this) {
+        pendingOutputBytes += buffer.remaining();
+      }
+      output.add(buffer);
+    }
+
+    // called by handler threads:
+    void send(ByteBuffer buffer, boolean lastOfResponse) {
+      synchronized (this) {
+        while (pendingOutputBytes > MAX_PENDING_RESPONSE_BYTES && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while sending response", e);
+          }
+        }
+        if (closed) {
+          return;
+        }
+        pendingOutputBytes += buffer.remaining();
+      }
+      runOnEventLoop(() -> {
+        if (closed) {
+          return;
+        }
+        output.add(buffer);
+        if (lastOfResponse) {
+          output.add(END_OF_RESPONSE);
+        }
+        try {
+          write();
+        } catch (IOException e) {
+          close();
+        }
+      });
+    }
+
+    void write() throws IOException {
+      while (!output.isEmpty()) {
+        ByteBuffer buffer = output.peek();
+        if (buffer == END_OF_RESPONSE) {
+          output.poll();
+          finishResponse();
+          continue;
+        }
+        int written = channel.write(buffer);
+        if (written > 0) {
+          lastActivity = System.currentTimeMillis();
+          synchronized (this) {
+            pendingOutputBytes -= written;
+            notifyAll();
+          }
+        }
+        if (buffer.hasRemaining()) {
+          key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+          return;
+        }
+        output.poll();
+      }
+      if (closeAfterOutput) {
+        close();
+      } else if (key.isValid()) {
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+      }
+    }
+
+    private void finishResponse() throws IOException {
+      NioHttpExchange finished = exchange;
+      exchange = null;
+      if (finished == null || !finished.keepAlive) {
+        closeAfterOutput = true;
+        return;
+      }
+      key.interestOps(SelectionKey.OP_READ);
+      if (inputLength > 0) {
+        processInput();
+      }
+    }
+
+    // called by handler threads:
+    void closeFromHandler() {
+      runOnEventLoop(this::close);
+    }
+
+    void close() {
+      if (closed) {
+        return;
+      }
+      synchronized (this) {
+        closed = true;
+        notifyAll();
+      }
+      connections.remove(this);
+      if (key != null) {
+        key.cancel();
+      }
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  private static int indexOf(byte[] bytes, int length, int from) {
+    for (int i = from; i + 3 < length; i++) {
+      if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Request line and headers.
+   */
+  private static class RequestHead {
+    private String method;
+    private URI uri;
+    private String protocol;
+    private final Headers headers = new Headers();
+    private long contentLength;
+    private ChunkedBody chunked;
+    private boolean expectContinue;
+    private boolean keepAlive;
+    private int bodyStart;
+
+    static RequestHead parse(String s) throws URISyntaxException {
+      String[] lines = s.split("\r\n");
+      String[] requestLine = lines[0].split(" ");
+      if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+        throw new IllegalArgumentException("Invalid request line: " + lines[0]);
+      }
+      RequestHead head = new RequestHead();
+      head.method = requestLine[0];
+      head.uri = new URI(requestLine[1]);
+      head.protocol = requestLine[2];
+      for (int i = 1; i < lines.length; i++) {
+        int colon = lines[i].indexOf(':');
+        if (colon <= 0) {
+          throw new IllegalArgumentException("Invalid header: " + lines[i]);
+        }
+        head.headers.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+      }
+      String transferEncoding = head.headers.getFirst("Transfer-Encoding");
+      if (transferEncoding != null && transferEncoding.equalsIgnoreCase("chunked")) {
+        head.chunked = new ChunkedBody();
+      } else if (transferEncoding != null) {
+        head.contentLength = -1;  // not supported
+      } else {
+        String contentLength = head.headers.getFirst("Content-Length");
+        head.contentLength = contentLength != null ? Long.parseLong(contentLength) : 0;
+        if (head.contentLength < 0) {
+          throw new IllegalArgumentException("Invalid Content-Length: " + contentLength);
+        }
+      }
+      head.expectContinue = "100-continue".equalsIgnoreCase(head.headers.getFirst("Expect"));
+      String connection = head.headers.getFirst("Connection");
+      head.keepAlive = head.protocol.equals("HTTP/1.1") ? !"close".equalsIgnoreCase(connection) : "keep-alive".equalsIgnoreCase(connection);
+      return head;
+    }
+  }
+
+  /**
+   * Decodes a chunked request body incrementally.
+   */
+  private static class ChunkedBody {
+    enum Result { COMPLETE, INCOMPLETE, INVALID, TOO_LARGE }
+
+    // chunk size lines with extensions longer than this are rejected:
+    private static final int MAX_LINE_BYTES = 4096;
+    // trailer fields are skipped, but not more than this:
+    private static final int MAX_TRAILER_BYTES = 16 * 1024;
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private int position = -1;  // start of the next chunk in the input
+    private int end;
+
+    Result decode(byte[] input, int start, int length, long maxBytes) {
+      if (position == -1) {
+        position = start;
+      }
+      while (true) {
+        int lineEnd = indexOfLineEnd(input, position, Math.min(length, position + MAX_LINE_BYTES + 2));
+        if (lineEnd == -1) {
+          return length - position > MAX_LINE_BYTES ? Result.INVALID : incomplete(length, maxBytes);
+        }
+        String sizeLine = new String(input, position, lineEnd - position, StandardCharsets.ISO_8859_1);
+        int extension = sizeLine.indexOf(';');
+        int size;
+        try {
+          size = Integer.parseInt((extension != -1 ? sizeLine.substring(0, extension) : sizeLine).trim(), 16);
+        } catch (NumberFormatException e) {
+          return Result.INVALID;
+        }
+        if (size < 0 || body.size() + (long) size > maxBytes) {
+          return Result.TOO_LARGE;
+        }
+        if (size == 0) {
+          // the last chunk, followed by optional trailer fields, which are ignored, and an empty line:
+          int trailerEnd = indexOf(input, Math.min(length, lineEnd + MAX_TRAILER_BYTES + 4), lineEnd);
+          if (trailerEnd == -1) {
+            return length - lineEnd > MAX_TRAILER_BYTES ? Result.TOO_LARGE : incomplete(length, maxBytes);
+          }
+          end = trailerEnd + 4;
+          return Result.COMPLETE;
+        }
+        int dataStart = lineEnd + 2;
+        if (dataStart + size + 2 > length) {
+          return incomplete(length, maxBytes);
+        }
+        if (input[dataStart + size] != '\r' || input[dataStart + size + 1] != '\n') {
+          return Result.INVALID;
+        }
+        body.write(input, dataStart, size);
+        position = dataStart + size + 2;
+      }
+    }
+
+    // the input that's not decoded yet can't be longer than the rest of the allowed body plus its framing:
+    private Result incomplete(int length, long maxBytes) {
+      long maxPending = maxBytes - body.size() + MAX_LINE_BYTES + MAX_TRAILER_BYTES + 8;
+      return length - position > maxPending ? Result.TOO_LARGE : Result.INCOMPLETE;
+    }
+
+    private static int indexOfLineEnd(byte[] input, int from, int to) {
+      for (int i = from; i + 1 < to; i++) {
+        if (input[i] == '\r' && input[i + 1] == '\n') {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    byte[] getBody() {
+      return body.toByteArray();
+    }
+
+    int getEnd() {
+      return end;
+    }
+  }
+
+  private class NioHttpContext extends HttpContext {
+    private final String path;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final List<Filter> filters = new CopyOnWriteArrayList<>();
+    private volatile HttpHandler handler;
+    private volatile Authenticator authenticator;
+
+    NioHttpContext(String path, HttpHandler handler) {
+      this.path = path;
+      this.handler = handler;
+    }
+
+    @Override
+    public HttpHandler getHandler() {
+      return handler;
+    }
+
+    @Override
+    public void setHandler(HttpHandler handler) {
+      this.handler = handler;
+    }
+
+    @Override
+    public String getPath() {
+      return path;
+    }
+
+    @Override
+    public HttpServer getServer() {
+      return NioHttpServer.this;
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+      return attributes;
+    }
+
+    @Override
+    public List<Filter> getFilters() {
+      return filters;
+    }
+
+    @Override
+    public Authenticator setAuthenticator(Authenticator authenticator) {
+      Authenticator old = this.authenticator;
+      this.authenticator = authenticator;
+      return old;
+    }
+
+    @Override
+    public Authenticator getAuthenticator() {
+      return authenticator;
+    }
+  }
+
+  /**
+   * An exchange whose request has been read completely. The response is passed to the event loop
+   * in pieces, so that handlers can stream it.
+   */
+  private static class NioHttpExchange extends HttpExchange {
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private final Connection connection;
+    private final NioHttpContext context;
+    private final RequestHead head;
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final boolean keepAlive;
+    private InputStream requestBody;
+    private OutputStream responseBody;
+    private final ResponseBodyStream rawResponseBody = new ResponseBodyStream();
+    private int responseCode = -1;
+    private boolean closed;
+
+    NioHttpExchange(Connection connection, NioHttpContext context, RequestHead head, byte[] body) {
+      this.connection = connection;
+      this.context = context;
+      this.head = head;
+      this.keepAlive = head.keepAlive;
+      this.requestBody = new ByteArrayInputStream(body);
+      this.responseBody = rawResponseBody;
+    }
+
+    @Override
+    public Headers getRequestHeaders() {
+      return head.headers;
+    }
+
+    @Override
+    public Headers getResponseHeaders() {
+      return responseHeaders;
+    }
+
+    @Override
+    public URI getRequestURI() {
+      return head.uri;
+    }
+
+    @Override
+    public String getRequestMethod() {
+      return head.method;
+    }
+
+    @Override
+    public HttpContext getHttpContext() {
+      return context;
+    }
+
+    @Override
+    public InputStream getRequestBody() {
+      return requestBody;
+    }
+
+    @Override
+    public OutputStream getResponseBody() {
+      return responseBody;
+    }
+
+    /**
+     * As with the JDK's server, a length of 0 means that the body is sent in chunks, -1 means no body.
+     */
+    @Override
+    public synchronized void sendResponseHeaders(int code, long length) throws IOException {
+      if (responseCode != -1) {
+        throw new IOException("Headers already sent");
+      }
+      responseCode = code;
+      boolean noBody = length == -1 || code == 204 || code == 304 || head.method.equalsIgnoreCase("HEAD");
+      if (noBody) {
+        responseHeaders.set("Content-Length", "0");
+        rawResponseBody.remaining = 0;
+      } else if (length == 0) {
+        responseHeaders.set("Transfer-Encoding", "chunked");
+        rawResponseBody.chunked = true;
+      } else {
+        responseHeaders.set("Content-Length", Long.toString(length));
+        rawResponseBody.remaining = length;
+      }
+      if (!keepAlive) {
+        responseHeaders.set("Connection", "close");
+      }
+      if (responseHeaders.getFirst("Date") == null) {
+        responseHeaders.set("Date", java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME.format(java.time.ZonedDateTime.now(java.time.ZoneOffset.UTC)));
+      }
+      StringBuilder sb = new StringBuilder();
+      sb.append("HTTP/1.1 ").append(code).append(' ').append(reasonPhrase(code)).append("\r\n");
+      for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+        for (String value : header.getValue()) {
+          sb.append(header.getKey()).append(": ").append(value).append("\r\n");
+        }
+      }
+      sb.append("\r\n");
+      connection.send(ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.ISO_8859_1)), false);
+    }
+
+    void sendError(int code) {
+      try {
+        sendResponseHeaders(code, -1);
+      } catch (IOException e) {
+        connection.closeFromHandler();
+      }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+      return connection.remoteAddress;
+    }
+
+    @Override
+    public int getResponseCode() {
+      return responseCode;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+      return connection.localAddress;
+    }
+
+    @Override
+    public String getProtocol() {
+      return head.protocol;
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+      return attributes.get(name);
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+      attributes.put(name, value);
+    }
+
+    @Override
+    public void setStreams(InputStream in, OutputStream out) {
+      if (in != null) {
+        requestBody = in;
+      }
+      if (out != null) {
+        responseBody = out;
+      }
+    }
+
+    @Override
+    public HttpPrincipal getPrincipal() {
+      return null;
+    }
+
+    @Override
+    public synchronized void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (responseCode == -1) {
+        // the handler didn't send a response, there's nothing we can do but close the connection
+        connection.closeFromHandler();
+        return;
+      }
+      try {
+        responseBody.close();
+      } catch (IOException e) {
+        connection.closeFromHandler();
+      }
+    }
+
+    private static String reasonPhrase(int code) {
+      switch (code) {
+        case 200: return "OK";
+        case 400: return "Bad Request";
+        case 403: return "Forbidden";
+        case 404: return "Not Found";
+        case 413: return "Request Entity Too Large";
+        case 429: return "Too Many Requests";
+        case 500: return "Internal Server Error";
+        case 503: return "Service Unavailable";
+        default: return "Status " + code;
+      }
+    }
+
+    /**
+     * Collects the body and passes it to the event loop in chunks.
+     */
+    private class ResponseBodyStream extends OutputStream {
+      private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      private boolean chunked;
+      private long remaining;
+      private boolean closed;
+
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+          throw new IOException("Stream closed");
+        }
+        if (responseCode == -1) {
+          throw new IOException("sendResponseHeaders() must be called first");
+        }
+        if (!chunked) {
+          if (len > remaining) {
+            throw new IOException("Too many bytes for the Content-Length");
+          }
+          remaining -= len;
+        }
+        buffer.write(b, off, len);
+        if (buffer.size() >= CHUNK_SIZE) {
+          flushBuffer(false);
+        }
+      }
+
+      @Override
+      public void flush() {
+        if (buffer.size() > 0) {
+          flushBuffer(false);
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        if (!chunked && remaining > 0) {
+          // the handler promised more bytes than it sent, the client can't use the connection anymore
+          flushBuffer(false);
+          connection.closeFromHandler();
+          throw new IOException("Response body too short, " + remaining + " bytes missing");
+        }
+        flushBuffer(true);
+      }
+
+      private void flushBuffer(boolean last) {
+        byte[] data = buffer.toByteArray();
+        buffer.reset();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length + 16);
+        if (chunked) {
+          if (data.length > 0) {
+            writeAscii(out, Integer.toHexString(data.length) + "\r\n");
+            out.write(data, 0, data.length);
+            writeAscii(out, "\r\n");
+          }
+          if (last) {
+            writeAscii(out, "0\r\n\r\n");
+          }
+        } else {
+          out.write(data, 0, data.length);
+        }
+        connection.send(ByteBuffer.wrap(out.toByteArray()), last);
+      }
+
+      private void writeAscii(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+        out.write(bytes, 0, bytes.length);
+      }
+    }
+  }
+}
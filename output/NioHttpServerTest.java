@@ -0,0 +1,188 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NioHttpServerTest {
+
+  private NioHttpServer server;
+  private ExecutorService executor;
+  private int port;
+
+  @Before
+  public void setUp() throws IOException {
+    server = NioHttpServer.create(new InetSocketAddress("localhost", 0), 1000, 60_000);
+    server.createContext("/", this::handle);
+    executor = Executors.newFixedThreadPool(2);
+    server.setExecutor(executor);
+    server.start();
+    port = server.getAddress().getPort();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    byte[] body = readAll(exchange.getRequestBody());
+    if (exchange.getRequestURI().getPath().equals("/stream")) {
+      exchange.sendResponseHeaders(200, 0);
+      try (OutputStream out = exchange.getResponseBody()) {
+        for (int i = 0; i < 10_000; i++) {
+          out.write("line\n".getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      return;
+    }
+    byte[] response = (exchange.getRequestMethod() + " " + exchange.getRequestURI() + " " + body.length).getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(200, response.length);
+    exchange.getResponseBody().write(response);
+    exchange.close();
+  }
+
+  @Test
+  public void testRequests() throws IOException {
+    for (int i = 0; i < 3; i++) {
+      HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/v2/check?i=" + i).openConnection();
+      conn.setDoOutput(true);
+      conn.getOutputStream().write("text=hello".getBytes(StandardCharsets.UTF_8));
+      assertEquals(200, conn.getResponseCode());
+      assertEquals("POST /v2/check?i=" + i + " 10", new String(readAll(conn.getInputStream()), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testChunkedRequestAndResponse() throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/chunked").openConnection();
+    conn.setDoOutput(true);
+    conn.setChunkedStreamingMode(7);
+    conn.getOutputStream().write("0123456789012345678901".getBytes(StandardCharsets.UTF_8));
+    assertEquals("POST /chunked 22", new String(readAll(conn.getInputStream()), StandardCharsets.UTF_8));
+    conn = (HttpURLConnection) new URL("http://localhost:" + port + "/stream").openConnection();
+    assertEquals(50_000, readAll(conn.getInputStream()).length);
+  }
+
+  @Test
+  public void testPipelinedRequests() throws IOException {
+    try (Socket socket = new Socket("localhost", port)) {
+      socket.getOutputStream().write(("GET /a HTTP/1.1\r\nHost: x\r\n\r\n" +
+        "GET /b HTTP/1.1\r\nHost: x\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+      String response = new String(readAll(socket.getInputStream()), StandardCharsets.US_ASCII);
+      assertTrue(response, response.contains("GET /a 0HTTP/1.1 200 OK"));
+      assertTrue(response, response.endsWith("GET /b 0"));
+    }
+  }
+
+  @Test
+  public void testTooLargeRequest() throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/").openConnection();
+    conn.setDoOutput(true);
+    conn.getOutputStream().write(new byte[2000]);
+    assertEquals(413, conn.getResponseCode());
+  }
+
+  @Test
+  public void testChunkedRequestWithTrailers() throws IOException {
+    try (Socket socket = new Socket("localhost", port)) {
+      socket.getOutputStream().write(("POST /a HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n" +
+        "5;ext=1\r\nhello\r\n0\r\nChecksum: abc\r\nOther: def\r\n\r\n" +
+        "GET /b HTTP/1.1\r\nHost: x\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+      String response = new String(readAll(socket.getInputStream()), StandardCharsets.US_ASCII);
+      assertTrue(response, response.contains("POST /a 5HTTP/1.1 200 OK"));
+      assertTrue(response, response.endsWith("GET /b 0"));
+    }
+  }
+
+  @Test
+  public void testInvalidChunkedRequests() throws IOException {
+    char[] longLine = new char[10_000];
+    Arrays.fill(longLine, '0');
+    String[] bodies = {
+      new String(longLine),  // size line without end
+      "5\r\nhello world\r\n0\r\n\r\n",  // chunk longer than its size
+    };
+    for (String body : bodies) {
+      try (Socket socket = new Socket("localhost", port)) {
+        socket.getOutputStream().write(("POST / HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n" + body)
+          .getBytes(StandardCharsets.US_ASCII));
+        String response = new String(readAll(socket.getInputStream()), StandardCharsets.US_ASCII);
+        assertTrue(response, response.startsWith("HTTP/1.1 400 "));
+      }
+    }
+    try (Socket socket = new Socket("localhost", port)) {
+      char[] trailer = new char[20_000];
+      Arrays.fill(trailer, 'x');
+      socket.getOutputStream().write(("POST / HTTP/1.1\r\nHost: x\r\nTransfer-Encoding: chunked\r\n\r\n0\r\nX: " + new String(trailer))
+        .getBytes(StandardCharsets.US_ASCII));
+      String response = new String(readAll(socket.getInputStream()), StandardCharsets.US_ASCII);
+      assertTrue(response, response.startsWith("HTTP/1.1 413 "));
+    }
+  }
+
+  @Test
+  public void testIdleConnectionsDontBlockRequests() throws IOException {
+    Socket[] idle = new Socket[50];
+    try {
+      for (int i = 0; i < idle.length; i++) {
+        idle[i] = new Socket("localhost", port);
+        idle[i].getOutputStream().write("POST / HTTP/1.1\r\nContent-Length: 100\r\n\r\nincomplete".getBytes(StandardCharsets.US_ASCII));
+      }
+      HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/x").openConnection();
+      assertEquals("GET /x 0", new String(readAll(conn.getInputStream()), StandardCharsets.UTF_8));
+    } finally {
+      for (Socket socket : idle) {
+        if (socket != null) {
+          socket.close();
+        }
+      }
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int len;
+    while ((len = in.read(buffer)) != -1) {
+      out.write(buffer, 0, len);
+    }
+    return out.toByteArray();
+  }
+}
@@ -18,8 +18,10 @@
  */
 package org.languagetool.rules.patterns;
 
+import org.jetbrains.annotations.Nullable;
 import org.languagetool.AnalyzedSentence;
 import org.languagetool.AnalyzedTokenReadings;
+import org.languagetool.Experimental;
 import org.languagetool.JLanguageTool;
 import org.languagetool.Language;
 import org.languagetool.rules.RuleMatch;
@@ -208,11 +210,22 @@ public class PatternRule extends AbstractTokenBasedRule {
 
   @Override
   public final RuleMatch[] match(AnalyzedSentence sentence) throws IOException {
-    if (canBeIgnoredFor(sentence)) return RuleMatch.EMPTY_ARRAY;
+    return match(sentence, null);
+  }
+
+  /**
+   * Like {@link #match(AnalyzedSentence)}, but only tries matches that start at the given positions.
+   * @param startPositions indexes into the sentence's {@link AnalyzedSentence#getTokensWithoutWhitespace() tokens},
+   *                       or {@code null} to try all positions
+   * @since 5.3
+   */
+  @Experimental
+  public final RuleMatch[] match(AnalyzedSentence sentence, @Nullable BitSet startPositions) throws IOException {
+    if (canBeIgnoredFor(sentence) || startPositions != null && startPositions.isEmpty()) return RuleMatch.EMPTY_ARRAY;
 
     try {
-      RuleMatcher matcher = new PatternRuleMatcher(this, useList);
-      return checkForAntiPatterns(sentence, matcher, matcher.match(sentence));
+      PatternRuleMatcher matcher = new PatternRuleMatcher(this, useList);
+      return checkForAntiPatterns(sentence, matcher, startPositions, matcher.match(sentence, startPositions));
     } catch (IOException e) {
       throw new IOException("Error analyzing sentence: '" + sentence + "'", e);
     } catch (Exception e) {
@@ -220,11 +233,12 @@ public class PatternRule extends AbstractTokenBasedRule {
     }
   }
 
-  private RuleMatch[] checkForAntiPatterns(AnalyzedSentence sentence, RuleMatcher matcher, RuleMatch[] matches) throws IOException {
+  private RuleMatch[] checkForAntiPatterns(AnalyzedSentence sentence, PatternRuleMatcher matcher,
+                                           @Nullable BitSet startPositions, RuleMatch[] matches) throws IOException {
     if (matches != null && matches.length > 0 && !getAntiPatterns().isEmpty()) {
       AnalyzedSentence immunized = getSentenceWithImmunization(sentence);
       if (Arrays.stream(immunized.getTokens()).anyMatch(AnalyzedTokenReadings::isImmunized)) {
-        return matcher.match(immunized);
+        return matcher.match(immunized, startPositions);
       }
     }
     return matches;
@@ -71,6 +71,14 @@ final public class PatternRuleMatcher extends AbstractPatternRulePerformer imple
 
   @Override
   public RuleMatch[] match(AnalyzedSentence sentence) throws IOException {
+    return match(sentence, null);
+  }
+
+  /**
+   * @param startPositions if not {@code null}, only try matches that start at these positions
+   *                       of the sentence's {@link AnalyzedSentence#getTokensWithoutWhitespace() tokens}
+   */
+  RuleMatch[] match(AnalyzedSentence sentence, @Nullable BitSet startPositions) throws IOException {
 //    long startTime = System.currentTimeMillis();
     List<RuleMatch> ruleMatches = new ArrayList<>();
     String key = monitorRules ? rule.getFullId() + ": " + sentence.getText() : null;
@@ -80,7 +88,7 @@ final public class PatternRuleMatcher extends AbstractPatternRulePerformer imple
     try {
       boolean isPreDisambigMatch = rule instanceof PatternRule && ((PatternRule)rule).isInterpretPosTagsPreDisambiguation();
       AnalyzedTokenReadings[] tokens = isPreDisambigMatch ? sentence.getPreDisambigTokensWithoutWhitespace() : sentence.getTokensWithoutWhitespace();
-      doMatch(patternTokenMatchers, tokens, (tokenPositions, firstMatchToken, lastMatchToken, firstMarkerMatchToken, lastMarkerMatchToken) -> {
+      doMatch(patternTokenMatchers, tokens, startPositions, (tokenPositions, firstMatchToken, lastMatchToken, firstMarkerMatchToken, lastMarkerMatchToken) -> {
         RuleMatch ruleMatch = createRuleMatch(tokenPositions, tokens, firstMatchToken, lastMatchToken, firstMarkerMatchToken, lastMarkerMatchToken, sentence);
         if (ruleMatch != null) {
           ruleMatches.add(ruleMatch);
@@ -22,6 +22,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.languagetool.AnalyzedToken;
 import org.languagetool.AnalyzedTokenReadings;
+import org.languagetool.Experimental;
 import org.languagetool.JLanguageTool;
 import org.languagetool.chunking.ChunkTag;
 import org.languagetool.synthesis.Synthesizer;
@@ -311,9 +312,23 @@ public class PatternToken implements Cloneable {
           String token, boolean regExp, boolean inflected,
           boolean negation, boolean scopeNext, boolean scopePrevious,
           String posToken, boolean posRegExp, boolean posNegation, Boolean caseSensitivity) {
+    setStringPosException(token, regExp, inflected, negation, scopeNext, scopePrevious, posToken, posRegExp, posNegation,
+      caseSensitivity, RegexEngine.JAVA);
+  }
+
+  /**
+   * Like {@link #setStringPosException(String, boolean, boolean, boolean, boolean, boolean, String, boolean, boolean, Boolean)},
+   * but matches the POS regular expression of the exception with the given engine.
+   * @since 5.3
+   */
+  @Experimental
+  public void setStringPosException(
+          String token, boolean regExp, boolean inflected,
+          boolean negation, boolean scopeNext, boolean scopePrevious,
+          String posToken, boolean posRegExp, boolean posNegation, Boolean caseSensitivity, RegexEngine regexEngine) {
     PatternToken exception = new PatternToken(token, caseSensitivity == null ? isCaseSensitive() : caseSensitivity, regExp, inflected);
     exception.setNegation(negation);
-    exception.setPosToken(new PosToken(posToken, posRegExp, posNegation));
+    exception.setPosToken(new PosToken(posToken, posRegExp, posNegation, regexEngine));
     exception.exceptionValidNext = scopeNext;
     if (exceptions == null) {
       exceptions = new Exceptions();
@@ -336,6 +351,9 @@ public class PatternToken implements Cloneable {
     if (tokenPos == null) {
       return false;
     }
+    if (pos.posAutomaton != null) {
+      return pos.posAutomaton.matches(tokenPos);
+    }
     return pos.posPattern != null ? pos.posPattern.matcher(tokenPos).matches() : pos.posTag.equals(tokenPos);
   }
 
@@ -483,7 +501,8 @@ public class PatternToken implements Cloneable {
     if (tokenReference.setsPos()) {
       String posReference = matchState.getTargetPosTag();
       if (posReference != null) {
-        setPosToken(new PosToken(posReference, tokenReference.posRegExp(), negation));
+        RegexEngine engine = posToken != null ? posToken.regexEngine : RegexEngine.JAVA;
+        setPosToken(new PosToken(posReference, tokenReference.posRegExp(), negation, engine));
       }
       setStringElement(getString().replace(reference, ""));
     } else {
@@ -704,6 +723,120 @@ public class PatternToken implements Cloneable {
     return result;
   }
 
+  /**
+   * @return all possible lemmas that this token pattern can accept, or {@code null} if such set is unknown/unbounded
+   * or if the pattern doesn't match lemmas. As in {@link #isMatched(AnalyzedToken)}, the token itself counts
+   * as lemma for readings without lemma. This is used internally for performance optimizations.
+   */
+  @Nullable
+  Set<String> calcLemmaHints() {
+    Set<String> result = inflected ? calcOwnPossibleStringValues() : null;
+    if (result == null) return null;
+
+    if (andGroupList != null) {
+      // the and-group members may match different readings with different lemmas,
+      // so their hints can't be intersected, but each of them is a valid restriction:
+      for (PatternToken token : andGroupList) {
+        Set<String> hints = token.calcLemmaHints();
+        if (hints != null && hints.size() < result.size()) {
+          result = hints;
+        }
+      }
+    } else if (orGroupList != null) {
+      result = new HashSet<>(result);
+
+      for (PatternToken token : orGroupList) {
+        Set<String> hints = token.calcLemmaHints();
+        if (hints == null) return null;
+
+        result.addAll(hints);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * @return strings that the POS tag of a matching reading must start with (at least one of them),
+   * or {@code null} if there's no such restriction. This is used internally for performance optimizations.
+   */
+  @Nullable
+  Set<String> calcPosTagPrefixHints() {
+    if (mayBeOmitted || tokenReference != null) {
+      return null;
+    }
+    Set<String> result = calcOwnPosTagPrefixes();
+    if (result == null || andGroupList != null) {
+      return result;
+    }
+    if (orGroupList != null) {
+      result = new HashSet<>(result);
+      for (PatternToken token : orGroupList) {
+        Set<String> prefixes = token.calcOwnPosTagPrefixes();
+        if (prefixes == null) return null;
+        result.addAll(prefixes);
+      }
+    }
+    return result;
+  }
+
+  @Nullable
+  private Set<String> calcOwnPosTagPrefixes() {
+    PosToken pos = posToken;
+    if (pos == null || pos.posTag == null || pos.negation || pos.posUnknown) {
+      return null;
+    }
+    if (pos.posPattern == null) {
+      return Collections.singleton(pos.posTag);
+    }
+    Set<String> prefixes = new HashSet<>();
+    for (String alternative : splitTopLevelAlternatives(pos.posTag)) {
+      String prefix = getLiteralPrefix(alternative);
+      if (prefix.isEmpty()) {
+        return null;
+      }
+      prefixes.add(prefix);
+    }
+    return prefixes;
+  }
+
+  // splits "A|B" but not "(A|B)" or "[|]"; returns [""] (i.e. no prefix) if brackets are unbalanced:
+  private static List<String> splitTopLevelAlternatives(String regex) {
+    List<String> result = new ArrayList<>();
+    int depth = 0;
+    int start = 0;
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '(' || c == '[') {
+        depth++;
+      } else if (c == ')' || c == ']') {
+        depth--;
+      } else if (c == '|' && depth == 0) {
+        result.add(regex.substring(start, i));
+        start = i + 1;
+      }
+    }
+    if (depth != 0) {
+      return Collections.singletonList("");
+    }
+    result.add(regex.substring(start));
+    return result;
+  }
+
+  // the part of the regex that matches only itself, e.g. "NN" for "NNP?" or "V" for "V.*":
+  private static String getLiteralPrefix(String regex) {
+    int i = 0;
+    while (i < regex.length() && "\\.[](){}*+?^$|".indexOf(regex.charAt(i)) == -1) {
+      i++;
+    }
+    if (i < regex.length() && "?*{".indexOf(regex.charAt(i)) != -1) {
+      i--;  // the last character is optional
+    }
+    return regex.substring(0, Math.max(i, 0));
+  }
+
   @Nullable
   private Set<String> calcOwnPossibleStringValues() {
     if (negation || !hasStringThatMustMatch()) {
@@ -749,16 +882,30 @@ public class PatternToken implements Cloneable {
     private final String posTag;
     private final boolean negation;
     private final Pattern posPattern;
+    private final RegexAutomaton posAutomaton;
+    private final RegexEngine regexEngine;
     private final boolean posUnknown;
 
     public PosToken(String posTag, boolean regExp, boolean negation) {
+      this(posTag, regExp, negation, RegexEngine.JAVA);
+    }
+
+    /**
+     * @param regexEngine the engine used to match the POS tag if it's a regular expression
+     * @since 5.3
+     */
+    @Experimental
+    public PosToken(String posTag, boolean regExp, boolean negation, RegexEngine regexEngine) {
       this.posTag = posTag;
       this.negation = negation;
+      this.regexEngine = regexEngine;
       if (regExp) {
         posPattern = Pattern.compile(posTag);
+        posAutomaton = regexEngine == RegexEngine.AUTOMATON ? RegexAutomaton.get(posTag, 0) : null;
         posUnknown = posPattern.matcher(UNKNOWN_TAG).matches();
       } else {
         posPattern = null;
+        posAutomaton = null;
         posUnknown = UNKNOWN_TAG.equals(posTag);
       }
     }
@@ -79,6 +79,16 @@ class Pipeline extends JLanguageTool {
     lastUsedTimestamp = System.currentTimeMillis();
   }
 
+  /**
+   * A pipeline that shares the pattern rules of {@code template}, see {@link JLanguageTool#JLanguageTool(JLanguageTool)}.
+   * It can be changed until {@link #setupFinished()} is called, even if the template can't be changed anymore.
+   * @since 5.3
+   */
+  Pipeline(Pipeline template) {
+    super(template);
+    lastUsedTimestamp = System.currentTimeMillis();
+  }
+
   @Override
   public void setCleanOverlappingMatches(boolean cleanOverlappingMatches) {
     preventModificationAfterSetup();
@@ -91,6 +101,18 @@ class Pipeline extends JLanguageTool {
     }
   }
 
+  @Override
+  public void setIncrementalCheckCache(IncrementalCheckCache incrementalCheckCache) {
+    preventModificationAfterSetup();
+    super.setIncrementalCheckCache(incrementalCheckCache);
+  }
+
+  @Override
+  public void setRuleTimingCollector(RuleTimingCollector ruleTimingCollector) {
+    preventModificationAfterSetup();
+    super.setRuleTimingCollector(ruleTimingCollector);
+  }
+
   @Override
   public void setMaxErrorsPerWordRate(float maxErrorsPerWordRate) {
     preventModificationAfterSetup();
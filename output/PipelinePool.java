@@ -21,21 +21,29 @@
 
 package org.languagetool.server;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jetbrains.annotations.Nullable;
 import org.languagetool.*;
 import org.languagetool.gui.Configuration;
+import org.languagetool.rules.CategoryId;
 import org.languagetool.rules.DictionaryMatchFilter;
 import org.languagetool.rules.RemoteRuleConfig;
 import org.languagetool.tools.Tools;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -55,6 +63,10 @@ class PipelinePool {
 
   static final long PIPELINE_EXPIRE_TIME = 15 * 60 * 1000;
 
+  // pipeline states for ServerMetricsCollector.logPipelinePoolChange():
+  static final String IDLE = "idle";
+  static final String IN_USE = "in_use";
+
   public static class PipelineSettings {
     private final Language lang;
     private final Language motherTongue;
@@ -97,6 +109,95 @@ class PipelinePool {
         .isEquals();
     }
 
+    /**
+     * Whether the settings can be restored by {@link #readFrom(DataInput, GlobalConfig, UserConfig)}.
+     */
+    boolean isSaveable(UserConfig defaultUserConfig) {
+      return query.callback == null && user.equals(defaultUserConfig);
+    }
+
+    /**
+     * Write everything but the global and the user configuration, for {@link PipelineUsageProfile}.
+     */
+    void writeTo(DataOutput out) throws IOException {
+      out.writeUTF(lang.getShortCodeWithCountryAndVariant());
+      out.writeUTF(motherTongue != null ? motherTongue.getShortCodeWithCountryAndVariant() : "");
+      writeStrings(out, query.altLanguages.stream().map(Language::getShortCodeWithCountryAndVariant).collect(Collectors.toList()));
+      writeStrings(out, query.enabledRules);
+      writeStrings(out, query.disabledRules);
+      writeStrings(out, query.enabledCategories == null ? null : query.enabledCategories.stream().map(CategoryId::toString).collect(Collectors.toList()));
+      writeStrings(out, query.disabledCategories == null ? null : query.disabledCategories.stream().map(CategoryId::toString).collect(Collectors.toList()));
+      out.writeBoolean(query.useEnabledOnly);
+      out.writeBoolean(query.useQuerySettings);
+      out.writeBoolean(query.allowIncompleteResults);
+      out.writeBoolean(query.enableHiddenRules);
+      out.writeBoolean(query.enableTempOffRules);
+      out.writeUTF(query.mode.name());
+      out.writeUTF(query.level.name());
+      out.writeBoolean(query.inputLogging);
+    }
+
+    /**
+     * Read settings written by {@link #writeTo(DataOutput)}.
+     * @return the settings, or {@code null} if they refer to a language or mode that's not available anymore
+     */
+    @Nullable
+    static PipelineSettings readFrom(DataInput in, GlobalConfig globalConfig, UserConfig userConfig) throws IOException {
+      String langCode = in.readUTF();
+      String motherTongueCode = in.readUTF();
+      List<String> altLanguages = readStrings(in);
+      List<String> enabledRules = readStrings(in);
+      List<String> disabledRules = readStrings(in);
+      List<String> enabledCategories = readStrings(in);
+      List<String> disabledCategories = readStrings(in);
+      boolean useEnabledOnly = in.readBoolean();
+      boolean useQuerySettings = in.readBoolean();
+      boolean allowIncompleteResults = in.readBoolean();
+      boolean enableHiddenRules = in.readBoolean();
+      boolean enableTempOffRules = in.readBoolean();
+      String mode = in.readUTF();
+      String level = in.readUTF();
+      boolean inputLogging = in.readBoolean();
+      try {
+        TextChecker.QueryParams params = new TextChecker.QueryParams(
+          altLanguages.stream().map(Languages::getLanguageForShortCode).collect(Collectors.toList()),
+          enabledRules, disabledRules,
+          enabledCategories == null ? null : enabledCategories.stream().map(CategoryId::new).collect(Collectors.toList()),
+          disabledCategories == null ? null : disabledCategories.stream().map(CategoryId::new).collect(Collectors.toList()),
+          useEnabledOnly, useQuerySettings, allowIncompleteResults, enableHiddenRules, enableTempOffRules,
+          JLanguageTool.Mode.valueOf(mode), JLanguageTool.Level.valueOf(level), null, inputLogging);
+        return new PipelineSettings(Languages.getLanguageForShortCode(langCode),
+          motherTongueCode.isEmpty() ? null : Languages.getLanguageForShortCode(motherTongueCode), params, globalConfig, userConfig);
+      } catch (IllegalArgumentException e) {
+        logger.info("Skipping saved pipeline settings for " + langCode + ": " + e.getMessage());
+        return null;
+      }
+    }
+
+    private static void writeStrings(DataOutput out, @Nullable List<String> strings) throws IOException {
+      if (strings == null) {
+        out.writeInt(-1);
+        return;
+      }
+      out.writeInt(strings.size());
+      for (String s : strings) {
+        out.writeUTF(s);
+      }
+    }
+
+    @Nullable
+    private static List<String> readStrings(DataInput in) throws IOException {
+      int size = in.readInt();
+      if (size < 0) {
+        return null;
+      }
+      List<String> strings = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        strings.add(in.readUTF());
+      }
+      return strings;
+    }
+
     @Override
     public String toString() {
       return new ToStringBuilder(this)
@@ -109,9 +210,68 @@ class PipelinePool {
     }
   }
 
+  /**
+   * The part of {@link PipelineSettings} that a pipeline template depends on, i.e. everything
+   * except the rules and categories that are enabled or disabled by the query.
+   */
+  private static class TemplateKey {
+    private final Language lang;
+    private final Language motherTongue;
+    private final List<Language> altLanguages;
+    private final boolean inputLogging;
+    private final boolean regressionTestMode;
+    private final GlobalConfig globalConfig;
+    private final UserConfig user;
+
+    TemplateKey(Language lang, Language motherTongue, TextChecker.QueryParams params, GlobalConfig globalConfig, UserConfig userConfig) {
+      this.lang = lang;
+      this.motherTongue = motherTongue;
+      this.altLanguages = params.altLanguages;
+      this.inputLogging = params.inputLogging;
+      this.regressionTestMode = params.regressionTestMode;
+      this.globalConfig = globalConfig;
+      this.user = userConfig;
+    }
+
+    @Override
+    public int hashCode() {
+      return new HashCodeBuilder(17, 31)
+        .append(lang)
+        .append(motherTongue)
+        .append(altLanguages)
+        .append(inputLogging)
+        .append(regressionTestMode)
+        .append(globalConfig)
+        .append(user)
+        .toHashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) return true;
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      TemplateKey other = (TemplateKey) obj;
+      return new EqualsBuilder()
+        .append(lang, other.lang)
+        .append(motherTongue, other.motherTongue)
+        .append(altLanguages, other.altLanguages)
+        .append(inputLogging, other.inputLogging)
+        .append(regressionTestMode, other.regressionTestMode)
+        .append(globalConfig, other.globalConfig)
+        .append(user, other.user)
+        .isEquals();
+    }
+  }
+
   private final HTTPServerConfig config;
   private final ResultCache cache;
+  private final IncrementalCheckCache incrementalCheckCache;
+  private final RuleTimingCollector ruleTimingCollector;
   private final LoadingCache<PipelineSettings, ConcurrentLinkedQueue<Pipeline>> pool;
+  private final Cache<TemplateKey, Pipeline> templates;
+  private final PipelineUsageProfile usageProfile = new PipelineUsageProfile();
   private final boolean internalServer;
 
   private long pipelineExpireCheckTimestamp;
@@ -120,9 +280,16 @@ class PipelinePool {
   private long requests;
 
   PipelinePool(HTTPServerConfig config, ResultCache cache, boolean internalServer) {
+    this(config, cache, null, null, internalServer);
+  }
+
+  PipelinePool(HTTPServerConfig config, ResultCache cache, IncrementalCheckCache incrementalCheckCache,
+               RuleTimingCollector ruleTimingCollector, boolean internalServer) {
     this.internalServer = internalServer;
     this.config = config;
     this.cache = cache;
+    this.incrementalCheckCache = incrementalCheckCache;
+    this.ruleTimingCollector = ruleTimingCollector;
     this.pipelineExpireCheckTimestamp = System.currentTimeMillis();
     int maxPoolSize = config.getMaxPipelinePoolSize();
     int expireTime = config.getPipelineExpireTime();
@@ -130,6 +297,12 @@ class PipelinePool {
       this.pool = CacheBuilder.newBuilder()
         .maximumSize(maxPoolSize)
         .expireAfterAccess(expireTime, TimeUnit.SECONDS)
+        .removalListener((RemovalListener<PipelineSettings, ConcurrentLinkedQueue<Pipeline>>) removal -> {
+          if (removal.getCause() != RemovalCause.REPLACED) {
+            ServerMetricsCollector.getInstance().logPipelinePoolChange(
+              removal.getKey().lang.getShortCodeWithCountryAndVariant(), IDLE, -removal.getValue().size());
+          }
+        })
         .build(new CacheLoader<PipelineSettings, ConcurrentLinkedQueue<Pipeline>>() {
           @Override
           public ConcurrentLinkedQueue<Pipeline> load(PipelineSettings key) {
@@ -139,6 +312,16 @@ class PipelinePool {
     } else {
       this.pool = null;
     }
+    if (config.isPipelineTemplates()) {
+      this.templates = CacheBuilder.newBuilder()
+        .maximumSize(config.getPipelineTemplateCacheSize())
+        .expireAfterAccess(PIPELINE_EXPIRE_TIME, TimeUnit.MILLISECONDS)
+        .recordStats()
+        .build();
+      ServerMetricsCollector.getInstance().monitorCache("languagetool_pipeline_templates_cache", templates);
+    } else {
+      this.templates = null;
+    }
   }
 
   Pipeline getPipeline(PipelineSettings settings) throws Exception {
@@ -146,44 +329,95 @@ class PipelinePool {
       // expire old pipelines in queues (where settings may be used, but some of the created pipelines are unused)
       long expireCheckDelta = System.currentTimeMillis() - pipelineExpireCheckTimestamp;
       if (expireCheckDelta > PIPELINE_EXPIRE_TIME) {
-        AtomicInteger removed = new AtomicInteger();
         pipelineExpireCheckTimestamp = System.currentTimeMillis();
-        //pool.asMap().forEach((s, queue) -> queue.removeIf(Pipeline::isExpired));
-        pool.asMap().forEach((s, queue) -> queue.removeIf(pipeline -> {
-          if (pipeline.isExpired()) {
-            removed.getAndIncrement();
-            return true;
-          } else {
-            return false;
-          }
-        }));
-        ServerTools.print("Removing " + removed.get() + " expired pipelines");
+        removeUnneededPipelines();
       }
 
       requests++;
+      usageProfile.acquired(settings);
       ConcurrentLinkedQueue<Pipeline> pipelines = pool.get(settings);
       if (requests % 1000 == 0) {
         logger.info(String.format("Pipeline cache stats: %f hit rate", (double) pipelinesUsed / requests));
       }
+      String language = settings.lang.getShortCodeWithCountryAndVariant();
       Pipeline pipeline = pipelines.poll();
       if (pipeline == null) {
         //ServerTools.print(String.format("No prepared pipeline found for %s; creating one.", settings));
-        pipeline = createPipeline(settings.lang, settings.motherTongue, settings.query, settings.globalConfig, settings.user, config.getDisabledRuleIds());
+        ServerMetricsCollector.getInstance().logPipelineRequest(false);
+        pipeline = createPipelineTimed(settings);
       } else {
         pipelinesUsed++;
+        ServerMetricsCollector.getInstance().logPipelineRequest(true);
+        ServerMetricsCollector.getInstance().logPipelinePoolChange(language, IDLE, -1);
         //ServerTools.print(String.format("Prepared pipeline found for %s; using it.", settings));
       }
+      ServerMetricsCollector.getInstance().logPipelinePoolChange(language, IN_USE, 1);
       return pipeline;
     } else {
-      return createPipeline(settings.lang, settings.motherTongue, settings.query, settings.globalConfig, settings.user, config.getDisabledRuleIds());
+      return createPipelineTimed(settings);
     }
   }
 
   void returnPipeline(PipelineSettings settings, Pipeline pipeline) throws ExecutionException {
     if (pool == null) return;
+    String language = settings.lang.getShortCodeWithCountryAndVariant();
+    usageProfile.released(settings);
+    ServerMetricsCollector.getInstance().logPipelinePoolChange(language, IN_USE, -1);
     ConcurrentLinkedQueue<Pipeline> pipelines = pool.get(settings);
+    if (pipelines.size() >= usageProfile.getPeakInUse(settings)) {
+      return;  // more pipelines than recently needed at the same time
+    }
     pipeline.refreshExpireTimer();
     pipelines.add(pipeline);
+    ServerMetricsCollector.getInstance().logPipelinePoolChange(language, IDLE, 1);
+  }
+
+  /**
+   * The usage of the pool by settings, for saving it and prewarming the pool after a restart.
+   * @since 5.3
+   */
+  PipelineUsageProfile getUsageProfile() {
+    return usageProfile;
+  }
+
+  /**
+   * Remove expired pipelines, the pipelines of settings that have not been requested since the last
+   * call (so these are evicted before those of used settings when the pool is full), and pipelines
+   * exceeding the number that was recently needed at the same time.
+   */
+  private void removeUnneededPipelines() {
+    AtomicInteger removed = new AtomicInteger();
+    //pool.asMap().forEach((s, queue) -> queue.removeIf(Pipeline::isExpired));
+    pool.asMap().forEach((s, queue) -> queue.removeIf(pipeline -> {
+      if (pipeline.isExpired()) {
+        removed.getAndIncrement();
+        ServerMetricsCollector.getInstance().logPipelinePoolChange(s.lang.getShortCodeWithCountryAndVariant(), IDLE, -1);
+        return true;
+      } else {
+        return false;
+      }
+    }));
+    ServerTools.print("Removing " + removed.get() + " expired pipelines");
+    int coldSettings = pool.asMap().size();
+    pool.asMap().keySet().removeIf(usageProfile::isCold);
+    coldSettings -= pool.asMap().size();
+    AtomicInteger surplus = new AtomicInteger();
+    pool.asMap().forEach((s, queue) -> {
+      int peak = usageProfile.getPeakInUse(s);
+      while (queue.size() > peak && queue.poll() != null) {
+        surplus.getAndIncrement();
+        ServerMetricsCollector.getInstance().logPipelinePoolChange(s.lang.getShortCodeWithCountryAndVariant(), IDLE, -1);
+      }
+    });
+    usageProfile.decay();
+    logger.info("Removed pipelines of " + coldSettings + " unused settings and " + surplus.get() + " surplus pipelines");
+  }
+
+  private Pipeline createPipelineTimed(PipelineSettings settings) throws Exception {
+    long startTime = System.nanoTime();
+    Pipeline pipeline = createPipeline(settings.lang, settings.motherTongue, settings.query, settings.globalConfig, settings.user, config.getDisabledRuleIds());
+    ServerMetricsCollector.getInstance().logPipelineCreation(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    return pipeline;
   }
 
   /**
@@ -195,20 +429,65 @@ class PipelinePool {
   Pipeline createPipeline(Language lang, Language motherTongue, TextChecker.QueryParams params, GlobalConfig globalConfig,
                           UserConfig userConfig, List<String> disabledRuleIds)
     throws Exception { // package-private for mocking
+    Pipeline lt;
+    if (templates != null) {
+      // settings that differ only in the rules selected by the query share a template, so a new combination
+      // of rules doesn't need loading the pattern and false friend rules and the rule configuration again:
+      Pipeline template = templates.get(new TemplateKey(lang, motherTongue, params, globalConfig, userConfig), () -> {
+        Pipeline newTemplate = createBasePipeline(lang, motherTongue, params, globalConfig, userConfig, disabledRuleIds);
+        newTemplate.setupFinished();
+        return newTemplate;
+      });
+      lt = new Pipeline(template);
+      // only the pattern rules are shared with the template, all other rules are created for each pipeline:
+      activateModelRules(lt);
+      activateRemoteRules(lt, params);
+    } else {
+      lt = createBasePipeline(lang, motherTongue, params, globalConfig, userConfig, disabledRuleIds);
+    }
+    if (params.useQuerySettings) {
+      Tools.selectRules(lt, new HashSet<>(params.disabledCategories), new HashSet<>(params.enabledCategories),
+        new HashSet<>(params.disabledRules), new HashSet<>(params.enabledRules), params.useEnabledOnly, params.enableTempOffRules);
+    }
+    if (pool != null) {
+      lt.setupFinished();
+    }
+    return lt;
+  }
+
+  /**
+   * Create a pipeline with all rules loaded and activated, but without the rule selection of the query.
+   */
+  private Pipeline createBasePipeline(Language lang, Language motherTongue, TextChecker.QueryParams params, GlobalConfig globalConfig,
+                                      UserConfig userConfig, List<String> disabledRuleIds) throws Exception {
     Pipeline lt = new Pipeline(lang, params.altLanguages, motherTongue, cache, globalConfig, userConfig, params.inputLogging);
     lt.setMaxErrorsPerWordRate(config.getMaxErrorsPerWordRate());
+    lt.setIncrementalCheckCache(incrementalCheckCache);
+    lt.setRuleTimingCollector(ruleTimingCollector);
     lt.disableRules(disabledRuleIds);
+    activateModelRules(lt);
+    if (config.getRulesConfigFile() != null) {
+      configureFromRulesFile(lt, lang);
+    } else {
+      configureFromGUI(lt, lang);
+    }
+    activateRemoteRules(lt, params);
+    if (userConfig.filterDictionaryMatches()) {
+      lt.addMatchFilter(new DictionaryMatchFilter(userConfig));
+    }
+    return lt;
+  }
+
+  private void activateModelRules(Pipeline lt) throws IOException {
     if (config.getLanguageModelDir() != null) {
       lt.activateLanguageModelRules(config.getLanguageModelDir());
     }
     if (config.getWord2VecModelDir () != null) {
       lt.activateWord2VecModelRules(config.getWord2VecModelDir());
     }
-    if (config.getRulesConfigFile() != null) {
-      configureFromRulesFile(lt, lang);
-    } else {
-      configureFromGUI(lt, lang);
-    }
+  }
+
+  private void activateRemoteRules(Pipeline lt, TextChecker.QueryParams params) throws IOException {
     if (params.regressionTestMode) {
       List<RemoteRuleConfig> rules = Collections.emptyList();
       try {
@@ -228,17 +507,6 @@ class PipelinePool {
     } else {
       lt.activateRemoteRules(config.getRemoteRulesConfigFile());
     }
-    if (params.useQuerySettings) {
-      Tools.selectRules(lt, new HashSet<>(params.disabledCategories), new HashSet<>(params.enabledCategories),
-        new HashSet<>(params.disabledRules), new HashSet<>(params.enabledRules), params.useEnabledOnly, params.enableTempOffRules);
-    }
-    if (userConfig.filterDictionaryMatches()) {
-      lt.addMatchFilter(new DictionaryMatchFilter(userConfig));
-    }
-    if (pool != null) {
-      lt.setupFinished();
-    }
-    return lt;
   }
 
   private void configureFromRulesFile(JLanguageTool langTool, Language lang) throws IOException {
@@ -24,11 +24,13 @@ package org.languagetool.server;
 import org.junit.Test;
 import org.languagetool.*;
 import org.languagetool.markup.AnnotatedTextBuilder;
+import org.languagetool.rules.Rule;
+import org.languagetool.rules.UppercaseSentenceStartRule;
+import org.languagetool.rules.patterns.AbstractPatternRule;
 
 import java.util.*;
 
-import static org.junit.Assert.assertTrue;
-import static org.junit.Assert.fail;
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 public class PipelinePoolTest {
@@ -200,6 +202,36 @@ public class PipelinePoolTest {
     verify(pool, times(2)).returnPipeline(eq(settings1), notNull());
   }
 
+  @Test
+  public void testPipelinesDerivedFromTemplate() throws Exception {
+    HTTPServerConfig config = new HTTPServerConfig(HTTPTools.getDefaultPort());
+    config.setPipelineCaching(true);
+    config.setPipelineExpireTime(10);
+    config.setMaxPipelinePoolSize(10);
+    config.setPipelineTemplates(true);
+    PipelinePool pool = new PipelinePool(config, null, false);
+    Language lang = Languages.getLanguageForShortCode("en-US");
+    UserConfig user = new UserConfig();
+    TextChecker.QueryParams queryParams1 = new TextChecker.QueryParams(new LinkedList<>(), new LinkedList<>(), Arrays.asList("UPPERCASE_SENTENCE_START"),
+      new LinkedList<>(), new LinkedList<>(), false, true, false, false, false, JLanguageTool.Mode.ALL, JLanguageTool.Level.DEFAULT, null);
+    TextChecker.QueryParams queryParams2 = new TextChecker.QueryParams(new LinkedList<>(), new LinkedList<>(), new LinkedList<>(),
+      new LinkedList<>(), new LinkedList<>(), false, true, false, false, false, JLanguageTool.Mode.ALL, JLanguageTool.Level.DEFAULT, null);
+    Pipeline pipeline1 = pool.createPipeline(lang, null, queryParams1, gConfig, user, Collections.emptyList());
+    Pipeline pipeline2 = pool.createPipeline(lang, null, queryParams2, gConfig, user, Collections.emptyList());
+    assertNotSame(pipeline1, pipeline2);
+    // pattern rules are shared, other rules may keep state while matching:
+    assertSame(getRule(pipeline1, AbstractPatternRule.class), getRule(pipeline2, AbstractPatternRule.class));
+    assertNotSame(getRule(pipeline1, UppercaseSentenceStartRule.class), getRule(pipeline2, UppercaseSentenceStartRule.class));
+    assertTrue(pipeline1.getDisabledRules().contains("UPPERCASE_SENTENCE_START"));
+    assertFalse(pipeline2.getDisabledRules().contains("UPPERCASE_SENTENCE_START"));
+    assertTrue(pipeline1.check("this is a test.").stream().noneMatch(m -> m.getRule().getId().equals("UPPERCASE_SENTENCE_START")));
+    assertTrue(pipeline2.check("this is a test.").stream().anyMatch(m -> m.getRule().getId().equals("UPPERCASE_SENTENCE_START")));
+  }
+
+  private static Rule getRule(Pipeline pipeline, Class<? extends Rule> ruleClass) {
+    return pipeline.getAllRules().stream().filter(ruleClass::isInstance).findFirst().orElseThrow(IllegalStateException::new);
+  }
+
   @Test
   public void testPipelineMutation() {
     Pipeline pipeline = new Pipeline(Languages.getLanguageForShortCode("en-US"),
@@ -0,0 +1,195 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.server;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.languagetool.GlobalConfig;
+import org.languagetool.UserConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Records which {@link PipelinePool.PipelineSettings} are requested and how many pipelines
+ * each of them needs at the same time, so {@link PipelinePool} can keep as many pipelines as
+ * are actually used, evict the pipelines of settings that are not used anymore first, and prewarm
+ * the pool after a restart. Counts decay with each call of {@link #decay()}, so settings that
+ * aren't used anymore are forgotten. As settings include the user configuration, the number of settings
+ * is limited; the least recently used ones are forgotten first. Only settings without user-specific
+ * configuration are saved.
+ * @since 5.3
+ */
+class PipelineUsageProfile {
+
+  private static final Logger logger = LoggerFactory.getLogger(PipelineUsageProfile.class);
+
+  private static final int MAGIC = 0x4c545050;  // "LTPP"
+  private static final int FORMAT_VERSION = 1;
+  private static final int DEFAULT_MAX_SETTINGS = 10_000;
+
+  // all access is synchronized on this, the cache is only used for its size limit:
+  private final Map<PipelinePool.PipelineSettings, Usage> usages;
+
+  PipelineUsageProfile() {
+    this(DEFAULT_MAX_SETTINGS);
+  }
+
+  PipelineUsageProfile(int maxSettings) {
+    Cache<PipelinePool.PipelineSettings, Usage> cache = CacheBuilder.newBuilder()
+      .maximumSize(maxSettings)
+      .concurrencyLevel(1)
+      .build();
+    usages = cache.asMap();
+  }
+
+  synchronized void acquired(PipelinePool.PipelineSettings settings) {
+    Usage usage = usages.computeIfAbsent(settings, k -> new Usage());
+    usage.requests++;
+    usage.recentRequests++;
+    usage.inUse++;
+    usage.peakInUse = Math.max(usage.peakInUse, usage.inUse);
+  }
+
+  synchronized void released(PipelinePool.PipelineSettings settings) {
+    Usage usage = usages.get(settings);
+    if (usage != null && usage.inUse > 0) {
+      usage.inUse--;
+    }
+  }
+
+  /**
+   * @return the most pipelines that were in use at the same time for {@code settings}, decayed
+   *   by {@link #decay()}, and at least the number of pipelines in use now
+   */
+  synchronized int getPeakInUse(PipelinePool.PipelineSettings settings) {
+    Usage usage = usages.get(settings);
+    return usage != null ? usage.peakInUse : 0;
+  }
+
+  /**
+   * Whether {@code settings} has not been requested since the last call of {@link #decay()}.
+   */
+  synchronized boolean isCold(PipelinePool.PipelineSettings settings) {
+    Usage usage = usages.get(settings);
+    return usage == null || usage.recentRequests == 0 && usage.inUse == 0;
+  }
+
+  /**
+   * Halve the request counts and peaks, keeping peaks at least at the number of pipelines
+   * in use now, and forget settings that have not been used since the last call.
+   */
+  synchronized void decay() {
+    usages.values().removeIf(usage -> usage.requests == 0 && usage.inUse == 0);
+    for (Usage usage : usages.values()) {
+      usage.requests /= 2;
+      usage.recentRequests = 0;
+      usage.peakInUse = Math.max(usage.inUse, (usage.peakInUse + 1) / 2);
+    }
+  }
+
+  /**
+   * @return the most requested settings, with the number of pipelines they need at the same time
+   */
+  synchronized Map<PipelinePool.PipelineSettings, Integer> getMostRequested(int maxSettings) {
+    Map<PipelinePool.PipelineSettings, Integer> result = new LinkedHashMap<>();
+    usages.entrySet().stream()
+      .filter(e -> e.getValue().peakInUse > 0)
+      .sorted(Comparator.comparingLong((Map.Entry<PipelinePool.PipelineSettings, Usage> e) -> e.getValue().requests).reversed())
+      .limit(maxSettings)
+      .forEach(e -> result.put(e.getKey(), e.getValue().peakInUse));
+    return result;
+  }
+
+  /**
+   * Write the most requested settings that only use {@code defaultUserConfig} to {@code file}, replacing the old file.
+   * @return the number of settings written
+   */
+  int save(File file, int maxSettings, UserConfig defaultUserConfig) throws IOException {
+    List<Map.Entry<PipelinePool.PipelineSettings, Integer>> settings;
+    Map<PipelinePool.PipelineSettings, Long> requests = new HashMap<>();
+    synchronized (this) {
+      settings = getMostRequested(Integer.MAX_VALUE).entrySet().stream()
+        .filter(e -> e.getKey().isSaveable(defaultUserConfig))
+        .limit(maxSettings)
+        .collect(Collectors.toList());
+      settings.forEach(e -> requests.put(e.getKey(), usages.get(e.getKey()).requests));
+    }
+    File tempFile = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(settings.size());
+      for (Map.Entry<PipelinePool.PipelineSettings, Integer> entry : settings) {
+        entry.getKey().writeTo(out);
+        out.writeLong(requests.get(entry.getKey()));
+        out.writeInt(entry.getValue());
+      }
+    }
+    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return settings.size();
+  }
+
+  /**
+   * Add the usage saved by {@link #save(File, int, UserConfig)} to this profile. Saved settings
+   * that can't be restored anymore, e.g. because a language isn't available, are skipped.
+   * @return the number of settings loaded
+   */
+  int load(File file, GlobalConfig globalConfig, UserConfig defaultUserConfig) throws IOException {
+    if (!file.exists()) {
+      return 0;
+    }
+    int loaded = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        logger.warn("Ignoring pipeline usage profile " + file + ": unknown format");
+        return 0;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        PipelinePool.PipelineSettings settings = PipelinePool.PipelineSettings.readFrom(in, globalConfig, defaultUserConfig);
+        long requests = in.readLong();
+        int peakInUse = in.readInt();
+        if (settings == null) {
+          continue;
+        }
+        synchronized (this) {
+          Usage usage = usages.computeIfAbsent(settings, k -> new Usage());
+          usage.requests += requests;
+          usage.peakInUse = Math.max(usage.peakInUse, peakInUse);
+        }
+        loaded++;
+      }
+    }
+    return loaded;
+  }
+
+  private static class Usage {
+    private long requests;
+    private long recentRequests;  // since the last decay()
+    private int inUse;
+    private int peakInUse;
+  }
+
+}
@@ -0,0 +1,117 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.server;
+
+import org.junit.Test;
+import org.languagetool.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PipelineUsageProfileTest {
+
+  private final GlobalConfig globalConfig = new GlobalConfig();
+  private final UserConfig userConfig = new UserConfig();
+
+  @Test
+  public void testPeakAndDecay() {
+    PipelineUsageProfile profile = new PipelineUsageProfile();
+    PipelinePool.PipelineSettings settings = settings("en-US", JLanguageTool.Mode.ALL);
+    assertTrue(profile.isCold(settings));
+    profile.acquired(settings);
+    profile.acquired(settings);
+    profile.acquired(settings);
+    profile.released(settings);
+    profile.released(settings);
+    assertEquals(3, profile.getPeakInUse(settings));
+    assertFalse(profile.isCold(settings));
+    profile.decay();
+    assertEquals(2, profile.getPeakInUse(settings));
+    assertFalse(profile.isCold(settings));  // still in use
+    profile.released(settings);
+    profile.decay();
+    assertEquals(1, profile.getPeakInUse(settings));
+    assertTrue(profile.isCold(settings));
+  }
+
+  @Test
+  public void testMostRequested() {
+    PipelineUsageProfile profile = new PipelineUsageProfile();
+    PipelinePool.PipelineSettings often = settings("en-US", JLanguageTool.Mode.ALL);
+    PipelinePool.PipelineSettings rarely = settings("de-DE", JLanguageTool.Mode.ALL);
+    for (int i = 0; i < 3; i++) {
+      profile.acquired(often);
+      profile.released(often);
+    }
+    profile.acquired(rarely);
+    profile.released(rarely);
+    assertEquals(Arrays.asList(often, rarely), Arrays.asList(profile.getMostRequested(10).keySet().toArray()));
+    assertEquals(Collections.singletonMap(often, 1), profile.getMostRequested(1));
+  }
+
+  @Test
+  public void testNumberOfSettingsIsLimited() {
+    PipelineUsageProfile profile = new PipelineUsageProfile(2);
+    PipelinePool.PipelineSettings settings1 = settings("en-US", JLanguageTool.Mode.ALL);
+    PipelinePool.PipelineSettings settings2 = settings("de-DE", JLanguageTool.Mode.ALL);
+    PipelinePool.PipelineSettings settings3 = settings("en-US", JLanguageTool.Mode.TEXTLEVEL_ONLY);
+    profile.acquired(settings1);
+    profile.acquired(settings2);
+    profile.acquired(settings1);
+    profile.acquired(settings3);
+    Map<PipelinePool.PipelineSettings, Integer> mostRequested = profile.getMostRequested(10);
+    assertEquals(2, mostRequested.size());
+    assertEquals(Integer.valueOf(2), mostRequested.get(settings1));
+    assertEquals(Integer.valueOf(1), mostRequested.get(settings3));
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    PipelineUsageProfile profile = new PipelineUsageProfile();
+    PipelinePool.PipelineSettings settings1 = settings("en-US", JLanguageTool.Mode.TEXTLEVEL_ONLY);
+    PipelinePool.PipelineSettings settings2 = settings("de-DE", JLanguageTool.Mode.ALL);
+    profile.acquired(settings1);
+    profile.acquired(settings1);
+    profile.acquired(settings2);
+    File file = File.createTempFile("pipeline-profile", ".bin");
+    try {
+      assertEquals(2, profile.save(file, 10, userConfig));
+      PipelineUsageProfile loaded = new PipelineUsageProfile();
+      assertEquals(2, loaded.load(file, globalConfig, userConfig));
+      Map<PipelinePool.PipelineSettings, Integer> mostRequested = loaded.getMostRequested(10);
+      assertEquals(2, mostRequested.size());
+      assertEquals(Integer.valueOf(2), mostRequested.get(settings1));
+      assertEquals(Integer.valueOf(1), mostRequested.get(settings2));
+    } finally {
+      file.delete();
+    }
+  }
+
+  private PipelinePool.PipelineSettings settings(String lang, JLanguageTool.Mode mode) {
+    TextChecker.QueryParams params = new TextChecker.QueryParams(Collections.emptyList(), Collections.emptyList(),
+      Collections.singletonList("WHITESPACE_RULE"), Collections.emptyList(), Collections.emptyList(), false, true,
+      false, false, false, mode, JLanguageTool.Level.DEFAULT, null);
+    return new PipelinePool.PipelineSettings(Languages.getLanguageForShortCode(lang), null, params, globalConfig, userConfig);
+  }
+
+}
@@ -0,0 +1,792 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules.patterns;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.jetbrains.annotations.Nullable;
+import org.languagetool.Experimental;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * A regular expression compiled into a deterministic finite automaton, for fast
+ * {@link java.util.regex.Matcher#matches()}-style matching without backtracking. Supports
+ * literals, {@code .}, character classes (without nesting or intersection), the predefined classes
+ * {@code \d \w \s} and their negations, groups, alternatives, and greedy or lazy quantifiers;
+ * {@code ^} and {@code $} only at the start and end of the expression. The flags
+ * {@link Pattern#CASE_INSENSITIVE} and {@link Pattern#UNICODE_CASE} are supported.
+ * For other expressions, {@link #compile(String, int)} returns {@code null}, so that
+ * {@link java.util.regex} can be used instead.
+ * @since 5.3
+ */
+@Experimental
+public final class RegexAutomaton {
+
+  private static final int MAX_STATES = 1000;
+  private static final int MAX_TABLE_SIZE = 200_000;
+  private static final int MAX_REPETITIONS = 50;
+  private static final int DEAD = -1;
+
+  // bounded by the size of the transition tables, as user rules can add any number of expressions:
+  private static final int MAX_CACHE_WEIGHT = 20_000_000;
+
+  private static final LoadingCache<String, Optional<RegexAutomaton>> cache = CacheBuilder.newBuilder()
+    .maximumWeight(MAX_CACHE_WEIGHT)
+    .weigher((String key, Optional<RegexAutomaton> automaton) ->
+      key.length() + automaton.map(a -> a.transitions.length + a.classStarts.length).orElse(0))
+    .build(CacheLoader.from(key -> {
+      int separator = key.indexOf('/');
+      return Optional.ofNullable(compile(key.substring(separator + 1), Integer.parseInt(key.substring(0, separator))));
+    }));
+
+  private final String regex;
+  private final int flags;
+  // first character of each character class, the classes cover all chars:
+  private final char[] classStarts;
+  private final short[] asciiClasses = new short[128];
+  private final int classCount;
+  private final int[] transitions;
+  private final boolean[] accepting;
+  private volatile Pattern pattern;
+
+  private RegexAutomaton(String regex, int flags, char[] classStarts, int[] transitions, boolean[] accepting) {
+    this.regex = regex;
+    this.flags = flags;
+    this.classStarts = classStarts;
+    this.classCount = classStarts.length;
+    this.transitions = transitions;
+    this.accepting = accepting;
+    for (char c = 0; c < asciiClasses.length; c++) {
+      asciiClasses[c] = (short) findClass(c);
+    }
+  }
+
+  /**
+   * Get the automaton for the expression, shared with all other callers that use
+   * the same expression and flags.
+   * @return the automaton, or {@code null} if the expression isn't supported
+   */
+  @Nullable
+  public static RegexAutomaton get(String regex, int flags) {
+    return cache.getUnchecked(flags + "/" + regex).orElse(null);
+  }
+
+  /**
+   * @return the automaton, or {@code null} if the expression isn't supported
+   */
+  @Nullable
+  static RegexAutomaton compile(String regex, int flags) {
+    if ((flags & ~(Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE)) != 0) {
+      return null;
+    }
+    Node node;
+    try {
+      node = new Parser(regex, flags).parse();
+    } catch (UnsupportedOperationException e) {
+      return null;
+    }
+    if (node == null) {
+      return null;
+    }
+    Nfa nfa = new Nfa();
+    int start = nfa.newState();
+    nfa.accept = nfa.build(node, start);
+    return nfa.toDfa(regex, flags, start);
+  }
+
+  /**
+   * @return whether the complete string is matched by the expression
+   */
+  public boolean matches(CharSequence s) {
+    int state = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (Character.isSurrogate(c)) {
+        // the automaton works on chars, not code points:
+        return getPattern().matcher(s).matches();
+      }
+      int cls = c < 128 ? asciiClasses[c] : findClass(c);
+      state = transitions[state * classCount + cls];
+      if (state == DEAD) {
+        return false;
+      }
+    }
+    return accepting[state];
+  }
+
+  private int findClass(char c) {
+    int i = Arrays.binarySearch(classStarts, c);
+    return i >= 0 ? i : -i - 2;
+  }
+
+  private Pattern getPattern() {
+    Pattern p = pattern;
+    if (p == null) {
+      p = Pattern.compile(regex, flags);
+      pattern = p;
+    }
+    return p;
+  }
+
+  int getStateCount() {
+    return accepting.length;
+  }
+
+  @Override
+  public String toString() {
+    return regex;
+  }
+
+  /**
+   * A set of chars as sorted, non-overlapping, inclusive ranges {@code [from0, to0, from1, to1, ...]}.
+   */
+  private static class CharSet {
+    private static final CharSet ALL = new CharSet(new int[]{0, Character.MAX_VALUE});
+    private static final CharSet DIGITS = new CharSet(new int[]{'0', '9'});
+    private static final CharSet WORD = new CharSet(new int[]{'0', '9', 'A', 'Z', '_', '_', 'a', 'z'});
+    private static final CharSet SPACE = new CharSet(new int[]{'\t', '\r', ' ', ' '});
+    private static final CharSet LINE_TERMINATORS = new CharSet(new int[]{'\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029});
+    private static final CharSet DOT = LINE_TERMINATORS.complement();
+
+    private static final int MAX_CASE_EXPANSION = 1000;
+
+    private final int[] ranges;
+
+    CharSet(int[] ranges) {
+      this.ranges = ranges;
+    }
+
+    static CharSet of(char c) {
+      return new CharSet(new int[]{c, c});
+    }
+
+    boolean contains(char c) {
+      for (int i = 0; i < ranges.length; i += 2) {
+        if (c < ranges[i]) {
+          return false;
+        }
+        if (c <= ranges[i + 1]) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    CharSet union(CharSet other) {
+      List<int[]> all = new ArrayList<>();
+      for (int i = 0; i < ranges.length; i += 2) {
+        all.add(new int[]{ranges[i], ranges[i + 1]});
+      }
+      for (int i = 0; i < other.ranges.length; i += 2) {
+        all.add(new int[]{other.ranges[i], other.ranges[i + 1]});
+      }
+      all.sort(Comparator.comparingInt(r -> r[0]));
+      List<Integer> merged = new ArrayList<>();
+      for (int[] range : all) {
+        int last = merged.size() - 1;
+        if (last > 0 && range[0] <= merged.get(last) + 1) {
+          merged.set(last, Math.max(merged.get(last), range[1]));
+        } else {
+          merged.add(range[0]);
+          merged.add(range[1]);
+        }
+      }
+      return new CharSet(merged.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    CharSet complement() {
+      List<Integer> result = new ArrayList<>();
+      int next = 0;
+      for (int i = 0; i < ranges.length; i += 2) {
+        if (ranges[i] > next) {
+          result.add(next);
+          result.add(ranges[i] - 1);
+        }
+        next = ranges[i + 1] + 1;
+      }
+      if (next <= Character.MAX_VALUE) {
+        result.add(next);
+        result.add((int) Character.MAX_VALUE);
+      }
+      return new CharSet(result.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Add the chars that {@link Pattern#CASE_INSENSITIVE} considers equal to the chars of this set.
+     */
+    CharSet caseInsensitive(boolean unicodeCase) {
+      if (size() <= MAX_CASE_EXPANSION) {
+        CharSet result = this;
+        for (int i = 0; i < ranges.length; i += 2) {
+          for (int c = ranges[i]; c <= ranges[i + 1]; c++) {
+            for (char variant : caseVariants((char) c, unicodeCase)) {
+              if (!result.contains(variant)) {
+                result = result.union(of(variant));
+              }
+            }
+          }
+        }
+        return result;
+      }
+      // large sets like '.' or \W: remove from the complement the chars that have a variant in this set
+      CharSet complement = complement();
+      if (complement.size() > MAX_CASE_EXPANSION) {
+        throw new UnsupportedOperationException("Case-insensitive set too large");
+      }
+      CharSet notMatched = new CharSet(new int[0]);
+      for (int i = 0; i < complement.ranges.length; i += 2) {
+        for (int c = complement.ranges[i]; c <= complement.ranges[i + 1]; c++) {
+          boolean variantContained = false;
+          for (char variant : caseVariants((char) c, unicodeCase)) {
+            variantContained |= contains(variant);
+          }
+          if (!variantContained) {
+            notMatched = notMatched.union(of((char) c));
+          }
+        }
+      }
+      return notMatched.complement();
+    }
+
+    private int size() {
+      int size = 0;
+      for (int i = 0; i < ranges.length; i += 2) {
+        size += ranges[i + 1] - ranges[i] + 1;
+      }
+      return size;
+    }
+
+    private static char[] caseVariants(char c, boolean unicodeCase) {
+      if (!unicodeCase) {
+        if (c >= 'a' && c <= 'z') return new char[]{(char) (c - 32)};
+        if (c >= 'A' && c <= 'Z') return new char[]{(char) (c + 32)};
+        return new char[0];
+      }
+      return CaseTable.variants(c);
+    }
+  }
+
+  /**
+   * For each char, the other chars that {@link Pattern#UNICODE_CASE} matching considers equal.
+   */
+  private static class CaseTable {
+    private static final Map<Character, char[]> variants = new HashMap<>();
+
+    static {
+      Map<Character, List<Character>> byUpper = new HashMap<>();
+      Map<Character, List<Character>> byLower = new HashMap<>();
+      for (int i = 0; i <= Character.MAX_VALUE; i++) {
+        char c = (char) i;
+        byUpper.computeIfAbsent(Character.toUpperCase(c), k -> new ArrayList<>()).add(c);
+        byLower.computeIfAbsent(Character.toLowerCase(c), k -> new ArrayList<>()).add(c);
+      }
+      for (int i = 0; i <= Character.MAX_VALUE; i++) {
+        char c = (char) i;
+        Set<Character> set = new HashSet<>(byUpper.get(Character.toUpperCase(c)));
+        set.addAll(byLower.get(Character.toLowerCase(c)));
+        set.remove(c);
+        if (!set.isEmpty()) {
+          char[] chars = new char[set.size()];
+          int j = 0;
+          for (Character variant : set) {
+            chars[j++] = variant;
+          }
+          variants.put(c, chars);
+        }
+      }
+    }
+
+    static char[] variants(char c) {
+      return variants.getOrDefault(c, new char[0]);
+    }
+  }
+
+  private abstract static class Node {
+  }
+
+  private static class CharNode extends Node {
+    private final CharSet set;
+    CharNode(CharSet set) {
+      this.set = set;
+    }
+  }
+
+  private static class SequenceNode extends Node {
+    private final List<Node> nodes;
+    SequenceNode(List<Node> nodes) {
+      this.nodes = nodes;
+    }
+  }
+
+  private static class AlternativesNode extends Node {
+    private final List<Node> nodes;
+    AlternativesNode(List<Node> nodes) {
+      this.nodes = nodes;
+    }
+  }
+
+  private static class RepeatNode extends Node {
+    private final Node node;
+    private final int min;
+    private final int max;  // -1: unlimited
+    RepeatNode(Node node, int min, int max) {
+      this.node = node;
+      this.min = min;
+      this.max = max;
+    }
+  }
+
+  /**
+   * Parses the supported subset of the {@link Pattern} syntax, throws
+   * {@link UnsupportedOperationException} for everything else.
+   */
+  private static class Parser {
+    private final String regex;
+    private final boolean caseInsensitive;
+    private final boolean unicodeCase;
+    private int pos;
+
+    Parser(String regex, int flags) {
+      this.regex = regex;
+      this.caseInsensitive = (flags & Pattern.CASE_INSENSITIVE) != 0;
+      this.unicodeCase = (flags & Pattern.UNICODE_CASE) != 0;
+    }
+
+    Node parse() {
+      Node node = parseAlternatives();
+      if (pos != regex.length()) {
+        throw new UnsupportedOperationException("Unbalanced ')' at " + pos);
+      }
+      return node;
+    }
+
+    private Node parseAlternatives() {
+      List<Node> alternatives = new ArrayList<>();
+      alternatives.add(parseSequence());
+      while (pos < regex.length() && regex.charAt(pos) == '|') {
+        pos++;
+        alternatives.add(parseSequence());
+      }
+      return alternatives.size() == 1 ? alternatives.get(0) : new AlternativesNode(alternatives);
+    }
+
+    private Node parseSequence() {
+      List<Node> nodes = new ArrayList<>();
+      while (pos < regex.length() && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+        Node node = parseRepeat();
+        if (node != null) {
+          nodes.add(node);
+        }
+      }
+      return new SequenceNode(nodes);
+    }
+
+    @Nullable
+    private Node parseRepeat() {
+      int atomStart = pos;
+      Node atom = parseAtom();
+      if (pos >= regex.length()) {
+        return atom;
+      }
+      int min;
+      int max;
+      char c = regex.charAt(pos);
+      if (c == '*') {
+        min = 0;
+        max = -1;
+      } else if (c == '+') {
+        min = 1;
+        max = -1;
+      } else if (c == '?') {
+        min = 0;
+        max = 1;
+      } else if (c == '{') {
+        int end = regex.indexOf('}', pos);
+        if (end == -1) {
+          throw new UnsupportedOperationException("Unclosed '{'");
+        }
+        String[] parts = regex.substring(pos + 1, end).split(",", -1);
+        try {
+          min = Integer.parseInt(parts[0]);
+          max = parts.length == 1 ? min : parts[1].isEmpty() ? -1 : Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+          throw new UnsupportedOperationException("Invalid repetition");
+        }
+        if (parts.length > 2 || min > MAX_REPETITIONS || max > MAX_REPETITIONS || max != -1 && max < min) {
+          throw new UnsupportedOperationException("Invalid or too large repetition");
+        }
+        pos = end;
+      } else {
+        return atom;
+      }
+      if (atom == null) {
+        throw new UnsupportedOperationException("Quantifier without operand at " + atomStart);
+      }
+      pos++;
+      if (pos < regex.length()) {
+        char next = regex.charAt(pos);
+        if (next == '?') {
+          pos++;  // lazy quantifiers match the same complete strings as greedy ones
+        } else if (next == '+') {
+          throw new UnsupportedOperationException("Possessive quantifier");
+        }
+        if (pos < regex.length() && "*+?{".indexOf(regex.charAt(pos)) != -1) {
+          throw new UnsupportedOperationException("Repeated quantifier");
+        }
+      }
+      return new RepeatNode(atom, min, max);
+    }
+
+    // returns null for anchors, which match the empty string:
+    @Nullable
+    private Node parseAtom() {
+      char c = regex.charAt(pos);
+      switch (c) {
+        case '(':
+          pos++;
+          if (regex.startsWith("?:", pos)) {
+            pos += 2;
+          } else if (pos < regex.length() && regex.charAt(pos) == '?') {
+            throw new UnsupportedOperationException("Special group");
+          }
+          Node node = parseAlternatives();
+          if (pos >= regex.length() || regex.charAt(pos) != ')') {
+            throw new UnsupportedOperationException("Unclosed group");
+          }
+          pos++;
+          return node;
+        case '[':
+          pos++;
+          return new CharNode(parseClass());
+        case '.':
+          pos++;
+          return new CharNode(CharSet.DOT);
+        case '\\':
+          pos++;
+          // like java.util.regex, predefined classes ignore the case flags:
+          boolean predefined = isPredefinedClass();
+          CharSet escaped = parseEscape();
+          return new CharNode(predefined ? escaped : withCase(escaped));
+        case '^':
+          if (pos != 0) {
+            throw new UnsupportedOperationException("'^' not at start");
+          }
+          pos++;
+          return null;
+        case '$':
+          if (pos != regex.length() - 1) {
+            throw new UnsupportedOperationException("'$' not at end");
+          }
+          pos++;
+          return null;
+        case '*': case '+': case '?': case '{': case '}': case ']':
+          throw new UnsupportedOperationException("Unexpected '" + c + "' at " + pos);
+        default:
+          if (Character.isSurrogate(c)) {
+            throw new UnsupportedOperationException("Surrogate char");
+          }
+          pos++;
+          return new CharNode(withCase(CharSet.of(c)));
+      }
+    }
+
+    private CharSet withCase(CharSet set) {
+      return caseInsensitive ? set.caseInsensitive(unicodeCase) : set;
+    }
+
+    private CharSet parseClass() {
+      boolean negated = false;
+      if (pos < regex.length() && regex.charAt(pos) == '^') {
+        negated = true;
+        pos++;
+      }
+      if (pos < regex.length() && regex.charAt(pos) == ']') {
+        throw new UnsupportedOperationException("']' at start of class");
+      }
+      CharSet set = new CharSet(new int[0]);
+      CharSet predefinedSet = new CharSet(new int[0]);
+      while (true) {
+        if (pos >= regex.length()) {
+          throw new UnsupportedOperationException("Unclosed class");
+        }
+        char c = regex.charAt(pos);
+        if (c == ']') {
+          pos++;
+          break;
+        }
+        if (c == '[' || regex.startsWith("&&", pos)) {
+          throw new UnsupportedOperationException("Nested class or intersection");
+        }
+        if (c == '\\' && pos + 1 < regex.length() && "dDwWsS".indexOf(regex.charAt(pos + 1)) != -1) {
+          pos += 2;
+          predefinedSet = predefinedSet.union(parseClassEscape(regex.charAt(pos - 1)));
+          continue;
+        }
+        CharSet item = parseClassChar();
+        if (pos + 1 < regex.length() && regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+          pos++;
+          CharSet end = parseClassChar();
+          if (!isSingleChar(item) || !isSingleChar(end) || end.ranges[0] < item.ranges[0]) {
+            throw new UnsupportedOperationException("Invalid range");
+          }
+          item = new CharSet(new int[]{item.ranges[0], end.ranges[0]});
+        }
+        set = set.union(item);
+      }
+      // Java applies the case-insensitivity before negating:
+      set = withCase(set).union(predefinedSet);
+      return negated ? set.complement() : set;
+    }
+
+    private CharSet parseClassChar() {
+      char c = regex.charAt(pos++);
+      if (c == '\\') {
+        return parseEscape();
+      }
+      if (Character.isSurrogate(c)) {
+        throw new UnsupportedOperationException("Surrogate char");
+      }
+      return CharSet.of(c);
+    }
+
+    private boolean isSingleChar(CharSet set) {
+      return set.ranges.length == 2 && set.ranges[0] == set.ranges[1];
+    }
+
+    private boolean isPredefinedClass() {
+      return pos < regex.length() && "dDwWsS".indexOf(regex.charAt(pos)) != -1;
+    }
+
+    private CharSet parseClassEscape(char c) {
+      switch (c) {
+        case 'd': return CharSet.DIGITS;
+        case 'D': return CharSet.DIGITS.complement();
+        case 'w': return CharSet.WORD;
+        case 'W': return CharSet.WORD.complement();
+        case 's': return CharSet.SPACE;
+        case 'S': return CharSet.SPACE.complement();
+        default: throw new IllegalArgumentException("Not a predefined class: \\" + c);
+      }
+    }
+
+    private CharSet parseEscape() {
+      if (pos >= regex.length()) {
+        throw new UnsupportedOperationException("Trailing backslash");
+      }
+      char c = regex.charAt(pos++);
+      switch (c) {
+        case 'd': case 'D': case 'w': case 'W': case 's': case 'S':
+          return parseClassEscape(c);
+        case 't': return CharSet.of('\t');
+        case 'n': return CharSet.of('\n');
+        case 'r': return CharSet.of('\r');
+        case 'f': return CharSet.of('\f');
+        case 'a': return CharSet.of('\u0007');
+        case 'e': return CharSet.of('\u001B');
+        case 'u': return CharSet.of((char) parseHex(4));
+        case 'x': return CharSet.of((char) parseHex(2));
+        default:
+          if (Character.isLetterOrDigit(c) || Character.isSurrogate(c)) {
+            throw new UnsupportedOperationException("Escape \\" + c);
+          }
+          return CharSet.of(c);
+      }
+    }
+
+    private int parseHex(int digits) {
+      if (pos + digits > regex.length()) {
+        throw new UnsupportedOperationException("Invalid hex escape");
+      }
+      try {
+        int value = Integer.parseInt(regex.substring(pos, pos + digits), 16);
+        pos += digits;
+        if (Character.isSurrogate((char) value)) {
+          throw new UnsupportedOperationException("Surrogate char");
+        }
+        return value;
+      } catch (NumberFormatException e) {
+        throw new UnsupportedOperationException("Invalid hex escape");
+      }
+    }
+  }
+
+  /**
+   * Thompson NFA with at most one char transition per state.
+   */
+  private static class Nfa {
+    private final List<List<Integer>> epsilons = new ArrayList<>();
+    private final List<CharSet> edgeSets = new ArrayList<>();
+    private final List<Integer> edgeTargets = new ArrayList<>();
+    private int accept;
+
+    int newState() {
+      epsilons.add(new ArrayList<>());
+      edgeSets.add(null);
+      edgeTargets.add(-1);
+      if (epsilons.size() > MAX_STATES * 10) {
+        throw new UnsupportedOperationException("Expression too large");
+      }
+      return epsilons.size() - 1;
+    }
+
+    // returns the end state of the fragment, states can only have one char transition, see fresh():
+    int build(Node node, int from) {
+      if (node instanceof CharNode) {
+        int state = fresh(from);
+        int to = newState();
+        edgeSets.set(state, ((CharNode) node).set);
+        edgeTargets.set(state, to);
+        return to;
+      } else if (node instanceof SequenceNode) {
+        int current = from;
+        for (Node child : ((SequenceNode) node).nodes) {
+          current = build(child, fresh(current));
+        }
+        return current;
+      } else if (node instanceof AlternativesNode) {
+        int end = newState();
+        for (Node child : ((AlternativesNode) node).nodes) {
+          int start = newState();
+          epsilons.get(from).add(start);
+          epsilons.get(build(child, start)).add(end);
+        }
+        return end;
+      } else if (node instanceof RepeatNode) {
+        RepeatNode repeat = (RepeatNode) node;
+        int current = from;
+        for (int i = 0; i < repeat.min; i++) {
+          current = build(repeat.node, fresh(current));
+        }
+        if (repeat.max == -1) {
+          int loop = newState();
+          epsilons.get(current).add(loop);
+          int start = newState();
+          epsilons.get(loop).add(start);
+          epsilons.get(build(repeat.node, start)).add(loop);
+          return loop;
+        }
+        int end = newState();
+        for (int i = repeat.min; i < repeat.max; i++) {
+          epsilons.get(current).add(end);
+          current = build(repeat.node, fresh(current));
+        }
+        epsilons.get(current).add(end);
+        return end;
+      }
+      throw new IllegalArgumentException("Unknown node: " + node);
+    }
+
+    // a state that has no char transition yet, reachable from the given state:
+    private int fresh(int state) {
+      if (edgeSets.get(state) == null) {
+        return state;
+      }
+      int next = newState();
+      epsilons.get(state).add(next);
+      return next;
+    }
+
+    @Nullable
+    RegexAutomaton toDfa(String regex, int flags, int start) {
+      char[] classStarts = getClassStarts();
+      int classCount = classStarts.length;
+      Map<BitSet, Integer> stateIds = new HashMap<>();
+      List<BitSet> states = new ArrayList<>();
+      BitSet startSet = closure(Collections.singletonList(start));
+      stateIds.put(startSet, 0);
+      states.add(startSet);
+      List<int[]> rows = new ArrayList<>();
+      for (int i = 0; i < states.size(); i++) {
+        BitSet current = states.get(i);
+        int[] row = new int[classCount];
+        for (int cls = 0; cls < classCount; cls++) {
+          char representative = classStarts[cls];
+          List<Integer> targets = new ArrayList<>();
+          for (int s = current.nextSetBit(0); s >= 0; s = current.nextSetBit(s + 1)) {
+            CharSet set = edgeSets.get(s);
+            if (set != null && set.contains(representative)) {
+              targets.add(edgeTargets.get(s));
+            }
+          }
+          if (targets.isEmpty()) {
+            row[cls] = DEAD;
+            continue;
+          }
+          BitSet next = closure(targets);
+          Integer id = stateIds.get(next);
+          if (id == null) {
+            id = states.size();
+            if (id >= MAX_STATES || (long) (id + 1) * classCount > MAX_TABLE_SIZE) {
+              return null;
+            }
+            stateIds.put(next, id);
+            states.add(next);
+          }
+          row[cls] = id;
+        }
+        rows.add(row);
+      }
+      int[] transitions = new int[states.size() * classCount];
+      boolean[] accepting = new boolean[states.size()];
+      for (int i = 0; i < states.size(); i++) {
+        System.arraycopy(rows.get(i), 0, transitions, i * classCount, classCount);
+        accepting[i] = states.get(i).get(accept);
+      }
+      return new RegexAutomaton(regex, flags, classStarts, transitions, accepting);
+    }
+
+    private BitSet closure(List<Integer> states) {
+      BitSet result = new BitSet();
+      Deque<Integer> todo = new ArrayDeque<>(states);
+      while (!todo.isEmpty()) {
+        int state = todo.pop();
+        if (!result.get(state)) {
+          result.set(state);
+          todo.addAll(epsilons.get(state));
+        }
+      }
+      return result;
+    }
+
+    // splits all chars into classes that no transition distinguishes:
+    private char[] getClassStarts() {
+      TreeSet<Integer> starts = new TreeSet<>();
+      starts.add(0);
+      for (CharSet set : edgeSets) {
+        if (set != null) {
+          for (int i = 0; i < set.ranges.length; i += 2) {
+            starts.add(set.ranges[i]);
+            if (set.ranges[i + 1] < Character.MAX_VALUE) {
+              starts.add(set.ranges[i + 1] + 1);
+            }
+          }
+        }
+      }
+      char[] result = new char[starts.size()];
+      int i = 0;
+      for (int start : starts) {
+        result[i++] = (char) start;
+      }
+      return result;
+    }
+  }
+}
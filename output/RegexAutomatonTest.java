@@ -0,0 +1,93 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules.patterns;
+
+import org.junit.Test;
+import org.languagetool.AnalyzedToken;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class RegexAutomatonTest {
+
+  private static final String[] SUPPORTED = {
+    "", "N.*", "V(B|BZ)?", "NN|NNS", "SUB:(NOM|AKK):SIN.*", "[A-Z]+", "[^a-c]x", "a{2,3}b?", "x{2}y{1,}",
+    "(ab)*c+?", "^x.y$", "\\d+\\.\\d*", "[\\w-]+", "\\S\\s\\W", "[^\\Wk]", "[\\dA-C]+", "(a|ab)(c|bcd)(d*)",
+    "a.*?b", "(?:a|b|)c", "[-a]|[a-]", "\\u0041\\x42", "ä[öü]+"
+  };
+
+  @Test
+  public void testUnsupported() {
+    for (String regex : new String[]{"(?i)a", "a++", "a\\b", "(a)\\1", "(?=a)a", "[a-z&&[def]]", "\\p{L}", "a$b", "a{1000}"}) {
+      assertNull(regex, RegexAutomaton.compile(regex, 0));
+    }
+    assertNull(RegexAutomaton.compile("a", Pattern.COMMENTS));
+  }
+
+  @Test
+  public void testSameResultsAsJavaRegex() {
+    String alphabet = "abcdxyzNVSBUOMAKIZ:.- 19_äöüÄÖÜ\nß";
+    Random random = new Random(42);
+    for (int flags : new int[]{0, Pattern.CASE_INSENSITIVE, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE}) {
+      for (String regex : SUPPORTED) {
+        RegexAutomaton automaton = RegexAutomaton.compile(regex, flags);
+        assertNotNull(regex, automaton);
+        Pattern pattern = Pattern.compile(regex, flags);
+        for (int i = 0; i < 2000; i++) {
+          StringBuilder sb = new StringBuilder();
+          int length = random.nextInt(8);
+          for (int j = 0; j < length; j++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+          }
+          String s = sb.toString();
+          assertEquals(regex + " (flags " + flags + ") on '" + s + "'", pattern.matcher(s).matches(), automaton.matches(s));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSurrogates() {
+    RegexAutomaton automaton = RegexAutomaton.compile("a.b", 0);
+    assertEquals(Pattern.matches("a.b", "a😀b"), automaton.matches("a😀b"));
+    assertNull(RegexAutomaton.compile("😀", 0));
+  }
+
+  @Test
+  public void testSharedAutomaton() {
+    assertSame(RegexAutomaton.get("NN.*", 0), RegexAutomaton.get("NN.*", 0));
+    assertNotSame(RegexAutomaton.get("NN.*", 0), RegexAutomaton.get("NN.*", Pattern.CASE_INSENSITIVE));
+    assertNull(RegexAutomaton.get("(a)\\1", 0));
+  }
+
+  @Test
+  public void testPosToken() {
+    for (RegexEngine engine : RegexEngine.values()) {
+      PatternToken patternToken = new PatternToken("", false, false, false);
+      patternToken.setPosToken(new PatternToken.PosToken("NN|VB[DZ]?", true, false, engine));
+      assertTrue(patternToken.isMatched(new AnalyzedToken("foo", "NN", "foo")));
+      assertTrue(patternToken.isMatched(new AnalyzedToken("foo", "VBZ", "foo")));
+      assertFalse(patternToken.isMatched(new AnalyzedToken("foo", "NNS", "foo")));
+      assertFalse(patternToken.isMatched(new AnalyzedToken("foo", null, "foo")));
+    }
+  }
+
+}
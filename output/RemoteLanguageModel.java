@@ -33,17 +33,22 @@ import org.languagetool.languagemodel.bert.grpc.BertLmGrpc;
 import javax.net.ssl.SSLException;
 import java.io.File;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static org.languagetool.languagemodel.bert.grpc.BertLmProto.*;
 
 public class RemoteLanguageModel {
 
+  private static final int SCORE_CACHE_SIZE = 100_000;
+
+  // shared by all instances, keyed by model so that instances for the same service share entries:
+  private static final Cache<ScoreKey, List<Double>> scoreCache = CacheBuilder.newBuilder()
+    .maximumSize(SCORE_CACHE_SIZE)
+    .recordStats()
+    .build();
+
   private final BertLmGrpc.BertLmBlockingStub model;
   private final ManagedChannel channel;
-  private final Cache<Request, List<Double>> cache = CacheBuilder.newBuilder()
-    .maximumSize(1000)
-    .build();
+  private final String modelId;
 
   public static class Request {
     public String text;
@@ -91,6 +96,52 @@ public class RemoteLanguageModel {
     // TODO configure deadline/retries/... here?
     channel = getChannel(host, port, useSSL, clientPrivateKey, clientCertificate, rootCertificate);
     model = BertLmGrpc.newBlockingStub(channel);
+    modelId = host + ":" + port;
+  }
+
+  /**
+   * The scores of the candidates at a position of a sentence. The whole list of candidates
+   * is part of the key, as a candidate's score may depend on the other candidates it's ranked with.
+   */
+  static final class ScoreKey {
+    private final String model;
+    private final String text;
+    private final int start;
+    private final int end;
+    private final List<String> candidates;
+
+    ScoreKey(String model, String text, int start, int end, List<String> candidates) {
+      this.model = model;
+      this.text = text;
+      this.start = start;
+      this.end = end;
+      this.candidates = Collections.unmodifiableList(new ArrayList<>(candidates));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      ScoreKey other = (ScoreKey) o;
+      return start == other.start &&
+        end == other.end &&
+        text.equals(other.text) &&
+        candidates.equals(other.candidates) &&
+        model.equals(other.model);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(model, text, start, end, candidates);
+    }
+  }
+
+  /**
+   * @return the cache for scores of all instances, to monitor it
+   * @since 5.3
+   */
+  public static Cache<?, ?> getScoreCache() {
+    return scoreCache;
   }
 
   private ManagedChannel getChannel(String host, int port, boolean useSSL,
@@ -118,52 +169,79 @@ public class RemoteLanguageModel {
     }
   }
 
+  /**
+   * Score the candidates of all requests, in one request to the service: scores are cached per
+   * request, the remaining requests are sent with one {@link ScoreRequest} per sentence,
+   * containing a {@link Mask} for each request. This assumes that the service scores each
+   * mask on its own, i.e. the scores of a mask don't depend on the other masks of the sentence.
+   * @return the scores of the candidates of each request
+   */
   public List<List<Double>> batchScore(List<Request> requests) {
-    Map<Request, List<Double>> cachedRequests = new HashMap<>();
-    List<Request> uncachedRequests = new ArrayList<>();
+    Map<ScoreKey, List<Double>> scores = new HashMap<>();
+    // sentence -> requests to score:
+    Map<String, Set<Request>> uncached = new LinkedHashMap<>();
     for (Request request : requests) {
-      List<Double> result = cache.getIfPresent(request);
-      if (result == null) {
-        uncachedRequests.add(request);
+      ScoreKey key = getKey(request.text, request.start, request.end, request.candidates);
+      List<Double> score = scoreCache.getIfPresent(key);
+      if (score != null) {
+        scores.put(key, score);
       } else {
-        cachedRequests.put(request, result);
+        uncached.computeIfAbsent(request.text, k -> new LinkedHashSet<>()).add(request);
       }
     }
-    BatchScoreRequest batch = BatchScoreRequest.newBuilder().addAllRequests(
-      uncachedRequests.stream().map(Request::convert).collect(Collectors.toList())
-    ).build();
-    // TODO multiple masks
-    List<List<Double>> nonCacheResult = model.batchScore(batch).getResponsesList().stream().map(r ->
-      r.getScoresList().get(0).getScoreList()).collect(Collectors.toList());
-    //
-    List<List<Double>> allResults = new ArrayList<>();
-    int i = 0;
-    for (Request request : requests) {
-      List<Double> result = cachedRequests.get(request);
-      if (result != null) {
-        //System.out.println("Adding result from cache");
-        allResults.add(result);
-      } else {
-        //System.out.println("Adding result from remote");
-        allResults.add(nonCacheResult.get(i++));
+    if (!uncached.isEmpty()) {
+      BatchScoreRequest batch = buildBatch(uncached);
+      List<BertLmResponse> responses = model.batchScore(batch).getResponsesList();
+      if (responses.size() != batch.getRequestsCount()) {
+        throw new IllegalStateException("Got " + responses.size() + " responses for " + batch.getRequestsCount() + " sentences");
+      }
+      for (int i = 0; i < responses.size(); i++) {
+        ScoreRequest sentence = batch.getRequests(i);
+        List<Prediction> predictions = responses.get(i).getScoresList();
+        if (predictions.size() != sentence.getMaskCount()) {
+          throw new IllegalStateException("Got " + predictions.size() + " predictions for " + sentence.getMaskCount() + " masks");
+        }
+        for (int j = 0; j < predictions.size(); j++) {
+          Mask mask = sentence.getMask(j);
+          List<Double> maskScores = predictions.get(j).getScoreList();
+          if (maskScores.size() != mask.getCandidatesCount()) {
+            throw new IllegalStateException("Got " + maskScores.size() + " scores for " + mask.getCandidatesCount() + " candidates");
+          }
+          ScoreKey key = getKey(sentence.getText(), mask.getStart(), mask.getEnd(), mask.getCandidatesList());
+          scores.put(key, maskScores);
+          scoreCache.put(key, maskScores);
+        }
       }
     }
-
-    int j = 0;
-    for (List<Double> re : nonCacheResult) {
-      // a CacheLoader doesn't work with batching, so add manually:
-      //System.out.println("Adding request to cache");
-      cache.put(uncachedRequests.get(j), re);
-      j++;
+    List<List<Double>> allResults = new ArrayList<>(requests.size());
+    for (Request request : requests) {
+      allResults.add(scores.get(getKey(request.text, request.start, request.end, request.candidates)));
     }
     return allResults;
   }
 
+  private ScoreKey getKey(String text, int start, int end, List<String> candidates) {
+    return new ScoreKey(modelId, text, start, end, candidates);
+  }
+
+  static BatchScoreRequest buildBatch(Map<String, Set<Request>> requestsBySentence) {
+    BatchScoreRequest.Builder batch = BatchScoreRequest.newBuilder();
+    requestsBySentence.forEach((text, requests) -> {
+      ScoreRequest.Builder sentence = ScoreRequest.newBuilder().setText(text);
+      for (Request request : requests) {
+        sentence.addMask(Mask.newBuilder()
+          .setStart(request.start)
+          .setEnd(request.end)
+          .addAllCandidates(request.candidates));
+      }
+      batch.addRequests(sentence);
+    });
+    return batch.build();
+  }
+
   public List<Double> score(Request req) {
     // TODO deal with max seq length, extract windows
-    // TODO mask multiple tokens in a sentence
-    // TODO multiple masks
-    return model.score(req.convert()).getScoresList().get(0).getScoreList();
+    return batchScore(Collections.singletonList(req)).get(0);
   }
 
 }
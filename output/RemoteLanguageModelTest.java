@@ -0,0 +1,63 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.languagemodel.bert;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.languagetool.languagemodel.bert.grpc.BertLmProto.*;
+
+public class RemoteLanguageModelTest {
+
+  @Test
+  public void testOneScoreRequestPerSentence() {
+    Map<String, Set<RemoteLanguageModel.Request>> requests = new LinkedHashMap<>();
+    requests.computeIfAbsent("A tset with a typo.", k -> new LinkedHashSet<>())
+      .add(new RemoteLanguageModel.Request("A tset with a typo.", 2, 6, Arrays.asList("test", "set")));
+    requests.get("A tset with a typo.")
+      .add(new RemoteLanguageModel.Request("A tset with a typo.", 14, 18, Arrays.asList("type", "top")));
+    requests.computeIfAbsent("Anothr sentence.", k -> new LinkedHashSet<>())
+      .add(new RemoteLanguageModel.Request("Anothr sentence.", 0, 6, Collections.singletonList("Another")));
+
+    BatchScoreRequest batch = RemoteLanguageModel.buildBatch(requests);
+    assertEquals(2, batch.getRequestsCount());
+    ScoreRequest first = batch.getRequests(0);
+    assertEquals("A tset with a typo.", first.getText());
+    assertEquals(2, first.getMaskCount());
+    assertEquals(14, first.getMask(1).getStart());
+    assertEquals(18, first.getMask(1).getEnd());
+    assertEquals(Arrays.asList("type", "top"), first.getMask(1).getCandidatesList());
+    assertEquals(1, batch.getRequests(1).getMaskCount());
+  }
+
+  @Test
+  public void testScoreKeys() {
+    List<String> candidates = Arrays.asList("test", "set");
+    RemoteLanguageModel.ScoreKey key = new RemoteLanguageModel.ScoreKey("localhost:1", "A tset.", 2, 6, candidates);
+    assertEquals(key, new RemoteLanguageModel.ScoreKey("localhost:1", "A tset.", 2, 6, Arrays.asList("test", "set")));
+    assertEquals(key.hashCode(), new RemoteLanguageModel.ScoreKey("localhost:1", "A tset.", 2, 6, Arrays.asList("test", "set")).hashCode());
+    assertNotEquals(key, new RemoteLanguageModel.ScoreKey("localhost:2", "A tset.", 2, 6, candidates));
+    // a candidate's score may depend on the other candidates:
+    assertNotEquals(key, new RemoteLanguageModel.ScoreKey("localhost:1", "A tset.", 2, 6, Collections.singletonList("test")));
+  }
+
+}
@@ -0,0 +1,191 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.prometheus.client.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Combines the requests that concurrent checks make to the same remote service within a few milliseconds
+ * into one request, as the services used by {@link RemoteRule}s work more efficiently on larger batches.
+ * A batch is sent when it has reached the maximum size or when its first request has waited for the
+ * maximum time, each caller gets the part of the response that belongs to its request. When all callers
+ * of a batch have given up, the thread sending it is interrupted, which cancels e.g. a blocking gRPC call.
+ * @param <Req> a request, which can be combined with other requests
+ * @param <Resp> the response to a request
+ * @since 5.3
+ */
+class RemoteRequestBatcher<Req, Resp> {
+
+  private static final Histogram batchSize = Histogram
+    .build("languagetool_remote_rule_batch_size", "Number of sentences sent in one batched remote rule request")
+    .labelNames("rule_id").exponentialBuckets(1, 2, 10).register();
+  private static final Histogram batchWait = Histogram
+    .build("languagetool_remote_rule_batch_wait_seconds", "Time requests waited to be sent in a batch to a remote rule's service")
+    .labelNames("rule_id").buckets(0.001, 0.002, 0.005, 0.01, 0.02, 0.05, 0.1).register();
+
+  private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+    new ThreadFactoryBuilder().setNameFormat("remote-rule-batch-timer-%d").setDaemon(true).build());
+  private static final ExecutorService senders = Executors.newCachedThreadPool(
+    new ThreadFactoryBuilder().setNameFormat("remote-rule-batch-%d").setDaemon(true).build());
+
+  private final String ruleId;
+  private final int maxSize;
+  private final long maxWaitMillis;
+  private final ToIntFunction<Req> sizeOf;
+  private final Function<List<Req>, List<Resp>> batchCall;
+
+  private Batch current;
+
+  /**
+   * @param maxSize the size at which a batch is sent without waiting longer, e.g. the number of sentences
+   * @param maxWaitMillis the longest time a request waits for other requests before it's sent
+   * @param sizeOf the size of a request
+   * @param batchCall sends the combined requests and returns one response per request, in the same order
+   */
+  RemoteRequestBatcher(String ruleId, int maxSize, long maxWaitMillis, ToIntFunction<Req> sizeOf, Function<List<Req>, List<Resp>> batchCall) {
+    this.ruleId = Objects.requireNonNull(ruleId);
+    this.maxSize = maxSize;
+    this.maxWaitMillis = maxWaitMillis;
+    this.sizeOf = Objects.requireNonNull(sizeOf);
+    this.batchCall = Objects.requireNonNull(batchCall);
+  }
+
+  /**
+   * Add the request to the next batch and wait for its response. When the waiting thread is
+   * interrupted, the request is removed from the batch if that hasn't been sent yet.
+   */
+  Resp call(Req request) throws InterruptedException, ExecutionException {
+    CompletableFuture<Resp> response = submit(request);
+    try {
+      return response.get();
+    } catch (InterruptedException e) {
+      response.cancel(true);
+      throw e;
+    }
+  }
+
+  CompletableFuture<Resp> submit(Req request) {
+    CompletableFuture<Resp> response = new CompletableFuture<>();
+    Batch full = null;
+    synchronized (this) {
+      if (current == null) {
+        Batch batch = new Batch();
+        current = batch;
+        timer.schedule(() -> sendIfCurrent(batch), maxWaitMillis, TimeUnit.MILLISECONDS);
+      }
+      current.add(request, response);
+      if (current.size >= maxSize) {
+        full = current;
+        current = null;
+      }
+    }
+    if (full != null) {
+      senders.execute(full::send);
+    }
+    return response;
+  }
+
+  private void sendIfCurrent(Batch batch) {
+    synchronized (this) {
+      if (current != batch) {
+        return;  // already sent because it was full
+      }
+      current = null;
+    }
+    senders.execute(batch::send);
+  }
+
+  private class Batch {
+    private final List<Req> requests = new ArrayList<>();
+    private final List<CompletableFuture<Resp>> responses = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private int size;
+    private Thread sender;  // while the batch call runs
+
+    private void add(Req request, CompletableFuture<Resp> response) {
+      // requests whose caller has given up won't be sent, so they don't count toward the size:
+      for (int i = requests.size() - 1; i >= 0; i--) {
+        if (responses.get(i).isDone()) {
+          size -= sizeOf.applyAsInt(requests.get(i));
+          requests.remove(i);
+          responses.remove(i);
+        }
+      }
+      requests.add(request);
+      responses.add(response);
+      size += sizeOf.applyAsInt(request);
+    }
+
+    private synchronized void interruptSender() {
+      if (sender != null) {
+        sender.interrupt();
+      }
+    }
+
+    private void send() {
+      batchWait.labels(ruleId).observe((System.nanoTime() - startNanos) / 1_000_000_000.0);
+      List<Req> waitingRequests = new ArrayList<>();
+      List<CompletableFuture<Resp>> waitingResponses = new ArrayList<>();
+      int sentSize = 0;
+      for (int i = 0; i < requests.size(); i++) {
+        if (!responses.get(i).isDone()) {  // skip requests whose caller has given up
+          waitingRequests.add(requests.get(i));
+          waitingResponses.add(responses.get(i));
+          sentSize += sizeOf.applyAsInt(requests.get(i));
+        }
+      }
+      if (waitingRequests.isEmpty()) {
+        return;
+      }
+      batchSize.labels(ruleId).observe(sentSize);
+      synchronized (this) {
+        sender = Thread.currentThread();
+      }
+      CompletableFuture.allOf(waitingResponses.toArray(new CompletableFuture<?>[0])).whenComplete((result, error) -> interruptSender());
+      try {
+        List<Resp> results;
+        try {
+          results = batchCall.apply(waitingRequests);
+        } finally {
+          synchronized (this) {
+            sender = null;
+          }
+          Thread.interrupted();  // don't leave an interrupt for the next batch sent by this thread
+        }
+        if (results.size() != waitingRequests.size()) {
+          throw new IllegalStateException("Got " + results.size() + " responses for " + waitingRequests.size() + " requests");
+        }
+        for (int i = 0; i < results.size(); i++) {
+          waitingResponses.get(i).complete(results.get(i));
+        }
+      } catch (Throwable t) {
+        waitingResponses.forEach(response -> response.completeExceptionally(t));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,135 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class RemoteRequestBatcherTest {
+
+  private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+  @Test
+  public void testRequestsAreCombined() throws Exception {
+    RemoteRequestBatcher<String, String> batcher = new RemoteRequestBatcher<>("TEST", 100, 50, String::length, this::upperCase);
+    CompletableFuture<String> response1 = batcher.submit("a");
+    CompletableFuture<String> response2 = batcher.submit("bc");
+    assertEquals("A", response1.get(5, TimeUnit.SECONDS));
+    assertEquals("BC", response2.get(5, TimeUnit.SECONDS));
+    assertEquals(Collections.singletonList(Arrays.asList("a", "bc")), batches);
+    assertEquals("D", batcher.call("d"));
+    assertEquals(2, batches.size());
+  }
+
+  @Test
+  public void testFullBatchIsSentWithoutWaiting() throws Exception {
+    RemoteRequestBatcher<String, String> batcher = new RemoteRequestBatcher<>("TEST", 3, 60_000, String::length, this::upperCase);
+    CompletableFuture<String> response1 = batcher.submit("a");
+    CompletableFuture<String> response2 = batcher.submit("bc");
+    CompletableFuture<String> response3 = batcher.submit("d");  // next batch
+    assertEquals("A", response1.get(5, TimeUnit.SECONDS));
+    assertEquals("BC", response2.get(5, TimeUnit.SECONDS));
+    assertFalse(response3.isDone());
+    response3.cancel(true);
+  }
+
+  @Test
+  public void testErrorsArePassedToAllCallers() throws Exception {
+    RemoteRequestBatcher<String, String> batcher = new RemoteRequestBatcher<>("TEST", 100, 10, String::length, requests -> {
+      throw new IllegalStateException("service down");
+    });
+    CompletableFuture<String> response1 = batcher.submit("a");
+    CompletableFuture<String> response2 = batcher.submit("b");
+    for (CompletableFuture<String> response : Arrays.asList(response1, response2)) {
+      try {
+        response.get(5, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertEquals("service down", e.getCause().getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testCancelledRequestsAreNotSent() throws Exception {
+    CountDownLatch sent = new CountDownLatch(1);
+    RemoteRequestBatcher<String, String> batcher = new RemoteRequestBatcher<>("TEST", 100, 50, String::length, requests -> {
+      List<String> result = upperCase(requests);
+      sent.countDown();
+      return result;
+    });
+    CompletableFuture<String> cancelled = batcher.submit("a");
+    CompletableFuture<String> response = batcher.submit("b");
+    cancelled.cancel(true);
+    assertEquals("B", response.get(5, TimeUnit.SECONDS));
+    assertTrue(sent.await(5, TimeUnit.SECONDS));
+    assertEquals(Collections.singletonList(Collections.singletonList("b")), batches);
+  }
+
+  @Test
+  public void testCancelledRequestsDontFillBatch() throws Exception {
+    RemoteRequestBatcher<String, String> batcher = new RemoteRequestBatcher<>("TEST", 3, 60_000, String::length, this::upperCase);
+    CompletableFuture<String> cancelled = batcher.submit("ab");
+    cancelled.cancel(true);
+    CompletableFuture<String> response1 = batcher.submit("c");
+    CompletableFuture<String> response2 = batcher.submit("d");
+    assertFalse(response1.isDone());  // not full yet, as "ab" isn't sent
+    CompletableFuture<String> response3 = batcher.submit("e");
+    assertEquals("C", response1.get(5, TimeUnit.SECONDS));
+    assertEquals("D", response2.get(5, TimeUnit.SECONDS));
+    assertEquals("E", response3.get(5, TimeUnit.SECONDS));
+    assertEquals(Collections.singletonList(Arrays.asList("c", "d", "e")), batches);
+  }
+
+  @Test
+  public void testCallIsInterruptedWhenAllCallersGiveUp() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    RemoteRequestBatcher<String, String> batcher = new RemoteRequestBatcher<>("TEST", 1, 60_000, String::length, requests -> {
+      started.countDown();
+      try {
+        Thread.sleep(60_000);
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+      return upperCase(requests);
+    });
+    CompletableFuture<String> response = batcher.submit("a");
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    response.cancel(true);
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+  }
+
+  private List<String> upperCase(List<String> requests) {
+    batches.add(new ArrayList<>(requests));
+    return requests.stream().map(String::toUpperCase).collect(Collectors.toList());
+  }
+
+}
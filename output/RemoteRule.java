@@ -22,8 +22,10 @@
 package org.languagetool.rules;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.prometheus.client.Counter;
 import org.jetbrains.annotations.Nullable;
 import org.languagetool.AnalyzedSentence;
+import org.languagetool.CheckDeadline;
 import org.languagetool.markup.AnnotatedText;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +33,6 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @since 4.9
@@ -42,11 +43,24 @@ public abstract class RemoteRule extends Rule {
 
   /* needs to be shared between rule instances because new instances may be created and discarded often
      needs to be a map because 'static' and inheritance don't play nice in Java */
-  private static final ConcurrentMap<String, Long> lastFailure = new ConcurrentHashMap<>();
-  private static final ConcurrentMap<String, AtomicInteger> consecutiveFailures = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, RemoteRuleCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, LatencyDigest> latencies = new ConcurrentHashMap<>();
   private static final ThreadFactory threadFactory = new ThreadFactoryBuilder()
     .setNameFormat("remote-rule-pool-{}").setDaemon(true).build();
 
+  private static final Counter hedgedRequests = Counter
+    .build("languagetool_remote_rule_hedged_requests_total", "Number of hedged remote rule requests, by the request that answered first")
+    .labelNames("rule_id", "winner").register();
+
+  private static final int LATENCY_SAMPLES = 1000;
+  // adapt timeouts / start hedging only after this many requests:
+  private static final int MIN_LATENCY_SAMPLES = 20;
+  private static final long MIN_ADAPTIVE_TIMEOUT_MILLIS = 100;
+  private static final double TIMEOUT_LATENCY_FACTOR = 3;
+  // hedging stops while more of the recent requests than this have been hedged, e.g. when the service slows down:
+  private static final double MAX_HEDGED_RATE = 0.1;
+  private static final long POLL_MILLIS = 50;
+
   protected static final List<Runnable> shutdownRoutines = new LinkedList<>();
 
   // needed to run callables with timeout
@@ -54,6 +68,8 @@ public abstract class RemoteRule extends Rule {
 
   protected final RemoteRuleConfig serviceConfiguration;
   protected final boolean inputLogging;
+  private final boolean adaptiveTimeout;
+  private final boolean hedging;
   private AnnotatedText annotatedText;
 
   public RemoteRule(ResourceBundle messages, RemoteRuleConfig config, boolean inputLogging, @Nullable String ruleId) {
@@ -63,8 +79,12 @@ public abstract class RemoteRule extends Rule {
     if (ruleId == null) { // allow both providing rule ID in constructor or overriding getId
       ruleId = getId();
     }
-    lastFailure.putIfAbsent(ruleId, 0L);
-    consecutiveFailures.putIfAbsent(ruleId, new AtomicInteger());
+    circuitBreakers.putIfAbsent(ruleId, new RemoteRuleCircuitBreaker(config.getFall(), config.getDownMilliseconds()));
+    latencies.putIfAbsent(ruleId, new LatencyDigest(LATENCY_SAMPLES));
+    // options: adaptiveTimeout - derive timeouts from the recent latencies, the configured timeout is the upper limit;
+    // hedging - send a second request when the first one takes longer than 95% of the recent requests (for at most 10% of the requests)
+    adaptiveTimeout = Boolean.parseBoolean(config.getOptions().getOrDefault("adaptiveTimeout", "false"));
+    hedging = Boolean.parseBoolean(config.getOptions().getOrDefault("hedging", "false"));
     // TODO maybe use fixed pool, take number of concurrent requests from configuration?
     executors.putIfAbsent(ruleId, Executors.newCachedThreadPool(threadFactory));
   }
@@ -87,6 +107,15 @@ public abstract class RemoteRule extends Rule {
   protected abstract Callable<RemoteRuleResult> executeRequest(RemoteRequest request);
   protected abstract RemoteRuleResult fallbackResults(RemoteRequest request);
 
+  /**
+   * The request sent when the one from {@link #executeRequest(RemoteRequest)} takes unusually long and
+   * the {@code hedging} option is enabled; override to send it to another endpoint.
+   * @since 5.3
+   */
+  protected Callable<RemoteRuleResult> executeHedgedRequest(RemoteRequest request) {
+    return executeRequest(request);
+  }
+
   /**
    * @param sentences text to check
    * @param textSessionId ID for texts, should stay constant for a user session; used for A/B tests of experimental rules
@@ -96,6 +125,8 @@ public abstract class RemoteRule extends Rule {
     if (sentences.isEmpty()) {
       return new FutureTask<>(() -> new RemoteRuleResult(false, true, Collections.emptyList()));
     }
+    // run() is called by the thread doing the check, the task itself runs in another thread:
+    CheckDeadline deadline = CheckDeadline.current();
     return new FutureTask<>(() -> {
       long startTime = System.nanoTime();
       long characters = sentences.stream().mapToInt(sentence -> sentence.getText().length()).sum();
@@ -103,63 +134,175 @@ public abstract class RemoteRule extends Rule {
       RemoteRequest req = prepareRequest(sentences, annotatedText, textSessionId);
       RemoteRuleResult result;
 
-      if (consecutiveFailures.get(ruleId).get() >= serviceConfiguration.getFall()) {
-        long failureInterval = System.currentTimeMillis() - lastFailure.get(ruleId);
-        if (failureInterval < serviceConfiguration.getDownMilliseconds()) {
-          RemoteRuleMetrics.request(ruleId, 0, 0, characters, RemoteRuleMetrics.RequestResult.DOWN);
-          result = fallbackResults(req);
-          return result;
-        }
+      RemoteRuleCircuitBreaker circuitBreaker = circuitBreakers.get(ruleId);
+      LatencyDigest latency = latencies.get(ruleId);
+
+      if (!circuitBreaker.allowRequest()) {
+        RemoteRuleMetrics.request(ruleId, 0, 0, characters, RemoteRuleMetrics.RequestResult.DOWN);
+        result = fallbackResults(req);
+        return result;
       }
       RemoteRuleMetrics.up(ruleId, true);
 
-      for (int i = 0; i <= serviceConfiguration.getMaxRetries(); i++) {
-        Callable<RemoteRuleResult> task = executeRequest(req);
-        long timeout = serviceConfiguration.getBaseTimeoutMilliseconds() +
-          Math.round(characters * serviceConfiguration.getTimeoutPerCharacterMilliseconds());
-        try {
-          Future<RemoteRuleResult> future = executors.get(ruleId).submit(task);
-          if (timeout <= 0)  { // for debugging, disable timeout
-            result = future.get();
-          } else {
-            result = future.get(timeout, TimeUnit.MILLISECONDS);
-          }
-          future.cancel(true);
+      boolean reported = false;
+      try {
+        for (int i = 0; i <= serviceConfiguration.getMaxRetries(); i++) {
+          // retries and trial requests after a downtime get the configured timeout, as the service may have slowed down:
+          boolean adapt = i == 0 && circuitBreaker.getState() == RemoteRuleCircuitBreaker.State.CLOSED &&
+            circuitBreaker.getConsecutiveFailures() == 0;
+          long timeout = getTimeout(latency, characters, adapt);
+          try {
+            result = awaitResult(req, timeout, getHedgeDelay(latency), deadline, latency, characters);
+
+            if (result.isRemote()) { // don't reset failures if no remote call took place
+              circuitBreaker.success();
+              RemoteRuleMetrics.failures(ruleId, 0);
+            } else {
+              circuitBreaker.skipped();
+            }
+            reported = true;
 
-          if (result.isRemote()) { // don't reset failures if no remote call took place
-            consecutiveFailures.get(ruleId).set(0);
-            RemoteRuleMetrics.failures(ruleId, 0);
+            RemoteRuleMetrics.RequestResult requestResult = result.isRemote() ?
+              RemoteRuleMetrics.RequestResult.SUCCESS : RemoteRuleMetrics.RequestResult.SKIPPED;
+            RemoteRuleMetrics.request(ruleId, i, System.nanoTime() - startTime, characters, requestResult);
+
+            return result;
+          } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            if (deadline != null && deadline.isExpired()) {
+              break;
+            }
+            logger.warn("Error while fetching results for remote rule " + ruleId + ", tried " + (i + 1) + " times, timeout: " + timeout + "ms" , e);
+            if (e instanceof TimeoutException && timeout > 0) {
+              // the latency is at least the timeout - without such samples, adaptive timeouts couldn't grow again:
+              latency.add(timeout, characters);
+            }
+
+            RemoteRuleMetrics.RequestResult status;
+            if (e instanceof TimeoutException || e instanceof InterruptedException) {
+              status = RemoteRuleMetrics.RequestResult.TIMEOUT;
+            } else {
+              status = RemoteRuleMetrics.RequestResult.ERROR;
+            }
+
+            RemoteRuleMetrics.request(ruleId, i, System.nanoTime() - startTime, characters, status);
           }
+        }
+        if (deadline != null && deadline.isExpired()) {
+          // nobody waits for the result anymore - not a failure of the service, so don't count it as one:
+          circuitBreaker.skipped();
+          reported = true;
+          RemoteRuleMetrics.request(ruleId, 0, System.nanoTime() - startTime, characters, RemoteRuleMetrics.RequestResult.SKIPPED);
+          return fallbackResults(req);
+        }
+        boolean opened = circuitBreaker.failure();
+        reported = true;
+        RemoteRuleMetrics.failures(ruleId, circuitBreaker.getConsecutiveFailures());
+        logger.warn("Fetching results for remote rule " + ruleId + " failed.");
+        if (opened) {
+          logger.warn("Remote rule " + ruleId + " marked as DOWN.");
+          RemoteRuleMetrics.downtime(ruleId, serviceConfiguration.getDownMilliseconds());
+          RemoteRuleMetrics.up(ruleId, false);
+        }
+        result = fallbackResults(req);
+        return result;
+      } finally {
+        if (!reported) {
+          // e.g. after an unchecked exception - a half-open breaker would otherwise wait for its trial request forever:
+          circuitBreaker.skipped();
+        }
+      }
+    });
+  }
+
+  /**
+   * The configured timeout, or - if {@code adapt} is set and enough requests have been answered or timed out -
+   * a multiple of the 99th percentile of the recent latencies, scaled up for texts longer than usual;
+   * the configured timeout stays the upper limit.
+   */
+  long getTimeout(LatencyDigest latency, long characters, boolean adapt) {
+    long staticTimeout = serviceConfiguration.getBaseTimeoutMilliseconds() +
+      Math.round(characters * serviceConfiguration.getTimeoutPerCharacterMilliseconds());
+    if (staticTimeout <= 0 || !adapt || !adaptiveTimeout || latency.size() < MIN_LATENCY_SAMPLES) {
+      return staticTimeout;
+    }
+    double lengthFactor = Math.max(1, characters / (double) Math.max(1, latency.getCharactersQuantile(0.5)));
+    long observedTimeout = Math.round(TIMEOUT_LATENCY_FACTOR * latency.getLatencyQuantile(0.99) * lengthFactor);
+    return Math.min(staticTimeout, Math.max(MIN_ADAPTIVE_TIMEOUT_MILLIS, observedTimeout));
+  }
 
-          RemoteRuleMetrics.RequestResult requestResult = result.isRemote() ?
-            RemoteRuleMetrics.RequestResult.SUCCESS : RemoteRuleMetrics.RequestResult.SKIPPED;
-          RemoteRuleMetrics.request(ruleId, i, System.nanoTime() - startTime, characters, requestResult);
+  /**
+   * @return the milliseconds after which a hedged request is sent, or {@code -1} to not hedge
+   */
+  private long getHedgeDelay(LatencyDigest latency) {
+    if (!hedging || latency.size() < MIN_LATENCY_SAMPLES || latency.getHedgedRate() >= MAX_HEDGED_RATE) {
+      return -1;
+    }
+    return latency.getLatencyQuantile(0.95);
+  }
 
+  /**
+   * Run the request and - if it takes longer than {@code hedgeDelay} - a hedged request, and wait for the first
+   * successful result. Both requests are cancelled when this returns. The latency of a successful remote result is
+   * added to {@code latency}: always that of the primary request, as the hedging delay is derived from it - if the
+   * hedged request wins, the time the primary request has taken until then, which its latency is at least.
+   * @param timeout {@code <= 0} to wait until the result arrives or the deadline expires
+   * @param hedgeDelay {@code < 0} to not send a hedged request
+   */
+  private RemoteRuleResult awaitResult(RemoteRequest req, long timeout, long hedgeDelay, @Nullable CheckDeadline deadline,
+                                       LatencyDigest latency, long characters)
+    throws InterruptedException, ExecutionException, TimeoutException {
+    CompletionService<RemoteRuleResult> completionService = new ExecutorCompletionService<>(executors.get(getId()));
+    Future<RemoteRuleResult> primary = completionService.submit(executeRequest(req));
+    Future<RemoteRuleResult> hedged = null;
+    int running = 1;
+    long startTime = System.nanoTime();
+    try {
+      while (true) {
+        if (deadline != null && deadline.isExpired()) {
+          throw new TimeoutException("Check deadline has expired");
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        if (timeout > 0 && elapsed >= timeout) {
+          throw new TimeoutException("Timeout of " + timeout + "ms has expired");
+        }
+        if (hedged == null && hedgeDelay >= 0 && elapsed >= hedgeDelay) {
+          hedged = completionService.submit(executeHedgedRequest(req));
+          running++;
+        }
+        long wait = POLL_MILLIS;
+        if (timeout > 0) {
+          wait = Math.min(wait, timeout - elapsed);
+        }
+        if (hedged == null && hedgeDelay >= 0) {
+          wait = Math.min(wait, hedgeDelay - elapsed);
+        }
+        Future<RemoteRuleResult> done = completionService.poll(Math.max(1, wait), TimeUnit.MILLISECONDS);
+        if (done == null) {
+          continue;
+        }
+        running--;
+        try {
+          RemoteRuleResult result = done.get();
+          if (result.isRemote()) {
+            latency.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), characters, hedged != null);
+          }
+          if (hedged != null) {
+            hedgedRequests.labels(getId(), done == hedged ? "hedged" : "primary").inc();
+          }
           return result;
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
-          logger.warn("Error while fetching results for remote rule " + ruleId + ", tried " + (i + 1) + " times, timeout: " + timeout + "ms" , e);
-
-          RemoteRuleMetrics.RequestResult status;
-          if (e instanceof TimeoutException || e instanceof InterruptedException) {
-            status = RemoteRuleMetrics.RequestResult.TIMEOUT;
-          } else {
-            status = RemoteRuleMetrics.RequestResult.ERROR;
+        } catch (ExecutionException e) {
+          // keep waiting if the other request may still succeed
+          if (running == 0) {
+            throw e;
           }
-
-          RemoteRuleMetrics.request(ruleId, i, System.nanoTime() - startTime, characters, status);
         }
       }
-      RemoteRuleMetrics.failures(ruleId, consecutiveFailures.get(ruleId).incrementAndGet());
-      logger.warn("Fetching results for remote rule " + ruleId + " failed.");
-      if (consecutiveFailures.get(ruleId).get() >= serviceConfiguration.getFall()) {
-        lastFailure.put(ruleId, System.currentTimeMillis());
-        logger.warn("Remote rule " + ruleId + " marked as DOWN.");
-        RemoteRuleMetrics.downtime(ruleId, serviceConfiguration.getDownMilliseconds());
-        RemoteRuleMetrics.up(ruleId, false);
+    } finally {
+      primary.cancel(true);
+      if (hedged != null) {
+        hedged.cancel(true);
       }
-      result = fallbackResults(req);
-      return result;
-    });
+    }
   }
 
   @Override
@@ -0,0 +1,170 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.dev;
+
+import org.jetbrains.annotations.Nullable;
+import org.languagetool.JLanguageTool;
+import org.languagetool.Language;
+import org.languagetool.Languages;
+import org.languagetool.markup.AnnotatedText;
+import org.languagetool.markup.AnnotatedTextBuilder;
+import org.languagetool.rules.BERTSuggestionRanking;
+import org.languagetool.rules.GRPCRule;
+import org.languagetool.rules.RemoteRule;
+import org.languagetool.rules.RemoteRuleConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Load test for remote rules: checks a text with {@link JLanguageTool} without remote rules, and with a
+ * {@link GRPCRule} and {@link BERTSuggestionRanking} (where the language uses it) served by a {@link StubMLServer}
+ * that answers immediately and one with the given latency distribution and error rate. The difference between
+ * the first two is the overhead added by {@link RemoteRule} itself. Further arguments of the form {@code key=value}
+ * are used as {@link RemoteRuleConfig} options, e.g. {@code hedging=true} or {@code batchWaitMillis=5}.
+ * @since 5.3
+ */
+final class RemoteRuleBenchmark {
+
+  private static final String RULE_ID = "STUB_ML_RULE";
+  private static final int WARMUP_RUNS = 5;
+  private static final long BASE_TIMEOUT_MILLIS = 2000;
+  private static final int FALL = 3;
+  private static final long DOWN_MILLIS = 5000;
+
+  private RemoteRuleBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println("Usage: " + RemoteRuleBenchmark.class.getSimpleName() +
+        " <langCode> <textFile> [runs] [threads] [latency] [errorRate] [option=value...]");
+      System.out.println("  latency: <millis>, uniform:<min>:<max> or lognormal:<median>:<sigma>, default lognormal:50:0.5");
+      System.exit(1);
+    }
+    Language lang = Languages.getLanguageForShortCode(args[0]);
+    String text = new String(Files.readAllBytes(Paths.get(args[1])), StandardCharsets.UTF_8);
+    int runs = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+    int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+    StubMLServer.LatencyDistribution latency = StubMLServer.LatencyDistribution.parse(args.length > 4 ? args[4] : "lognormal:50:0.5");
+    double errorRate = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+    Map<String, String> options = new HashMap<>();
+    for (int i = 6; i < args.length; i++) {
+      String[] option = args[i].split("=", 2);
+      options.put(option[0], option[1]);
+    }
+    List<StubMLServer.CannedMatch> cannedMatches = Arrays.asList(
+      new StubMLServer.CannedMatch("the", "ARTICLE", "Stub match for 'the'", Arrays.asList("a", "this")),
+      new StubMLServer.CannedMatch("is", "VERB", "Stub match for 'is'", Collections.singletonList("was")));
+    System.out.println("Language: " + lang + ", text length: " + text.length() + ", runs: " + runs + ", threads: " + threads +
+      ", error rate: " + errorRate + ", options: " + options);
+
+    try {
+      List<Long> local = measure(lang, text, runs, threads, null);
+      print("local only:", local);
+      List<Long> immediate;
+      try (StubMLServer server = new StubMLServer(StubMLServer.LatencyDistribution.fixed(0), 0, 0, cannedMatches)) {
+        int port = server.start();
+        immediate = measure(lang, text, runs, threads, configs(port, options));
+        print("remote, 0ms:", immediate);
+      }
+      try (StubMLServer server = new StubMLServer(latency, 0, errorRate, cannedMatches)) {
+        int port = server.start();
+        List<Long> slow = measure(lang, text, runs, threads, configs(port, options));
+        print("remote, stub:", slow);
+        System.out.printf("stub server: %d requests, %d sentences, %d errors, mean simulated latency: %dms%n",
+          server.getRequests(), server.getSentences(), server.getErrors(),
+          server.getSimulatedMillis() / Math.max(1, server.getRequests()));
+      }
+      System.out.printf("RemoteRule overhead p50: %dms, p99: %dms%n",
+        percentile(immediate, 50) - percentile(local, 50), percentile(immediate, 99) - percentile(local, 99));
+    } finally {
+      RemoteRule.shutdown();
+    }
+  }
+
+  private static List<RemoteRuleConfig> configs(int port, Map<String, String> options) {
+    return Arrays.asList(
+      new RemoteRuleConfig(RULE_ID, "localhost", port, 0, BASE_TIMEOUT_MILLIS, 0f, FALL, DOWN_MILLIS, options),
+      new RemoteRuleConfig(BERTSuggestionRanking.RULE_ID, "localhost", port, 0, BASE_TIMEOUT_MILLIS, 0f, FALL, DOWN_MILLIS, options));
+  }
+
+  /**
+   * @param configs {@code null} to check without remote rules
+   * @return the check times in milliseconds, sorted
+   */
+  private static List<Long> measure(Language lang, String text, int runs, int threads, @Nullable List<RemoteRuleConfig> configs)
+    throws InterruptedException, ExecutionException {
+    AnnotatedText annotatedText = new AnnotatedTextBuilder().addText(text).build();
+    ExecutorService remoteRulePool = Executors.newCachedThreadPool();
+    ExecutorService checkers = Executors.newFixedThreadPool(threads);
+    // JLanguageTool isn't thread-safe, so use one per thread:
+    ThreadLocal<JLanguageTool> languageTools = ThreadLocal.withInitial(() -> createLanguageTool(lang, configs));
+    Callable<Long> check = () -> {
+      JLanguageTool lt = languageTools.get();
+      long startTime = System.nanoTime();
+      lt.check(annotatedText, true, JLanguageTool.ParagraphHandling.NORMAL, null,
+        JLanguageTool.Mode.ALL, JLanguageTool.Level.DEFAULT, remoteRulePool);
+      return (System.nanoTime() - startTime) / 1_000_000;
+    };
+    try {
+      for (Future<Long> warmup : checkers.invokeAll(Collections.nCopies(WARMUP_RUNS * threads, check))) {
+        warmup.get();
+      }
+      List<Long> times = new ArrayList<>();
+      for (Future<Long> time : checkers.invokeAll(Collections.nCopies(runs, check))) {
+        times.add(time.get());
+      }
+      Collections.sort(times);
+      return times;
+    } finally {
+      checkers.shutdownNow();
+      remoteRulePool.shutdownNow();
+    }
+  }
+
+  private static JLanguageTool createLanguageTool(Language lang, @Nullable List<RemoteRuleConfig> configs) {
+    // no result cache, so that every check sends requests:
+    JLanguageTool lt = new JLanguageTool(lang);
+    if (configs != null) {
+      try {
+        lt.activateRemoteRules(configs);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      lt.addRule(GRPCRule.create(configs.get(0), false, RULE_ID, "Stub ML rule", Collections.emptyMap()));
+    }
+    return lt;
+  }
+
+  private static void print(String name, List<Long> sortedTimes) {
+    System.out.printf("%-16s p50: %5dms, p90: %5dms, p99: %5dms, max: %5dms%n", name,
+      percentile(sortedTimes, 50), percentile(sortedTimes, 90), percentile(sortedTimes, 99), sortedTimes.get(sortedTimes.size() - 1));
+  }
+
+  private static long percentile(List<Long> sortedTimes, int percentile) {
+    int index = (int) Math.ceil(percentile / 100.0 * sortedTimes.size()) - 1;
+    return sortedTimes.get(Math.max(index, 0));
+  }
+
+}
@@ -0,0 +1,117 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether requests are sent to the service of a {@link RemoteRule}: after {@code fall}
+ * consecutive failures, the breaker opens and no requests are sent for {@code downMilliseconds}.
+ * Then it's half-open and lets a single trial request through: if that succeeds, the breaker closes
+ * again, if it fails, the breaker opens for another {@code downMilliseconds}.
+ * @since 5.3
+ */
+class RemoteRuleCircuitBreaker {
+
+  enum State { CLOSED, OPEN, HALF_OPEN }
+
+  private final int fall;
+  private final long downMilliseconds;
+  private final LongSupplier clock;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+  private boolean trialRunning;
+
+  /**
+   * @param downMilliseconds {@code <= 0} to never stop sending requests
+   */
+  RemoteRuleCircuitBreaker(int fall, long downMilliseconds) {
+    this(fall, downMilliseconds, System::currentTimeMillis);
+  }
+
+  RemoteRuleCircuitBreaker(int fall, long downMilliseconds, LongSupplier clock) {
+    this.fall = Math.max(1, fall);
+    this.downMilliseconds = downMilliseconds;
+    this.clock = clock;
+  }
+
+  /**
+   * Whether a request may be sent now. When this returns {@code true}, one of {@link #success()},
+   * {@link #failure()} or {@link #skipped()} must be called when the request is done.
+   */
+  synchronized boolean allowRequest() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (clock.getAsLong() - openedAt < downMilliseconds) {
+          return false;
+        }
+        state = State.HALF_OPEN;
+        trialRunning = true;
+        return true;
+      case HALF_OPEN:
+        if (trialRunning) {
+          return false;
+        }
+        trialRunning = true;
+        return true;
+      default:
+        throw new IllegalStateException("Unknown state: " + state);
+    }
+  }
+
+  synchronized void success() {
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+    trialRunning = false;
+  }
+
+  /**
+   * @return whether the breaker has opened because of this failure
+   */
+  synchronized boolean failure() {
+    consecutiveFailures++;
+    trialRunning = false;
+    if (downMilliseconds > 0 && (state == State.HALF_OPEN || state == State.CLOSED && consecutiveFailures >= fall)) {
+      state = State.OPEN;
+      openedAt = clock.getAsLong();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * The request ended without telling whether the service works, e.g. because nobody waited for its result anymore.
+   */
+  synchronized void skipped() {
+    trialRunning = false;
+  }
+
+  synchronized State getState() {
+    return state;
+  }
+
+  synchronized int getConsecutiveFailures() {
+    return consecutiveFailures;
+  }
+
+}
@@ -0,0 +1,100 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RemoteRuleCircuitBreakerTest {
+
+  private final AtomicLong time = new AtomicLong(1000);
+  private final RemoteRuleCircuitBreaker breaker = new RemoteRuleCircuitBreaker(2, 100, time::get);
+
+  @Test
+  public void testOpensAfterConsecutiveFailures() {
+    assertTrue(breaker.allowRequest());
+    assertFalse(breaker.failure());
+    assertTrue(breaker.allowRequest());
+    breaker.success();
+    assertTrue(breaker.allowRequest());
+    assertFalse(breaker.failure());
+    assertTrue(breaker.allowRequest());
+    assertTrue(breaker.failure());
+    assertEquals(RemoteRuleCircuitBreaker.State.OPEN, breaker.getState());
+    assertFalse(breaker.allowRequest());
+  }
+
+  @Test
+  public void testSingleTrialRequestWhenHalfOpen() {
+    open();
+    time.addAndGet(100);
+    assertTrue(breaker.allowRequest());
+    assertEquals(RemoteRuleCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertFalse(breaker.allowRequest());
+    breaker.success();
+    assertEquals(RemoteRuleCircuitBreaker.State.CLOSED, breaker.getState());
+    assertTrue(breaker.allowRequest());
+    assertTrue(breaker.allowRequest());
+  }
+
+  @Test
+  public void testFailedTrialOpensAgain() {
+    open();
+    time.addAndGet(100);
+    assertTrue(breaker.allowRequest());
+    assertTrue(breaker.failure());
+    assertFalse(breaker.allowRequest());
+    time.addAndGet(99);
+    assertFalse(breaker.allowRequest());
+    time.addAndGet(1);
+    assertTrue(breaker.allowRequest());
+  }
+
+  @Test
+  public void testSkippedTrialAllowsAnotherTrial() {
+    open();
+    time.addAndGet(100);
+    assertTrue(breaker.allowRequest());
+    breaker.skipped();
+    assertEquals(RemoteRuleCircuitBreaker.State.HALF_OPEN, breaker.getState());
+    assertTrue(breaker.allowRequest());
+    assertFalse(breaker.allowRequest());
+  }
+
+  @Test
+  public void testNeverOpensWithoutDownTime() {
+    RemoteRuleCircuitBreaker breaker = new RemoteRuleCircuitBreaker(1, 0, time::get);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(breaker.allowRequest());
+      assertFalse(breaker.failure());
+    }
+    assertEquals(RemoteRuleCircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  private void open() {
+    assertTrue(breaker.allowRequest());
+    breaker.failure();
+    assertTrue(breaker.allowRequest());
+    assertTrue(breaker.failure());
+  }
+
+}
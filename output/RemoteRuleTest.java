@@ -0,0 +1,147 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.rules;
+
+import org.junit.Test;
+import org.languagetool.AnalyzedSentence;
+import org.languagetool.FakeLanguage;
+import org.languagetool.JLanguageTool;
+import org.languagetool.markup.AnnotatedText;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RemoteRuleTest {
+
+  @Test
+  public void testAdaptiveTimeoutGrowsWhenServiceSlowsDown() throws Exception {
+    RemoteRuleConfig config = new RemoteRuleConfig("TEST_ADAPTIVE_TIMEOUT", "example.com", 1234, 0, 2000L, 0.0f, 100, 60_000L,
+      Collections.singletonMap("adaptiveTimeout", "true"));
+    SlowRemoteRule rule = new SlowRemoteRule(config);
+    List<AnalyzedSentence> sentences = Collections.singletonList(new JLanguageTool(new FakeLanguage()).getAnalyzedSentence("A test."));
+    for (int i = 0; i < 25; i++) {
+      assertTrue(run(rule, sentences).isRemote());
+    }
+    rule.delayMillis = 300;
+    // times out after the minimum adaptive timeout:
+    assertFalse(run(rule, sentences).isRemote());
+    // the request after a timeout gets the configured timeout:
+    assertTrue(run(rule, sentences).isRemote());
+    // the adaptive timeout has grown with the timed-out and the slow request:
+    assertTrue(run(rule, sentences).isRemote());
+  }
+
+  @Test
+  public void testTrialRequestEndsOnUncheckedException() throws Exception {
+    RemoteRuleConfig config = new RemoteRuleConfig("TEST_UNCHECKED_EXCEPTION", "example.com", 1234, 0, 2000L, 0.0f, 1, 10L,
+      Collections.emptyMap());
+    SlowRemoteRule rule = new SlowRemoteRule(config);
+    List<AnalyzedSentence> sentences = Collections.singletonList(new JLanguageTool(new FakeLanguage()).getAnalyzedSentence("A test."));
+    rule.failure = new IOException("service failure");
+    assertFalse(run(rule, sentences).isRemote());  // opens the circuit breaker
+    Thread.sleep(20);
+    rule.failure = new IllegalStateException("bug in the rule");
+    try {
+      run(rule, sentences);  // the trial request
+      fail();
+    } catch (ExecutionException expected) {
+    }
+    rule.failure = null;
+    assertTrue(run(rule, sentences).isRemote());
+  }
+
+  @Test
+  public void testHedgingIsLimited() throws Exception {
+    RemoteRuleConfig config = new RemoteRuleConfig("TEST_HEDGING", "example.com", 1234, 0, 5000L, 0.0f, 100, 60_000L,
+      Collections.singletonMap("hedging", "true"));
+    SlowRemoteRule rule = new SlowRemoteRule(config);
+    List<AnalyzedSentence> sentences = Collections.singletonList(new JLanguageTool(new FakeLanguage()).getAnalyzedSentence("A test."));
+    rule.delayMillis = 20;
+    for (int i = 0; i < 25; i++) {
+      assertTrue(run(rule, sentences).isRemote());
+    }
+    rule.delayMillis = 500;
+    for (int i = 0; i < 4; i++) {
+      assertTrue(run(rule, sentences).isRemote());
+    }
+    // all slow requests would be hedged, but not more than 10% of the recent requests are:
+    assertEquals(3, rule.hedgedRequests.get());
+  }
+
+  private static RemoteRuleResult run(RemoteRule rule, List<AnalyzedSentence> sentences) throws Exception {
+    FutureTask<RemoteRuleResult> task = rule.run(sentences);
+    task.run();
+    return task.get();
+  }
+
+  static class SlowRemoteRule extends RemoteRule {
+
+    volatile long delayMillis;
+    volatile Exception failure;
+    final AtomicInteger hedgedRequests = new AtomicInteger();
+
+    SlowRemoteRule(RemoteRuleConfig config) {
+      super(JLanguageTool.getMessageBundle(), config, false);
+    }
+
+    @Override
+    protected RemoteRequest prepareRequest(List<AnalyzedSentence> sentences, AnnotatedText annotatedText, Long textSessionId) {
+      return new RemoteRequest();
+    }
+
+    @Override
+    protected Callable<RemoteRuleResult> executeRequest(RemoteRequest request) {
+      Exception failure = this.failure;
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      return () -> {
+        if (failure != null) {
+          throw failure;
+        }
+        Thread.sleep(delayMillis);
+        return new RemoteRuleResult(true, true, Collections.emptyList());
+      };
+    }
+
+    @Override
+    protected Callable<RemoteRuleResult> executeHedgedRequest(RemoteRequest request) {
+      hedgedRequests.incrementAndGet();
+      return () -> new RemoteRuleResult(true, true, Collections.emptyList());
+    }
+
+    @Override
+    protected RemoteRuleResult fallbackResults(RemoteRequest request) {
+      return new RemoteRuleResult(false, false, Collections.emptyList());
+    }
+
+    @Override
+    public String getDescription() {
+      return "Test rule with a slow service";
+    }
+  }
+
+}
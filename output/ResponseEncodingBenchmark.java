@@ -0,0 +1,106 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.dev;
+
+import org.languagetool.DetectedLanguage;
+import org.languagetool.JLanguageTool;
+import org.languagetool.Language;
+import org.languagetool.Languages;
+import org.languagetool.markup.AnnotatedText;
+import org.languagetool.markup.AnnotatedTextBuilder;
+import org.languagetool.rules.RuleMatch;
+import org.languagetool.tools.RuleMatchesAsCborSerializer;
+import org.languagetool.tools.RuleMatchesAsJsonSerializer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares serialization throughput and response size of the JSON and the CBOR
+ * result format, for the matches found in a plain text file.
+ * @since 5.3
+ */
+final class ResponseEncodingBenchmark {
+
+  private static final int CONTEXT_SIZE = 40;
+  private static final int WARMUP_RUNS = 200;
+
+  private ResponseEncodingBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      System.out.println("Usage: " + ResponseEncodingBenchmark.class.getSimpleName() + " <langCode> <textFile> [runs]");
+      System.exit(1);
+    }
+    Language lang = Languages.getLanguageForShortCode(args[0]);
+    String text = new String(Files.readAllBytes(Paths.get(args[1])), StandardCharsets.UTF_8);
+    int runs = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+    JLanguageTool lt = new JLanguageTool(lang);
+    AnnotatedText aText = new AnnotatedTextBuilder().addText(text).build();
+    List<RuleMatch> matches = lt.check(aText);
+    DetectedLanguage detectedLang = new DetectedLanguage(lang, lang);
+    System.out.println("Language: " + lang + ", " + text.length() + " chars, " + matches.size() + " matches, runs: " + runs);
+    RuleMatchesAsJsonSerializer json = new RuleMatchesAsJsonSerializer(0, lang);
+    RuleMatchesAsCborSerializer cbor = new RuleMatchesAsCborSerializer(0, lang);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      toJson(json, matches, aText, detectedLang);
+      toCbor(cbor, matches, aText, detectedLang, out);
+    }
+    long jsonNanos = 0;
+    long cborNanos = 0;
+    int jsonSize = 0;
+    int cborSize = 0;
+    for (int i = 0; i < runs; i++) {
+      long startTime = System.nanoTime();
+      jsonSize = toJson(json, matches, aText, detectedLang);
+      jsonNanos += System.nanoTime() - startTime;
+      startTime = System.nanoTime();
+      cborSize = toCbor(cbor, matches, aText, detectedLang, out);
+      cborNanos += System.nanoTime() - startTime;
+    }
+    print("JSON", jsonNanos, runs, jsonSize);
+    print("CBOR", cborNanos, runs, cborSize);
+  }
+
+  private static int toJson(RuleMatchesAsJsonSerializer json, List<RuleMatch> matches, AnnotatedText aText, DetectedLanguage detectedLang) {
+    // like the server does it:
+    String response = json.ruleMatchesToJson(matches, Collections.emptyList(), aText, CONTEXT_SIZE, detectedLang, null, false);
+    return response.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  private static int toCbor(RuleMatchesAsCborSerializer cbor, List<RuleMatch> matches, AnnotatedText aText, DetectedLanguage detectedLang,
+                            ByteArrayOutputStream out) throws IOException {
+    out.reset();
+    cbor.ruleMatchesToCbor(out, matches, Collections.emptyList(), aText, CONTEXT_SIZE, detectedLang, null, false);
+    return out.size();
+  }
+
+  private static void print(String name, long nanos, int runs, int size) {
+    double millisPerRun = nanos / (double) runs / 1_000_000;
+    System.out.printf("%s: %7.3fms per response, %8.0f responses/s, %7d bytes%n", name, millisPerRun, 1000 / millisPerRun, size);
+  }
+
+}
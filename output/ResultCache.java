@@ -21,11 +21,18 @@ package org.languagetool;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jetbrains.annotations.Nullable;
+import org.languagetool.ResultCacheSnapshot.StoredMatch;
+import org.languagetool.rules.Rule;
 import org.languagetool.rules.RuleMatch;
 
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * A cache to speed up text checking for use cases where sentences are checked more than once. This
@@ -40,13 +47,33 @@ import java.util.concurrent.TimeUnit;
  */
 public class ResultCache {
 
+  // the approximate heap size of an AnalyzedSentence object graph per 75 characters of text,
+  // so that the memory used by the sentence cache is about the same as before sentences were encoded:
+  private static final long SENTENCE_BYTES_PER_UNIT = 4096;
+  // share of the sentence cache's memory used for the dictionary of POS tags and lemmas of the encoded sentences:
+  private static final double DICTIONARY_SHARE = 0.1;
+  private static final int MAX_PENDING_ENCODINGS = 10_000;
+
+  // encodes sentences after they've been cached as objects, so checks don't wait for it:
+  private static final ExecutorService sentenceEncoder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+    new LinkedBlockingQueue<>(MAX_PENDING_ENCODINGS),
+    new ThreadFactoryBuilder().setNameFormat("lt-sentence-encoder-%d").setDaemon(true).build(),
+    new ThreadPoolExecutor.DiscardPolicy());
+
   /**
    * rules can fail individually, results can be partial ->
    * store list if success (can be empty), null -> failure/not checked
    */
-  private final Cache<InputSentence, Map<String, List<RuleMatch>>> remoteMatchesCache;
-  private final Cache<InputSentence, List<RuleMatch>> matchesCache;
-  private final Cache<SimpleInputSentence, AnalyzedSentence> sentenceCache;
+  private final Cache<InputSentenceKey, Map<String, List<RuleMatch>>> remoteMatchesCache;
+  private final Cache<InputSentenceKey, List<RuleMatch>> matchesCache;
+  private final Cache<SimpleInputSentence, CompactAnalyzedSentence> sentenceCache;
+  private final CompactAnalyzedSentence.Dictionary sentenceDictionary;
+  /**
+   * entries loaded by {@link ResultCacheSnapshot}, converted to rule matches on first use
+   */
+  private final Cache<InputSentenceKey, List<StoredMatch>> restoredMatches;
+  private final Cache<InputSentenceKey, Map<String, List<StoredMatch>>> restoredRemoteMatches;
+  private volatile HitCounter hitCounter;
 
   /**
    * Create a cache that expires items 5 minutes after the latest read access.
@@ -74,35 +101,49 @@ public class ResultCache {
       recordStats().
       expireAfterAccess(expireAfter, timeUnit).
       build();
+    // the dictionary is part of the memory given to the sentence cache:
+    long sentenceBytes = maxSize/2 * SENTENCE_BYTES_PER_UNIT;
+    long dictionaryBytes = (long) (sentenceBytes * DICTIONARY_SHARE);
+    sentenceDictionary = new CompactAnalyzedSentence.Dictionary(dictionaryBytes);
     sentenceCache = CacheBuilder.newBuilder().
-            maximumWeight(maxSize/2).weigher(new SentenceWeigher()).
+            maximumWeight(sentenceBytes - dictionaryBytes).weigher(new SentenceWeigher()).
             recordStats().
             expireAfterAccess(expireAfter, timeUnit).
             build();
+    // restored entries are kept longer, as it may take a while until a restarted server gets its usual traffic:
+    restoredMatches = CacheBuilder.newBuilder().
+      maximumSize(maxSize/2).
+      expireAfterWrite(1, TimeUnit.HOURS).
+      build();
+    restoredRemoteMatches = CacheBuilder.newBuilder().
+      maximumSize(maxSize/2).
+      expireAfterWrite(1, TimeUnit.HOURS).
+      build();
   }
   
-  class MatchesWeigher implements Weigher<InputSentence, List<RuleMatch>> {
+  class MatchesWeigher implements Weigher<InputSentenceKey, List<RuleMatch>> {
     @Override
-    public int weigh(InputSentence sentence, List<RuleMatch> matches) {
+    public int weigh(InputSentenceKey sentence, List<RuleMatch> matches) {
       // this is just a rough guesstimate so that the cacheSize given by the user
       // is very roughly the number of average sentences the cache can keep:
       return sentence.getText().length() / 75 + matches.size();
     }
   }
 
-  class RemoteMatchesWeigher implements Weigher<InputSentence, Map<String, List<RuleMatch>>> {
+  class RemoteMatchesWeigher implements Weigher<InputSentenceKey, Map<String, List<RuleMatch>>> {
     @Override
-    public int weigh(InputSentence sentence, Map<String, List<RuleMatch>> matches) {
+    public int weigh(InputSentenceKey sentence, Map<String, List<RuleMatch>> matches) {
       // this is just a rough guesstimate so that the cacheSize given by the user
       // is very roughly the number of average sentences the cache can keep:
       return sentence.getText().length() / 75;
     }
   }
 
-  class SentenceWeigher implements Weigher<SimpleInputSentence, AnalyzedSentence> {
+  class SentenceWeigher implements Weigher<SimpleInputSentence, CompactAnalyzedSentence> {
     @Override
-    public int weigh(SimpleInputSentence sentence, AnalyzedSentence analyzedSentence) {
-      return sentence.getText().length() / 75;
+    public int weigh(SimpleInputSentence sentence, CompactAnalyzedSentence analyzedSentence) {
+      // encoded sentence, plus key text and object overhead:
+      return analyzedSentence.getByteSize() + sentence.getText().length() * 2 + 100;
     }
   }
   
@@ -118,36 +159,202 @@ public class ResultCache {
     return matchesCache.stats().hitCount() + sentenceCache.stats().hitCount();
   }
 
-  public List<RuleMatch> getIfPresent(InputSentence key) {
-    return matchesCache.getIfPresent(key);
+  public List<RuleMatch> getIfPresent(InputSentenceKey key) {
+    List<RuleMatch> matches = matchesCache.getIfPresent(key);
+    if (matches != null) {
+      recordHit(key);
+    }
+    return matches;
   }
 
   public AnalyzedSentence getIfPresent(SimpleInputSentence key) {
-    return sentenceCache.getIfPresent(key);
+    CompactAnalyzedSentence sentence = sentenceCache.getIfPresent(key);
+    return sentence != null ? sentence.decode(key.getText(), sentenceDictionary) : null;
   }
 
-  public void put(InputSentence key, List<RuleMatch> sentenceMatches) {
+  public void put(InputSentenceKey key, List<RuleMatch> sentenceMatches) {
     matchesCache.put(key, sentenceMatches);
   }
 
   public void put(SimpleInputSentence key, AnalyzedSentence aSentence) {
-    sentenceCache.put(key, aSentence);
+    CompactAnalyzedSentence unencoded = CompactAnalyzedSentence.unencoded(aSentence);
+    sentenceCache.put(key, unencoded);
+    // if there are too many sentences waiting, this one is just kept as objects:
+    sentenceEncoder.execute(() -> encode(key, unencoded));
+  }
+
+  // replaces the objects with the encoded sentence, unless the entry has changed in the meantime:
+  void encode(SimpleInputSentence key, CompactAnalyzedSentence unencoded) {
+    CompactAnalyzedSentence encoded = CompactAnalyzedSentence.encode(key.getText(), unencoded.decode(key.getText(), sentenceDictionary), sentenceDictionary);
+    if (encoded.isEncoded()) {
+      sentenceCache.asMap().replace(key, unencoded, encoded);
+    }
   }
 
   /** @since 4.1 */
-  public Cache<InputSentence, List<RuleMatch>> getMatchesCache() {
+  public Cache<InputSentenceKey, List<RuleMatch>> getMatchesCache() {
     return matchesCache;
   }
 
   /** @since 5.0
    * @return
    * */
-  public Cache<InputSentence, Map<String, List<RuleMatch>>> getRemoteMatchesCache() {
+  public Cache<InputSentenceKey, Map<String, List<RuleMatch>>> getRemoteMatchesCache() {
     return remoteMatchesCache;
   }
 
-  /** @since 4.1 */
-  public Cache<SimpleInputSentence, AnalyzedSentence> getSentenceCache() {
+  /**
+   * @since 4.1, values are {@link CompactAnalyzedSentence}s since 5.3
+   */
+  public Cache<SimpleInputSentence, CompactAnalyzedSentence> getSentenceCache() {
     return sentenceCache;
   }
+
+  /**
+   * Count how often entries are used, so that {@link ResultCacheSnapshot} can save the most used ones.
+   */
+  void enableHitTracking() {
+    if (hitCounter == null) {
+      synchronized (this) {
+        if (hitCounter == null) {
+          hitCounter = new HitCounter();
+        }
+      }
+    }
+  }
+
+  void recordHit(InputSentenceKey key) {
+    HitCounter counter = hitCounter;
+    if (counter != null) {
+      counter.increment(key);
+    }
+  }
+
+  /**
+   * @return up to {@code maxEntries} entries of the map, the most used ones first if hits are tracked
+   */
+  <V> List<Map.Entry<InputSentenceKey, V>> getMostUsed(Map<InputSentenceKey, V> map, int maxEntries) {
+    List<Map.Entry<InputSentenceKey, V>> entries = new ArrayList<>(map.entrySet());
+    HitCounter counter = hitCounter;
+    if (counter != null && entries.size() > maxEntries) {
+      Map<InputSentenceKey, Integer> hits = entries.stream()
+        .collect(Collectors.toMap(Map.Entry::getKey, e -> counter.estimate(e.getKey())));
+      entries.sort(Comparator.comparing((Map.Entry<InputSentenceKey, V> e) -> hits.get(e.getKey())).reversed());
+    }
+    return entries.subList(0, Math.min(maxEntries, entries.size()));
+  }
+
+  void putRestored(InputSentenceKey key, List<StoredMatch> matches) {
+    restoredMatches.put(key, matches);
+  }
+
+  void putRestoredRemote(InputSentenceKey key, Map<String, List<StoredMatch>> matches) {
+    restoredRemoteMatches.put(key, matches);
+  }
+
+  /**
+   * Get the matches for a sentence that has been loaded from a snapshot and move them to the
+   * matches cache. An entry that refers to an unknown rule is dropped, as the rules have
+   * changed since it was saved.
+   * @param ruleLookup maps the full rule ids to the rules of the checking {@link JLanguageTool}
+   */
+  @Nullable
+  List<RuleMatch> getRestored(InputSentenceKey key, AnalyzedSentence sentence, Function<String, Rule> ruleLookup) {
+    List<StoredMatch> stored = restoredMatches.getIfPresent(key);
+    if (stored == null) {
+      return null;
+    }
+    restoredMatches.invalidate(key);
+    List<RuleMatch> matches = toRuleMatches(stored, sentence, ruleLookup);
+    if (matches != null) {
+      matchesCache.put(key, matches);
+      recordHit(key);
+    }
+    return matches;
+  }
+
+  /**
+   * Like {@link #getRestored(InputSentenceKey, AnalyzedSentence, Function)}, but for the matches of
+   * one remote rule, which are moved to the remote matches cache.
+   */
+  @Nullable
+  List<RuleMatch> getRestoredRemote(InputSentenceKey key, String ruleKey, AnalyzedSentence sentence, Function<String, Rule> ruleLookup) {
+    if (restoredRemoteMatches.getIfPresent(key) == null) {
+      return null;
+    }
+    // the restored entry is shared by all threads, so replace it atomically instead of modifying it:
+    List<List<StoredMatch>> removed = new ArrayList<>(1);
+    restoredRemoteMatches.asMap().computeIfPresent(key, (k, storedByRule) -> {
+      List<StoredMatch> stored = storedByRule.get(ruleKey);
+      if (stored == null) {
+        return storedByRule;
+      }
+      removed.add(stored);
+      Map<String, List<StoredMatch>> remaining = new HashMap<>(storedByRule);
+      remaining.remove(ruleKey);
+      return remaining.isEmpty() ? null : remaining;
+    });
+    if (removed.isEmpty()) {
+      return null;
+    }
+    List<RuleMatch> matches = toRuleMatches(removed.get(0), sentence, ruleLookup);
+    if (matches != null) {
+      remoteMatchesCache.asMap().computeIfAbsent(key, k -> new ConcurrentHashMap<>()).put(ruleKey, matches);
+      recordHit(key);
+    }
+    return matches;
+  }
+
+  @Nullable
+  private static List<RuleMatch> toRuleMatches(List<StoredMatch> stored, AnalyzedSentence sentence, Function<String, Rule> ruleLookup) {
+    List<RuleMatch> matches = new ArrayList<>(stored.size());
+    for (StoredMatch storedMatch : stored) {
+      RuleMatch match = storedMatch.toRuleMatch(sentence, ruleLookup);
+      if (match == null) {
+        return null;
+      }
+      matches.add(match);
+    }
+    return matches;
+  }
+
+  /**
+   * A count-min sketch that estimates how often a key has been used. The counts are halved
+   * from time to time so that entries that used to be popular don't stay on top forever.
+   */
+  private static class HitCounter {
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1 << 15;
+    private static final long AGING_INTERVAL = WIDTH * 10L;
+
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(DEPTH * WIDTH);
+    private final AtomicLong increments = new AtomicLong();
+
+    void increment(InputSentenceKey key) {
+      int hash = key.hashCode();
+      for (int i = 0; i < DEPTH; i++) {
+        counts.incrementAndGet(index(hash, i));
+      }
+      if (increments.incrementAndGet() % AGING_INTERVAL == 0) {
+        for (int i = 0; i < counts.length(); i++) {
+          counts.set(i, counts.get(i) >>> 1);
+        }
+      }
+    }
+
+    int estimate(InputSentenceKey key) {
+      int hash = key.hashCode();
+      int min = Integer.MAX_VALUE;
+      for (int i = 0; i < DEPTH; i++) {
+        min = Math.min(min, counts.get(index(hash, i)));
+      }
+      return min;
+    }
+
+    private static int index(int hash, int row) {
+      int h = hash * (0x9E3779B9 + 2 * row);
+      h ^= h >>> 16;
+      return row * WIDTH + (h & (WIDTH - 1));
+    }
+  }
 }
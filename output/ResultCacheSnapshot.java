@@ -0,0 +1,320 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import com.google.common.collect.Maps;
+import org.jetbrains.annotations.Nullable;
+import org.languagetool.rules.Rule;
+import org.languagetool.rules.RuleMatch;
+import org.languagetool.rules.SuggestedReplacement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Saves the most frequently used entries of a {@link ResultCache}'s matches and remote matches
+ * caches to a file and restores them, so that a restarted server doesn't start with an empty cache.
+ * Files written by a different LanguageTool version or build are ignored. As {@link RuleMatch}es
+ * refer to {@link Rule} objects, restored entries are only converted back to matches when their
+ * sentence is checked again, using the rules of the {@link JLanguageTool} that checks it.
+ * Matches whose suggestions are still to be computed lazily are not saved, so that saving
+ * doesn't trigger expensive suggestion searches for entries that are never shown.
+ * @since 5.3
+ */
+@Experimental
+public class ResultCacheSnapshot {
+
+  private static final Logger logger = LoggerFactory.getLogger(ResultCacheSnapshot.class);
+
+  private static final int MAGIC = 0x4c544343;  // "LTCC"
+  private static final int FORMAT_VERSION = 2;
+
+  private final File file;
+  private final String buildVersion;
+
+  /**
+   * @param file the snapshot file, doesn't need to exist
+   */
+  public ResultCacheSnapshot(File file) {
+    this(file, JLanguageTool.VERSION + "/" + JLanguageTool.GIT_SHORT_ID);
+  }
+
+  ResultCacheSnapshot(File file, String buildVersion) {
+    this.file = Objects.requireNonNull(file);
+    this.buildVersion = Objects.requireNonNull(buildVersion);
+  }
+
+  /**
+   * Write the most frequently used entries of the cache to the file, replacing the old file.
+   * @param maxEntries maximum number of entries to write per cache
+   * @return the number of entries written
+   */
+  public synchronized int save(ResultCache cache, int maxEntries) throws IOException {
+    cache.enableHitTracking();
+    File tempFile = new File(file.getPath() + ".tmp");
+    int count;
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile))))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      writeString(out, buildVersion);
+      List<Map.Entry<InputSentenceKey, List<RuleMatch>>> matches =
+        cache.getMostUsed(Maps.filterValues(cache.getMatchesCache().asMap(), ResultCacheSnapshot::isComplete), maxEntries);
+      out.writeInt(matches.size());
+      for (Map.Entry<InputSentenceKey, List<RuleMatch>> entry : matches) {
+        writeKey(out, entry.getKey());
+        writeMatches(out, entry.getValue());
+      }
+      List<Map.Entry<InputSentenceKey, Map<String, List<RuleMatch>>>> remoteMatches =
+        cache.getMostUsed(cache.getRemoteMatchesCache().asMap(), maxEntries);
+      out.writeInt(remoteMatches.size());
+      for (Map.Entry<InputSentenceKey, Map<String, List<RuleMatch>>> entry : remoteMatches) {
+        writeKey(out, entry.getKey());
+        // copy, as remote rule results may still be added:
+        Map<String, List<RuleMatch>> matchesByRule = new HashMap<>(Maps.filterValues(entry.getValue(), ResultCacheSnapshot::isComplete));
+        out.writeInt(matchesByRule.size());
+        for (Map.Entry<String, List<RuleMatch>> ruleEntry : matchesByRule.entrySet()) {
+          writeString(out, ruleEntry.getKey());
+          writeMatches(out, ruleEntry.getValue());
+        }
+      }
+      count = matches.size() + remoteMatches.size();
+    }
+    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return count;
+  }
+
+  /**
+   * Load the entries from the file into the cache, unless the file doesn't exist or has been
+   * written by a different version of LanguageTool. Also starts counting cache hits, so that
+   * the next {@link #save(ResultCache, int)} can pick the most used entries.
+   * @return the number of entries loaded
+   */
+  public synchronized int load(ResultCache cache) throws IOException {
+    cache.enableHitTracking();
+    if (!file.exists()) {
+      return 0;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a result cache snapshot: " + file);
+      }
+      int formatVersion = in.readInt();
+      String fileBuildVersion = readString(in);
+      if (formatVersion != FORMAT_VERSION || !buildVersion.equals(fileBuildVersion)) {
+        logger.info("Ignoring result cache snapshot " + file + " of version " + fileBuildVersion + " (format " + formatVersion +
+          "), current version is " + buildVersion);
+        return 0;
+      }
+      int matchesCount = in.readInt();
+      for (int i = 0; i < matchesCount; i++) {
+        cache.putRestored(readKey(in), readMatches(in));
+      }
+      int remoteMatchesCount = in.readInt();
+      for (int i = 0; i < remoteMatchesCount; i++) {
+        InputSentenceKey key = readKey(in);
+        int ruleCount = in.readInt();
+        Map<String, List<StoredMatch>> matchesByRule = new HashMap<>();
+        for (int j = 0; j < ruleCount; j++) {
+          matchesByRule.put(readString(in), readMatches(in));
+        }
+        if (!matchesByRule.isEmpty()) {
+          cache.putRestoredRemote(key, matchesByRule);
+        }
+      }
+      return matchesCount + remoteMatchesCount;
+    }
+  }
+
+  private static boolean isComplete(List<RuleMatch> matches) {
+    return matches.stream().noneMatch(RuleMatch::isSuggestionComputationPending);
+  }
+
+  private static void writeKey(DataOutputStream out, InputSentenceKey key) throws IOException {
+    writeString(out, key.getText());
+    out.writeLong(key.getConfigFingerprint());
+    out.writeBoolean(key.getTextSessionId() != null);
+    if (key.getTextSessionId() != null) {
+      out.writeLong(key.getTextSessionId());
+    }
+  }
+
+  private static InputSentenceKey readKey(DataInputStream in) throws IOException {
+    String text = readString(in);
+    long fingerprint = in.readLong();
+    Long textSessionId = in.readBoolean() ? in.readLong() : null;
+    return new InputSentenceKey(text, fingerprint, textSessionId);
+  }
+
+  private static void writeMatches(DataOutputStream out, List<RuleMatch> matches) throws IOException {
+    out.writeInt(matches.size());
+    for (RuleMatch match : matches) {
+      writeString(out, match.getRule().getFullId());
+      out.writeInt(match.getFromPos());
+      out.writeInt(match.getToPos());
+      out.writeInt(match.getPatternFromPos());
+      out.writeInt(match.getPatternToPos());
+      writeString(out, match.getMessage());
+      writeNullableString(out, match.getShortMessage());
+      List<SuggestedReplacement> suggestions = match.getSuggestedReplacementObjects();
+      out.writeInt(suggestions.size());
+      for (SuggestedReplacement suggestion : suggestions) {
+        writeString(out, suggestion.getReplacement());
+        writeNullableString(out, suggestion.getShortDescription());
+        writeNullableString(out, suggestion.getSuffix());
+        Float confidence = suggestion.getConfidence();
+        out.writeBoolean(confidence != null);
+        if (confidence != null) {
+          out.writeFloat(confidence);
+        }
+        writeString(out, suggestion.getType().name());
+      }
+      writeNullableString(out, match.getUrl() != null ? match.getUrl().toString() : null);
+      writeString(out, match.getType().name());
+      out.writeBoolean(match.isAutoCorrect());
+      out.writeInt(match.getFeatures().size());
+      for (Map.Entry<String, Float> feature : match.getFeatures().entrySet()) {
+        writeString(out, feature.getKey());
+        out.writeFloat(feature.getValue());
+      }
+    }
+  }
+
+  private static List<StoredMatch> readMatches(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    List<StoredMatch> matches = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      StoredMatch match = new StoredMatch();
+      match.ruleFullId = readString(in);
+      match.fromPos = in.readInt();
+      match.toPos = in.readInt();
+      match.patternFromPos = in.readInt();
+      match.patternToPos = in.readInt();
+      match.message = readString(in);
+      match.shortMessage = readNullableString(in);
+      int suggestionCount = in.readInt();
+      match.suggestions = new ArrayList<>(suggestionCount);
+      for (int j = 0; j < suggestionCount; j++) {
+        SuggestedReplacement suggestion = new SuggestedReplacement(readString(in));
+        suggestion.setShortDescription(readNullableString(in));
+        suggestion.setSuffix(readNullableString(in));
+        if (in.readBoolean()) {
+          suggestion.setConfidence(in.readFloat());
+        }
+        suggestion.setType(SuggestedReplacement.SuggestionType.valueOf(readString(in)));
+        match.suggestions.add(suggestion);
+      }
+      match.url = readNullableString(in);
+      match.type = readString(in);
+      match.autoCorrect = in.readBoolean();
+      int featureCount = in.readInt();
+      if (featureCount > 0) {
+        match.features = new TreeMap<>();
+        for (int j = 0; j < featureCount; j++) {
+          match.features.put(readString(in), in.readFloat());
+        }
+      }
+      matches.add(match);
+    }
+    return matches;
+  }
+
+  private static void writeNullableString(DataOutputStream out, @Nullable String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      writeString(out, s);
+    }
+  }
+
+  @Nullable
+  private static String readNullableString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? readString(in) : null;
+  }
+
+  // not writeUTF(), as that's limited to 64KB:
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A rule match read from a snapshot, not yet connected to its rule.
+   */
+  static class StoredMatch {
+    private String ruleFullId;
+    private int fromPos;
+    private int toPos;
+    private int patternFromPos;
+    private int patternToPos;
+    private String message;
+    private String shortMessage;
+    private List<SuggestedReplacement> suggestions;
+    private String url;
+    private String type;
+    private boolean autoCorrect;
+    private SortedMap<String, Float> features;
+
+    /**
+     * @return the rule match, or {@code null} if {@code ruleLookup} doesn't know the rule
+     */
+    @Nullable
+    RuleMatch toRuleMatch(AnalyzedSentence sentence, Function<String, Rule> ruleLookup) {
+      Rule rule = ruleLookup.apply(ruleFullId);
+      if (rule == null) {
+        return null;
+      }
+      RuleMatch match = new RuleMatch(rule, sentence, fromPos, toPos, patternFromPos, patternToPos, message, shortMessage);
+      // copies, as the caller may modify the suggestions of the match:
+      List<SuggestedReplacement> replacements = new ArrayList<>(suggestions.size());
+      for (SuggestedReplacement suggestion : suggestions) {
+        replacements.add(new SuggestedReplacement(suggestion));
+      }
+      match.setSuggestedReplacementObjects(replacements);
+      if (url != null) {
+        try {
+          match.setUrl(new URL(url));
+        } catch (MalformedURLException ignored) {
+          // it was a valid URL when it was written
+        }
+      }
+      match.setType(RuleMatch.Type.valueOf(type));
+      match.setAutoCorrect(autoCorrect);
+      if (features != null) {
+        match.setFeatures(features);
+      }
+      return match;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.languagetool.language.Demo;
+import org.languagetool.rules.RuleMatch;
+import org.languagetool.rules.SuggestedReplacement;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ResultCacheSnapshotTest {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.bin");
+    ResultCache cache1 = new ResultCache(1000);
+    CountingRule rule1 = new CountingRule();
+    JLanguageTool lt1 = newLanguageTool(cache1, rule1);
+    assertThat(lt1.check("A foo sentence.").size(), is(1));
+    assertThat(rule1.invocations, is(1));
+    assertThat(new ResultCacheSnapshot(file, "1.0/abc").save(cache1, 100), is(1));
+
+    ResultCache cache2 = new ResultCache(1000);
+    assertThat(new ResultCacheSnapshot(file, "1.0/abc").load(cache2), is(1));
+    CountingRule rule2 = new CountingRule();
+    JLanguageTool lt2 = newLanguageTool(cache2, rule2);
+    List<RuleMatch> matches = lt2.check("A foo sentence.");
+    assertThat(rule2.invocations, is(0));
+    assertThat(matches.size(), is(1));
+    assertThat(matches.get(0).getRule(), is(rule2));
+    assertThat(matches.get(0).getFromPos(), is(2));
+    assertThat(matches.get(0).getToPos(), is(5));
+    assertThat(matches.get(0).getMessage(), is("Found foo"));
+    assertThat(matches.get(0).getSuggestedReplacements(), is(Collections.singletonList("bar")));
+    SuggestedReplacement suggestion = matches.get(0).getSuggestedReplacementObjects().get(0);
+    assertThat(suggestion.getShortDescription(), is("a bar"));
+    assertThat(suggestion.getConfidence(), is(0.5f));
+    assertThat(suggestion.getType(), is(SuggestedReplacement.SuggestionType.Curated));
+
+    // a different version must not restore anything:
+    ResultCache cache3 = new ResultCache(1000);
+    assertThat(new ResultCacheSnapshot(file, "1.0/def").load(cache3), is(0));
+    CountingRule rule3 = new CountingRule();
+    assertThat(newLanguageTool(cache3, rule3).check("A foo sentence.").size(), is(1));
+    assertThat(rule3.invocations, is(1));
+  }
+
+  @Test
+  public void testMostUsedEntriesAreSaved() throws IOException {
+    File file = new File(tempFolder.getRoot(), "cache.bin");
+    ResultCache cache = new ResultCache(1000);
+    ResultCacheSnapshot snapshot = new ResultCacheSnapshot(file, "1.0/abc");
+    assertThat(snapshot.load(cache), is(0));  // file doesn't exist yet
+    JLanguageTool lt = newLanguageTool(cache, new CountingRule());
+    lt.check("A foo sentence.");
+    lt.check("Another sentence.");
+    for (int i = 0; i < 3; i++) {
+      lt.check("Another sentence.");
+    }
+    assertThat(snapshot.save(cache, 1), is(1));
+
+    ResultCache restoredCache = new ResultCache(1000);
+    assertThat(snapshot.load(restoredCache), is(1));
+    CountingRule rule = new CountingRule();
+    JLanguageTool restoredLt = newLanguageTool(restoredCache, rule);
+    restoredLt.check("Another sentence.");
+    assertThat(rule.invocations, is(0));
+    restoredLt.check("A foo sentence.");
+    assertThat(rule.invocations, is(1));
+  }
+
+  private JLanguageTool newLanguageTool(ResultCache cache, CountingRule rule) {
+    JLanguageTool lt = new JLanguageTool(new Demo(), null, cache);
+    for (org.languagetool.rules.Rule r : lt.getAllActiveRules()) {
+      lt.disableRule(r.getId());
+    }
+    lt.addRule(rule);
+    return lt;
+  }
+
+  static class CountingRule extends org.languagetool.rules.Rule {
+    private int invocations;
+    @Override
+    public String getId() {
+      return "COUNTING_FOO_RULE";
+    }
+    @Override
+    public String getDescription() {
+      return "Finds 'foo'";
+    }
+    @Override
+    public RuleMatch[] match(AnalyzedSentence sentence) {
+      invocations++;
+      List<RuleMatch> matches = new ArrayList<>();
+      int pos = sentence.getText().indexOf("foo");
+      if (pos >= 0) {
+        RuleMatch match = new RuleMatch(this, sentence, pos, pos + 3, "Found foo");
+        SuggestedReplacement suggestion = new SuggestedReplacement("bar", "a bar", null);
+        suggestion.setConfidence(0.5f);
+        suggestion.setType(SuggestedReplacement.SuggestionType.Curated);
+        match.setSuggestedReplacementObjects(Collections.singletonList(suggestion));
+        matches.add(match);
+      }
+      return toRuleMatchArray(matches);
+    }
+  }
+}
@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.*;
@@ -48,32 +49,70 @@ public class ResultCacheTest {
     assertThat(cache.hitCount(), is(0L));
     assertThat(cache.hitRate(), is(1.0));
     UserConfig userConfig1 = new UserConfig(Arrays.asList("word1"));
-    JLanguageTool.Mode mode = JLanguageTool.Mode.ALL;
-    JLanguageTool.Level level = JLanguageTool.Level.DEFAULT;
-    List<Language> el = Collections.emptyList();
-    InputSentence input1a = new InputSentence("foo", Languages.getLanguageForShortCode("de"), null, new HashSet<>(), new HashSet<>(), new HashSet<>(), new HashSet<>(), userConfig1, el, mode, level);
-    InputSentence input1b = new InputSentence("foo", Languages.getLanguageForShortCode("de"), null, new HashSet<>(), new HashSet<>(), new HashSet<>(), new HashSet<>(), userConfig1, el, mode, level);
+    Language de = Languages.getLanguageForShortCode("de");
+    Language en = Languages.getLanguageForShortCode("en");
+    InputSentenceKey input1a = new InputSentenceKey("foo", config(de, null, new HashSet<>(), userConfig1, el()));
+    InputSentenceKey input1b = new InputSentenceKey("foo", config(de, null, new HashSet<>(), userConfig1, el()));
     cache.put(input1a, Arrays.asList());
     assertNotNull(cache.getIfPresent(input1a));
     assertNotNull(cache.getIfPresent(input1b));
-    InputSentence input2a = new InputSentence("foo bar", Languages.getLanguageForShortCode("de"), null, new HashSet<>(), new HashSet<>(), new HashSet<>(), new HashSet<>(), userConfig1, el, mode, level);
-    InputSentence input2b = new InputSentence("foo", Languages.getLanguageForShortCode("en"), null, new HashSet<>(), new HashSet<>(), new HashSet<>(), new HashSet<>(), userConfig1, el, mode, level);
-    InputSentence input2c = new InputSentence("foo", Languages.getLanguageForShortCode("de"), Languages.getLanguageForShortCode("en"), new HashSet<>(), new HashSet<>(), new HashSet<>(), new HashSet<>(), userConfig1, el, mode, level);
-    InputSentence input2d = new InputSentence("foo", Languages.getLanguageForShortCode("de"), null, new HashSet<>(Arrays.asList("ID1")), new HashSet<>(), new HashSet<>(), new HashSet<>(), userConfig1, el, mode, level);
+    InputSentenceKey input2a = new InputSentenceKey("foo bar", config(de, null, new HashSet<>(), userConfig1, el()));
+    InputSentenceKey input2b = new InputSentenceKey("foo", config(en, null, new HashSet<>(), userConfig1, el()));
+    InputSentenceKey input2c = new InputSentenceKey("foo", config(de, en, new HashSet<>(), userConfig1, el()));
+    InputSentenceKey input2d = new InputSentenceKey("foo", config(de, null, new HashSet<>(Arrays.asList("ID1")), userConfig1, el()));
     assertNull(cache.getIfPresent(input2a));
     assertNull(cache.getIfPresent(input2b));
     assertNull(cache.getIfPresent(input2c));
     assertNull(cache.getIfPresent(input2d));
     
     UserConfig userConfig2 = new UserConfig(Arrays.asList("word2"));
-    InputSentence input1aUc1 = new InputSentence("foo", Languages.getLanguageForShortCode("de"), null, new HashSet<>(), new HashSet<>(), new HashSet<>(), new HashSet<>(), userConfig1, el, mode, level);
+    InputSentenceKey input1aUc1 = new InputSentenceKey("foo", config(de, null, new HashSet<>(), userConfig1, el()));
     assertNotNull(cache.getIfPresent(input1aUc1));
-    InputSentence input1aUc2 = new InputSentence("foo", Languages.getLanguageForShortCode("de"), null, new HashSet<>(), new HashSet<>(), new HashSet<>(), new HashSet<>(), userConfig2, el, mode, level);
+    InputSentenceKey input1aUc2 = new InputSentenceKey("foo", config(de, null, new HashSet<>(), userConfig2, el()));
     assertNull(cache.getIfPresent(input1aUc2));
 
-    InputSentence input1aUc2Alt = new InputSentence("foo", Languages.getLanguageForShortCode("de"), null, new HashSet<>(),
-            new HashSet<>(), new HashSet<>(), new HashSet<>(), userConfig2, Arrays.asList(Languages.getLanguageForShortCode("en")), mode, level);
+    InputSentenceKey input1aUc2Alt = new InputSentenceKey("foo", config(de, null, new HashSet<>(), userConfig2, Arrays.asList(en)));
     assertNull(cache.getIfPresent(input1aUc2Alt));
+
+    assertNull(cache.getIfPresent(new InputSentenceKey("foo", config(de, null, new HashSet<>(), userConfig1, el()), 42L)));
+  }
+
+  @Test
+  public void testCheckConfiguration() {
+    Language de = Languages.getLanguageForShortCode("de");
+    UserConfig userConfig = new UserConfig(Arrays.asList("word1"));
+    CheckConfiguration config1 = config(de, null, new HashSet<>(Arrays.asList("ID1", "ID2")), userConfig, el());
+    CheckConfiguration config2 = config(de, null, new HashSet<>(Arrays.asList("ID2", "ID1")), userConfig, el());
+    assertSame(config1, config2);  // interned
+    assertThat(config1.getFingerprint(), is(config2.getFingerprint()));
+    CheckConfiguration config3 = config(de, null, new HashSet<>(Arrays.asList("ID1")), userConfig, el());
+    assertNotEquals(config1.getFingerprint(), config3.getFingerprint());
+    CheckConfiguration config4 = CheckConfiguration.of(de, null, new HashSet<>(Arrays.asList("ID1", "ID2")), new HashSet<>(),
+      new HashSet<>(), new HashSet<>(), userConfig, el(), JLanguageTool.Mode.ALL, JLanguageTool.Level.PICKY);
+    assertNotEquals(config1.getFingerprint(), config4.getFingerprint());
+  }
+
+  @Test
+  public void testConfigurationsWithSameFingerprintDontShareResults() {
+    ResultCache cache = new ResultCache(100);
+    Language de = Languages.getLanguageForShortCode("de");
+    CheckConfiguration config1 = config(de, null, new HashSet<>(), new UserConfig(Arrays.asList("word1")), el());
+    CheckConfiguration config2 = config(de, null, new HashSet<>(), new UserConfig(Arrays.asList("word2")), el());
+    long collidingFingerprint = 42;
+    cache.put(new InputSentenceKey("foo", collidingFingerprint, config1, null), Arrays.asList());
+    assertNotNull(cache.getIfPresent(new InputSentenceKey("foo", collidingFingerprint, config1, null)));
+    assertNull(cache.getIfPresent(new InputSentenceKey("foo", collidingFingerprint, config2, null)));
+    // keys restored from a snapshot only have the fingerprint:
+    assertEquals(new InputSentenceKey("foo", config1.getFingerprint(), null), new InputSentenceKey("foo", config1));
+  }
+
+  private CheckConfiguration config(Language lang, Language motherTongue, Set<String> disabledRules, UserConfig userConfig, List<Language> altLanguages) {
+    return CheckConfiguration.of(lang, motherTongue, disabledRules, new HashSet<>(), new HashSet<>(), new HashSet<>(),
+      userConfig, altLanguages, JLanguageTool.Mode.ALL, JLanguageTool.Level.DEFAULT);
+  }
+
+  private List<Language> el() {
+    return Collections.emptyList();
   }
 
 }
@@ -0,0 +1,98 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.dev;
+
+import org.languagetool.AnalyzedSentence;
+import org.languagetool.JLanguageTool;
+import org.languagetool.Language;
+import org.languagetool.Languages;
+import org.languagetool.rules.Rule;
+import org.languagetool.rules.TextLevelRule;
+import org.languagetool.rules.patterns.IndexedRuleSet;
+import org.languagetool.rules.patterns.RuleSet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the time needed to select and run the sentence-level rules with the
+ * lemma/text hints of {@link RuleSet#textLemmaHinted(List)} and with the {@link IndexedRuleSet},
+ * on a corpus in a plain text file.
+ * @since 5.3
+ */
+final class RuleIndexBenchmark {
+
+  private static final int WARMUP_RUNS = 2;
+
+  private RuleIndexBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      System.out.println("Usage: " + RuleIndexBenchmark.class.getSimpleName() + " <langCode> <textFile> [runs]");
+      System.exit(1);
+    }
+    Language lang = Languages.getLanguageForShortCode(args[0]);
+    String text = new String(Files.readAllBytes(Paths.get(args[1])), StandardCharsets.UTF_8);
+    int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+    JLanguageTool lt = new JLanguageTool(lang);
+    List<AnalyzedSentence> sentences = lt.analyzeText(text);
+    List<Rule> rules = lt.getAllActiveRules().stream().filter(r -> !(r instanceof TextLevelRule)).collect(Collectors.toList());
+    System.out.println("Language: " + lang + ", sentences: " + sentences.size() + ", rules: " + rules.size() + ", runs: " + runs);
+    RuleSet hinted = RuleSet.textLemmaHinted(rules);
+    IndexedRuleSet indexed = new IndexedRuleSet(rules);
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      run(hinted, sentences);
+      run(indexed, sentences);
+    }
+    long hintedNanos = 0;
+    long indexedNanos = 0;
+    long hintedMatches = 0;
+    long indexedMatches = 0;
+    for (int i = 0; i < runs; i++) {
+      long startTime = System.nanoTime();
+      hintedMatches = run(hinted, sentences);
+      hintedNanos += System.nanoTime() - startTime;
+      startTime = System.nanoTime();
+      indexedMatches = run(indexed, sentences);
+      indexedNanos += System.nanoTime() - startTime;
+    }
+    System.out.printf("text/lemma hinted: %6dms per run, %d matches%n", hintedNanos / runs / 1_000_000, hintedMatches);
+    System.out.printf("indexed:           %6dms per run, %d matches%n", indexedNanos / runs / 1_000_000, indexedMatches);
+    System.out.println("Index: " + indexed.getStatistics());
+    if (hintedMatches != indexedMatches) {
+      System.out.println("WARNING: number of matches differs");
+    }
+  }
+
+  private static long run(RuleSet ruleSet, List<AnalyzedSentence> sentences) throws IOException {
+    long matches = 0;
+    for (AnalyzedSentence sentence : sentences) {
+      for (Rule rule : ruleSet.rulesForSentence(sentence)) {
+        matches += rule.match(sentence).length;
+      }
+    }
+    return matches;
+  }
+
+}
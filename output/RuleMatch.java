@@ -413,7 +413,18 @@ public class RuleMatch implements Comparable<RuleMatch> {
    */
   public void setLazySuggestedReplacements(@NotNull Supplier<List<SuggestedReplacement>> replacements) {
     Objects.requireNonNull(replacements, "replacements may not be null");
-    suggestedReplacements = Suppliers.memoize(replacements::get);
+    suggestedReplacements = new LazySuggestedReplacements(replacements);
+  }
+
+  /**
+   * @return whether the suggested replacements come from a lazy supplier that hasn't been called yet,
+   * i.e. whether {@link #getSuggestedReplacementObjects()} would compute them now
+   * @see #setLazySuggestedReplacements(Supplier)
+   * @since 5.3
+   */
+  public boolean isSuggestionComputationPending() {
+    Supplier<List<SuggestedReplacement>> replacements = suggestedReplacements;
+    return replacements instanceof LazySuggestedReplacements && !((LazySuggestedReplacements) replacements).isComputed();
   }
 
   /**
@@ -506,6 +517,37 @@ public class RuleMatch implements Comparable<RuleMatch> {
     Other
   }
 
+  /**
+   * Like {@link Suppliers#memoize(com.google.common.base.Supplier)}, but can tell whether the value has been computed.
+   */
+  private static class LazySuggestedReplacements implements Supplier<List<SuggestedReplacement>> {
+    private final Supplier<List<SuggestedReplacement>> supplier;
+    private volatile List<SuggestedReplacement> value;
+
+    LazySuggestedReplacements(Supplier<List<SuggestedReplacement>> supplier) {
+      this.supplier = supplier;
+    }
+
+    @Override
+    public List<SuggestedReplacement> get() {
+      List<SuggestedReplacement> result = value;
+      if (result == null) {
+        synchronized (this) {
+          result = value;
+          if (result == null) {
+            result = supplier.get();
+            value = result;
+          }
+        }
+      }
+      return result;
+    }
+
+    boolean isComputed() {
+      return value != null;
+    }
+  }
+
   static class PatternPosition extends MatchPosition {
     PatternPosition(int start, int end) {
       super(start, end);
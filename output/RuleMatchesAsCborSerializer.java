@@ -0,0 +1,287 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.tools;
+
+import org.languagetool.DetectedLanguage;
+import org.languagetool.JLanguageTool;
+import org.languagetool.Language;
+import org.languagetool.Tag;
+import org.languagetool.markup.AnnotatedText;
+import org.languagetool.rules.*;
+import org.languagetool.rules.patterns.AbstractPatternRule;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Write rule matches and some meta information as CBOR (RFC 8949), a compact binary
+ * alternative to {@link RuleMatchesAsJsonSerializer}. The structure follows the JSON
+ * output, except that rules and categories are written only once per response, in the
+ * {@code rules} and {@code categories} arrays, and matches refer to them by their index:
+ * <pre>
+ * {"software": {...}, "warnings": {...}, "language": {...},
+ *  "categories": [{"id": ..., "name": ...}, ...],
+ *  "rules": [{"id": ..., "description": ..., "issueType": ..., "category": 0, ...}, ...],
+ *  "matches": [{"message": ..., "offset": ..., "length": ..., "rule": 0, ...}, ...]}
+ * </pre>
+ * A match only has a {@code url} if it differs from its rule's URL.
+ * @since 5.3
+ */
+public class RuleMatchesAsCborSerializer {
+
+  public static final String CONTENT_TYPE = "application/cbor";
+
+  private static final int API_VERSION = 1;
+  private static final String STATUS = "";
+  private static final String PREMIUM_HINT = "You might be missing errors only the Premium version can find. Contact us at support<at>languagetoolplus.com.";
+
+  private final int compactMode;
+  private final Language lang;
+
+  public RuleMatchesAsCborSerializer(int compactMode, Language lang) {
+    this.compactMode = compactMode;
+    this.lang = lang;
+  }
+
+  /**
+   * Write the result to {@code out}, which is flushed but not closed.
+   * @param incompleteResultsReason use a string that explains why results are incomplete (e.g. due to a timeout) -
+   *        a 'warnings' section will be added. Use {@code null} if results are complete.
+   */
+  public void ruleMatchesToCbor(OutputStream out, List<RuleMatch> matches, List<RuleMatch> hiddenMatches, AnnotatedText text,
+                                int contextSize, DetectedLanguage detectedLang, String incompleteResultsReason,
+                                boolean showPremiumHint) throws IOException {
+    ContextTools contextTools = RuleMatchesAsJsonSerializer.getContextTools(contextSize);
+    Map<Rule, Integer> ruleIndex = new IdentityHashMap<>();
+    Map<String, Integer> categoryIndex = new HashMap<>();
+    List<Rule> rules = new ArrayList<>();
+    List<Category> categories = new ArrayList<>();
+    collectRules(matches, ruleIndex, rules, categoryIndex, categories);
+    if (hiddenMatches != null) {
+      collectRules(hiddenMatches, ruleIndex, rules, categoryIndex, categories);
+    }
+    CborWriter g = new CborWriter(out);
+    g.startMap();
+    writeSoftwareSection(g, showPremiumHint);
+    writeWarningsSection(g, incompleteResultsReason);
+    writeLanguageSection(g, detectedLang);
+    g.writeArrayFieldStart("categories", categories.size());
+    for (Category category : categories) {
+      writeCategory(g, category);
+    }
+    g.writeArrayFieldStart("rules", rules.size());
+    for (Rule rule : rules) {
+      writeRule(g, rule, categoryIndex.get(categoryKey(rule.getCategory())));
+    }
+    writeMatchesSection("matches", g, matches, text, contextTools, ruleIndex);
+    if (hiddenMatches != null && hiddenMatches.size() > 0) {
+      writeMatchesSection("hiddenMatches", g, hiddenMatches, text, contextTools, ruleIndex);
+    }
+    g.endMap();
+    g.flush();
+  }
+
+  private static void collectRules(List<RuleMatch> matches, Map<Rule, Integer> ruleIndex, List<Rule> rules,
+                                   Map<String, Integer> categoryIndex, List<Category> categories) {
+    for (RuleMatch match : matches) {
+      Rule rule = match.getRule();
+      if (!ruleIndex.containsKey(rule)) {
+        ruleIndex.put(rule, rules.size());
+        rules.add(rule);
+        // categories are not singletons, so identify them by id and name:
+        String key = categoryKey(rule.getCategory());
+        if (!categoryIndex.containsKey(key)) {
+          categoryIndex.put(key, categories.size());
+          categories.add(rule.getCategory());
+        }
+      }
+    }
+  }
+
+  private static String categoryKey(Category category) {
+    CategoryId catId = category.getId();
+    return catId == null ? "" : catId + "\t" + category.getName();
+  }
+
+  private void writeSoftwareSection(CborWriter g, boolean showPremiumHint) throws IOException {
+    if (compactMode == 1) {
+      return;
+    }
+    g.writeMapFieldStart("software");
+    g.writeStringField("name", "LanguageTool");
+    g.writeStringField("version", JLanguageTool.VERSION);
+    g.writeStringField("buildDate", JLanguageTool.BUILD_DATE);
+    g.writeNumberField("apiVersion", API_VERSION);
+    g.writeBooleanField("premium", JLanguageTool.isPremiumVersion());
+    if (showPremiumHint) {
+      g.writeStringField("premiumHint", PREMIUM_HINT);
+    }
+    g.writeStringField("status", STATUS);
+    g.endMap();
+  }
+
+  private void writeWarningsSection(CborWriter g, String incompleteResultsReason) throws IOException {
+    if (compactMode == 1 && incompleteResultsReason == null) {
+      return;
+    }
+    g.writeMapFieldStart("warnings");
+    if (incompleteResultsReason != null) {
+      g.writeBooleanField("incompleteResults", true);
+      g.writeStringField("incompleteResultsReason", incompleteResultsReason);
+    } else {
+      g.writeBooleanField("incompleteResults", false);
+    }
+    g.endMap();
+  }
+
+  private void writeLanguageSection(CborWriter g, DetectedLanguage detectedLang) throws IOException {
+    g.writeMapFieldStart("language");
+    g.writeStringField("name", detectedLang.getGivenLanguage().getName());
+    g.writeStringField("code", detectedLang.getGivenLanguage().getShortCodeWithCountryAndVariant());
+    if (detectedLang.getGivenLanguage().isSpellcheckOnlyLanguage()) {
+      g.writeBooleanField("spellCheckOnly", true);
+    }
+    g.writeMapFieldStart("detectedLanguage");
+    g.writeStringField("name", detectedLang.getDetectedLanguage().getName());
+    g.writeStringField("code", detectedLang.getDetectedLanguage().getShortCodeWithCountryAndVariant());
+    g.writeNumberField("confidence", (double) detectedLang.getDetectionConfidence());
+    if (detectedLang.getDetectedLanguage().isSpellcheckOnlyLanguage()) {
+      g.writeBooleanField("spellCheckOnly", true);
+    }
+    g.endMap();
+    g.endMap();
+  }
+
+  private void writeCategory(CborWriter g, Category category) throws IOException {
+    g.startMap();
+    CategoryId catId = category.getId();
+    if (catId != null) {
+      g.writeStringField("id", catId.toString());
+      g.writeStringField("name", category.getName());
+    }
+    g.endMap();
+  }
+
+  private void writeRule(CborWriter g, Rule rule, int categoryIdx) throws IOException {
+    g.startMap();
+    g.writeStringField("id", rule.getId());
+    if (rule instanceof AbstractPatternRule) {
+      AbstractPatternRule pRule = (AbstractPatternRule) rule;
+      if (pRule.getSubId() != null) {
+        g.writeStringField("subId", pRule.getSubId());
+      }
+      if (pRule.getSourceFile() != null && compactMode != 1) {
+        g.writeStringField("sourceFile", pRule.getSourceFile().replaceFirst(".*/", ""));
+      }
+    }
+    g.writeStringField("description", rule.getDescription());
+    g.writeStringField("issueType", rule.getLocQualityIssueType().toString());
+    if (rule.isDefaultTempOff()) {
+      g.writeBooleanField("tempOff", true);
+    }
+    if (rule.getUrl() != null) {
+      g.writeStringField("url", rule.getUrl().toString());
+    }
+    g.writeNumberField("category", categoryIdx);
+    if (rule.getTags().size() > 0) {
+      g.writeArrayFieldStart("tags", rule.getTags().size());
+      for (Tag tag : rule.getTags()) {
+        g.writeString(tag.name());
+      }
+    }
+    g.endMap();
+  }
+
+  private void writeMatchesSection(String sectionName, CborWriter g, List<RuleMatch> matches, AnnotatedText text,
+                                   ContextTools contextTools, Map<Rule, Integer> ruleIndex) throws IOException {
+    g.writeArrayFieldStart(sectionName, matches.size());
+    for (RuleMatch match : matches) {
+      writeMatch(g, match, text, contextTools, ruleIndex.get(match.getRule()));
+    }
+  }
+
+  private void writeMatch(CborWriter g, RuleMatch match, AnnotatedText text, ContextTools contextTools, int ruleIdx) throws IOException {
+    g.startMap();
+    g.writeStringField("message", RuleMatchesAsJsonSerializer.cleanSuggestion(match.getMessage(), lang));
+    if (match.getShortMessage() != null) {
+      g.writeStringField("shortMessage", RuleMatchesAsJsonSerializer.cleanSuggestion(match.getShortMessage(), lang));
+    }
+    writeReplacements(g, match);
+    g.writeNumberField("offset", match.getFromPos());
+    g.writeNumberField("length", match.getToPos()-match.getFromPos());
+    writeContext(g, match, text, contextTools);
+    g.writeStringField("type", match.getType().toString());
+    g.writeNumberField("rule", ruleIdx);
+    if (match.getUrl() != null && !match.getUrl().equals(match.getRule().getUrl())) {
+      g.writeStringField("url", match.getUrl().toString());
+    }
+    int contextEstimate = match.getRule().estimateContextForSureMatch();
+    g.writeBooleanField("ignoreForIncompleteSentence", contextEstimate == -1 || contextEstimate > 3);
+    g.writeNumberField("contextForSureMatch", contextEstimate);
+    g.endMap();
+  }
+
+  private void writeReplacements(CborWriter g, RuleMatch match) throws IOException {
+    List<SuggestedReplacement> replacements = match.getSuggestedReplacementObjects();
+    int count = compactMode == 1 ? Math.min(5, replacements.size()) : replacements.size();  // these clients only show up to 5 suggestions anyway
+    g.writeArrayFieldStart("replacements", count);
+    boolean autoCorrect = match.isAutoCorrect();
+    for (int i = 0; i < count; i++) {
+      SuggestedReplacement replacement = replacements.get(i);
+      g.startMap();
+      g.writeStringField("value", replacement.getReplacement());
+      if (replacement.getShortDescription() != null) {
+        g.writeStringField("shortDescription", replacement.getShortDescription());
+      }
+      if (replacement.getSuffix() != null) {
+        g.writeStringField("suffix", replacement.getSuffix());
+      }
+      if (replacement.getType() != SuggestedReplacement.SuggestionType.Default) {
+        g.writeStringField("type", replacement.getType().name());
+      }
+      if (autoCorrect) {
+        g.writeBooleanField("autoCorrect", true);
+        autoCorrect = false; // only for first replacement
+      }
+      if (replacement.getConfidence() != null) {
+        g.writeNumberField("confidence", (double) replacement.getConfidence());
+      }
+      g.endMap();
+    }
+  }
+
+  private void writeContext(CborWriter g, RuleMatch match, AnnotatedText text, ContextTools contextTools) throws IOException {
+    if (compactMode == 1) {
+      return;
+    }
+    String context = contextTools.getContext(match.getFromPos(), match.getToPos(), text.getTextWithMarkup());
+    int contextOffset = context.indexOf(RuleMatchesAsJsonSerializer.START_MARKER);
+    context = context.replaceFirst(RuleMatchesAsJsonSerializer.START_MARKER, "");
+    g.writeMapFieldStart("context");
+    g.writeStringField("text", context);
+    g.writeNumberField("offset", contextOffset);
+    g.writeNumberField("length", match.getToPos()-match.getFromPos());
+    g.endMap();
+    if (match.getSentence() != null) {
+      g.writeStringField("sentence", match.getSentence().getText().trim());
+    }
+  }
+
+}
@@ -0,0 +1,68 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.tools;
+
+import org.junit.Test;
+import org.languagetool.*;
+import org.languagetool.markup.AnnotatedTextBuilder;
+import org.languagetool.rules.RuleMatch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RuleMatchesAsCborSerializerTest {
+
+  @Test
+  public void testRulesAreWrittenOnce() throws IOException {
+    RuleMatchesAsJsonSerializerTest.FakeRule rule = new RuleMatchesAsJsonSerializerTest.FakeRule();
+    AnalyzedSentence sentence = new JLanguageTool(Languages.getLanguageForShortCode("xx")).getAnalyzedSentence("This is an test sentence.");
+    List<RuleMatch> matches = Arrays.asList(
+      new RuleMatch(rule, sentence, 1, 3, "My Message, use <suggestion>foo</suggestion> instead", "short message"),
+      new RuleMatch(rule, sentence, 5, 7, "My Message, use <suggestion>foo</suggestion> instead", "short message"));
+    DetectedLanguage lang = new DetectedLanguage(Languages.getLanguageForShortCode("xx-XX"), Languages.getLanguageForShortCode("xx-XX"));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new RuleMatchesAsCborSerializer(0, null).ruleMatchesToCbor(out, matches, Collections.emptyList(),
+      new AnnotatedTextBuilder().addText("This is an text.").build(), 5, lang, null, false);
+    byte[] bytes = out.toByteArray();
+    assertEquals(0xbf, bytes[0] & 0xff);  // map of unknown size...
+    assertEquals(0xff, bytes[bytes.length - 1] & 0xff);  // ...and its end
+    String asText = new String(bytes, StandardCharsets.ISO_8859_1);
+    assertEquals(1, count(asText, "FAKE_ID"));
+    assertEquals(1, count(asText, "My rule description"));
+    assertEquals(1, count(asText, "http://foobar.org/blah"));
+    assertEquals(2, count(asText, "My Message, use \"foo\" instead"));
+    assertEquals(2, count(asText, "This is an test sentence."));
+  }
+
+  private static int count(String s, String substring) {
+    int count = 0;
+    int idx = -1;
+    while ((idx = s.indexOf(substring, idx + 1)) != -1) {
+      count++;
+    }
+    return count;
+  }
+
+}
@@ -43,7 +43,7 @@ public class RuleMatchesAsJsonSerializer {
   private static final int API_VERSION = 1;
   private static final String STATUS = "";
   private static final String PREMIUM_HINT = "You might be missing errors only the Premium version can find. Contact us at support<at>languagetoolplus.com.";
-  private static final String START_MARKER = "__languagetool_start_marker";
+  static final String START_MARKER = "__languagetool_start_marker";
   private static final JsonFactory factory = new JsonFactory();
   
   private final int compactMode;
@@ -89,10 +89,7 @@ public class RuleMatchesAsJsonSerializer {
    */
   public String ruleMatchesToJson(List<RuleMatch> matches, List<RuleMatch> hiddenMatches, AnnotatedText text, int contextSize,
                                   DetectedLanguage detectedLang, String incompleteResultsReason, boolean showPremiumHint) {
-    ContextTools contextTools = new ContextTools();
-    contextTools.setEscapeHtml(false);
-    contextTools.setContextSize(contextSize);
-    contextTools.setErrorMarker(START_MARKER, "");
+    ContextTools contextTools = getContextTools(contextSize);
     StringWriter sw = new StringWriter();
     try {
       try (JsonGenerator g = factory.createGenerator(sw)) {
@@ -112,6 +109,70 @@ public class RuleMatchesAsJsonSerializer {
     return sw.toString();
   }
 
+  /**
+   * One line of a streamed (NDJSON) result: a single match as {@code {"match":{...}}}, followed by a line break.
+   * @since 5.3
+   */
+  public String ruleMatchToNdjson(RuleMatch match, AnnotatedText text, int contextSize) {
+    ContextTools contextTools = getContextTools(contextSize);
+    StringWriter sw = new StringWriter();
+    try {
+      try (JsonGenerator g = factory.createGenerator(sw)) {
+        g.writeStartObject();
+        g.writeFieldName("match");
+        writeMatch(g, match, text, contextTools);
+        g.writeEndObject();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return sw.append('\n').toString();
+  }
+
+  /**
+   * The last line of a streamed (NDJSON) result, as {@code {"summary":{...}}}, followed by a line break.
+   * @param matchCount the number of matches of the complete result
+   * @param retractedMatches matches that have been streamed but are not part of the complete result, e.g. because
+   *                         they were removed as overlapping with other matches
+   * @since 5.3
+   */
+  public String summaryToNdjson(DetectedLanguage detectedLang, String incompleteResultsReason, boolean showPremiumHint,
+                                int matchCount, List<RuleMatch> retractedMatches) {
+    StringWriter sw = new StringWriter();
+    try {
+      try (JsonGenerator g = factory.createGenerator(sw)) {
+        g.writeStartObject();
+        g.writeObjectFieldStart("summary");
+        writeSoftwareSection(g, showPremiumHint);
+        writeWarningsSection(g, incompleteResultsReason);
+        writeLanguageSection(g, detectedLang);
+        g.writeNumberField("matchCount", matchCount);
+        g.writeArrayFieldStart("retractedMatches");
+        for (RuleMatch match : retractedMatches) {
+          g.writeStartObject();
+          g.writeNumberField("offset", match.getFromPos());
+          g.writeNumberField("length", match.getToPos() - match.getFromPos());
+          g.writeStringField("ruleId", match.getRule().getId());
+          g.writeEndObject();
+        }
+        g.writeEndArray();
+        g.writeEndObject();
+        g.writeEndObject();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return sw.append('\n').toString();
+  }
+
+  static ContextTools getContextTools(int contextSize) {
+    ContextTools contextTools = new ContextTools();
+    contextTools.setEscapeHtml(false);
+    contextTools.setContextSize(contextSize);
+    contextTools.setErrorMarker(START_MARKER, "");
+    return contextTools;
+  }
+
   private void writeSoftwareSection(JsonGenerator g, boolean showPremiumHint) throws IOException {
     if (compactMode == 1) {
       return;
@@ -164,30 +225,34 @@ public class RuleMatchesAsJsonSerializer {
   private void writeMatchesSection(String sectionName, JsonGenerator g, List<RuleMatch> matches, AnnotatedText text, ContextTools contextTools) throws IOException {
     g.writeArrayFieldStart(sectionName);
     for (RuleMatch match : matches) {
-      g.writeStartObject();
-      g.writeStringField("message", cleanSuggestion(match.getMessage()));
-      if (match.getShortMessage() != null) {
-        g.writeStringField("shortMessage", cleanSuggestion(match.getShortMessage()));
-      }
-      writeReplacements(g, match);
-      g.writeNumberField("offset", match.getFromPos());
-      g.writeNumberField("length", match.getToPos()-match.getFromPos());
-      writeContext(g, match, text, contextTools);
-      g.writeObjectFieldStart("type");
-      g.writeStringField("typeName", match.getType().toString());
-      g.writeEndObject();
-      writeRule(g, match);
-      // 3 is a guess - key 'ignoreForIncompleteSentence' isn't official and can hopefully be removed in the future
-      // now that we have 'contextForSureMatch':
-      int contextEstimate = match.getRule().estimateContextForSureMatch();
-      g.writeBooleanField("ignoreForIncompleteSentence", contextEstimate == -1 || contextEstimate > 3);
-      g.writeNumberField("contextForSureMatch", contextEstimate);
-      g.writeEndObject();
+      writeMatch(g, match, text, contextTools);
     }
     g.writeEndArray();
   }
 
-  private String cleanSuggestion(String s) {
+  private void writeMatch(JsonGenerator g, RuleMatch match, AnnotatedText text, ContextTools contextTools) throws IOException {
+    g.writeStartObject();
+    g.writeStringField("message", cleanSuggestion(match.getMessage(), lang));
+    if (match.getShortMessage() != null) {
+      g.writeStringField("shortMessage", cleanSuggestion(match.getShortMessage(), lang));
+    }
+    writeReplacements(g, match);
+    g.writeNumberField("offset", match.getFromPos());
+    g.writeNumberField("length", match.getToPos()-match.getFromPos());
+    writeContext(g, match, text, contextTools);
+    g.writeObjectFieldStart("type");
+    g.writeStringField("typeName", match.getType().toString());
+    g.writeEndObject();
+    writeRule(g, match);
+    // 3 is a guess - key 'ignoreForIncompleteSentence' isn't official and can hopefully be removed in the future
+    // now that we have 'contextForSureMatch':
+    int contextEstimate = match.getRule().estimateContextForSureMatch();
+    g.writeBooleanField("ignoreForIncompleteSentence", contextEstimate == -1 || contextEstimate > 3);
+    g.writeNumberField("contextForSureMatch", contextEstimate);
+    g.writeEndObject();
+  }
+
+  static String cleanSuggestion(String s, Language lang) {
     if (lang != null) {
       return lang.toAdvancedTypography(s.replaceAll("<suggestion>", lang.getOpeningDoubleQuote()).replaceAll("</suggestion>", lang.getClosingDoubleQuote()));
     } else {
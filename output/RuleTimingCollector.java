@@ -0,0 +1,216 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import org.jetbrains.annotations.Nullable;
+import org.languagetool.rules.Rule;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how long rules take, how often they are run, and how many matches they find.
+ * To keep the overhead low, only a random sample of the sentences (and of the texts
+ * for text-level rules) is measured. Counts reported by {@link #getTopRules(int)}
+ * and to the {@link Listener} are extrapolated from the sample.
+ * Thread-safe, so one instance can be shared by several {@link JLanguageTool} objects.
+ * @since 5.3
+ */
+@Experimental
+public class RuleTimingCollector {
+
+  /**
+   * Gets called for every measured rule invocation.
+   */
+  public interface Listener {
+    /**
+     * @param weight the number of invocations this sample represents, i.e. {@code 1 / sampleRate}
+     */
+    void ruleTimed(Language language, Rule rule, long nanos, int matchCount, double weight);
+  }
+
+  private final double sampleRate;
+  private final long bucketMillis;
+  private final Bucket[] buckets;
+  private final Listener listener;
+
+  /**
+   * @param sampleRate the fraction of sentences (and texts for text-level rules) to measure, between 0 and 1
+   * @param windowMillis the time span considered by {@link #getTopRules(int)}
+   * @param listener gets every measurement, e.g. to export it, or {@code null}
+   */
+  public RuleTimingCollector(double sampleRate, long windowMillis, @Nullable Listener listener) {
+    if (sampleRate <= 0 || sampleRate > 1) {
+      throw new IllegalArgumentException("sampleRate must be > 0 and <= 1: " + sampleRate);
+    }
+    if (windowMillis <= 0) {
+      throw new IllegalArgumentException("windowMillis must be > 0: " + windowMillis);
+    }
+    this.sampleRate = sampleRate;
+    this.buckets = new Bucket[10];
+    this.bucketMillis = Math.max(1, windowMillis / buckets.length);
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new Bucket();
+    }
+    this.listener = listener;
+  }
+
+  /**
+   * @return whether the rules for the next sentence or text should be measured
+   */
+  boolean sample() {
+    return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+  }
+
+  void record(Language language, Rule rule, long nanos, int matchCount) {
+    long epoch = System.currentTimeMillis() / bucketMillis;
+    Bucket bucket = buckets[(int) (epoch % buckets.length)];
+    bucket.get(epoch).computeIfAbsent(new RuleKey(language.getShortCodeWithCountryAndVariant(), rule.getId()), k -> new Stats())
+      .add(nanos, matchCount);
+    if (listener != null) {
+      listener.ruleTimed(language, rule, nanos, matchCount, 1 / sampleRate);
+    }
+  }
+
+  /**
+   * @return the rules that took the most time in total in the recent time window, most expensive first
+   */
+  public List<RuleTiming> getTopRules(int maxRules) {
+    long oldestEpoch = System.currentTimeMillis() / bucketMillis - buckets.length + 1;
+    Map<RuleKey, long[]> totals = new HashMap<>();
+    for (Bucket bucket : buckets) {
+      Map<RuleKey, Stats> stats = bucket.getIfNotOlderThan(oldestEpoch);
+      if (stats != null) {
+        for (Map.Entry<RuleKey, Stats> entry : stats.entrySet()) {
+          long[] total = totals.computeIfAbsent(entry.getKey(), k -> new long[3]);
+          total[0] += entry.getValue().nanos.sum();
+          total[1] += entry.getValue().invocations.sum();
+          total[2] += entry.getValue().matches.sum();
+        }
+      }
+    }
+    List<RuleTiming> result = new ArrayList<>();
+    for (Map.Entry<RuleKey, long[]> entry : totals.entrySet()) {
+      long[] total = entry.getValue();
+      result.add(new RuleTiming(entry.getKey().language, entry.getKey().ruleId,
+        (long) (total[0] / sampleRate), (long) (total[1] / sampleRate), (long) (total[2] / sampleRate)));
+    }
+    result.sort(Comparator.comparingLong(RuleTiming::getTotalNanos).reversed());
+    return result.subList(0, Math.min(maxRules, result.size()));
+  }
+
+  /**
+   * Extrapolated timing of a rule in the recent time window.
+   */
+  public static class RuleTiming {
+    private final String language;
+    private final String ruleId;
+    private final long totalNanos;
+    private final long invocations;
+    private final long matches;
+
+    RuleTiming(String language, String ruleId, long totalNanos, long invocations, long matches) {
+      this.language = language;
+      this.ruleId = ruleId;
+      this.totalNanos = totalNanos;
+      this.invocations = invocations;
+      this.matches = matches;
+    }
+
+    public String getLanguage() {
+      return language;
+    }
+
+    public String getRuleId() {
+      return ruleId;
+    }
+
+    public long getTotalNanos() {
+      return totalNanos;
+    }
+
+    public long getInvocations() {
+      return invocations;
+    }
+
+    public long getMatches() {
+      return matches;
+    }
+
+    @Override
+    public String toString() {
+      return language + "/" + ruleId + ": " + totalNanos / 1_000_000 + "ms, " + invocations + " invocations, " + matches + " matches";
+    }
+  }
+
+  private static class Bucket {
+    private long epoch = -1;
+    private Map<RuleKey, Stats> stats = new ConcurrentHashMap<>();
+
+    synchronized Map<RuleKey, Stats> get(long currentEpoch) {
+      if (epoch != currentEpoch) {
+        epoch = currentEpoch;
+        stats = new ConcurrentHashMap<>();
+      }
+      return stats;
+    }
+
+    @Nullable
+    synchronized Map<RuleKey, Stats> getIfNotOlderThan(long oldestEpoch) {
+      return epoch >= oldestEpoch ? stats : null;
+    }
+  }
+
+  private static class Stats {
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder matches = new LongAdder();
+
+    void add(long nanos, int matchCount) {
+      this.nanos.add(nanos);
+      this.invocations.increment();
+      this.matches.add(matchCount);
+    }
+  }
+
+  private static class RuleKey {
+    private final String language;
+    private final String ruleId;
+
+    RuleKey(String language, String ruleId) {
+      this.language = language;
+      this.ruleId = ruleId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      RuleKey other = (RuleKey) o;
+      return language.equals(other.language) && ruleId.equals(other.ruleId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(language, ruleId);
+    }
+  }
+}
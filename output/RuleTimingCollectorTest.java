@@ -0,0 +1,56 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import org.junit.Test;
+import org.languagetool.language.Demo;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RuleTimingCollectorTest {
+
+  @Test
+  public void testCollect() throws IOException {
+    AtomicInteger matchCount = new AtomicInteger();
+    RuleTimingCollector collector = new RuleTimingCollector(1, 60_000, (language, rule, nanos, matches, weight) -> {
+      assertThat(weight, is(1.0));
+      matchCount.addAndGet(matches);
+    });
+    JLanguageTool lt = new JLanguageTool(new Demo());
+    lt.setRuleTimingCollector(collector);
+    lt.check("A small toast. No error here.");
+    List<RuleTimingCollector.RuleTiming> topRules = collector.getTopRules(3);
+    assertThat(topRules.size(), is(3));
+    assertTrue(topRules.get(0).getTotalNanos() >= topRules.get(1).getTotalNanos());
+    assertTrue(topRules.get(0).getInvocations() > 0);
+    assertTrue(matchCount.get() > 0);
+    assertThat(collector.getTopRules(10_000).stream().mapToLong(RuleTimingCollector.RuleTiming::getMatches).sum(), is((long) matchCount.get()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidSampleRate() {
+    new RuleTimingCollector(0, 60_000, null);
+  }
+}
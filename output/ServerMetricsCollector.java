@@ -27,6 +27,7 @@ import io.prometheus.client.guava.cache.CacheMetricsCollector;
 import io.prometheus.client.hotspot.DefaultExports;
 import org.languagetool.JLanguageTool;
 import org.languagetool.Language;
+import org.languagetool.rules.patterns.IndexedRuleSet;
 
 import java.io.IOException;
 
@@ -39,7 +40,8 @@ public class ServerMetricsCollector {
     TOO_MANY_ERRORS,
     MAX_CHECK_TIME,
     MAX_TEXT_SIZE,
-    INVALID_REQUEST
+    INVALID_REQUEST,
+    CONCURRENCY_LIMIT
   }
 
   private static final double[] LATENCY_BUCKETS = {
@@ -55,6 +57,11 @@ public class ServerMetricsCollector {
     10, 100, 500, 1000, 2500, 5000, 7500, 10000, 20000, 50000
   };
 
+  // rules usually take much less time than a whole check:
+  private static final double[] RULE_LATENCY_BUCKETS = {
+    0.00001, 0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1.
+  };
+
   private static final ServerMetricsCollector collector = new ServerMetricsCollector();
   
   private static HTTPServer server;
@@ -110,6 +117,71 @@ public class ServerMetricsCollector {
     .build("languagetool_hidden_matches_server_requests_total", "Number of hidden server requests by status")
     .labelNames("status").register();
 
+  // sampled, see RuleTimingCollector; high cardinality, only filled if rule timing is enabled
+  private final Histogram ruleLatency = Histogram
+    .build("languagetool_rule_latency_seconds", "Histogram of sampled rule run times, per sentence or text")
+    .buckets(RULE_LATENCY_BUCKETS)
+    .labelNames("language", "rule_id").register();
+  private final Counter ruleInvocationCounter = Counter
+    .build("languagetool_rule_invocations_total", "Estimated rule invocations, extrapolated from samples")
+    .labelNames("language", "rule_id").register();
+  private final Counter ruleMatchCounter = Counter
+    .build("languagetool_rule_matches_total", "Estimated rule matches, extrapolated from samples")
+    .labelNames("language", "rule_id").register();
+
+  // cumulative, read from IndexedRuleSet on each scrape:
+  private final Gauge ruleIndexCandidates = Gauge
+    .build("languagetool_rule_index_candidate_rules", "Rules selected by the rule index for checked sentences").create()
+    .setChild(new Gauge.Child() {
+      @Override
+      public double get() {
+        return IndexedRuleSet.getGlobalStatistics().getCandidateRules();
+      }
+    }).register();
+  private final Gauge ruleIndexSkipped = Gauge
+    .build("languagetool_rule_index_skipped_rules", "Rules skipped by the rule index for checked sentences").create()
+    .setChild(new Gauge.Child() {
+      @Override
+      public double get() {
+        return IndexedRuleSet.getGlobalStatistics().getSkippedRules();
+      }
+    }).register();
+
+  // see AdaptiveConcurrencyLimiter, rejections are counted in requestErrorCounter:
+  private final Gauge concurrencyLimit = Gauge
+    .build("languagetool_concurrency_limit", "Current adaptive limit of requests in flight").register();
+  private final Gauge concurrencyInFlight = Gauge
+    .build("languagetool_concurrency_in_flight", "Requests in flight counted by the adaptive concurrency limit").register();
+
+  // see FairCheckScheduler:
+  private final Gauge schedulerQueued = Gauge
+    .build("languagetool_scheduler_queued_checks", "Checks waiting to be run, by request class")
+    .labelNames("class").register();
+  private final Gauge schedulerRunning = Gauge
+    .build("languagetool_scheduler_running_checks", "Checks being run, by request class")
+    .labelNames("class").register();
+
+  // see CheckCoalescer:
+  private final Counter coalescedChecks = Counter
+    .build("languagetool_coalesced_checks_total", "Checks that could be coalesced, by whether they joined a running check, re-used a recent result or had to run")
+    .labelNames("result").register();
+
+  // see PipelinePool:
+  private final Counter pipelineRequests = Counter
+    .build("languagetool_pipeline_pool_requests_total", "Pipelines requested from the pool, by whether a pooled one could be used (hit) or one had to be created (miss)")
+    .labelNames("result").register();
+  private final Histogram pipelineCreation = Histogram
+    .build("languagetool_pipeline_creation_seconds", "Time needed to create a pipeline")
+    .buckets(0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10).register();
+  private final Gauge pipelinePoolPipelines = Gauge
+    .build("languagetool_pipeline_pool_pipelines", "Pipelines of the pool, by language and whether they are in use or idle")
+    .labelNames("language", "state").register();
+
+  // see CheckDeadline:
+  private final Histogram cancelledCheckOverrun = Histogram
+    .build("languagetool_cancelled_check_overrun_seconds", "Time that cancelled checks kept running after they were cancelled")
+    .buckets(0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10).register();
+
   private final CacheMetricsCollector cacheMetrics = new CacheMetricsCollector().register();
 
 
@@ -174,6 +246,43 @@ public class ServerMetricsCollector {
     checkSpeed.labels("", modeLabel).observe(speed);
   }
 
+  public void logRuleTiming(Language language, String ruleId, long nanos, int matchCount, double weight) {
+    String langLabel = language != null ? language.getShortCode() : UNKNOWN;
+    ruleLatency.labels(langLabel, ruleId).observe(nanos / 1_000_000_000.0);
+    ruleInvocationCounter.labels(langLabel, ruleId).inc(weight);
+    ruleMatchCounter.labels(langLabel, ruleId).inc(matchCount * weight);
+  }
+
+  public void logConcurrencyLimit(int limit, int inFlight) {
+    concurrencyLimit.set(limit);
+    concurrencyInFlight.set(inFlight);
+  }
+
+  public void logSchedulerQueue(String requestClass, int queued, int running) {
+    schedulerQueued.labels(requestClass).set(queued);
+    schedulerRunning.labels(requestClass).set(running);
+  }
+
+  public void logCoalescedCheck(String result) {
+    coalescedChecks.labels(result).inc();
+  }
+
+  public void logPipelineRequest(boolean pooled) {
+    pipelineRequests.labels(pooled ? "hit" : "miss").inc();
+  }
+
+  public void logPipelineCreation(long millis) {
+    pipelineCreation.observe(millis / 1000.0);
+  }
+
+  public void logPipelinePoolChange(String language, String state, int delta) {
+    pipelinePoolPipelines.labels(language, state).inc(delta);
+  }
+
+  public void logCancelledCheck(long overrunMillis) {
+    cancelledCheckOverrun.observe(overrunMillis / 1000.0);
+  }
+
   public void logRequestError(RequestErrorType type) {
     requestErrorCounter.labels(type.name().toLowerCase()).inc();
   }
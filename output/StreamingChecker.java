@@ -0,0 +1,231 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import org.jetbrains.annotations.Nullable;
+import org.languagetool.markup.AnnotatedText;
+import org.languagetool.markup.AnnotatedTextBuilder;
+import org.languagetool.rules.Rule;
+import org.languagetool.rules.RuleMatch;
+import org.languagetool.rules.TextLevelRule;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Checks texts of any size with bounded memory: the text is read paragraph by paragraph,
+ * each paragraph is checked when it has been read and its matches are sent to a
+ * {@link RuleMatchListener} immediately. Text-level rules get as many preceding paragraphs
+ * as context as they declare in {@link TextLevelRule#minToCheckParagraph()}, rules that
+ * need the whole text ({@code -1}) get at most {@link #setMaxContextParagraphs(int)} paragraphs.
+ * Thus, results of text-level rules can differ from a check of the complete text.
+ * Match positions, lines, and columns refer to the complete text.
+ * @since 5.3
+ */
+@Experimental
+public class StreamingChecker {
+
+  private final JLanguageTool lt;
+
+  private int maxContextParagraphs = 20;
+  private int maxParagraphLength = 20_000;
+  private JLanguageTool.Level level = JLanguageTool.Level.DEFAULT;
+
+  public StreamingChecker(JLanguageTool lt) {
+    this.lt = Objects.requireNonNull(lt);
+  }
+
+  /**
+   * Maximum number of preceding paragraphs kept for text-level rules that would like to see the whole text.
+   */
+  public void setMaxContextParagraphs(int maxContextParagraphs) {
+    if (maxContextParagraphs < 0) {
+      throw new IllegalArgumentException("maxContextParagraphs must be >= 0: " + maxContextParagraphs);
+    }
+    this.maxContextParagraphs = maxContextParagraphs;
+  }
+
+  /**
+   * Paragraphs read with {@link #check(Reader, RuleMatchListener)} that are longer than this
+   * (in characters) are split at the next line break, or at the next white space if there's no line break.
+   */
+  public void setMaxParagraphLength(int maxParagraphLength) {
+    if (maxParagraphLength <= 0) {
+      throw new IllegalArgumentException("maxParagraphLength must be > 0: " + maxParagraphLength);
+    }
+    this.maxParagraphLength = maxParagraphLength;
+  }
+
+  public void setLevel(JLanguageTool.Level level) {
+    this.level = Objects.requireNonNull(level);
+  }
+
+  /**
+   * Check plain text read from {@code reader}. Paragraphs are separated by empty lines.
+   * The reader is not closed.
+   */
+  public void check(Reader reader, RuleMatchListener listener) throws IOException {
+    ParagraphReader paragraphReader = new ParagraphReader(reader, maxParagraphLength);
+    String paragraph;
+    Window window = new Window(getContextParagraphs(), listener);
+    while ((paragraph = paragraphReader.next()) != null) {
+      window.check(new AnnotatedTextBuilder().addText(paragraph).build());
+    }
+  }
+
+  /**
+   * Check a text that is provided in consecutive parts, e.g. its paragraphs. Match positions
+   * refer to the concatenation of the parts' texts including markup.
+   */
+  public void check(Iterator<AnnotatedText> textParts, RuleMatchListener listener) throws IOException {
+    Window window = new Window(getContextParagraphs(), listener);
+    while (textParts.hasNext()) {
+      window.check(textParts.next());
+    }
+  }
+
+  /**
+   * @return the number of preceding paragraphs the active text-level rules need, or {@code -1} if there are no such rules
+   */
+  private int getContextParagraphs() {
+    int context = -1;
+    for (Rule rule : lt.getAllActiveRules()) {
+      if (rule instanceof TextLevelRule) {
+        int min = ((TextLevelRule) rule).minToCheckParagraph();
+        context = Math.max(context, min < 0 ? maxContextParagraphs : Math.min(min, maxContextParagraphs));
+      }
+    }
+    return context;
+  }
+
+  private class Window {
+    private final int contextParagraphs;
+    private final RuleMatchListener listener;
+    private final Deque<String> context = new ArrayDeque<>();
+    private int contextLength;  // plain text characters
+    private int contextLines;
+    private int offset;  // original text characters before the current part
+    private int lines;   // line breaks before the current part
+    private int column;  // plain text characters of the current part's first line in preceding parts
+
+    Window(int contextParagraphs, RuleMatchListener listener) {
+      this.contextParagraphs = contextParagraphs;
+      this.listener = Objects.requireNonNull(listener);
+    }
+
+    void check(AnnotatedText part) throws IOException {
+      String plainText = part.getPlainText();
+      List<RuleMatch> matches = lt.check(part, true, JLanguageTool.ParagraphHandling.NORMAL, null,
+        JLanguageTool.Mode.ALL_BUT_TEXTLEVEL_ONLY, level);
+      for (RuleMatch match : matches) {
+        match.setOffsetPosition(match.getFromPos() + offset, match.getToPos() + offset);
+        if (match.getLine() == 0) {
+          match.setColumn(match.getColumn() + column);
+        }
+        if (match.getEndLine() == 0) {
+          match.setEndColumn(match.getEndColumn() + column);
+        }
+        match.setLine(match.getLine() + lines);
+        match.setEndLine(match.getEndLine() + lines);
+        listener.matchFound(match);
+      }
+      if (contextParagraphs >= 0) {
+        checkTextLevel(part, plainText);
+      }
+      offset += part.getTextWithMarkup().length();
+      lines += JLanguageTool.countLineBreaks(plainText);
+      int lastLineBreak = plainText.lastIndexOf('\n');
+      column = lastLineBreak == -1 ? column + plainText.length() : plainText.length() - lastLineBreak - 1;
+    }
+
+    private void checkTextLevel(AnnotatedText part, String plainText) throws IOException {
+      String windowText = String.join("", context) + plainText;
+      List<RuleMatch> matches = lt.check(new AnnotatedTextBuilder().addText(windowText).build(), true,
+        JLanguageTool.ParagraphHandling.NORMAL, null, JLanguageTool.Mode.TEXTLEVEL_ONLY, level);
+      for (RuleMatch match : matches) {
+        if (match.getFromPos() < contextLength) {
+          continue;  // reported when the paragraph containing it was checked
+        }
+        int fromPos = part.getOriginalTextPositionFor(match.getFromPos() - contextLength, false);
+        int toPos = part.getOriginalTextPositionFor(match.getToPos() - contextLength - 1, true) + 1;
+        match.setOffsetPosition(fromPos + offset, toPos + offset);
+        // the window's first line may start in a context paragraph, so columns on the part's first line are
+        // computed from the part; like in a check of the complete text, they're 0-based on the text's first line:
+        int firstColumn = lines > 0 ? 1 : 0;
+        if (match.getLine() == contextLines) {
+          match.setColumn(column + match.getFromPos() - contextLength + firstColumn);
+        }
+        if (match.getEndLine() == contextLines) {
+          match.setEndColumn(column + match.getToPos() - contextLength + firstColumn);
+        }
+        match.setLine(match.getLine() - contextLines + lines);
+        match.setEndLine(match.getEndLine() - contextLines + lines);
+        listener.matchFound(match);
+      }
+      context.addLast(plainText);
+      contextLength += plainText.length();
+      contextLines += JLanguageTool.countLineBreaks(plainText);
+      while (context.size() > contextParagraphs) {
+        String removed = context.removeFirst();
+        contextLength -= removed.length();
+        contextLines -= JLanguageTool.countLineBreaks(removed);
+      }
+    }
+  }
+
+  /**
+   * Splits the text into paragraphs at empty lines, keeping all characters.
+   */
+  static class ParagraphReader {
+    private final BufferedReader reader;
+    private final int maxLength;
+
+    ParagraphReader(Reader reader, int maxLength) {
+      this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+      this.maxLength = maxLength;
+    }
+
+    @Nullable
+    String next() throws IOException {
+      StringBuilder sb = new StringBuilder();
+      boolean lineIsBlank = true;
+      int c;
+      while ((c = reader.read()) != -1) {
+        sb.append((char) c);
+        if (c == '\n') {
+          if (lineIsBlank && sb.length() > 1 || sb.length() >= maxLength) {
+            break;
+          }
+          lineIsBlank = true;
+        } else if (!Character.isWhitespace(c)) {
+          lineIsBlank = false;
+        } else if (sb.length() >= 2 * maxLength) {
+          break;
+        }
+      }
+      return sb.length() > 0 ? sb.toString() : null;
+    }
+  }
+}
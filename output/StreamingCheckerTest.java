@@ -0,0 +1,119 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool;
+
+import org.junit.Test;
+import org.languagetool.language.English;
+import org.languagetool.language.GermanyGerman;
+import org.languagetool.markup.AnnotatedText;
+import org.languagetool.markup.AnnotatedTextBuilder;
+import org.languagetool.rules.RuleMatch;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class StreamingCheckerTest {
+
+  @Test
+  public void testParagraphReader() throws IOException {
+    StreamingChecker.ParagraphReader reader = new StreamingChecker.ParagraphReader(new StringReader("One.\nTwo.\n\nThree.\n \nFour."), 100);
+    assertThat(reader.next(), is("One.\nTwo.\n\n"));
+    assertThat(reader.next(), is("Three.\n \n"));
+    assertThat(reader.next(), is("Four."));
+    assertThat(reader.next(), is(nullValue()));
+    StreamingChecker.ParagraphReader reader2 = new StreamingChecker.ParagraphReader(new StringReader("One.\nTwo.\nThree."), 5);
+    assertThat(reader2.next(), is("One.\n"));
+    assertThat(reader2.next(), is("Two.\n"));
+    assertThat(reader2.next(), is("Three."));
+  }
+
+  @Test
+  public void testCheckReader() throws IOException {
+    JLanguageTool lt = new JLanguageTool(new English());
+    String text = "A test.\n\nThis is an test.\n\nAnd another test with a error.";
+    List<RuleMatch> expected = lt.check(text);
+    List<RuleMatch> matches = new ArrayList<>();
+    lt.checkStream(new StringReader(text), matches::add);
+    assertThat(matches.size(), is(expected.size()));
+    for (int i = 0; i < matches.size(); i++) {
+      assertThat(matches.get(i).getFromPos(), is(expected.get(i).getFromPos()));
+      assertThat(matches.get(i).getToPos(), is(expected.get(i).getToPos()));
+      assertThat(matches.get(i).getLine(), is(expected.get(i).getLine()));
+      assertThat(matches.get(i).getColumn(), is(expected.get(i).getColumn()));
+    }
+  }
+
+  @Test
+  public void testCheckReaderWithSplitParagraph() throws IOException {
+    JLanguageTool lt = new JLanguageTool(new English());
+    String text = "A test.\n\nThis is an test. See an test.";
+    List<RuleMatch> expected = getMatches(lt.check(text), "EN_A_VS_AN");
+    assertThat(expected.size(), is(2));
+    StreamingChecker checker = new StreamingChecker(lt);
+    checker.setMaxParagraphLength(8);  // the second paragraph is split after "This is an test. "
+    List<RuleMatch> matches = new ArrayList<>();
+    checker.check(new StringReader(text), matches::add);
+    matches = getMatches(matches, "EN_A_VS_AN");
+    assertThat(matches.size(), is(2));
+    for (int i = 0; i < matches.size(); i++) {
+      assertThat(matches.get(i).getFromPos(), is(expected.get(i).getFromPos()));
+      assertThat(matches.get(i).getLine(), is(expected.get(i).getLine()));
+      assertThat(matches.get(i).getColumn(), is(expected.get(i).getColumn()));
+      assertThat(matches.get(i).getEndColumn(), is(expected.get(i).getEndColumn()));
+    }
+  }
+
+  @Test
+  public void testCheckTextLevelRuleAcrossParagraphs() throws IOException {
+    JLanguageTool lt = new JLanguageTool(new GermanyGerman());
+    String text = "Ein Delfin.\n\nNoch ein Delphin.";
+    List<RuleMatch> expected = lt.check(text);
+    assertThat(expected.size(), is(1));
+    List<RuleMatch> matches = new ArrayList<>();
+    lt.checkStream(new StringReader(text), matches::add);
+    assertThat(matches.size(), is(1));
+    assertThat(matches.get(0).getFromPos(), is(expected.get(0).getFromPos()));
+    assertThat(matches.get(0).getLine(), is(expected.get(0).getLine()));
+  }
+
+  @Test
+  public void testCheckAnnotatedTextParts() throws IOException {
+    JLanguageTool lt = new JLanguageTool(new English());
+    List<AnnotatedText> parts = Arrays.asList(
+      new AnnotatedTextBuilder().addMarkup("<p>").addText("A test.").addMarkup("</p>").addText("\n\n").build(),
+      new AnnotatedTextBuilder().addMarkup("<p>").addText("This is an test.").addMarkup("</p>").build());
+    List<RuleMatch> matches = new ArrayList<>();
+    lt.checkStream(parts.iterator(), matches::add);
+    assertThat(matches.size(), is(1));
+    assertThat(matches.get(0).getFromPos(), is("<p>A test.</p>\n\n<p>This is ".length()));
+    assertThat(matches.get(0).getToPos(), is("<p>A test.</p>\n\n<p>This is an".length()));
+  }
+
+  private static List<RuleMatch> getMatches(List<RuleMatch> matches, String ruleId) {
+    return matches.stream().filter(match -> match.getRule().getId().equals(ruleId)).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,244 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.dev;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.languagetool.languagemodel.bert.grpc.BertLmGrpc;
+import org.languagetool.languagemodel.bert.grpc.BertLmProto;
+import org.languagetool.rules.ml.MLServerGrpc;
+import org.languagetool.rules.ml.MLServerProto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A stand-in for the ML and BERT language model servers that remote rules talk to
+ * ({@link MLServerGrpc}, {@link BertLmGrpc}), for testing and load testing remote rules without
+ * real models. It runs in the same JVM, but listens on a loopback port, as {@code GRPCRule} and
+ * {@code RemoteLanguageModel} connect via TCP. Answers are delayed by a configurable latency
+ * distribution (without blocking server threads), fail with a configurable error rate, and contain
+ * canned matches for configured words; BERT scores are derived from the candidates' hash codes.
+ * @since 5.3
+ */
+public class StubMLServer implements Closeable {
+
+  /**
+   * Distribution of the simulated time the model takes for a request.
+   */
+  public interface LatencyDistribution {
+
+    long sampleMillis(Random random);
+
+    static LatencyDistribution fixed(long millis) {
+      return random -> millis;
+    }
+
+    static LatencyDistribution uniform(long minMillis, long maxMillis) {
+      return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    /**
+     * Log-normal distribution, typical for service latencies: most requests take about
+     * {@code medianMillis}, larger {@code sigma} makes slow outliers more frequent (e.g. 0.5 - p99 is 3.2 times the median).
+     */
+    static LatencyDistribution logNormal(long medianMillis, double sigma) {
+      return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    /**
+     * @param spec {@code <millis>}, {@code uniform:<min>:<max>} or {@code lognormal:<median>:<sigma>}
+     */
+    static LatencyDistribution parse(String spec) {
+      String[] parts = spec.split(":");
+      if (parts.length == 1) {
+        return fixed(Long.parseLong(parts[0]));
+      } else if (parts.length == 3 && parts[0].equals("uniform")) {
+        return uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+      } else if (parts.length == 3 && parts[0].equals("lognormal")) {
+        return logNormal(Long.parseLong(parts[1]), Double.parseDouble(parts[2]));
+      }
+      throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+    }
+  }
+
+  /**
+   * A match returned for every occurrence of a word.
+   */
+  public static class CannedMatch {
+    private final Pattern word;
+    private final String subId;
+    private final String message;
+    private final List<String> suggestions;
+
+    public CannedMatch(String word, String subId, String message, List<String> suggestions) {
+      this.word = Pattern.compile("\\b" + Pattern.quote(word) + "\\b");
+      this.subId = subId;
+      this.message = message;
+      this.suggestions = suggestions;
+    }
+  }
+
+  private final LatencyDistribution latency;
+  private final long latencyPerSentenceMillis;
+  private final double errorRate;
+  private final List<CannedMatch> cannedMatches;
+  private final ScheduledExecutorService responder = Executors.newScheduledThreadPool(2,
+    new ThreadFactoryBuilder().setNameFormat("stub-ml-server-%d").setDaemon(true).build());
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong sentences = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong simulatedMillis = new AtomicLong();
+  private Server server;
+
+  /**
+   * @param latencyPerSentenceMillis added to the sampled latency for each sentence (or BERT request) of a request
+   * @param errorRate the share of requests failing with {@link Status#UNAVAILABLE}, between 0 and 1
+   */
+  public StubMLServer(LatencyDistribution latency, long latencyPerSentenceMillis, double errorRate, List<CannedMatch> cannedMatches) {
+    this.latency = latency;
+    this.latencyPerSentenceMillis = latencyPerSentenceMillis;
+    this.errorRate = errorRate;
+    this.cannedMatches = new ArrayList<>(cannedMatches);
+  }
+
+  /**
+   * Start listening on a free loopback port.
+   * @return the port
+   */
+  public int start() throws IOException {
+    server = NettyServerBuilder.forAddress(new InetSocketAddress("localhost", 0))
+      .addService(new MLServerGrpc.MLServerImplBase() {
+        @Override
+        public void match(MLServerProto.MatchRequest request, StreamObserver<MLServerProto.MatchResponse> responseObserver) {
+          respond(request.getSentencesCount(), () -> matchResponse(request), responseObserver);
+        }
+      })
+      .addService(new BertLmGrpc.BertLmImplBase() {
+        @Override
+        public void score(BertLmProto.ScoreRequest request, StreamObserver<BertLmProto.BertLmResponse> responseObserver) {
+          respond(1, () -> scoreResponse(request), responseObserver);
+        }
+
+        @Override
+        public void batchScore(BertLmProto.BatchScoreRequest request, StreamObserver<BertLmProto.BatchBertLmResponse> responseObserver) {
+          respond(request.getRequestsCount(), () -> {
+            BertLmProto.BatchBertLmResponse.Builder response = BertLmProto.BatchBertLmResponse.newBuilder();
+            request.getRequestsList().forEach(r -> response.addResponses(scoreResponse(r)));
+            return response.build();
+          }, responseObserver);
+        }
+      })
+      .build()
+      .start();
+    return server.getPort();
+  }
+
+  private <T> void respond(int size, Supplier<T> response, StreamObserver<T> responseObserver) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long delay = Math.max(0, latency.sampleMillis(random) + size * latencyPerSentenceMillis);
+    boolean fail = random.nextDouble() < errorRate;
+    requests.incrementAndGet();
+    sentences.addAndGet(size);
+    simulatedMillis.addAndGet(delay);
+    responder.schedule(() -> {
+      if (fail) {
+        errors.incrementAndGet();
+        responseObserver.onError(Status.UNAVAILABLE.withDescription("Simulated error").asRuntimeException());
+      } else {
+        responseObserver.onNext(response.get());
+        responseObserver.onCompleted();
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private MLServerProto.MatchResponse matchResponse(MLServerProto.MatchRequest request) {
+    MLServerProto.MatchResponse.Builder response = MLServerProto.MatchResponse.newBuilder();
+    for (String sentence : request.getSentencesList()) {
+      MLServerProto.MatchList.Builder matches = MLServerProto.MatchList.newBuilder();
+      for (CannedMatch cannedMatch : cannedMatches) {
+        Matcher m = cannedMatch.word.matcher(sentence);
+        while (m.find()) {
+          matches.addMatches(MLServerProto.Match.newBuilder()
+            .setOffset(m.start())
+            .setLength(m.end() - m.start())
+            .setSubId(cannedMatch.subId)
+            .setMatchDescription(cannedMatch.message)
+            .addAllSuggestions(cannedMatch.suggestions));
+        }
+      }
+      response.addSentenceMatches(matches);
+    }
+    return response.build();
+  }
+
+  private static BertLmProto.BertLmResponse scoreResponse(BertLmProto.ScoreRequest request) {
+    BertLmProto.BertLmResponse.Builder response = BertLmProto.BertLmResponse.newBuilder();
+    for (BertLmProto.Mask mask : request.getMaskList()) {
+      BertLmProto.Prediction.Builder prediction = BertLmProto.Prediction.newBuilder();
+      for (String candidate : mask.getCandidatesList()) {
+        // deterministic, but unrelated to the original order of the suggestions:
+        prediction.addScore(-Math.floorMod(candidate.hashCode(), 1000) / 100.0);
+      }
+      response.addScores(prediction);
+    }
+    return response.build();
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  public long getSentences() {
+    return sentences.get();
+  }
+
+  public long getErrors() {
+    return errors.get();
+  }
+
+  /**
+   * @return the sum of the simulated latencies of all requests
+   */
+  public long getSimulatedMillis() {
+    return simulatedMillis.get();
+  }
+
+  @Override
+  public void close() {
+    if (server != null) {
+      server.shutdownNow();
+    }
+    responder.shutdownNow();
+  }
+
+}
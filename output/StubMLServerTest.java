@@ -0,0 +1,117 @@
+/* LanguageTool, a natural language style checker
+ * Copyright (C) 2021 Daniel Naber (http://www.danielnaber.de)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301
+ * USA
+ */
+package org.languagetool.dev;
+
+import org.junit.After;
+import org.junit.Test;
+import org.languagetool.AnalyzedSentence;
+import org.languagetool.JLanguageTool;
+import org.languagetool.TestTools;
+import org.languagetool.languagemodel.bert.RemoteLanguageModel;
+import org.languagetool.rules.GRPCRule;
+import org.languagetool.rules.RemoteRuleConfig;
+import org.languagetool.rules.RuleMatch;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StubMLServerTest {
+
+  private static final List<StubMLServer.CannedMatch> MATCHES = Collections.singletonList(
+    new StubMLServer.CannedMatch("test", "TEST", "Stub message", Arrays.asList("exam", "trial")));
+
+  private StubMLServer server;
+
+  @After
+  public void tearDown() {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testCannedMatches() throws IOException {
+    server = new StubMLServer(StubMLServer.LatencyDistribution.fixed(1), 0, 0, MATCHES);
+    GRPCRule rule = createRule("STUB_TEST_RULE", server.start());
+    RuleMatch[] matches = rule.match(sentence("This is a test, a test."));
+    assertEquals(2, matches.length);
+    assertEquals(10, matches[0].getFromPos());
+    assertEquals(14, matches[0].getToPos());
+    assertEquals("Stub message", matches[0].getMessage());
+    assertEquals(Arrays.asList("exam", "trial"), matches[0].getSuggestedReplacements());
+    assertEquals("STUB_TEST_RULE_TEST", matches[0].getRule().getId());
+    assertEquals(0, rule.match(sentence("No match here.")).length);
+    assertEquals(2, server.getRequests());
+    assertEquals(0, server.getErrors());
+  }
+
+  @Test
+  public void testErrorsFallBackToNoMatches() throws IOException {
+    server = new StubMLServer(StubMLServer.LatencyDistribution.fixed(0), 0, 1, MATCHES);
+    GRPCRule rule = createRule("STUB_ERROR_RULE", server.start());
+    assertEquals(0, rule.match(sentence("This is a test.")).length);
+    assertEquals(1, server.getErrors());
+  }
+
+  @Test
+  public void testBertScores() throws IOException {
+    server = new StubMLServer(StubMLServer.LatencyDistribution.uniform(0, 5), 1, 0, MATCHES);
+    RemoteLanguageModel model = new RemoteLanguageModel("localhost", server.start(), false, null, null, null);
+    try {
+      RemoteLanguageModel.Request request = new RemoteLanguageModel.Request("This is a tset.", 10, 14, Arrays.asList("test", "set"));
+      List<Double> scores = model.score(request);
+      assertEquals(2, scores.size());
+      assertEquals(1, server.getRequests());
+      // scores are cached per request, only new requests are sent; masks of a sentence are sent together:
+      RemoteLanguageModel.Request moreCandidates = new RemoteLanguageModel.Request("This is a tset.", 10, 14, Arrays.asList("set", "tset", "text"));
+      RemoteLanguageModel.Request otherPosition = new RemoteLanguageModel.Request("This is a tset.", 0, 4, Arrays.asList("This", "Thus"));
+      List<List<Double>> batchScores = model.batchScore(Arrays.asList(request, moreCandidates, otherPosition));
+      assertEquals(scores, batchScores.get(0));
+      assertEquals(3, batchScores.get(1).size());
+      assertEquals(2, batchScores.get(2).size());
+      assertEquals(2, server.getRequests());
+      assertEquals(2, server.getSentences());
+    } finally {
+      model.shutdown();
+    }
+  }
+
+  @Test
+  public void testLatencyDistributions() {
+    assertEquals(20, StubMLServer.LatencyDistribution.parse("20").sampleMillis(new Random()));
+    long sample = StubMLServer.LatencyDistribution.parse("uniform:10:20").sampleMillis(new Random());
+    assertTrue(sample >= 10 && sample < 20);
+    assertTrue(StubMLServer.LatencyDistribution.parse("lognormal:50:0.5").sampleMillis(new Random()) > 0);
+  }
+
+  private static GRPCRule createRule(String id, int port) {
+    RemoteRuleConfig config = new RemoteRuleConfig(id, "localhost", port, 0, 1000L, 0f, 10, 0L, Collections.emptyMap());
+    return GRPCRule.create(config, false, id, "Stub test rule", Collections.emptyMap());
+  }
+
+  private static AnalyzedSentence sentence(String text) throws IOException {
+    return new JLanguageTool(TestTools.getDemoLanguage()).getAnalyzedSentence(text);
+  }
+
+}
@@ -28,6 +28,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.languagetool.*;
 import org.languagetool.language.LanguageIdentifier;
+import org.languagetool.languagemodel.bert.RemoteLanguageModel;
 import org.languagetool.markup.AnnotatedText;
 import org.languagetool.markup.AnnotatedTextBuilder;
 import org.languagetool.rules.CategoryId;
@@ -36,6 +37,7 @@ import org.languagetool.rules.RemoteRule;
 import org.languagetool.rules.RuleMatch;
 import org.languagetool.rules.bitext.BitextRule;
 import org.languagetool.rules.spelling.morfologik.suggestions_ordering.SuggestionsOrdererConfig;
+import org.languagetool.tools.RuleMatchesAsCborSerializer;
 import org.languagetool.tools.Tools;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +49,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -58,6 +64,8 @@ abstract class TextChecker {
   private static final int PINGS_CLEAN_MILLIS = 60 * 1000;  // internal pings database will be cleaned this often
   private static final int PINGS_MAX_SIZE = 5000;
   private static final int NGRAM_THRESHOLD = 50;
+  // batch checks with fewer texts than this aren't split over several threads:
+  private static final int MIN_BATCH_TEXTS_PER_WORKER = 20;
 
   protected abstract void setHeaders(HttpExchange httpExchange);
   protected abstract String getResponse(AnnotatedText text, Language language, DetectedLanguage lang, Language motherTongue, List<RuleMatch> matches,
@@ -92,7 +100,14 @@ abstract class TextChecker {
   private long hiddenMatchesServerFailures = 0;
   private final LanguageIdentifier fastTextIdentifier;
   private final ExecutorService executorService;
+  private final FairCheckScheduler fairScheduler;
+  private final CheckCoalescer coalescer;
   private final ResultCache cache;
+  private final IncrementalCheckCache incrementalCheckCache;
+  private final ResultCacheSnapshot cacheSnapshot;
+  private final ScheduledExecutorService cacheSnapshotExecutor;
+  private final ScheduledExecutorService pipelineProfileExecutor;
+  final RuleTimingCollector ruleTimingCollector;
   private final DatabaseLogger databaseLogger;
   private final Long logServerId;
   private final Random random = new Random();
@@ -112,8 +127,17 @@ abstract class TextChecker {
       this.ngramIdentifier.enableNgrams(config.getNgramLangIdentData());
     }
     this.executorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("lt-textchecker-thread-%d").build());
+    this.fairScheduler = config.isFairScheduling() ? new FairCheckScheduler(executorService, config.getFairSchedulingMaxChecks(),
+      config.getFairSchedulingWeights(), config.getFairSchedulingMaxChecksPerClass(), config.getFairSchedulingShortTextLength()) : null;
+    this.coalescer = config.isCheckCoalescing() ?
+      new CheckCoalescer(config.getCheckCoalescingCacheMillis(), config.getCheckCoalescingCacheSize()) : null;
     this.cache = config.getCacheSize() > 0 ? new ResultCache(
       config.getCacheSize(), config.getCacheTTLSeconds(), TimeUnit.SECONDS) : null;
+    this.incrementalCheckCache = config.getIncrementalCheckSessions() > 0 ?
+      new IncrementalCheckCache(config.getIncrementalCheckSessions()) : null;
+    this.ruleTimingCollector = config.getRuleTimingSampleRate() > 0 ? new RuleTimingCollector(config.getRuleTimingSampleRate(),
+      TimeUnit.SECONDS.toMillis(config.getRuleTimingWindowSeconds()),
+      (language, rule, nanos, matchCount, weight) -> ServerMetricsCollector.getInstance().logRuleTiming(language, rule.getId(), nanos, matchCount, weight)) : null;
     this.databaseLogger = DatabaseLogger.getInstance();
     if (databaseLogger.isLogging()) {
       this.logServerId = DatabaseAccess.getInstance().getOrCreateServerId();
@@ -129,8 +153,48 @@ abstract class TextChecker {
       ServerMetricsCollector.getInstance().monitorCache("languagetool_sentences_cache", cache.getSentenceCache());
       ServerMetricsCollector.getInstance().monitorCache("languagetool_remote_matches_cache", cache.getRemoteMatchesCache());
     }
+    if (incrementalCheckCache != null) {
+      ServerMetricsCollector.getInstance().monitorCache("languagetool_incremental_check_sessions", incrementalCheckCache.getSessionCache());
+    }
+    ServerMetricsCollector.getInstance().monitorCache("languagetool_bert_scores_cache", RemoteLanguageModel.getScoreCache());
+    if (cache != null && config.getCacheSnapshotFile() != null) {
+      cacheSnapshot = new ResultCacheSnapshot(config.getCacheSnapshotFile());
+      try {
+        int entries = cacheSnapshot.load(cache);
+        logger.info("Loaded " + entries + " result cache entries from " + config.getCacheSnapshotFile());
+      } catch (Exception e) {
+        logger.warn("Could not load result cache snapshot from " + config.getCacheSnapshotFile() + ", starting with empty cache", e);
+      }
+      if (config.getCacheSnapshotIntervalSeconds() > 0) {
+        cacheSnapshotExecutor = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat("lt-cache-snapshot-%d").setDaemon(true).build());
+        cacheSnapshotExecutor.scheduleWithFixedDelay(this::saveCacheSnapshot, config.getCacheSnapshotIntervalSeconds(),
+          config.getCacheSnapshotIntervalSeconds(), TimeUnit.SECONDS);
+      } else {
+        cacheSnapshotExecutor = null;
+      }
+      Runtime.getRuntime().addShutdownHook(new Thread(this::saveCacheSnapshot, "lt-cache-snapshot-shutdown"));
+    } else {
+      cacheSnapshot = null;
+      cacheSnapshotExecutor = null;
+    }
 
-    pipelinePool = new PipelinePool(config, cache, internalServer);
+    pipelinePool = new PipelinePool(config, cache, incrementalCheckCache, ruleTimingCollector, internalServer);
+    if (config.getPipelineProfileFile() != null && config.isPipelineCachingEnabled()) {
+      try {
+        int settings = pipelinePool.getUsageProfile().load(config.getPipelineProfileFile(), config.globalConfig, getDefaultUserConfig());
+        logger.info("Loaded usage of " + settings + " pipeline settings from " + config.getPipelineProfileFile());
+      } catch (Exception e) {
+        logger.warn("Could not load pipeline usage from " + config.getPipelineProfileFile() + ", prewarming default settings", e);
+      }
+      pipelineProfileExecutor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("lt-pipeline-profile-%d").setDaemon(true).build());
+      pipelineProfileExecutor.scheduleWithFixedDelay(this::savePipelineProfile, PipelinePool.PIPELINE_EXPIRE_TIME,
+        PipelinePool.PIPELINE_EXPIRE_TIME, TimeUnit.MILLISECONDS);
+      Runtime.getRuntime().addShutdownHook(new Thread(this::savePipelineProfile, "lt-pipeline-profile-shutdown"));
+    } else {
+      pipelineProfileExecutor = null;
+    }
     if (config.isPipelinePrewarmingEnabled()) {
       logger.info("Prewarming pipelines...");
       prewarmPipelinePool();
@@ -147,6 +211,34 @@ abstract class TextChecker {
 
   private void prewarmPipelinePool() {
     // setting + number of pipelines
+    Map<PipelinePool.PipelineSettings, Integer> prewarmSettings = pipelinePool.getUsageProfile().getMostRequested(config.getMaxPipelinePoolSize());
+    if (prewarmSettings.isEmpty()) {
+      prewarmSettings = getDefaultPrewarmSettings();
+    } else {
+      logger.info("Prewarming the " + prewarmSettings.size() + " most used pipeline settings");
+    }
+    try {
+      for (Map.Entry<PipelinePool.PipelineSettings, Integer> prewarmSetting : prewarmSettings.entrySet()) {
+          int numPipelines = prewarmSetting.getValue();
+          PipelinePool.PipelineSettings setting = prewarmSetting.getKey();
+
+          // request n pipelines first, return all afterwards -> creates multiple for same setting
+          List<Pipeline> pipelines = new ArrayList<>();
+          for (int i = 0; i < numPipelines; i++) {
+            Pipeline p = pipelinePool.getPipeline(setting);
+            p.check("LanguageTool");
+            pipelines.add(p);
+          }
+          for (Pipeline p : pipelines) {
+            pipelinePool.returnPipeline(setting, p);
+          }
+      }
+    } catch (Exception e) {
+      throw new RuntimeException("Error while prewarming pipelines", e);
+    }
+  }
+
+  private Map<PipelinePool.PipelineSettings, Integer> getDefaultPrewarmSettings() {
     // typical addon settings at the moment (2018-11-05)
     Map<PipelinePool.PipelineSettings, Integer> prewarmSettings = new HashMap<>();
     List<Language> prewarmLanguages = Stream.of(
@@ -171,30 +263,51 @@ abstract class TextChecker {
         prewarmSettings.put(settingsMotherTongueEnglish, NUM_PIPELINES_PER_SETTING);
       }
     }
-    try {
-      for (Map.Entry<PipelinePool.PipelineSettings, Integer> prewarmSetting : prewarmSettings.entrySet()) {
-          int numPipelines = prewarmSetting.getValue();
-          PipelinePool.PipelineSettings setting = prewarmSetting.getKey();
+    return prewarmSettings;
+  }
 
-          // request n pipelines first, return all afterwards -> creates multiple for same setting
-          List<Pipeline> pipelines = new ArrayList<>();
-          for (int i = 0; i < numPipelines; i++) {
-            Pipeline p = pipelinePool.getPipeline(setting);
-            p.check("LanguageTool");
-            pipelines.add(p);
-          }
-          for (Pipeline p : pipelines) {
-            pipelinePool.returnPipeline(setting, p);
-          }
-      }
-    } catch (Exception e) {
-      throw new RuntimeException("Error while prewarming pipelines", e);
-    }
+  /**
+   * The user configuration of requests without user-specific settings, the only one that's
+   * saved in the pipeline usage profile.
+   */
+  private UserConfig getDefaultUserConfig() {
+    return new UserConfig(Collections.emptyList(), new HashMap<>(), config.getMaxSpellingSuggestions(), null, null, false, null, null);
   }
 
   void shutdownNow() {
     executorService.shutdownNow();
     RemoteRule.shutdown();
+    if (cacheSnapshotExecutor != null) {
+      cacheSnapshotExecutor.shutdownNow();
+    }
+    saveCacheSnapshot();
+    if (pipelineProfileExecutor != null) {
+      pipelineProfileExecutor.shutdownNow();
+      savePipelineProfile();
+    }
+  }
+
+  private void savePipelineProfile() {
+    try {
+      int settings = pipelinePool.getUsageProfile().save(config.getPipelineProfileFile(), config.getPipelineProfileMaxSettings(), getDefaultUserConfig());
+      logger.info("Saved usage of " + settings + " pipeline settings to " + config.getPipelineProfileFile());
+    } catch (Exception e) {
+      logger.warn("Could not save pipeline usage to " + config.getPipelineProfileFile(), e);
+    }
+  }
+
+  private void saveCacheSnapshot() {
+    if (cacheSnapshot == null) {
+      return;
+    }
+    try {
+      long startTime = System.currentTimeMillis();
+      int entries = cacheSnapshot.save(cache, config.getCacheSnapshotMaxEntries());
+      logger.info("Saved " + entries + " result cache entries to " + config.getCacheSnapshotFile() + " in " +
+        (System.currentTimeMillis() - startTime) + "ms");
+    } catch (Exception e) {
+      logger.warn("Could not save result cache snapshot to " + config.getCacheSnapshotFile(), e);
+    }
   }
 
   void checkText(AnnotatedText aText, HttpExchange httpExchange, Map<String, String> parameters, ErrorRequestLimiter errorRequestLimiter,
@@ -315,72 +428,77 @@ abstract class TextChecker {
     //print("Starting check: " + aText.getPlainText().length() + " chars, #" + count);
     String motherTongueParam = parameters.get("motherTongue");
     Language motherTongue = motherTongueParam != null ? Languages.getLanguageForShortCode(motherTongueParam) : null;
-    boolean useEnabledOnly = "yes".equals(parameters.get("enabledOnly")) || "true".equals(parameters.get("enabledOnly"));
-    List<Language> altLanguages = new ArrayList<>();
-    if (parameters.get("altLanguages") != null) {
-      String[] altLangParams = parameters.get("altLanguages").split(",\\s*");
-      for (String langCode : altLangParams) {
-        Language altLang = Languages.getLanguageForShortCode(langCode);
-        altLanguages.add(altLang);
-        if (altLang.hasVariant() && !altLang.isVariant()) {
-          ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.INVALID_REQUEST);
-          throw new IllegalArgumentException("You specified altLanguage '" + langCode + "', but for this language you need to specify a variant, e.g. 'en-GB' instead of just 'en'");
-        }
-      }
-    }
-    List<String> enabledRules = getEnabledRuleIds(parameters);
-
-    List<String> disabledRules = getDisabledRuleIds(parameters);
-    List<CategoryId> enabledCategories = getCategoryIds("enabledCategories", parameters);
-    List<CategoryId> disabledCategories = getCategoryIds("disabledCategories", parameters);
-
-    if ((disabledRules.size() > 0 || disabledCategories.size() > 0) && useEnabledOnly) {
-      ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.INVALID_REQUEST);
-      throw new IllegalArgumentException("You cannot specify disabled rules or categories using enabledOnly=true");
-    }
-    if (enabledRules.isEmpty() && enabledCategories.isEmpty() && useEnabledOnly) {
-      ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.INVALID_REQUEST);
-      throw new IllegalArgumentException("You must specify enabled rules or categories when using enabledOnly=true");
-    }
-
-    boolean enableTempOffRules = "true".equals(parameters.get("enableTempOffRules"));
-    boolean useQuerySettings = enabledRules.size() > 0 || disabledRules.size() > 0 ||
-            enabledCategories.size() > 0 || disabledCategories.size() > 0 || enableTempOffRules;
-    boolean allowIncompleteResults = "true".equals(parameters.get("allowIncompleteResults"));
-    boolean enableHiddenRules = "true".equals(parameters.get("enableHiddenRules"));
-    JLanguageTool.Mode mode = ServerTools.getMode(parameters);
-    JLanguageTool.Level level = ServerTools.getLevel(parameters);
-    String callback = parameters.get("callback");
-    // allowed to log input on errors?
-    boolean inputLogging = !parameters.getOrDefault("inputLogging", "").equals("no");
-    QueryParams params = new QueryParams(altLanguages, enabledRules, disabledRules,
-      enabledCategories, disabledCategories, useEnabledOnly,
-      useQuerySettings, allowIncompleteResults, enableHiddenRules, enableTempOffRules, mode, level, callback, inputLogging);
+    QueryParams params = getQueryParams(parameters);
+    JLanguageTool.Mode mode = params.mode;
 
     int textSize = aText.getPlainText().length();
 
-    List<RuleMatch> ruleMatchesSoFar = Collections.synchronizedList(new ArrayList<>());
+    NdjsonCheckStreamer streamer = null;
+    if (NdjsonCheckStreamer.isRequested(httpExchange, parameters)) {
+      if (params.callback != null) {
+        throw new IllegalArgumentException("Streaming results is not supported with 'callback'");
+      }
+      streamer = new NdjsonCheckStreamer(httpExchange, aText, lang, Integer.parseInt(parameters.getOrDefault("c", "0")),
+        CONTEXT_SIZE, config.getAllowOriginUrl());
+    }
+    NdjsonCheckStreamer matchStreamer = streamer;
 
-    Future<List<RuleMatch>> future = executorService.submit(new Callable<List<RuleMatch>>() {
+    BiFunction<List<RuleMatch>, CheckDeadline, Callable<List<RuleMatch>>> checkFactory = (matchesSoFar, checkDeadline) -> new Callable<List<RuleMatch>>() {
       @Override
       public List<RuleMatch> call() throws Exception {
         // use to fake OOM in thread for testing:
         /*if (Math.random() < 0.1) {
           throw new OutOfMemoryError();
         }*/
-        return getRuleMatches(aText, lang, motherTongue, parameters, params, userConfig, detLang, preferredLangs, preferredVariants, f -> ruleMatchesSoFar.add(f));
+        try {
+          return getRuleMatches(aText, lang, motherTongue, parameters, params, userConfig, detLang, preferredLangs, preferredVariants, f -> {
+            matchesSoFar.add(f);
+            if (matchStreamer != null) {
+              matchStreamer.matchFound(f);
+            }
+          }, checkDeadline);
+        } finally {
+          if (checkDeadline.isCancelled()) {
+            ServerMetricsCollector.getInstance().logCancelledCheck(checkDeadline.getMillisSinceCancelled());
+          }
+        }
       }
-    });
+    };
+    Function<Callable<List<RuleMatch>>, Future<List<RuleMatch>>> submitter = check -> fairScheduler != null ?
+      fairScheduler.submit(fairScheduler.classify(limits, parameters, textSize), textSize, check) :
+      executorService.submit(check);
+    // streamed matches come from the check's listener, and bitext/multilingual checks don't only depend on the pipeline settings:
+    boolean coalesce = coalescer != null && streamer == null && parameters.get("sourceText") == null &&
+      (preferredLangs.size() < 2 || parameters.get("multilingual") == null || parameters.get("multilingual").equals("false"));
+    CheckCoalescer.Flight flight = null;
+    CheckDeadline deadline = null;  // of a check that's not coalesced, the coalescer cancels shared checks
+    List<RuleMatch> ruleMatchesSoFar;
+    Future<List<RuleMatch>> future;
+    if (coalesce) {
+      CheckCoalescer.Key key = CheckCoalescer.Key.of(aText, new PipelinePool.PipelineSettings(lang, motherTongue, params, config.globalConfig, userConfig));
+      flight = coalescer.join(key, checkFactory, submitter);
+      ruleMatchesSoFar = flight.getMatchesSoFar();
+      future = flight.getFuture();
+    } else {
+      ruleMatchesSoFar = Collections.synchronizedList(new ArrayList<>());
+      deadline = CheckDeadline.untilCancelled();
+      future = submitter.apply(checkFactory.apply(ruleMatchesSoFar, deadline));
+    }
     String incompleteResultReason = null;
     List<RuleMatch> matches;
     try {
       if (limits.getMaxCheckTimeMillis() < 0) {
         matches = future.get();
       } else {
-        matches = future.get(limits.getMaxCheckTimeMillis(), TimeUnit.MILLISECONDS);
+        matches = FairCheckScheduler.get(future, limits.getMaxCheckTimeMillis());
       }
     } catch (ExecutionException e) {
-      future.cancel(true);
+      if (flight != null) {
+        flight.cancel();
+      } else {
+        deadline.cancel();
+        future.cancel(true);
+      }
       if (ExceptionUtils.getRootCause(e) instanceof ErrorRateTooHighException) {
         ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.TOO_MANY_ERRORS);
         databaseLogger.log(new DatabaseCheckErrorLogEntry("ErrorRateTooHigh", logServerId, agentId, userId, lang, detLang.getDetectedLanguage(), textSize, "matches: " + ruleMatchesSoFar.size()));
@@ -397,7 +515,14 @@ abstract class TextChecker {
         throw new RuntimeException(ServerTools.cleanUserTextFromMessage(e.getMessage(), parameters) + ", detected: " + detLang, e);
       }
     } catch (TimeoutException e) {
-      boolean cancelled = future.cancel(true);
+      boolean cancelled;
+      if (flight != null) {
+        cancelled = flight.cancel();
+      } else {
+        // stops the check if it's running already, as interrupting its thread doesn't:
+        deadline.cancel();
+        cancelled = future.cancel(true);
+      }
       Path loadFile = Paths.get("/proc/loadavg");  // works in Linux only(?)
       String loadInfo = loadFile.toFile().exists() ? Files.readAllLines(loadFile).toString() : "(unknown)";
       if (errorRequestLimiter != null) {
@@ -422,6 +547,10 @@ abstract class TextChecker {
           logServerId, agentId, limits.getPremiumUid(), lang, detLang.getDetectedLanguage(), textSize, "load: "+ loadInfo));
         throw new RuntimeException(message, e);
       }
+    } finally {
+      if (flight != null) {
+        flight.leave();
+      }
     }
 
     setHeaders(httpExchange);
@@ -461,7 +590,8 @@ abstract class TextChecker {
       }
     }
     int compactMode = Integer.parseInt(parameters.getOrDefault("c", "0"));
-    String response = getResponse(aText, lang, detLang, motherTongue, matches, hiddenMatches, incompleteResultReason, compactMode, limits.getPremiumUid() == null);
+    boolean cbor = streamer == null && params.callback == null && isCborRequested(httpExchange);
+    String response = streamer == null && !cbor ? getResponse(aText, lang, detLang, motherTongue, matches, hiddenMatches, incompleteResultReason, compactMode, limits.getPremiumUid() == null) : null;
     if (params.callback != null) {
       // JSONP - still needed today for the special case of hosting your own on-premise LT without SSL
       // and using it from a local MS Word (not Online Word) - issue #89 in the add-in repo:
@@ -469,13 +599,26 @@ abstract class TextChecker {
     }
     String messageSent = "sent";
     String languageMessage = lang.getShortCodeWithCountryAndVariant();
-    try {
-      httpExchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.getBytes(ENCODING).length);
-      httpExchange.getResponseBody().write(response.getBytes(ENCODING));
-      ServerMetricsCollector.getInstance().logResponse(HttpURLConnection.HTTP_OK);
-    } catch (IOException exception) {
-      // the client is disconnected
-      messageSent = "notSent: " + exception.getMessage();
+    if (streamer != null) {
+      streamer.finish(matches, detLang, incompleteResultReason, limits.getPremiumUid() == null);
+      messageSent = "streamed";
+    } else {
+      try {
+        if (cbor) {
+          httpExchange.getResponseHeaders().set("Content-Type", RuleMatchesAsCborSerializer.CONTENT_TYPE);
+          httpExchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);  // chunked, written without buffering the whole response
+          new RuleMatchesAsCborSerializer(compactMode, lang).ruleMatchesToCbor(httpExchange.getResponseBody(), matches, hiddenMatches,
+            aText, CONTEXT_SIZE, detLang, incompleteResultReason, limits.getPremiumUid() == null);
+        } else {
+          byte[] bytes = response.getBytes(ENCODING);
+          httpExchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, bytes.length);
+          httpExchange.getResponseBody().write(bytes);
+        }
+        ServerMetricsCollector.getInstance().logResponse(HttpURLConnection.HTTP_OK);
+      } catch (IOException exception) {
+        // the client is disconnected
+        messageSent = "notSent: " + exception.getMessage();
+      }
     }
     if (motherTongue != null) {
       languageMessage += " (mother tongue: " + motherTongue.getShortCodeWithCountryAndVariant() + ")";
@@ -534,6 +677,200 @@ abstract class TextChecker {
 
   }
   
+  /**
+   * Check several texts that share the language and rule settings. Each worker gets one pipeline and
+   * checks texts until none are left, so the per-request overhead (parameter parsing, pipeline lookup,
+   * response) is paid once for all texts. The workers are scheduled like single checks, and each worker
+   * counts as one request for the adaptive concurrency limit. The response is a JSON object with a {@code results} array
+   * that has the same kind of result as {@code /v2/check} for each text, in the order of the texts.
+   * Language detection, multilingual texts, bitext checks and the hidden matches server aren't supported.
+   * @since 5.3
+   */
+  void checkTextBatch(List<AnnotatedText> texts, HttpExchange httpExchange, Map<String, String> parameters,
+                      String remoteAddress) throws Exception {
+    checkCommonParams(parameters);
+    if (getLanguageAutoDetect(parameters)) {
+      ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.INVALID_REQUEST);
+      throw new IllegalArgumentException("Batch checks need a fixed 'language', 'language=auto' is not supported");
+    }
+    if (parameters.get("sourceText") != null) {
+      ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.INVALID_REQUEST);
+      throw new IllegalArgumentException("'sourceText' is not supported for batch checks");
+    }
+    if (texts.size() > config.getMaxBatchSize()) {
+      ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.INVALID_REQUEST);
+      throw new IllegalArgumentException("Too many texts in batch: " + texts.size() + ", maximum: " + config.getMaxBatchSize());
+    }
+    long timeStart = System.currentTimeMillis();
+    UserLimits limits = ServerTools.getUserLimits(parameters, config);
+    int textSize = 0;
+    for (AnnotatedText text : texts) {
+      textSize += text.getPlainText().length();
+    }
+    if (textSize > limits.getMaxTextLength()) {
+      ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.MAX_TEXT_SIZE);
+      throw new TextTooLongException("Your texts exceed the limit of " + limits.getMaxTextLength() +
+        " characters (they're " + textSize + " characters). Please submit fewer or shorter texts.");
+    }
+    boolean filterDictionaryMatches = "true".equals(parameters.get("filterDictionaryMatches"));
+    UserConfig userConfig = new UserConfig(
+      limits.getPremiumUid() != null ? getUserDictWords(limits.getPremiumUid()) : Collections.emptyList(),
+      getRuleValues(parameters), config.getMaxSpellingSuggestions(), null, null, filterDictionaryMatches, null, null);
+    Language lang = Languages.getLanguageForShortCode(parameters.get("language"));
+    DetectedLanguage detLang = new DetectedLanguage(lang, lang);
+    String motherTongueParam = parameters.get("motherTongue");
+    Language motherTongue = motherTongueParam != null ? Languages.getLanguageForShortCode(motherTongueParam) : null;
+    QueryParams params = getQueryParams(parameters);
+
+    AtomicReferenceArray<List<RuleMatch>> results = new AtomicReferenceArray<>(texts.size());
+    AtomicInteger nextText = new AtomicInteger();
+    int maxWorkers = Math.max(1, Math.min(config.getMaxCheckThreads(), (texts.size() + MIN_BATCH_TEXTS_PER_WORKER - 1) / MIN_BATCH_TEXTS_PER_WORKER));
+    // the request got one permit of the concurrency limiter, every further worker needs one, too:
+    Object permit = httpExchange.getAttribute(LanguageToolHttpHandler.PERMIT_ATTRIBUTE);
+    int workers = permit instanceof AdaptiveConcurrencyLimiter.Permit ?
+      1 + ((AdaptiveConcurrencyLimiter.Permit) permit).tryExtend(maxWorkers - 1) : maxWorkers;
+    CheckDeadline deadline = CheckDeadline.untilCancelled();
+    Callable<Object> worker = () -> {
+      checkBatchTexts(texts, results, nextText, lang, motherTongue, params, userConfig, deadline);
+      return null;
+    };
+    // like single checks, the workers wait for their turn if the scheduler is enabled:
+    FairCheckScheduler.RequestClass requestClass = fairScheduler != null ? fairScheduler.classify(limits, parameters, textSize) : null;
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < workers; i++) {
+      futures.add(fairScheduler != null ? fairScheduler.submit(requestClass, textSize / workers, worker) : executorService.submit(worker));
+    }
+    try {
+      for (Future<?> future : futures) {
+        if (limits.getMaxCheckTimeMillis() < 0) {
+          future.get();
+        } else if (fairScheduler != null) {
+          // each worker has the maximum time from when it starts running:
+          FairCheckScheduler.get(future, limits.getMaxCheckTimeMillis());
+        } else {
+          long remaining = limits.getMaxCheckTimeMillis() - (System.currentTimeMillis() - timeStart);
+          future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+        }
+      }
+    } catch (ExecutionException | TimeoutException e) {
+      // stops the running checks, as interrupting their threads doesn't:
+      deadline.cancel();
+      for (Future<?> future : futures) {
+        future.cancel(true);
+      }
+      if (e instanceof TimeoutException) {
+        ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.MAX_CHECK_TIME);
+        throw new RuntimeException("Batch checking took longer than allowed maximum of " + limits.getMaxCheckTimeMillis() +
+          " milliseconds (" + texts.size() + " texts, " + textSize + " characters)", e);
+      }
+      throw new RuntimeException(ServerTools.cleanUserTextFromMessage(e.getMessage(), parameters), e);
+    }
+
+    setHeaders(httpExchange);
+    int compactMode = Integer.parseInt(parameters.getOrDefault("c", "0"));
+    StringBuilder response = new StringBuilder("{\"results\":[");
+    int matchCount = 0;
+    for (int i = 0; i < texts.size(); i++) {
+      List<RuleMatch> matches = results.get(i);
+      matchCount += matches.size();
+      if (i > 0) {
+        response.append(',');
+      }
+      response.append(getResponse(texts.get(i), lang, detLang, motherTongue, matches, Collections.emptyList(), null,
+        compactMode, limits.getPremiumUid() == null));
+    }
+    response.append("]}");
+    String messageSent = "sent";
+    try {
+      byte[] bytes = response.toString().getBytes(ENCODING);
+      httpExchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, bytes.length);
+      httpExchange.getResponseBody().write(bytes);
+      ServerMetricsCollector.getInstance().logResponse(HttpURLConnection.HTTP_OK);
+    } catch (IOException exception) {
+      // the client is disconnected
+      messageSent = "notSent: " + exception.getMessage();
+    }
+    int computationTime = (int) (System.currentTimeMillis() - timeStart);
+    String agent = parameters.get("useragent") != null ? parameters.get("useragent") : "-";
+    logger.info("Batch check done: " + texts.size() + " texts, " + textSize + " chars, " + lang.getShortCodeWithCountryAndVariant() + ", "
+      + matchCount + " matches, " + computationTime + "ms, workers:" + workers + ", agent:" + agent
+      + ", " + messageSent + ", q:" + (workQueue != null ? workQueue.size() : "?")
+      + ", h:" + reqCounter.getHandleCount() + ", m:" + params.mode.toString().toLowerCase());
+    ServerMetricsCollector.getInstance().logCheck(lang, computationTime, textSize, matchCount, params.mode);
+  }
+
+  private void checkBatchTexts(List<AnnotatedText> texts, AtomicReferenceArray<List<RuleMatch>> results, AtomicInteger nextText,
+                               Language lang, Language motherTongue, QueryParams params, UserConfig userConfig,
+                               CheckDeadline deadline) throws Exception {
+    PipelinePool.PipelineSettings settings = new PipelinePool.PipelineSettings(lang, motherTongue, params, config.globalConfig, userConfig);
+    Pipeline lt = pipelinePool.getPipeline(settings);
+    try {
+      int i;
+      while ((i = nextText.getAndIncrement()) < texts.size()) {
+        if (deadline.isCancelled() || Thread.currentThread().isInterrupted()) {
+          throw new InterruptedException("Batch check cancelled");
+        }
+        results.set(i, lt.check(texts.get(i), true, JLanguageTool.ParagraphHandling.NORMAL, null,
+          params.mode, params.level, executorService, null, deadline));
+      }
+    } finally {
+      pipelinePool.returnPipeline(settings, lt);
+    }
+  }
+
+  private QueryParams getQueryParams(Map<String, String> parameters) {
+    boolean useEnabledOnly = "yes".equals(parameters.get("enabledOnly")) || "true".equals(parameters.get("enabledOnly"));
+    List<Language> altLanguages = new ArrayList<>();
+    if (parameters.get("altLanguages") != null) {
+      String[] altLangParams = parameters.get("altLanguages").split(",\\s*");
+      for (String langCode : altLangParams) {
+        Language altLang = Languages.getLanguageForShortCode(langCode);
+        altLanguages.add(altLang);
+        if (altLang.hasVariant() && !altLang.isVariant()) {
+          ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.INVALID_REQUEST);
+          throw new IllegalArgumentException("You specified altLanguage '" + langCode + "', but for this language you need to specify a variant, e.g. 'en-GB' instead of just 'en'");
+        }
+      }
+    }
+    List<String> enabledRules = getEnabledRuleIds(parameters);
+
+    List<String> disabledRules = getDisabledRuleIds(parameters);
+    List<CategoryId> enabledCategories = getCategoryIds("enabledCategories", parameters);
+    List<CategoryId> disabledCategories = getCategoryIds("disabledCategories", parameters);
+
+    if ((disabledRules.size() > 0 || disabledCategories.size() > 0) && useEnabledOnly) {
+      ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.INVALID_REQUEST);
+      throw new IllegalArgumentException("You cannot specify disabled rules or categories using enabledOnly=true");
+    }
+    if (enabledRules.isEmpty() && enabledCategories.isEmpty() && useEnabledOnly) {
+      ServerMetricsCollector.getInstance().logRequestError(ServerMetricsCollector.RequestErrorType.INVALID_REQUEST);
+      throw new IllegalArgumentException("You must specify enabled rules or categories when using enabledOnly=true");
+    }
+
+    boolean enableTempOffRules = "true".equals(parameters.get("enableTempOffRules"));
+    boolean useQuerySettings = enabledRules.size() > 0 || disabledRules.size() > 0 ||
+            enabledCategories.size() > 0 || disabledCategories.size() > 0 || enableTempOffRules;
+    boolean allowIncompleteResults = "true".equals(parameters.get("allowIncompleteResults"));
+    boolean enableHiddenRules = "true".equals(parameters.get("enableHiddenRules"));
+    JLanguageTool.Mode mode = ServerTools.getMode(parameters);
+    JLanguageTool.Level level = ServerTools.getLevel(parameters);
+    String callback = parameters.get("callback");
+    // allowed to log input on errors?
+    boolean inputLogging = !parameters.getOrDefault("inputLogging", "").equals("no");
+    QueryParams params = new QueryParams(altLanguages, enabledRules, disabledRules,
+      enabledCategories, disabledCategories, useEnabledOnly,
+      useQuerySettings, allowIncompleteResults, enableHiddenRules, enableTempOffRules, mode, level, callback, inputLogging);
+    return params;
+  }
+
+  /**
+   * Whether the client prefers the binary CBOR result, e.g. with {@code Accept: application/cbor}.
+   */
+  private static boolean isCborRequested(HttpExchange httpExchange) {
+    String accept = httpExchange.getRequestHeaders() != null ? httpExchange.getRequestHeaders().getFirst("Accept") : null;
+    return accept != null && accept.contains(RuleMatchesAsCborSerializer.CONTENT_TYPE);
+  }
+
   private Map<String, Integer> getRuleValues(Map<String, String> parameters) {
     Map<String, Integer> ruleValues = new HashMap<>();
     String parameterString = parameters.get("ruleValues");
@@ -557,6 +894,14 @@ abstract class TextChecker {
     if (parameters.get("text") == null && parameters.get("data") == null) {
       throw new IllegalArgumentException("Missing 'text' or 'data' parameter");
     }
+    checkCommonParams(parameters);
+  }
+
+  /**
+   * Checks the parameters that don't depend on how the text is given.
+   * @since 5.3
+   */
+  protected void checkCommonParams(Map<String, String> parameters) {
   }
 
   private List<RuleMatch> getRuleMatches(AnnotatedText aText, Language lang,
@@ -564,7 +909,7 @@ abstract class TextChecker {
                                          QueryParams params, UserConfig userConfig,
                                          DetectedLanguage detLang,
                                          List<String> preferredLangs, List<String> preferredVariants,
-                                         RuleMatchListener listener) throws Exception {
+                                         RuleMatchListener listener, CheckDeadline deadline) throws Exception {
     if (cache != null && cache.requestCount() > 0 && cache.requestCount() % CACHE_STATS_PRINT == 0) {
       double hitRate = cache.hitRate();
       String hitPercentage = String.format(Locale.ENGLISH, "%.2f", hitRate * 100.0f);
@@ -591,7 +936,7 @@ abstract class TextChecker {
       List<RuleMatch> matches = new ArrayList<>();
 
       if (preferredLangs.size() < 2 || parameters.get("multilingual") == null || parameters.get("multilingual").equals("false")) {
-        matches.addAll(getPipelineResults(aText, lang, motherTongue, params, userConfig, listener));
+        matches.addAll(getPipelineResults(aText, lang, motherTongue, params, userConfig, listener, deadline));
       } else {
         // support for multilingual texts:
         try {
@@ -610,12 +955,12 @@ abstract class TextChecker {
           langs.addAll(secondLangs);
           Map<Language, AnnotatedTextBuilder> lang2builder = getBuilderMap(fragments, new HashSet<>(langs));
           for (Map.Entry<Language, AnnotatedTextBuilder> entry : lang2builder.entrySet()) {
-            matches.addAll(getPipelineResults(entry.getValue().build(), entry.getKey(), motherTongue, params, userConfig, listener));
+            matches.addAll(getPipelineResults(entry.getValue().build(), entry.getKey(), motherTongue, params, userConfig, listener, deadline));
           }
         } catch (Exception e) {
           logger.error("Problem with multilingual mode (preferredLangs=" + preferredLangs+ ", preferredVariants=" + preferredVariants + "), " +
             "falling back to single language.", e);
-          matches.addAll(getPipelineResults(aText, lang, motherTongue, params, userConfig, listener));
+          matches.addAll(getPipelineResults(aText, lang, motherTongue, params, userConfig, listener, deadline));
         }
       }
       return matches;
@@ -631,7 +976,8 @@ abstract class TextChecker {
     return Languages.getLanguageForShortCode(langCode);
   }
 
-  private List<RuleMatch> getPipelineResults(AnnotatedText aText, Language lang, Language motherTongue, QueryParams params, UserConfig userConfig, RuleMatchListener listener) throws Exception {
+  private List<RuleMatch> getPipelineResults(AnnotatedText aText, Language lang, Language motherTongue, QueryParams params, UserConfig userConfig,
+                                             RuleMatchListener listener, CheckDeadline deadline) throws Exception {
     PipelinePool.PipelineSettings settings = null;
     Pipeline lt = null;
     List<RuleMatch> matches = new ArrayList<>();
@@ -643,7 +989,7 @@ abstract class TextChecker {
         textSessionId = -2L; // magic value for remote rule roll-out - includes all results, even from disabled models
       }
       matches.addAll(lt.check(aText, true, JLanguageTool.ParagraphHandling.NORMAL, listener,
-        params.mode, params.level, executorService, textSessionId));
+        params.mode, params.level, executorService, textSessionId, deadline));
     } finally {
       if (lt != null) {
         pipelinePool.returnPipeline(settings, lt);
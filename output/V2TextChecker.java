@@ -79,8 +79,7 @@ class V2TextChecker extends TextChecker {
   }
 
   @Override
-  protected void checkParams(Map<String, String> parameters) {
-    super.checkParams(parameters);
+  protected void checkCommonParams(Map<String, String> parameters) {
     if (StringTools.isEmpty(parameters.get("language"))) {
       throw new IllegalArgumentException("Missing 'language' parameter, e.g. 'language=en-US' for American English or 'language=fr' for French");
     }
@@ -447,7 +447,7 @@ public class XMLRuleHandler extends DefaultHandler {
     if (!StringTools.isEmpty(exceptions.toString()) || exceptionPosToken != null) {
       patternToken.setStringPosException(internString(exceptions.toString().trim()), exceptionStringRegExp,
           exceptionStringInflected, exceptionStringNegation, exceptionValidNext, exceptionValidPrev,
-          exceptionPosToken, exceptionPosRegExp, exceptionPosNegation, exceptionLevelCaseSensitive);
+          exceptionPosToken, exceptionPosRegExp, exceptionPosNegation, exceptionLevelCaseSensitive, getRegexEngine());
       exceptionPosToken = null;
       exceptionLevelCaseSensitive = null;
     }
@@ -573,7 +573,7 @@ public class XMLRuleHandler extends DefaultHandler {
     }
     if (posToken != null) {
       patternToken.setPosToken(internedPos.computeIfAbsent(Triple.of(posToken, posRegExp, posNegation),
-        t -> new PatternToken.PosToken(t.getLeft(), t.getMiddle(), t.getRight())));
+        t -> new PatternToken.PosToken(t.getLeft(), t.getMiddle(), t.getRight(), getRegexEngine())));
       posToken = null;
     }
     if (chunkTag != null) {
@@ -658,6 +658,11 @@ public class XMLRuleHandler extends DefaultHandler {
       StringMatcher.create(t.getLeft(), t.getMiddle(), t.getRight(), this::internString));
   }
 
+  private RegexEngine getRegexEngine() {
+    return language != null ? language.getRegexEngine() : RegexEngine.JAVA;
+  }
+
+  // the regex engine is the same for all tokens, as it depends only on the language:
   private final Map<Triple<String, Boolean, Boolean>, PatternToken.PosToken> internedPos = new HashMap<>();
 
 }
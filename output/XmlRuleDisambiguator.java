@@ -23,7 +23,7 @@ import org.languagetool.AnalyzedSentence;
 import org.languagetool.JLanguageTool;
 import org.languagetool.Language;
 import org.languagetool.rules.Rule;
-import org.languagetool.rules.patterns.RuleSet;
+import org.languagetool.rules.patterns.IndexedRuleSet;
 import org.languagetool.tagging.disambiguation.AbstractDisambiguator;
 import org.xml.sax.SAXException;
 
@@ -42,13 +42,13 @@ public class XmlRuleDisambiguator extends AbstractDisambiguator {
 
   private static final String DISAMBIGUATION_FILE = "disambiguation.xml";
 
-  private final RuleSet disambiguationRules;
+  private final IndexedRuleSet disambiguationRules;
 
   public XmlRuleDisambiguator(Language language) {
     Objects.requireNonNull(language);
     String disambiguationFile = language.getShortCode() + "/" + DISAMBIGUATION_FILE;
     try {
-      disambiguationRules = RuleSet.textHinted(loadPatternRules(disambiguationFile));
+      disambiguationRules = new IndexedRuleSet(loadPatternRules(disambiguationFile));
     } catch (Exception e) {
       throw new RuntimeException("Problems with loading disambiguation file: " + disambiguationFile, e);
     }
@@ -56,8 +56,15 @@ public class XmlRuleDisambiguator extends AbstractDisambiguator {
 
   @Override
   public AnalyzedSentence disambiguate(AnalyzedSentence sentence) throws IOException {
-    for (Rule rule : disambiguationRules.rulesForSentence(sentence)) {
-      sentence = ((DisambiguationPatternRule) rule).replace(sentence);
+    List<Rule> rules = disambiguationRules.allRules();
+    IndexedRuleSet.Candidates candidates = disambiguationRules.candidatesFor(sentence);
+    for (int i = candidates.nextIndex(0); i >= 0; i = candidates.nextIndex(i + 1)) {
+      AnalyzedSentence newSentence = ((DisambiguationPatternRule) rules.get(i)).replace(sentence);
+      if (newSentence != sentence) {
+        // the rule may have added readings that later rules depend on:
+        candidates.update(newSentence);
+        sentence = newSentence;
+      }
     }
     return sentence;
   }